@@ -0,0 +1,99 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AIMD (additive increase, multiplicative decrease) batch size controller.
+ * <p>
+ * Batch size grows by a fixed step after each successful, fast enough delivery and is halved after each failed
+ * or slow delivery, always staying within configured bounds. Delivery is considered slow if its latency exceeds
+ * configured target latency. Server-side processing time ({@code took}) is used as delivery latency if available,
+ * round-trip time otherwise.
+ */
+public class AdaptiveBatchSize {
+
+    /**
+     * Number of consecutive increases needed to grow from min to max batch size
+     */
+    static final int INCREASE_STEPS = 16;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetLatency;
+    private final int increment;
+
+    private final AtomicInteger current;
+
+    /**
+     * @param minBatchSize lower bound
+     * @param maxBatchSize upper bound
+     * @param initialBatchSize initial batch size; will be adjusted to fit the bounds
+     * @param targetLatency max number of millis of successful delivery that doesn't cause a decrease; 0 if only failures should cause a decrease
+     */
+    public AdaptiveBatchSize(int minBatchSize, int maxBatchSize, int initialBatchSize, long targetLatency) {
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetLatency = targetLatency;
+        this.increment = Math.max(1, (maxBatchSize - minBatchSize) / INCREASE_STEPS);
+        this.current = new AtomicInteger(Math.min(maxBatchSize, Math.max(minBatchSize, initialBatchSize)));
+    }
+
+    /**
+     * @return current batch size
+     */
+    public int get() {
+        return current.get();
+    }
+
+    /**
+     * @param roundTripTime number of millis between request execution and response
+     * @param took number of millis spent by the server on request processing; negative if unknown
+     */
+    public void onSuccess(long roundTripTime, long took) {
+
+        long latency = took >= 0 ? took : roundTripTime;
+
+        if (targetLatency > 0 && latency > targetLatency) {
+            decrease();
+        } else {
+            increase();
+        }
+
+    }
+
+    /**
+     * Should be called on failed or rejected requests
+     */
+    public void onFailure() {
+        decrease();
+    }
+
+    private void increase() {
+        current.updateAndGet(size -> Math.min(maxBatchSize, size + increment));
+    }
+
+    private void decrease() {
+        current.updateAndGet(size -> Math.max(minBatchSize, size / 2));
+    }
+
+}
@@ -21,12 +21,15 @@ package org.appenders.log4j2.elasticsearch;
  */
 
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.ConfigurationException;
 import org.apache.logging.log4j.core.config.Node;
 import org.apache.logging.log4j.core.config.plugins.Plugin;
 import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
 import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.validation.constraints.Required;
 import org.apache.logging.log4j.status.StatusLogger;
@@ -61,6 +64,17 @@ public class AsyncBatchDelivery implements BatchDelivery<String> {
         this.objectFactory = objectFactory;
     }
 
+    protected AsyncBatchDelivery(BatchEmitterConfig batchEmitterConfig, ClientObjectFactory objectFactory, FailoverPolicy failoverPolicy, IndexTemplate indexTemplate) {
+        this.batchOperations = objectFactory.createBatchOperations();
+        this.batchEmitter = createBatchEmitterServiceProvider()
+                .createInstance(
+                        batchEmitterConfig,
+                        objectFactory,
+                        failoverPolicy);
+        this.indexTemplate = indexTemplate;
+        this.objectFactory = objectFactory;
+    }
+
     /**
      * Transforms given items to client-specific model and adds them to provided {@link BatchEmitter}
      *
@@ -76,6 +90,16 @@ public class AsyncBatchDelivery implements BatchDelivery<String> {
         this.batchEmitter.add(batchOperations.createBatchItem(indexName, source));
     }
 
+    @Override
+    public boolean rejects(Level level) {
+        return this.batchEmitter.rejects(level);
+    }
+
+    @Override
+    public void onEndOfBatch() {
+        this.batchEmitter.onEndOfBatch();
+    }
+
     protected BatchEmitterServiceProvider createBatchEmitterServiceProvider() {
         return new BatchEmitterServiceProvider();
     }
@@ -102,6 +126,21 @@ public class AsyncBatchDelivery implements BatchDelivery<String> {
          */
         public static final FailoverPolicy DEFAULT_FAILOVER_POLICY = new NoopFailoverPolicy();
 
+        /**
+         * Default: {@link OverflowPolicy#BLOCK}
+         */
+        public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.BLOCK;
+
+        /**
+         * Default: 1000
+         */
+        public static final int DEFAULT_OVERFLOW_TIMEOUT = 1000;
+
+        /**
+         * Default: {@code org.apache.logging.log4j.Level.WARN}
+         */
+        public static final Level DEFAULT_OVERFLOW_LEVEL = Level.WARN;
+
         @PluginElement("elasticsearchClientFactory")
         @Required(message = "No Elasticsearch client factory [JestHttp|ElasticsearchBulkProcessor] provided for AsyncBatchDelivery")
         private ClientObjectFactory clientObjectFactory;
@@ -112,18 +151,149 @@ public class AsyncBatchDelivery implements BatchDelivery<String> {
         @PluginBuilderAttribute
         private int batchSize = DEFAULT_DELIVERY_INTERVAL;
 
+        @PluginBuilderAttribute
+        private int batchSizeInBytes;
+
+        @PluginBuilderAttribute
+        private int ringBufferSize;
+
+        @PluginBuilderAttribute
+        private int capacity;
+
+        @PluginBuilderAttribute
+        private OverflowPolicy overflowPolicy = DEFAULT_OVERFLOW_POLICY;
+
+        @PluginBuilderAttribute
+        private int overflowTimeout = DEFAULT_OVERFLOW_TIMEOUT;
+
+        @PluginBuilderAttribute
+        private Level overflowLevel = DEFAULT_OVERFLOW_LEVEL;
+
+        @PluginBuilderAttribute
+        private int minBatchSize = 1;
+
+        @PluginBuilderAttribute
+        private int maxBatchSize;
+
+        @PluginBuilderAttribute
+        private int targetLatency;
+
+        @PluginBuilderAttribute
+        private boolean groupByIndex;
+
+        @PluginBuilderAttribute
+        private int lanes = 1;
+
+        @PluginBuilderAttribute
+        private boolean flushOnEndOfBatch;
+
+        @PluginBuilderAttribute
+        private int endOfBatchMinItems = 1;
+
+        @PluginBuilderAttribute
+        private int endOfBatchMinBytes;
+
         @PluginElement("failoverPolicy")
         private FailoverPolicy failoverPolicy = DEFAULT_FAILOVER_POLICY;
 
         @PluginElement("indexTemplate")
         private IndexTemplate indexTemplate;
 
+        @PluginConfiguration
+        private Configuration configuration;
+
         @Override
         public AsyncBatchDelivery build() {
             if (clientObjectFactory == null) {
                 throw new ConfigurationException("No Elasticsearch client factory [JestHttp|ElasticsearchBulkProcessor] provided for AsyncBatchDelivery");
             }
-            return new AsyncBatchDelivery(batchSize, deliveryInterval, clientObjectFactory, failoverPolicy, indexTemplate);
+            if (batchSizeInBytes < 0) {
+                throw new ConfigurationException("batchSizeInBytes cannot be negative");
+            }
+            if (ringBufferSize < 0) {
+                throw new ConfigurationException("ringBufferSize cannot be negative");
+            }
+            if (ringBufferSize > 0 && ringBufferSize < batchSize) {
+                throw new ConfigurationException("ringBufferSize must be higher than or equal to batchSize");
+            }
+            if (capacity < 0) {
+                throw new ConfigurationException("capacity cannot be negative");
+            }
+            if (capacity > 0 && capacity < batchSize) {
+                throw new ConfigurationException("capacity must be higher than or equal to batchSize");
+            }
+            if (overflowPolicy == null) {
+                throw new ConfigurationException("No overflowPolicy provided for AsyncBatchDelivery");
+            }
+            if (overflowTimeout < 0) {
+                throw new ConfigurationException("overflowTimeout cannot be negative");
+            }
+            if (overflowLevel == null) {
+                throw new ConfigurationException("No overflowLevel provided for AsyncBatchDelivery");
+            }
+            if (lanes < 1) {
+                throw new ConfigurationException("lanes must be higher than 0");
+            }
+            if (endOfBatchMinItems < 1) {
+                throw new ConfigurationException("endOfBatchMinItems must be higher than 0");
+            }
+            if (endOfBatchMinBytes < 0) {
+                throw new ConfigurationException("endOfBatchMinBytes cannot be negative");
+            }
+            if (maxBatchSize < 0) {
+                throw new ConfigurationException("maxBatchSize cannot be negative");
+            }
+            if (maxBatchSize > 0) {
+                validateAdaptiveBatchSize();
+            }
+
+            BatchEmitterConfig batchEmitterConfig = BatchEmitterConfig.newBuilder()
+                    .withBatchSize(batchSize)
+                    .withDeliveryInterval(deliveryInterval)
+                    .withBatchSizeInBytes(batchSizeInBytes)
+                    .withRingBufferSize(ringBufferSize)
+                    .withSchedulerName(getSchedulerName())
+                    .withCapacity(capacity)
+                    .withOverflowPolicy(overflowPolicy)
+                    .withOverflowTimeout(overflowTimeout)
+                    .withOverflowLevel(overflowLevel)
+                    .withMinBatchSize(minBatchSize)
+                    .withMaxBatchSize(maxBatchSize)
+                    .withTargetLatency(targetLatency)
+                    .withGroupByIndex(groupByIndex)
+                    .withLanes(lanes)
+                    .withFlushOnEndOfBatch(flushOnEndOfBatch)
+                    .withEndOfBatchMinItems(endOfBatchMinItems)
+                    .withEndOfBatchMinBytes(endOfBatchMinBytes)
+                    .build();
+
+            return new AsyncBatchDelivery(batchEmitterConfig, clientObjectFactory, failoverPolicy, indexTemplate);
+        }
+
+        private void validateAdaptiveBatchSize() {
+            if (minBatchSize < 1) {
+                throw new ConfigurationException("minBatchSize must be higher than 0");
+            }
+            if (minBatchSize > maxBatchSize) {
+                throw new ConfigurationException("minBatchSize must be lower than or equal to maxBatchSize");
+            }
+            if (ringBufferSize > 0 && ringBufferSize < maxBatchSize) {
+                throw new ConfigurationException("ringBufferSize must be higher than or equal to maxBatchSize");
+            }
+            if (capacity > 0 && capacity < maxBatchSize) {
+                throw new ConfigurationException("capacity must be higher than or equal to maxBatchSize");
+            }
+            if (targetLatency < 0) {
+                throw new ConfigurationException("targetLatency cannot be negative");
+            }
+        }
+
+        private String getSchedulerName() {
+            // one shared scheduler per LoggerContext
+            if (configuration == null || configuration.getLoggerContext() == null) {
+                return DeliveryScheduler.DEFAULT_NAME;
+            }
+            return configuration.getLoggerContext().getName();
         }
 
         public Builder withClientObjectFactory(ClientObjectFactory clientObjectFactory) {
@@ -141,6 +311,172 @@ public class AsyncBatchDelivery implements BatchDelivery<String> {
             return this;
         }
 
+        /**
+         * Default: 0 (disabled)
+         *
+         * @param batchSizeInBytes total size of batch items payloads that should trigger a delivery, regardless of
+         *                         the deliveryInterval and batchSize. Single batch will not exceed this limit by more
+         *                         than one item. Applies to {@link ItemSource} based batch items only
+         * @return Builder this
+         */
+        public Builder withBatchSizeInBytes(int batchSizeInBytes) {
+            this.batchSizeInBytes = batchSizeInBytes;
+            return this;
+        }
+
+        /**
+         * Default: 0 (disabled)
+         *
+         * @param ringBufferSize if higher than 0, preallocated ring buffer with given number of slots (rounded up to
+         *                       the next power of two) will hold items until delivery
+         * @return Builder this
+         */
+        public Builder withRingBufferSize(int ringBufferSize) {
+            this.ringBufferSize = ringBufferSize;
+            return this;
+        }
+
+        /**
+         * Default: 0 (unbounded)
+         *
+         * @param capacity if higher than 0, max number of undelivered items; {@link OverflowPolicy} is applied to
+         *                 items added when capacity is exhausted. MUST be higher than or equal to batchSize
+         * @return Builder this
+         */
+        public Builder withCapacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Default: {@link OverflowPolicy#BLOCK}
+         *
+         * @param overflowPolicy behaviour applied when capacity is exhausted
+         * @return Builder this
+         */
+        public Builder withOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * Default: 1000
+         *
+         * @param overflowTimeout max number of millis to wait for capacity with {@link OverflowPolicy#BLOCK}
+         *                        and {@link OverflowPolicy#DROP_BELOW_LEVEL}
+         * @return Builder this
+         */
+        public Builder withOverflowTimeout(int overflowTimeout) {
+            this.overflowTimeout = overflowTimeout;
+            return this;
+        }
+
+        /**
+         * Default: WARN
+         *
+         * @param overflowLevel items logged below this level are dropped with {@link OverflowPolicy#DROP_BELOW_LEVEL}
+         * @return Builder this
+         */
+        public Builder withOverflowLevel(Level overflowLevel) {
+            this.overflowLevel = overflowLevel;
+            return this;
+        }
+
+        /**
+         * Default: 1
+         *
+         * @param minBatchSize lower bound of adaptive batch size. Used only if maxBatchSize is configured
+         * @return Builder this
+         */
+        public Builder withMinBatchSize(int minBatchSize) {
+            this.minBatchSize = minBatchSize;
+            return this;
+        }
+
+        /**
+         * Default: 0 (disabled)
+         *
+         * @param maxBatchSize if higher than 0, batchSize becomes an initial value of adaptive batch size that grows
+         *                     after successful deliveries and shrinks after failed or slow ones, within
+         *                     [minBatchSize, maxBatchSize] bounds. Supported by clients that report delivery outcomes
+         * @return Builder this
+         */
+        public Builder withMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Default: 0 (only failed deliveries decrease adaptive batch size)
+         *
+         * @param targetLatency max number of millis of successful delivery that doesn't decrease adaptive batch size
+         * @return Builder this
+         */
+        public Builder withTargetLatency(int targetLatency) {
+            this.targetLatency = targetLatency;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param groupByIndex if true, each delivery produces one batch per target index, so single batch doesn't span
+         *                     multiple indices (e.g. around rollover boundaries). Supported by clients that expose index name of batch items
+         * @return Builder this
+         */
+        public Builder withGroupByIndex(boolean groupByIndex) {
+            this.groupByIndex = groupByIndex;
+            return this;
+        }
+
+        /**
+         * Default: 1
+         *
+         * @param lanes number of independent emitters; each item goes to a lane chosen with {@link java.util.concurrent.ThreadLocalRandom},
+         *              so batches can be built and delivered in parallel even if all items are logged by a single thread. Lanes are delivered
+         *              independently, so items logged by the same thread may be delivered in different order than they were logged.
+         *              All other emitter settings apply per lane. Supported by clients that can create multiple emitters
+         * @return Builder this
+         */
+        public Builder withLanes(int lanes) {
+            this.lanes = lanes;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param flushOnEndOfBatch if true, pending items are delivered at the end of each AsyncLogger batch
+         *                          if endOfBatchMinItems or endOfBatchMinBytes threshold is met
+         * @return Builder this
+         */
+        public Builder withFlushOnEndOfBatch(boolean flushOnEndOfBatch) {
+            this.flushOnEndOfBatch = flushOnEndOfBatch;
+            return this;
+        }
+
+        /**
+         * Default: 1
+         *
+         * @param endOfBatchMinItems min number of pending items that triggers end-of-batch flush
+         * @return Builder this
+         */
+        public Builder withEndOfBatchMinItems(int endOfBatchMinItems) {
+            this.endOfBatchMinItems = endOfBatchMinItems;
+            return this;
+        }
+
+        /**
+         * Default: 0 (disabled)
+         *
+         * @param endOfBatchMinBytes min size of pending items in bytes that triggers end-of-batch flush. Supported by clients that can estimate size of items
+         * @return Builder this
+         */
+        public Builder withEndOfBatchMinBytes(int endOfBatchMinBytes) {
+            this.endOfBatchMinBytes = endOfBatchMinBytes;
+            return this;
+        }
+
         public Builder withFailoverPolicy(FailoverPolicy failoverPolicy) {
             this.failoverPolicy = failoverPolicy;
             return this;
@@ -151,6 +487,15 @@ public class AsyncBatchDelivery implements BatchDelivery<String> {
             return this;
         }
 
+        /**
+         * @param configuration current configuration; its LoggerContext determines which {@link DeliveryScheduler} will be shared
+         * @return Builder this
+         */
+        public Builder withConfiguration(Configuration configuration) {
+            this.configuration = configuration;
+            return this;
+        }
+
     }
 
     // ==========
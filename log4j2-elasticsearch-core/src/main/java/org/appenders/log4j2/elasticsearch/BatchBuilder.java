@@ -29,7 +29,7 @@ package org.appenders.log4j2.elasticsearch;
 public interface BatchBuilder<BATCH_TYPE> {
 
     /**
-     * Adds given item to current batch
+     * Adds given item to current batch. Given item is owned by this builder from now on, even if this method throws.
      *
      * @param item item to be delivered on the next delivery
      */
@@ -42,4 +42,14 @@ public interface BatchBuilder<BATCH_TYPE> {
      */
     BATCH_TYPE build();
 
+    /**
+     * Releases resources held by this builder, including items added so far, if batch will not be built,
+     * e.g. no items were added or batch couldn't be completed.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     */
+    default void release() {
+        // noop
+    }
+
 }
@@ -21,6 +21,8 @@ package org.appenders.log4j2.elasticsearch;
  */
 
 
+import org.apache.logging.log4j.Level;
+
 /**
  * An object that adds given items to the batch processor
  *
@@ -42,4 +44,24 @@ public interface BatchDelivery<T> extends LifeCycle {
      */
     void add(String indexName,  ItemSource log);
 
+    /**
+     * Allows to skip serialization of items that would be dropped anyway.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @param level level of the item
+     * @return true, if items logged at given level are dropped at the moment, false otherwise
+     */
+    default boolean rejects(Level level) {
+        return false;
+    }
+
+    /**
+     * Notifies about the end of batch of items added by calling thread, e.g. end of AsyncLogger ring buffer batch.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     */
+    default void onEndOfBatch() {
+        // noop
+    }
+
 }
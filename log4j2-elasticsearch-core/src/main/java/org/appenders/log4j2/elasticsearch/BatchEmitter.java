@@ -21,6 +21,8 @@ package org.appenders.log4j2.elasticsearch;
  */
 
 
+import org.apache.logging.log4j.Level;
+
 /**
  * Implementations of this class MUST provide a delivery mechanism for items added to client-specific batch object
  * handler
@@ -34,4 +36,25 @@ public interface BatchEmitter<T> extends LifeCycle {
      */
     void add(T batchItem);
 
+    /**
+     * Allows to drop items before they're created. If true, caller SHOULD NOT add the item and rejection is accounted by this emitter.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @param level level of the item
+     * @return true, if items logged at given level are dropped at the moment, false otherwise
+     */
+    default boolean rejects(Level level) {
+        return false;
+    }
+
+    /**
+     * Notifies about the end of batch of items added by calling thread, e.g. end of AsyncLogger ring buffer batch.
+     * Implementations MAY deliver pending items earlier than regular triggers would.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     */
+    default void onEndOfBatch() {
+        // noop
+    }
+
 }
@@ -0,0 +1,364 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.Level;
+
+/**
+ * Set of {@link BatchEmitter} settings passed to {@link BatchEmitterFactory} implementations.
+ * <p>
+ * Factories MAY ignore settings not supported by produced {@link BatchEmitter}.
+ */
+public class BatchEmitterConfig {
+
+    private final int batchSize;
+    private final int deliveryInterval;
+    private final int batchSizeInBytes;
+    private final int ringBufferSize;
+    private final String schedulerName;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final int overflowTimeout;
+    private final Level overflowLevel;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int targetLatency;
+    private final boolean groupByIndex;
+    private final int lanes;
+    private final boolean flushOnEndOfBatch;
+    private final int endOfBatchMinItems;
+    private final int endOfBatchMinBytes;
+
+    protected BatchEmitterConfig(Builder builder) {
+        this.batchSize = builder.batchSize;
+        this.deliveryInterval = builder.deliveryInterval;
+        this.batchSizeInBytes = builder.batchSizeInBytes;
+        this.ringBufferSize = builder.ringBufferSize;
+        this.schedulerName = builder.schedulerName;
+        this.capacity = builder.capacity;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.overflowTimeout = builder.overflowTimeout;
+        this.overflowLevel = builder.overflowLevel;
+        this.minBatchSize = builder.minBatchSize;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.targetLatency = builder.targetLatency;
+        this.groupByIndex = builder.groupByIndex;
+        this.lanes = builder.lanes;
+        this.flushOnEndOfBatch = builder.flushOnEndOfBatch;
+        this.endOfBatchMinItems = builder.endOfBatchMinItems;
+        this.endOfBatchMinBytes = builder.endOfBatchMinBytes;
+    }
+
+    /**
+     * @return number of elements in a current batch that should trigger a delivery, regardless of the delivery interval value
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return number of millis between two time-triggered deliveries, regardless of the batch size value
+     */
+    public int getDeliveryInterval() {
+        return deliveryInterval;
+    }
+
+    /**
+     * @return total payload size in bytes that should trigger a delivery; 0 if byte-size-based delivery is disabled
+     */
+    public int getBatchSizeInBytes() {
+        return batchSizeInBytes;
+    }
+
+    /**
+     * @return number of preallocated ring buffer slots; 0 if ring buffer should not be used
+     */
+    public int getRingBufferSize() {
+        return ringBufferSize;
+    }
+
+    /**
+     * @return name of shared {@link DeliveryScheduler}; {@link DeliveryScheduler#DEFAULT_NAME} is used if null
+     */
+    public String getSchedulerName() {
+        return schedulerName;
+    }
+
+    /**
+     * @return max number of undelivered items; 0 if unbounded
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return behaviour applied when number of undelivered items reached {@link #getCapacity()}
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return max number of millis to wait for capacity with {@link OverflowPolicy#BLOCK} and {@link OverflowPolicy#DROP_BELOW_LEVEL}
+     */
+    public int getOverflowTimeout() {
+        return overflowTimeout;
+    }
+
+    /**
+     * @return items logged below this level are dropped with {@link OverflowPolicy#DROP_BELOW_LEVEL}
+     */
+    public Level getOverflowLevel() {
+        return overflowLevel;
+    }
+
+    /**
+     * @return lower bound of adaptive batch size
+     */
+    public int getMinBatchSize() {
+        return minBatchSize;
+    }
+
+    /**
+     * @return upper bound of adaptive batch size; 0 if batch size should not be adjusted
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return max number of millis of successful delivery that doesn't decrease adaptive batch size; 0 if only failures should decrease it
+     */
+    public int getTargetLatency() {
+        return targetLatency;
+    }
+
+    /**
+     * @return true, if items should be delivered in separate batches, one per target index
+     */
+    public boolean isGroupByIndex() {
+        return groupByIndex;
+    }
+
+    /**
+     * @return number of independent emitters items should be spread over; 0 or 1 if single emitter should be used
+     */
+    public int getLanes() {
+        return lanes;
+    }
+
+    /**
+     * @return true, if pending items should be delivered on {@link BatchEmitter#onEndOfBatch()} if one of end-of-batch thresholds is met
+     */
+    public boolean isFlushOnEndOfBatch() {
+        return flushOnEndOfBatch;
+    }
+
+    /**
+     * @return min number of pending items that triggers end-of-batch flush
+     */
+    public int getEndOfBatchMinItems() {
+        return endOfBatchMinItems;
+    }
+
+    /**
+     * @return min size of pending items in bytes that triggers end-of-batch flush; 0 if size in bytes should not be checked
+     */
+    public int getEndOfBatchMinBytes() {
+        return endOfBatchMinBytes;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private int batchSize;
+        private int deliveryInterval;
+        private int batchSizeInBytes;
+        private int ringBufferSize;
+        private String schedulerName;
+        private int capacity;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private int overflowTimeout;
+        private Level overflowLevel = Level.WARN;
+        private int minBatchSize;
+        private int maxBatchSize;
+        private int targetLatency;
+        private boolean groupByIndex;
+        private int lanes;
+        private boolean flushOnEndOfBatch;
+        private int endOfBatchMinItems = 1;
+        private int endOfBatchMinBytes;
+
+        public BatchEmitterConfig build() {
+            return new BatchEmitterConfig(this);
+        }
+
+        public Builder withBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public Builder withDeliveryInterval(int deliveryInterval) {
+            this.deliveryInterval = deliveryInterval;
+            return this;
+        }
+
+        /**
+         * @param batchSizeInBytes total payload size in bytes that should trigger a delivery; 0 if byte-size-based delivery is disabled
+         * @return this
+         */
+        public Builder withBatchSizeInBytes(int batchSizeInBytes) {
+            this.batchSizeInBytes = batchSizeInBytes;
+            return this;
+        }
+
+        /**
+         * @param ringBufferSize number of preallocated ring buffer slots; 0 if ring buffer should not be used
+         * @return this
+         */
+        public Builder withRingBufferSize(int ringBufferSize) {
+            this.ringBufferSize = ringBufferSize;
+            return this;
+        }
+
+        /**
+         * @param schedulerName name of shared {@link DeliveryScheduler}, e.g. LoggerContext name
+         * @return this
+         */
+        public Builder withSchedulerName(String schedulerName) {
+            this.schedulerName = schedulerName;
+            return this;
+        }
+
+        /**
+         * @param capacity max number of undelivered items; 0 if unbounded
+         * @return this
+         */
+        public Builder withCapacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param overflowPolicy behaviour applied when number of undelivered items reached capacity
+         * @return this
+         */
+        public Builder withOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * @param overflowTimeout max number of millis to wait for capacity
+         * @return this
+         */
+        public Builder withOverflowTimeout(int overflowTimeout) {
+            this.overflowTimeout = overflowTimeout;
+            return this;
+        }
+
+        /**
+         * @param overflowLevel items logged below this level are dropped with {@link OverflowPolicy#DROP_BELOW_LEVEL}
+         * @return this
+         */
+        public Builder withOverflowLevel(Level overflowLevel) {
+            this.overflowLevel = overflowLevel;
+            return this;
+        }
+
+        /**
+         * @param minBatchSize lower bound of adaptive batch size
+         * @return this
+         */
+        public Builder withMinBatchSize(int minBatchSize) {
+            this.minBatchSize = minBatchSize;
+            return this;
+        }
+
+        /**
+         * @param maxBatchSize upper bound of adaptive batch size; 0 if batch size should not be adjusted
+         * @return this
+         */
+        public Builder withMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * @param targetLatency max number of millis of successful delivery that doesn't decrease adaptive batch size
+         * @return this
+         */
+        public Builder withTargetLatency(int targetLatency) {
+            this.targetLatency = targetLatency;
+            return this;
+        }
+
+        /**
+         * @param groupByIndex if true, items will be delivered in separate batches, one per target index
+         * @return this
+         */
+        public Builder withGroupByIndex(boolean groupByIndex) {
+            this.groupByIndex = groupByIndex;
+            return this;
+        }
+
+        /**
+         * @param lanes number of independent emitters items should be spread over; 0 or 1 if single emitter should be used
+         * @return this
+         */
+        public Builder withLanes(int lanes) {
+            this.lanes = lanes;
+            return this;
+        }
+
+        /**
+         * @param flushOnEndOfBatch if true, pending items will be delivered on {@link BatchEmitter#onEndOfBatch()} if one of end-of-batch thresholds is met
+         * @return this
+         */
+        public Builder withFlushOnEndOfBatch(boolean flushOnEndOfBatch) {
+            this.flushOnEndOfBatch = flushOnEndOfBatch;
+            return this;
+        }
+
+        /**
+         * @param endOfBatchMinItems min number of pending items that triggers end-of-batch flush
+         * @return this
+         */
+        public Builder withEndOfBatchMinItems(int endOfBatchMinItems) {
+            this.endOfBatchMinItems = endOfBatchMinItems;
+            return this;
+        }
+
+        /**
+         * @param endOfBatchMinBytes min size of pending items in bytes that triggers end-of-batch flush; 0 if size in bytes should not be checked
+         * @return this
+         */
+        public Builder withEndOfBatchMinBytes(int endOfBatchMinBytes) {
+            this.endOfBatchMinBytes = endOfBatchMinBytes;
+            return this;
+        }
+
+    }
+
+}
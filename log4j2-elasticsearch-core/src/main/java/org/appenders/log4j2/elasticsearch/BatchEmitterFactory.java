@@ -55,4 +55,19 @@ public interface BatchEmitterFactory<T extends BatchEmitter> {
      */
     T createInstance(int batchSize, int deliveryInterval, ClientObjectFactory clientObjectFactory, FailoverPolicy failoverPolicy);
 
+    /**
+     * Creates an instance of {@link BatchEmitter}
+     * <p>
+     * NOTE: {@code default} added for backwards compatibility. Settings other than {@link BatchEmitterConfig#getBatchSize()}
+     * and {@link BatchEmitterConfig#getDeliveryInterval()} are ignored unless this method is overridden.
+     *
+     * @param config              emitter settings
+     * @param clientObjectFactory client-specific objects provider
+     * @param failoverPolicy      sink for failed batch items
+     * @return T configured and {@link BatchEmitter}
+     */
+    default T createInstance(BatchEmitterConfig config, ClientObjectFactory clientObjectFactory, FailoverPolicy failoverPolicy) {
+        return createInstance(config.getBatchSize(), config.getDeliveryInterval(), clientObjectFactory, failoverPolicy);
+    }
+
 }
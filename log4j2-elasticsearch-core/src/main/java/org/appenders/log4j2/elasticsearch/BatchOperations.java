@@ -34,4 +34,47 @@ public interface BatchOperations<BATCH_TYPE> {
 
     BatchBuilder<BATCH_TYPE> createBatchBuilder();
 
+    /**
+     * Allows to estimate payload size of batch items created by this object.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @param batchItem batch item created by this object
+     * @return size of batch item payload in bytes, 0 if unknown
+     */
+    default int getSizeInBytes(Object batchItem) {
+        return 0;
+    }
+
+    /**
+     * Allows to group batch items by target index.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @param batchItem batch item created by this object
+     * @return target index name of batch item, null if unknown
+     */
+    default String getIndexName(Object batchItem) {
+        return null;
+    }
+
+    /**
+     * Allows to clean up resources held by batch items that will not be delivered, e.g. dropped on overflow.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @param batchItem batch item created by this object
+     */
+    default void releaseBatchItem(Object batchItem) {
+        // noop
+    }
+
+    /**
+     * Allows to redirect single batch item to {@link FailoverPolicy}. Given item will not be used after this call.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @param batchItem batch item created by this object
+     * @return payload accepted by {@link FailoverPolicy#deliver(Object)}
+     */
+    default Object getFailoverPayload(Object batchItem) {
+        return batchItem;
+    }
+
 }
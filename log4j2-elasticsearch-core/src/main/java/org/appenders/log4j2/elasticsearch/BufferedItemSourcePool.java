@@ -21,22 +21,38 @@ package org.appenders.log4j2.elasticsearch;
  */
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
 import io.netty.buffer.CompositeByteBuf;
-import io.netty.buffer.UnpooledByteBufAllocator;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.status.StatusLogger;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * <p>Resizable pool of {@link BufferedItemSource} elements.
@@ -44,6 +60,19 @@ import java.util.function.Consumer;
  * <p>Automatically recycles unused elements. Recycle size depends on {@link ResizePolicy} configuration.
  * <p>Pooled elements can be added explicitly with {@link #incrementPoolSize(int)} and/or {@link #incrementPoolSize()} methods.
  * <p>Pooled elements can be recycled explicitly with {@link #remove()}.
+ * <p>If thread-local cache size is configured, each thread calling {@link #getPooled()} keeps up to given number of elements
+ * in its own cache (magazine). Elements are moved between thread-local caches and the shared pool in batches, so most get/release
+ * pairs on the same thread don't touch the shared pool. Elements released by other threads (e.g. I/O threads) are handed back to the cache
+ * of the thread that got them, up to thread-local cache size per thread, and the remaining ones go back to the shared pool.
+ * <p>If max item size is configured, elements that grew above it (e.g. serialized event with a long stack trace) are shrunk back to
+ * estimated item size on release, so pool footprint follows actual size distribution instead of the largest item ever written.
+ * <p>By default, pooled elements are reused in FIFO order. If LIFO order is enabled, most recently released (cache-hot) elements are reused first
+ * and {@link #remove()} recycles least recently released (idle) elements, so unused part of the pool is not touched until it's recycled.
+ * <p>If eager pool size is configured, only given number of elements is created on construction and remaining part of initial pool size
+ * is created on pool's executor, so construction time doesn't grow with initial pool size.
+ * <p>If leak detection is enabled, given fraction of {@link #getPooled()} calls records acquisition time and stack trace of returned element.
+ * Sampled elements not released within leak threshold are periodically reported by Status Logger at {@code WARN} level.
+ * <p>Pool state is available via {@link #getMetrics()}. If JMX is enabled, it's also registered as MBean named after {@link #JMX_DOMAIN} and pool name.
  * <p>{@link #shutdown()} MUST be called to cleanup underlying resources.
  * <p>NOTE: Consider this class <i>private</i>. Design may change before the code is stabilized.
  */
@@ -51,6 +80,11 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
 
     protected static final Logger LOGGER = StatusLogger.getLogger();
 
+    static final String JMX_DOMAIN = "org.appenders.log4j2.elasticsearch";
+
+    // pools that registered MBeans; on reconfiguration, new pool with the same name replaces MBean of the old one
+    private static final ConcurrentHashMap<ObjectName, BufferedItemSourcePool> MBEAN_OWNERS = new ConcurrentHashMap<>();
+
     private static final int INITIAL_RESIZE_INTERNAL_STACK_DEPTH = 0;
     // TODO: make configurable via system property
     private static final int MAX_RESIZE_INTERNAL_STACK_DEPTH = 50;
@@ -58,9 +92,15 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
     ScheduledExecutorService executor;
 
     private final String poolName;
-    private final UnpooledByteBufAllocator byteBufAllocator;
-    private final ConcurrentLinkedQueue<ItemSource<ByteBuf>> objectPool = new ConcurrentLinkedQueue<>();
+    private final ByteBufAllocator byteBufAllocator;
+    private final boolean directBuffers;
+    private final Queue<ItemSource<ByteBuf>> objectPool;
+    // same instance as objectPool if released elements are reused first (LIFO); null otherwise (FIFO)
+    private final Deque<ItemSource<ByteBuf>> objectStack;
     private final int estimatedSourceSize;
+    // 0 if released elements should not be shrunk
+    private final int maxItemSizeInBytes;
+    private final AtomicLong shrunkCount = new AtomicLong();
 
     private final ResizePolicy resizePolicy;
     private final long resizeTimeout;
@@ -69,38 +109,166 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
 
     private final int initialPoolSize;
     private final AtomicInteger totalPoolSize;
+    // sum of buffer capacities as of their last release
+    private final AtomicLong totalSizeInBytes = new AtomicLong();
+
+    private final int threadLocalCacheSize;
+    // null if thread-local caching is disabled
+    private final ThreadLocal<Magazine> magazines;
+    // all magazines ever created; allows to reclaim elements cached by terminated threads and release all of them on shutdown
+    private final ConcurrentLinkedQueue<Magazine> allMagazines = new ConcurrentLinkedQueue<>();
+    // batches spilled by magazines, handed over as a whole; number of elements is tracked by depotSize
+    private final Deque<ItemSource<ByteBuf>[]> depot = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger depotSize = new AtomicInteger();
+    private volatile boolean shutdown;
+
+    // null if leak detection is disabled
+    private final LeakDetector leakDetector;
+
+    private final LongAdder borrowedCount = new LongAdder();
+    private final LongAdder exhaustedCount = new LongAdder();
+    private final LongAdder resizeWaitTimeNanos = new LongAdder();
+    private final AtomicLong resizeCount = new AtomicLong();
+    private final PoolMetrics metrics = this.new PoolMetrics();
+    // null if JMX is disabled or registration failed
+    private ObjectName mbeanName;
+
+    BufferedItemSourcePool(String poolName, ByteBufAllocator byteBufAllocator, ResizePolicy resizePolicy, long resizeTimeout, boolean monitored, long monitorTaskInterval, int initialPoolSize, int itemSizeInBytes) {
+        this(newBuilder()
+                .withPoolName(poolName)
+                .withByteBufAllocator(byteBufAllocator)
+                .withResizePolicy(resizePolicy)
+                .withResizeTimeout(resizeTimeout)
+                .withMonitored(monitored)
+                .withMonitorTaskInterval(monitorTaskInterval)
+                .withInitialPoolSize(initialPoolSize)
+                .withItemSizeInBytes(itemSizeInBytes));
+    }
 
-    BufferedItemSourcePool(String poolName, UnpooledByteBufAllocator byteBufAllocator, ResizePolicy resizePolicy, long resizeTimeout, boolean monitored, long monitorTaskInterval, int initialPoolSize, int itemSizeInBytes) {
-        this.poolName = poolName;
-        this.byteBufAllocator = byteBufAllocator;
-        this.resizePolicy = resizePolicy;
-        this.resizeTimeout = resizeTimeout;
-        this.initialPoolSize = initialPoolSize;
+    BufferedItemSourcePool(Builder builder) {
+        this.poolName = builder.poolName;
+        this.byteBufAllocator = builder.byteBufAllocator;
+        this.directBuffers = builder.directBuffers;
+        this.objectStack = builder.lifo ? new ConcurrentLinkedDeque<>() : null;
+        this.objectPool = builder.lifo ? objectStack : new ConcurrentLinkedQueue<>();
+        this.resizePolicy = builder.resizePolicy;
+        this.resizeTimeout = builder.resizeTimeout;
+        this.initialPoolSize = builder.initialPoolSize;
         this.totalPoolSize = new AtomicInteger();
-        this.estimatedSourceSize = itemSizeInBytes;
+        this.estimatedSourceSize = builder.itemSizeInBytes;
+        this.maxItemSizeInBytes = builder.maxItemSizeInBytes;
+        this.threadLocalCacheSize = builder.threadLocalCacheSize;
+        this.magazines = threadLocalCacheSize > 0 ? new ThreadLocal<>() : null;
+        this.leakDetector = builder.leakDetectionSampleRate > 0 ? new LeakDetector(poolName, builder.leakDetectionSampleRate, builder.leakThreshold) : null;
         this.executor = createExecutor();
 
-        incrementPoolSize(initialPoolSize);
+        int eagerSize = builder.eagerPoolSize > 0 ? Math.min(builder.eagerPoolSize, initialPoolSize) : initialPoolSize;
+        incrementPoolSize(eagerSize);
+
+        if (eagerSize < initialPoolSize) {
+            startWarmupTask(initialPoolSize - eagerSize);
+        }
 
         startRecyclerTask();
 
-        if (monitored) {
-            startMonitorTask(monitorTaskInterval);
+        if (resizePolicy != null && resizePolicy.getSampleInterval() > 0) {
+            startSamplerTask(resizePolicy.getSampleInterval());
+        }
+
+        if (leakDetector != null) {
+            executor.scheduleAtFixedRate(leakDetector, builder.leakThreshold, builder.leakThreshold, TimeUnit.MILLISECONDS);
+        }
+
+        if (builder.monitored) {
+            startMonitorTask(builder.monitorTaskInterval);
+        }
+
+        if (builder.jmxEnabled) {
+            registerMBean();
         }
 
     }
 
+    static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Registers {@link #getMetrics()} in platform MBean server. MBean registered with the same name (e.g. by the pool of previous configuration
+     * that was not shut down yet) is replaced. Failure is logged and doesn't affect the pool.
+     */
+    void registerMBean() {
+
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=ItemSourcePool,name=" + ObjectName.quote(poolName));
+            MBeanServer mbeanServer = getMBeanServer();
+
+            synchronized (MBEAN_OWNERS) {
+                if (mbeanServer.isRegistered(name)) {
+                    LOGGER.info("Pool [{}] replacing existing metrics MBean {}", poolName, name);
+                    mbeanServer.unregisterMBean(name);
+                }
+                mbeanServer.registerMBean(new StandardMBean(metrics, ItemSourcePoolMetrics.class), name);
+                MBEAN_OWNERS.put(name, this);
+            }
+
+            this.mbeanName = name;
+        } catch (JMException e) {
+            LOGGER.warn("Pool [{}] metrics MBean registration failed: {}", poolName, e.getMessage());
+        }
+
+    }
+
+    private void unregisterMBean() {
+
+        if (mbeanName == null) {
+            return;
+        }
+
+        try {
+            synchronized (MBEAN_OWNERS) {
+                // MBean may have been replaced by another pool with the same name already
+                if (MBEAN_OWNERS.remove(mbeanName, this)) {
+                    getMBeanServer().unregisterMBean(mbeanName);
+                }
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Pool [{}] metrics MBean unregistration failed: {}", poolName, e.getMessage());
+        }
+        mbeanName = null;
+
+    }
+
+    MBeanServer getMBeanServer() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+
+    /**
+     * @return MBean name; null if pool metrics are not registered
+     */
+    ObjectName getMBeanName() {
+        return mbeanName;
+    }
+
     private void startRecyclerTask() {
         executor.scheduleAtFixedRate(new Recycler(this, resizePolicy), 1000, 10000, TimeUnit.MILLISECONDS);
     }
 
+    private void startWarmupTask(int delta) {
+        executor.execute(new Warmup(this, delta));
+    }
+
+    private void startSamplerTask(long sampleInterval) {
+        executor.scheduleAtFixedRate(new Sampler(this, resizePolicy), sampleInterval, sampleInterval, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Schedules a task that prints pool statistics
      *
      * @param monitorTaskInterval interval between two snapshots
      */
     void startMonitorTask(long monitorTaskInterval) {
-        executor.scheduleAtFixedRate(new MetricPrinter(getName(), byteBufAllocator.metric(), this.new PoolMetrics()),
+        executor.scheduleAtFixedRate(new MetricPrinter(getName(), getAllocatorMetric(), this.new PoolMetrics()),
                 1000L,
                 monitorTaskInterval,
                 TimeUnit.MILLISECONDS
@@ -108,6 +276,13 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
 
     }
 
+    private ByteBufAllocatorMetric getAllocatorMetric() {
+        if (byteBufAllocator instanceof ByteBufAllocatorMetricProvider) {
+            return ((ByteBufAllocatorMetricProvider) byteBufAllocator).metric();
+        }
+        return null;
+    }
+
     ScheduledExecutorService createExecutor() {
         return Executors.newSingleThreadScheduledExecutor();
     }
@@ -134,20 +309,81 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
 
     }
 
+    /**
+     * Creates pooled {@link BufferedItemSource} instances one by one until given number of elements is created or pool is shut down
+     *
+     * @param delta number of elements to be pooled
+     */
+    void warmup(int delta) {
+
+        long start = System.currentTimeMillis();
+
+        int created = 0;
+        while (created < delta && !executor.isShutdown()) {
+            incrementPoolSize();
+            created++;
+        }
+
+        LOGGER.info("Pool [{}] warmup completed. {} pooled elements added. Total pooled elements: {}. Took: {}ms",
+                getName(),
+                created,
+                getTotalSize(),
+                (System.currentTimeMillis() - start));
+
+    }
+
     /**
      * Creates ONE pooled {@link BufferedItemSource}
      */
     @Override
     public final void incrementPoolSize() {
 
-        CompositeByteBuf buffer = new CompositeByteBuf(byteBufAllocator, false, 2).capacity(estimatedSourceSize);
+        CompositeByteBuf buffer = new CompositeByteBuf(byteBufAllocator, directBuffers, 2).capacity(estimatedSourceSize);
 
-        objectPool.add(new BufferedItemSource(buffer, bufferedItemSource -> {
+        PooledItemSource pooled = new PooledItemSource(buffer, bufferedItemSource -> {
+            ((PooledItemSource) bufferedItemSource).releaseQuota();
             bufferedItemSource.getSource().clear();
-            objectPool.add(bufferedItemSource);
-        }));
+            if (leakDetector != null) {
+                leakDetector.onRelease(bufferedItemSource);
+            }
+            if (maxItemSizeInBytes > 0 && buffer.capacity() > maxItemSizeInBytes) {
+                shrink(buffer);
+            }
+            totalSizeInBytes.addAndGet(((PooledItemSource) bufferedItemSource).updateSizeInBytes());
+            returnPooled(bufferedItemSource);
+        });
 
+        totalSizeInBytes.addAndGet(pooled.updateSizeInBytes());
         totalPoolSize.getAndIncrement();
+
+        offerPooled(pooled);
+    }
+
+    /**
+     * Releases all components of given buffer and allocates a new one of estimated item size.
+     * Trimming with {@link CompositeByteBuf#capacity(int)} is not enough here as consolidated component would be sliced, not freed.
+     *
+     * @param buffer cleared buffer to shrink
+     */
+    void shrink(CompositeByteBuf buffer) {
+        buffer.removeComponents(0, buffer.numComponents());
+        buffer.capacity(estimatedSourceSize);
+        shrunkCount.incrementAndGet();
+    }
+
+    /**
+     * @return estimated size of single pooled element in bytes
+     */
+    @Override
+    public int getItemSizeInBytes() {
+        return estimatedSourceSize;
+    }
+
+    /**
+     * @return number of released elements shrunk back to estimated item size
+     */
+    long getShrunkCount() {
+        return shrunkCount.get();
     }
 
     /**
@@ -155,26 +391,283 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
      * If pool has no more elements, {@link ResizePolicy} will try to create more pooled elements.
      *
      * @throws PoolResourceException if {@link ResizePolicy} was not sufficient or didn't create any new elements or thread calling this method was interrupted
+     * or pool was shut down
      * @return pooled {@link BufferedItemSource}
      */
     @Override
     public ItemSource<ByteBuf> getPooled() throws PoolResourceException {
-        return removeInternal(INITIAL_RESIZE_INTERNAL_STACK_DEPTH);
+
+        if (shutdown) {
+            throw new PoolResourceException(String.format("Pool %s was shut down", poolName));
+        }
+
+        ItemSource<ByteBuf> pooled;
+        try {
+            pooled = getPooledInternal();
+        } catch (PoolResourceException e) {
+            exhaustedCount.increment();
+            throw e;
+        }
+        borrowedCount.increment();
+
+        if (leakDetector != null) {
+            leakDetector.onAcquire(pooled);
+        }
+
+        return pooled;
+    }
+
+    /**
+     * Same as {@link #getPooled()}, but given counter will be decremented when returned element is released.
+     *
+     * @param quotaUsage counter of elements acquired by one of {@link SharedItemSourcePool} users, already incremented by the caller
+     * @throws PoolResourceException if {@link ResizePolicy} was not sufficient or didn't create any new elements or thread calling this method was interrupted
+     * @return pooled {@link BufferedItemSource}
+     */
+    ItemSource<ByteBuf> getPooled(AtomicInteger quotaUsage) throws PoolResourceException {
+
+        ItemSource<ByteBuf> pooled = getPooled();
+        ((PooledItemSource) pooled).quotaUsage = quotaUsage;
+
+        return pooled;
+    }
+
+    private ItemSource<ByteBuf> getPooledInternal() throws PoolResourceException {
+
+        if (magazines == null) {
+            return removeInternal(INITIAL_RESIZE_INTERNAL_STACK_DEPTH);
+        }
+
+        Magazine magazine = getMagazine();
+
+        ItemSource<ByteBuf> pooled = magazine.pop();
+        if (pooled == null) {
+            refill(magazine);
+            pooled = magazine.pop();
+        }
+        if (pooled == null) {
+            pooled = removeInternal(INITIAL_RESIZE_INTERNAL_STACK_DEPTH);
+        }
+
+        // wherever it was taken from, element goes back to the cache of this thread
+        ((PooledItemSource) pooled).magazine = magazine;
+        return pooled;
+
+    }
+
+    /**
+     * Takes elements released by other threads first. If there are none, takes a spilled batch or, if there are no spilled batches,
+     * a batch of elements from the shared pool to serve next calls locally.
+     *
+     * @param magazine empty magazine of current thread
+     */
+    private void refill(Magazine magazine) {
+
+        if (magazine.takeReturned() > 0) {
+            return;
+        }
+
+        // batches are added in the same order as single elements, so the next one to reuse is always first
+        ItemSource<ByteBuf>[] batch = depot.pollFirst();
+        if (batch != null) {
+            depotSize.addAndGet(-batch.length);
+            if (!magazine.refill(batch)) {
+                // magazine was closed in the meantime; released instead if pool was shut down
+                offerBatch(batch);
+            }
+            return;
+        }
+
+        magazine.refill(objectPool::poll, Math.max(1, threadLocalCacheSize / 2));
+
     }
 
+    private Magazine getMagazine() {
+
+        Magazine magazine = magazines.get();
+        if (magazine == null) {
+            magazine = new Magazine(threadLocalCacheSize);
+            magazines.set(magazine);
+            allMagazines.add(magazine);
+        }
+        return magazine;
+
+    }
+
+    private void returnPooled(ItemSource<ByteBuf> pooled) {
+
+        Magazine magazine = ((PooledItemSource) pooled).magazine;
+        ((PooledItemSource) pooled).magazine = null;
+
+        if (magazine == null) {
+            offerPooled(pooled);
+            return;
+        }
+
+        if (!magazine.isOwnedByCurrentThread()) {
+            // e.g. I/O thread; owner will take it before it touches the shared pool again
+            if (!magazine.offerReturned(pooled)) {
+                offerPooled(pooled);
+            } else if (magazine.isClosed()) {
+                // magazine may have been drained before this one was added; released instead if pool was shut down
+                magazine.drainReturned(this::offerPooled);
+            }
+            return;
+        }
+
+        if (magazine.isFull()) {
+            // give a batch back to the shared pool to make room
+            ItemSource<ByteBuf>[] batch = magazine.spill(Math.max(1, threadLocalCacheSize / 2));
+            if (batch != null) {
+                offerBatch(batch);
+            }
+        }
+
+        if (!magazine.push(pooled)) {
+            // magazine was closed by shutdown()
+            release(pooled);
+        }
+
+    }
+
+    /**
+     * Puts given element back to the shared pool. With LIFO order, it will be the next element taken by {@link #getPooled()}.
+     * If pool was shut down, element is released instead.
+     *
+     * @param pooled element to store
+     */
+    private void offerPooled(ItemSource<ByteBuf> pooled) {
+
+        if (objectStack != null) {
+            objectStack.offerFirst(pooled);
+        } else {
+            objectPool.offer(pooled);
+        }
+
+        if (shutdown) {
+            // shutdown() may have released the shared pool before this element was added
+            releaseShared();
+        }
+
+    }
+
+    /**
+     * Puts given batch to the shared pool with one operation. If pool was shut down, elements are released instead.
+     *
+     * @param batch elements to store
+     */
+    private void offerBatch(ItemSource<ByteBuf>[] batch) {
+
+        depotSize.addAndGet(batch.length);
+        if (objectStack != null) {
+            depot.offerFirst(batch);
+        } else {
+            depot.offerLast(batch);
+        }
+
+        if (shutdown) {
+            releaseShared();
+        }
+
+    }
+
+    /**
+     * Moves elements cached by terminated threads back to the shared pool.
+     */
+    void reclaimOrphanedMagazines() {
+
+        for (Magazine magazine : allMagazines) {
+            // removal claims the magazine, so it's not reclaimed by shutdown() at the same time
+            if (!magazine.isOwnerAlive() && allMagazines.remove(magazine)) {
+                magazine.close(this::offerPooled);
+            }
+        }
+
+    }
+
+    private void release(ItemSource<ByteBuf> pooled) {
+        pooled.getSource().release();
+    }
+
+    private void releaseAll(ItemSource<ByteBuf>[] batch) {
+        for (ItemSource<ByteBuf> pooled : batch) {
+            release(pooled);
+        }
+    }
+
+    /**
+     * Releases all elements available in the shared pool, including spilled batches.
+     */
+    private void releaseShared() {
+
+        ItemSource<ByteBuf> pooled;
+        while ((pooled = objectPool.poll()) != null) {
+            release(pooled);
+        }
+
+        ItemSource<ByteBuf>[] batch;
+        while ((batch = depot.poll()) != null) {
+            depotSize.addAndGet(-batch.length);
+            releaseAll(batch);
+        }
+
+    }
+
+    /**
+     * Removes and releases ONE element available in the shared pool. With LIFO order, least recently released element is removed.
+     * Elements cached by threads are not removed and pool is never resized by this method.
+     *
+     * @return true, if element was removed, false if no elements were available
+     */
     @Override
     public boolean remove() {
-        try {
-            removeInternal(MAX_RESIZE_INTERNAL_STACK_DEPTH).getSource().release();
-            totalPoolSize.getAndDecrement();
-        } catch (PoolResourceException e) {
+
+        // with LIFO order, idle elements sink to the bottom of the stack
+        ItemSource<ByteBuf> idle = objectStack != null ? objectStack.pollLast() : objectPool.poll();
+        if (idle == null) {
+            idle = removeFromDepot();
+        }
+        if (idle == null) {
             return false;
         }
+        totalSizeInBytes.addAndGet(-((PooledItemSource) idle).sizeInBytes);
+        idle.getSource().release();
+        totalPoolSize.getAndDecrement();
         return true;
     }
 
+    /**
+     * Takes the least recently spilled batch apart, so its elements can be removed one by one.
+     *
+     * @return one element of the batch; null if there are no spilled batches
+     */
+    private ItemSource<ByteBuf> removeFromDepot() {
+
+        ItemSource<ByteBuf>[] batch = objectStack != null ? depot.pollLast() : depot.pollFirst();
+        if (batch == null) {
+            return null;
+        }
+        depotSize.addAndGet(-batch.length);
+
+        for (int ii = 1; ii < batch.length; ii++) {
+            // idle elements, so they go to the bottom of the stack with LIFO order
+            if (objectStack != null) {
+                objectStack.offerLast(batch[ii]);
+            } else {
+                objectPool.offer(batch[ii]);
+            }
+        }
+        return batch[0];
+
+    }
+
     private ItemSource<ByteBuf> removeInternal(int depth) throws PoolResourceException {
 
+        if (shutdown) {
+            // elements created by resize would never be released
+            throw new PoolResourceException(String.format("Pool %s was shut down", poolName));
+        }
+
         try {
 
             if (objectPool.isEmpty()) {
@@ -212,10 +705,13 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
             });
         }
 
+        long start = System.nanoTime();
         try {
             countDownLatch.get().await(resizeTimeout, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e1) {
             throw new IllegalStateException("Thread interrupted while waiting for resizing to complete");
+        } finally {
+            resizeWaitTimeNanos.add(System.nanoTime() - start);
         }
 
         return false;
@@ -232,11 +728,11 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
 
             resized = resizePolicy.increase(this);
             if (!resized) {
-                // TODO: remove when limited resize policy is ready
-                // throw to resurface issues
+                // e.g. limit of LimitedResizePolicy reached; ItemSourceFactory decides what to do next
                 throw new PoolResourceException(String.format("Unable to resize. Creation of %s was unsuccessful",
                         ItemSource.class.getSimpleName()));
             }
+            resizeCount.incrementAndGet();
         } finally {
             callback.accept(resized);
         }
@@ -262,21 +758,373 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
         return totalPoolSize.get();
     }
 
+    /**
+     * @return Total capacity of elements managed by this pool in bytes. Elements in use are counted with capacity they had when they were released last time
+     */
+    @Override
+    public long getTotalSizeInBytes() {
+        return totalSizeInBytes.get();
+    }
+
     /**
      * @return Number of pooled elements currently available
      */
     @Override
     public final int getAvailableSize() {
-        return objectPool.size();
+
+        int availableSize = getRecyclableSize();
+        for (Magazine magazine : allMagazines) {
+            // approximate; magazines are modified by their owners only
+            availableSize += magazine.size();
+        }
+        return availableSize;
+
+    }
+
+    /**
+     * @return Number of elements available in the shared pool, including spilled batches; elements cached by threads are not included
+     */
+    @Override
+    public int getRecyclableSize() {
+        return objectPool.size() + depotSize.get();
+    }
+
+    /**
+     * @return live metrics of this pool
+     */
+    @Override
+    public ItemSourcePoolMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
     public void shutdown() {
-        objectPool.forEach(pooled -> pooled.getSource().release());
-        objectPool.clear();
+        shutdown = true;
+        unregisterMBean();
+        Magazine magazine;
+        while ((magazine = allMagazines.poll()) != null) {
+            // elements released to closed magazines later on are released by releasing threads
+            magazine.close(this::release);
+        }
+        releaseShared();
         executor.shutdown();
     }
 
+    /**
+     * @return leak detector; null if leak detection is disabled
+     */
+    LeakDetector getLeakDetector() {
+        return leakDetector;
+    }
+
+    /**
+     * Tracks sampled pooled elements until they're released and reports the ones held longer than leak threshold.
+     * Each possible leak is reported with acquisition stack trace once.
+     */
+    static final class LeakDetector implements Runnable {
+
+        private final String poolName;
+        private final double sampleRate;
+        private final long leakThreshold;
+        private final ConcurrentHashMap<ItemSource<ByteBuf>, Acquisition> tracked = new ConcurrentHashMap<>();
+        private final AtomicLong reportedCount = new AtomicLong();
+
+        LeakDetector(String poolName, double sampleRate, long leakThreshold) {
+            this.poolName = poolName;
+            this.sampleRate = sampleRate;
+            this.leakThreshold = leakThreshold;
+        }
+
+        void onAcquire(ItemSource<ByteBuf> pooled) {
+            if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                tracked.put(pooled, new Acquisition(System.currentTimeMillis()));
+            }
+        }
+
+        void onRelease(ItemSource<ByteBuf> pooled) {
+            if (!tracked.isEmpty()) {
+                tracked.remove(pooled);
+            }
+        }
+
+        @Override
+        public void run() {
+            report(System.currentTimeMillis());
+        }
+
+        /**
+         * @param now current time in millis
+         * @return number of tracked elements held longer than leak threshold
+         */
+        int report(long now) {
+
+            int held = 0;
+            long oldest = 0;
+
+            for (Acquisition acquisition : tracked.values()) {
+
+                long age = now - acquisition.timestamp;
+                if (age < leakThreshold) {
+                    continue;
+                }
+
+                held++;
+                oldest = Math.max(oldest, age);
+
+                if (!acquisition.reported) {
+                    acquisition.reported = true;
+                    reportedCount.incrementAndGet();
+                    LOGGER.warn("Pool [{}] pooled element held for {}ms. Possible leak. Acquired at:",
+                            poolName, age, acquisition.stackTrace);
+                }
+            }
+
+            if (held > 0) {
+                LOGGER.warn("Pool [{}] {} sampled pooled elements held longer than {}ms. Oldest held for {}ms",
+                        poolName, held, leakThreshold, oldest);
+            }
+
+            return held;
+
+        }
+
+        /**
+         * @return number of currently tracked elements
+         */
+        int getTrackedSize() {
+            return tracked.size();
+        }
+
+        /**
+         * @return number of tracked elements reported as possible leaks so far
+         */
+        long getReportedCount() {
+            return reportedCount.get();
+        }
+
+        private static final class Acquisition {
+
+            private final long timestamp;
+            private final Throwable stackTrace;
+            // accessed by reporting thread only
+            private boolean reported;
+
+            private Acquisition(long timestamp) {
+                this.timestamp = timestamp;
+                this.stackTrace = new Throwable("Pooled element acquisition");
+            }
+
+        }
+
+    }
+
+    /**
+     * Element of this pool. Remembers quota it was acquired with, if any, and thread-local cache it should go back to.
+     */
+    static final class PooledItemSource extends BufferedItemSource {
+
+        // null if acquired without quota; may be released by a different thread
+        private volatile AtomicInteger quotaUsage;
+
+        // null if thread-local caching is disabled; may be released by a different thread
+        private volatile Magazine magazine;
+
+        // buffer capacity as of last release; handed over between threads together with the element
+        private int sizeInBytes;
+
+        PooledItemSource(ByteBuf source, ReleaseCallback releaseCallback) {
+            super(source, releaseCallback);
+        }
+
+        /**
+         * @return change of buffer capacity since last call
+         */
+        int updateSizeInBytes() {
+            int capacity = getSource().capacity();
+            int delta = capacity - sizeInBytes;
+            sizeInBytes = capacity;
+            return delta;
+        }
+
+        void releaseQuota() {
+            AtomicInteger quotaUsage = this.quotaUsage;
+            if (quotaUsage != null) {
+                this.quotaUsage = null;
+                quotaUsage.decrementAndGet();
+            }
+        }
+
+    }
+
+    /**
+     * Thread-local stack of pooled elements. Stack is accessed by owner thread only, unless owner thread is terminated or pool is shut down,
+     * so its lock is uncontended otherwise. Elements released by other threads are queued until owner thread takes them.
+     */
+    static final class Magazine {
+
+        private final ItemSource<ByteBuf>[] elements;
+        private final WeakReference<Thread> owner;
+        private final Queue<ItemSource<ByteBuf>> returned = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger returnedSize = new AtomicInteger();
+        private int size;
+        private volatile boolean closed;
+
+        @SuppressWarnings("unchecked")
+        Magazine(int capacity) {
+            this.elements = new ItemSource[capacity];
+            this.owner = new WeakReference<>(Thread.currentThread());
+        }
+
+        synchronized ItemSource<ByteBuf> pop() {
+            if (size == 0) {
+                return null;
+            }
+            ItemSource<ByteBuf> pooled = elements[--size];
+            elements[size] = null;
+            return pooled;
+        }
+
+        /**
+         * @param pooled element to store
+         * @return false, if magazine is closed or full
+         */
+        synchronized boolean push(ItemSource<ByteBuf> pooled) {
+            if (closed || size == elements.length) {
+                return false;
+            }
+            elements[size++] = pooled;
+            return true;
+        }
+
+        boolean isFull() {
+            return size == elements.length;
+        }
+
+        /**
+         * @return approximate number of cached elements, including elements released by other threads
+         */
+        int size() {
+            return size + returnedSize.get();
+        }
+
+        boolean isOwnerAlive() {
+            Thread thread = owner.get();
+            return thread != null && thread.isAlive();
+        }
+
+        boolean isOwnedByCurrentThread() {
+            return owner.get() == Thread.currentThread();
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Queues element released by other thread until owner thread takes it.
+         *
+         * @param pooled element to store
+         * @return false, if magazine is closed or owner thread has enough elements queued already
+         */
+        boolean offerReturned(ItemSource<ByteBuf> pooled) {
+            if (closed) {
+                return false;
+            }
+            if (returnedSize.incrementAndGet() > elements.length) {
+                returnedSize.decrementAndGet();
+                return false;
+            }
+            returned.offer(pooled);
+            return true;
+        }
+
+        /**
+         * Moves elements released by other threads to the stack.
+         *
+         * @return number of elements moved
+         */
+        synchronized int takeReturned() {
+            int taken = 0;
+            while (!closed && size < elements.length) {
+                ItemSource<ByteBuf> pooled = returned.poll();
+                if (pooled == null) {
+                    break;
+                }
+                returnedSize.decrementAndGet();
+                elements[size++] = pooled;
+                taken++;
+            }
+            return taken;
+        }
+
+        /**
+         * @param target consumer of elements released by other threads
+         */
+        void drainReturned(Consumer<ItemSource<ByteBuf>> target) {
+            ItemSource<ByteBuf> pooled;
+            while ((pooled = returned.poll()) != null) {
+                returnedSize.decrementAndGet();
+                target.accept(pooled);
+            }
+        }
+
+        /**
+         * @param source shared pool
+         * @param count max number of elements to take
+         */
+        synchronized void refill(Supplier<ItemSource<ByteBuf>> source, int count) {
+            for (int ii = 0; ii < count && !closed && size < elements.length; ii++) {
+                ItemSource<ByteBuf> pooled = source.get();
+                if (pooled == null) {
+                    return;
+                }
+                elements[size++] = pooled;
+            }
+        }
+
+        /**
+         * @param batch batch spilled by this or other magazine of the same pool
+         * @return false, if magazine is closed or batch doesn't fit
+         */
+        synchronized boolean refill(ItemSource<ByteBuf>[] batch) {
+            if (closed || size + batch.length > elements.length) {
+                return false;
+            }
+            System.arraycopy(batch, 0, elements, size, batch.length);
+            size += batch.length;
+            return true;
+        }
+
+        /**
+         * @param count max number of elements to give back
+         * @return most recently cached elements; null if magazine is empty
+         */
+        synchronized ItemSource<ByteBuf>[] spill(int count) {
+            int spilled = Math.min(count, size);
+            if (spilled == 0) {
+                return null;
+            }
+            size -= spilled;
+            ItemSource<ByteBuf>[] batch = Arrays.copyOfRange(elements, size, size + spilled);
+            Arrays.fill(elements, size, size + spilled, null);
+            return batch;
+        }
+
+        /**
+         * Gives back all elements, including the ones released by other threads. Closed magazine doesn't accept elements anymore.
+         *
+         * @param target consumer of all cached elements
+         */
+        synchronized void close(Consumer<ItemSource<ByteBuf>> target) {
+            closed = true;
+            while (size > 0) {
+                target.accept(pop());
+            }
+            drainReturned(target);
+        }
+
+    }
+
     static class Recycler extends Thread {
 
         private final BufferedItemSourcePool pool;
@@ -290,10 +1138,61 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
 
         @Override
         public void run() {
+            pool.reclaimOrphanedMagazines();
             resizePolicy.decrease(pool);
         }
     }
 
+    /**
+     * Creates remaining part of initial pool on background executor, so pool construction doesn't have to
+     */
+    static class Warmup extends Thread {
+
+        private final BufferedItemSourcePool pool;
+        private final int delta;
+
+        Warmup(BufferedItemSourcePool pool, int delta) {
+            super(pool.getName() + "-Warmup");
+            this.pool = pool;
+            this.delta = delta;
+        }
+
+        @Override
+        public void run() {
+            try {
+                pool.warmup(delta);
+            } catch (Exception e) {
+                // pool will be resized on demand
+                LOGGER.error("Pool [{}] warmup failed: {}", pool.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Lets {@link ResizePolicy} resize the pool on background executor, so logging threads don't have to
+     */
+    static class Sampler extends Thread {
+
+        private final BufferedItemSourcePool pool;
+        private final ResizePolicy resizePolicy;
+
+        Sampler(BufferedItemSourcePool pool, ResizePolicy resizePolicy) {
+            super(pool.getName() + "-Sampler");
+            this.pool = pool;
+            this.resizePolicy = resizePolicy;
+        }
+
+        @Override
+        public void run() {
+            try {
+                resizePolicy.sample(pool);
+            } catch (Exception e) {
+                // periodic task must not die
+                LOGGER.error("Pool [{}] sampling failed: {}", pool.getName(), e.getMessage());
+            }
+        }
+    }
+
     static class MetricPrinter extends Thread {
 
         private final Consumer<ByteBufAllocatorMetric> printer;
@@ -311,7 +1210,59 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
         }
     }
 
-    class PoolMetrics {
+    class PoolMetrics implements ItemSourcePoolMetrics {
+
+        @Override
+        public String getPoolName() {
+            return getName();
+        }
+
+        @Override
+        public int getInitialSize() {
+            return BufferedItemSourcePool.this.getInitialSize();
+        }
+
+        @Override
+        public int getTotalSize() {
+            return BufferedItemSourcePool.this.getTotalSize();
+        }
+
+        @Override
+        public int getAvailableSize() {
+            return BufferedItemSourcePool.this.getAvailableSize();
+        }
+
+        @Override
+        public long getBorrowedCount() {
+            return borrowedCount.sum();
+        }
+
+        @Override
+        public long getResizeCount() {
+            return resizeCount.get();
+        }
+
+        @Override
+        public long getResizeWaitTimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(resizeWaitTimeNanos.sum());
+        }
+
+        @Override
+        public long getExhaustedCount() {
+            return exhaustedCount.sum();
+        }
+
+        @Override
+        public long getAllocatorUsedHeapMemory() {
+            ByteBufAllocatorMetric allocatorMetric = getAllocatorMetric();
+            return allocatorMetric != null ? allocatorMetric.usedHeapMemory() : -1;
+        }
+
+        @Override
+        public long getAllocatorUsedDirectMemory() {
+            ByteBufAllocatorMetric allocatorMetric = getAllocatorMetric();
+            return allocatorMetric != null ? allocatorMetric.usedDirectMemory() : -1;
+        }
 
         @Override
         public String toString() {
@@ -320,14 +1271,29 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
 
         public String formattedMetrics(ByteBufAllocatorMetric allocatorMetric) {
 
-            int capacity = allocatorMetric != null ? 384: 96; // roughly with or without allocator metrics
+            int capacity = allocatorMetric != null ? 512: 192; // roughly with or without allocator metrics
 
             StringBuilder sb = new StringBuilder(capacity)
                     .append('{')
                     .append(" poolName: ").append(getName())
                     .append(", initialPoolSize: ").append(getInitialSize())
                     .append(", totalPoolSize: ").append(getTotalSize())
-                    .append(", availablePoolSize: ").append(getAvailableSize());
+                    .append(", availablePoolSize: ").append(getAvailableSize())
+                    .append(", borrowedCount: ").append(getBorrowedCount())
+                    .append(", resizeCount: ").append(getResizeCount())
+                    .append(", resizeWaitTimeMillis: ").append(getResizeWaitTimeMillis())
+                    .append(", exhaustedCount: ").append(getExhaustedCount());
+
+            if (magazines != null) {
+                sb.append(", threadLocalCacheSize: ").append(threadLocalCacheSize);
+            }
+            if (maxItemSizeInBytes > 0) {
+                sb.append(", shrunkCount: ").append(getShrunkCount());
+            }
+            if (leakDetector != null) {
+                sb.append(", leakTrackedSize: ").append(leakDetector.getTrackedSize());
+                sb.append(", leakReportedCount: ").append(leakDetector.getReportedCount());
+            }
 
             if (allocatorMetric != null) {
                 sb.append(", allocatorMetric: ").append(allocatorMetric);
@@ -337,4 +1303,189 @@ class BufferedItemSourcePool implements ItemSourcePool<ByteBuf> {
 
     }
 
+    static class Builder {
+
+        private String poolName;
+        private ByteBufAllocator byteBufAllocator;
+        private boolean directBuffers;
+        private ResizePolicy resizePolicy;
+        private long resizeTimeout;
+        private boolean monitored;
+        private long monitorTaskInterval;
+        private int initialPoolSize;
+        private int itemSizeInBytes;
+        private int threadLocalCacheSize;
+        private int maxItemSizeInBytes;
+        private double leakDetectionSampleRate;
+        private long leakThreshold;
+        private boolean lifo;
+        private int eagerPoolSize;
+        private boolean jmxEnabled;
+
+        BufferedItemSourcePool build() {
+            return new BufferedItemSourcePool(this);
+        }
+
+        /**
+         * @param poolName pool name used in logs, metrics and MBean name
+         * @return this
+         */
+        Builder withPoolName(String poolName) {
+            this.poolName = poolName;
+            return this;
+        }
+
+        /**
+         * @param byteBufAllocator allocator of buffer components
+         * @return this
+         */
+        Builder withByteBufAllocator(ByteBufAllocator byteBufAllocator) {
+            this.byteBufAllocator = byteBufAllocator;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param directBuffers if true, buffer components are allocated with {@link ByteBufAllocator#directBuffer(int)}, {@link ByteBufAllocator#heapBuffer(int)} otherwise
+         * @return this
+         */
+        Builder withDirectBuffers(boolean directBuffers) {
+            this.directBuffers = directBuffers;
+            return this;
+        }
+
+        /**
+         * @param resizePolicy policy applied when pool runs out of elements and by periodic recycling
+         * @return this
+         */
+        Builder withResizePolicy(ResizePolicy resizePolicy) {
+            this.resizePolicy = resizePolicy;
+            return this;
+        }
+
+        /**
+         * @param resizeTimeout max number of millis to wait for resizing performed by another thread
+         * @return this
+         */
+        Builder withResizeTimeout(long resizeTimeout) {
+            this.resizeTimeout = resizeTimeout;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param monitored if true, pool metrics are printed every {@link #withMonitorTaskInterval(long)} millis
+         * @return this
+         */
+        Builder withMonitored(boolean monitored) {
+            this.monitored = monitored;
+            return this;
+        }
+
+        /**
+         * @param monitorTaskInterval millis between two metrics snapshots
+         * @return this
+         */
+        Builder withMonitorTaskInterval(long monitorTaskInterval) {
+            this.monitorTaskInterval = monitorTaskInterval;
+            return this;
+        }
+
+        /**
+         * @param initialPoolSize pool size before resizing
+         * @return this
+         */
+        Builder withInitialPoolSize(int initialPoolSize) {
+            this.initialPoolSize = initialPoolSize;
+            return this;
+        }
+
+        /**
+         * @param itemSizeInBytes initial size of each pooled buffer
+         * @return this
+         */
+        Builder withItemSizeInBytes(int itemSizeInBytes) {
+            this.itemSizeInBytes = itemSizeInBytes;
+            return this;
+        }
+
+        /**
+         * Default: 0 (disabled)
+         *
+         * @param threadLocalCacheSize max number of elements cached by each thread getting them from the pool
+         * @return this
+         */
+        Builder withThreadLocalCacheSize(int threadLocalCacheSize) {
+            this.threadLocalCacheSize = threadLocalCacheSize;
+            return this;
+        }
+
+        /**
+         * Default: 0 (elements are never shrunk)
+         *
+         * @param maxItemSizeInBytes released elements with capacity higher than this value are shrunk back to {@link #withItemSizeInBytes(int)}
+         * @return this
+         */
+        Builder withMaxItemSizeInBytes(int maxItemSizeInBytes) {
+            this.maxItemSizeInBytes = maxItemSizeInBytes;
+            return this;
+        }
+
+        /**
+         * Default: 0 (disabled)
+         *
+         * @param leakDetectionSampleRate fraction of {@link #getPooled()} calls tracked by leak detection
+         * @return this
+         */
+        Builder withLeakDetectionSampleRate(double leakDetectionSampleRate) {
+            this.leakDetectionSampleRate = leakDetectionSampleRate;
+            return this;
+        }
+
+        /**
+         * @param leakThreshold number of millis after which tracked element is reported as possible leak
+         * @return this
+         */
+        Builder withLeakThreshold(long leakThreshold) {
+            this.leakThreshold = leakThreshold;
+            return this;
+        }
+
+        /**
+         * Default: false (FIFO)
+         *
+         * @param lifo if true, most recently released elements are reused first and least recently released elements are recycled first
+         * @return this
+         */
+        Builder withLifo(boolean lifo) {
+            this.lifo = lifo;
+            return this;
+        }
+
+        /**
+         * Default: 0 (all {@link #withInitialPoolSize(int)} elements are created on construction)
+         *
+         * @param eagerPoolSize number of elements created on construction if lower than initial pool size, remaining ones are created on pool's executor
+         * @return this
+         */
+        Builder withEagerPoolSize(int eagerPoolSize) {
+            this.eagerPoolSize = eagerPoolSize;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param jmxEnabled if true, {@link #getMetrics()} is registered in platform MBean server until pool is shut down
+         * @return this
+         */
+        Builder withJmxEnabled(boolean jmxEnabled) {
+            this.jmxEnabled = jmxEnabled;
+            return this;
+        }
+
+    }
+
 }
@@ -21,21 +21,49 @@ package org.appenders.log4j2.elasticsearch;
  */
 
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.status.StatusLogger;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Function;
 
 /**
- * Time- and size-based batch scheduler. Uses provided {@link BatchOperations} implementation to produce batches and
+ * Time-, size- and (optionally) byte-size-based batch scheduler. Uses provided {@link BatchOperations} implementation to produce batches and
  * delivers them to provided listener.
+ * <p>
+ * Producers never deliver batches themselves. Size-triggered deliveries are handed off to shared {@link DeliveryScheduler},
+ * so adding an item never waits for batch creation or listener completion.
+ * <p>
+ * Time-based deliveries are handled by shared {@link DeliveryScheduler} as well. Delivery deadline is armed by the first item added after
+ * a delivery and moved forward by every delivery, so each item waits at most delivery interval and no wakeups occur
+ * while there's nothing to deliver.
+ * <p>
+ * If capacity is configured, number of undelivered items is bounded (approximately, up to the number of concurrent producers)
+ * and configured {@link OverflowPolicy} is applied to items added when capacity is exhausted.
+ * <p>
+ * If end-of-batch flush is enabled, {@link #onEndOfBatch()} requests early delivery once configured number of items or bytes is waiting,
+ * so sparse producers (e.g. AsyncLogger) don't wait for the delivery interval.
+ * <p>
+ * If grouping by index is enabled, each delivery produces one batch per target index (as reported by {@link BatchOperations#getIndexName(Object)}),
+ * so items sent to previous index around rollover boundaries don't widen the set of shards touched by a single batch.
+ * <p>
+ * If delivery permits are set, one permit is acquired before each batch is drained and handed over to the listener with the batch.
+ * While no permit is available, items stay queued, so capacity and {@link OverflowPolicy} slow down producers instead of batches being failed.
  *
  * @param <BATCH_TYPE> type of processed batches
  */
@@ -43,90 +71,711 @@ public class BulkEmitter<BATCH_TYPE> implements BatchEmitter {
 
     protected static StatusLogger LOG = StatusLogger.getLogger();
 
+    private static final long OVERFLOW_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
     private volatile State state = State.STOPPED;
 
     private final AtomicInteger size = new AtomicInteger();
     private final ConcurrentLinkedQueue<Object> items = new ConcurrentLinkedQueue<>();
 
+    // maintained only if capacity is configured
+    private final AtomicInteger undeliveredSize = new AtomicInteger();
+
     private final AtomicBoolean notifying = new AtomicBoolean();
     private final AtomicReference<CountDownLatch> latchHolder = new AtomicReference<>(new CountDownLatch(1));
 
+    private final AtomicLong sizeInBytes = new AtomicLong();
+
     private final int maxSize;
+    private final int maxSizeInBytes;
     private final BatchOperations<BATCH_TYPE> batchOperations;
     private Function<BATCH_TYPE, Boolean> listener;
 
-    private final Timer scheduler = new Timer();
+    private final DeliveryScheduler scheduler;
+    private final AtomicBoolean schedulerReleased = new AtomicBoolean();
+    private final long intervalInNanos;
+    private final AtomicBoolean deadlineScheduled = new AtomicBoolean();
+    private final Runnable deliveryDeadline = this::onDeliveryDeadline;
+    private final AtomicBoolean deliveryRequested = new AtomicBoolean();
+    private final Runnable deliveryTask = this::onDeliveryRequest;
+    private volatile long lastDeliveryNanos = nanoTime();
+
+    // number of items taken by last delivery attempt; written by notifying thread only
+    private volatile int lastDrainedCount;
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long overflowTimeoutInNanos;
+    private final Level overflowLevel;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong divertedCount = new AtomicLong();
+    private FailoverPolicy failoverPolicy = new NoopFailoverPolicy();
+    // null if number of batches handed over to the listener is not limited
+    private Semaphore deliveryPermits;
+
+    // null if batch size is not adjusted
+    private final AdaptiveBatchSize adaptiveBatchSize;
+
+    private final boolean groupByIndex;
+
+    private final boolean flushOnEndOfBatch;
+    private final int endOfBatchMinItems;
+    private final int endOfBatchMinBytes;
+
+    // size of undelivered items is needed by byte-size-based delivery and end-of-batch flush only
+    private final boolean trackSizeInBytes;
 
     public BulkEmitter(int atSize, int intervalInMillis, BatchOperations<BATCH_TYPE> batchOperations) {
-        this.maxSize = atSize;
+        this(BatchEmitterConfig.newBuilder()
+                .withBatchSize(atSize)
+                .withDeliveryInterval(intervalInMillis)
+                .build(), batchOperations);
+    }
+
+    /**
+     * @param config emitter settings
+     * @param batchOperations batch factory
+     */
+    public BulkEmitter(BatchEmitterConfig config, BatchOperations<BATCH_TYPE> batchOperations) {
+        this.maxSize = config.getBatchSize();
+        this.maxSizeInBytes = config.getBatchSizeInBytes();
         this.batchOperations = batchOperations;
-        this.scheduler.scheduleAtFixedRate(createNotificationTask(), 1000, intervalInMillis);
+        this.intervalInNanos = TimeUnit.MILLISECONDS.toNanos(config.getDeliveryInterval());
+        // lanes of striped emitter share the scheduler, so each of them needs a thread to deliver in parallel
+        this.scheduler = DeliveryScheduler.acquire(config.getSchedulerName(), Math.max(1, config.getLanes()));
+        this.capacity = config.getCapacity();
+        this.overflowPolicy = config.getOverflowPolicy();
+        this.overflowTimeoutInNanos = TimeUnit.MILLISECONDS.toNanos(config.getOverflowTimeout());
+        this.overflowLevel = config.getOverflowLevel();
+        this.adaptiveBatchSize = config.getMaxBatchSize() > 0 ?
+                new AdaptiveBatchSize(config.getMinBatchSize(), config.getMaxBatchSize(), config.getBatchSize(), config.getTargetLatency()) :
+                null;
+        this.groupByIndex = config.isGroupByIndex();
+        this.flushOnEndOfBatch = config.isFlushOnEndOfBatch();
+        this.endOfBatchMinItems = config.getEndOfBatchMinItems();
+        this.endOfBatchMinBytes = config.getEndOfBatchMinBytes();
+        this.trackSizeInBytes = maxSizeInBytes > 0 || (flushOnEndOfBatch && endOfBatchMinBytes > 0);
     }
 
     /**
-     * Delivers current batch to the listener if at least one item is waiting for delivery, no-op otherwise.
+     * Delivers current batch to the listener in calling thread if at least one item is waiting for delivery, no-op otherwise.
+     * If another delivery is in progress, waits until it's completed and delivers remaining items.
+     * <p>
+     * NOTE: Not used on {@link #add(Object)}. See {@link #requestDelivery()}
      */
     public final void notifyListener() {
 
-        if (notifying.compareAndSet(false, true)) {
+        // latch of delivery in progress (if any) has to be obtained before the attempt, otherwise it may be replaced in the meantime
+        CountDownLatch latch = latchHolder.get();
 
-            // reset
-            size.set(0);
+        if (!tryNotifyListener()) {
+            try {
+                // wait until notification is completed;
+                // unless there's a huge chunk of work to do on apply(batch), it should exit after a couple of millis
+                latch.await(1000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                LOG.error("Interrupted while waiting for notification completion");
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // items added during previous delivery would be left until next trigger otherwise
+            tryNotifyListener();
+        }
+
+    }
+
+    /**
+     * @return false, if another delivery was in progress, true otherwise
+     */
+    private boolean tryNotifyListener() {
 
-            // get the size ONCE - size() gets costly when dealing with large linked queues
-            int actualSize = items.size();
+        if (notifying.compareAndSet(false, true)) {
 
-            if (actualSize == 0) {
-                // scheduled notifications may have nothing to do
+            boolean truncated;
+            try {
+                truncated = deliverPending();
+            } finally {
+                // switch back the gate condition before releasing other threads, so they can deliver remaining items
                 notifying.set(false);
-                return;
+
+                // release other threads
+                latchHolder.getAndSet(new CountDownLatch(1)).countDown();
             }
 
-            // create actual batch; there's a potential to leave some items undelivered
-            // but they will be delivered eventually (on next trigger)
-            BatchBuilder<BATCH_TYPE> batch = batchOperations.createBatchBuilder();
+            if (truncated && !isEmpty()) {
+                // size-based trigger was reset, so remaining items would wait for the deadline otherwise
+                requestRemainingDelivery();
+            }
+            return true;
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Drains pending items and delivers them to the listener. MUST be called by notifying thread only.
+     *
+     * @return true, if batch was truncated by byte size limit, false otherwise
+     */
+    private boolean deliverPending() {
+
+        if (!tryAcquirePermit()) {
+            // pending size is not reset, so next items keep requesting delivery until listener completes one of previous batches
+            lastDrainedCount = 0;
+            scheduleDeliveryDeadline(intervalInNanos);
+            return false;
+        }
+
+        int actualSize = resetAndGetPendingSize();
+
+        if (actualSize == 0) {
+            // scheduled notifications may have nothing to do
+            releasePermit();
+            lastDrainedCount = 0;
+            return false;
+        }
+
+        // moves delivery deadline forward
+        lastDeliveryNanos = nanoTime();
+
+        // create actual batch; there's a potential to leave some items undelivered
+        // but they will be delivered eventually (on next trigger)
+        BatchBuilder<BATCH_TYPE> batch = createBatchBuilder();
+        if (batch == null) {
+            // nothing was drained, so items stay queued and OverflowPolicy applies if they keep coming
+            releasePermit();
+            lastDrainedCount = 0;
+            scheduleDeliveryDeadline(intervalInNanos);
+            return false;
+        }
+
+        // sub-batches in order of first occurrence of their index, so older indices are delivered first
+        Map<String, BatchBuilder<BATCH_TYPE>> subBatches = groupByIndex ? new LinkedHashMap<>() : null;
+
+        long batchSizeInBytes = 0;
+        int drained = 0;
+        boolean truncated = false;
+        // drained item not owned by any batch yet
+        Object pendingItem = null;
+        try {
             for (int ii = 0; ii < actualSize; ii++) {
-                batch.add(items.remove());
+
+                Object item = poll();
+                if (item == null) {
+                    break;
+                }
+                drained++;
+                pendingItem = item;
+
+                // size is taken before the item is added, as batch may release it right away (e.g. with eager serialization)
+                if (trackSizeInBytes) {
+                    batchSizeInBytes += batchOperations.getSizeInBytes(item);
+                }
+
+                BatchBuilder<BATCH_TYPE> target = groupByIndex ? getSubBatch(subBatches, batchOperations.getIndexName(item), batch) : batch;
+                pendingItem = null;
+                target.add(item);
+
+                if (maxSizeInBytes > 0 && batchSizeInBytes >= maxSizeInBytes) {
+                    // remaining items will be delivered with next batch
+                    truncated = true;
+                    break;
+                }
+
+            }
+        } catch (RuntimeException e) {
+            // drained items would never be released otherwise; batches release items added to them
+            if (pendingItem != null) {
+                batchOperations.releaseBatchItem(pendingItem);
             }
-            listener.apply(batch.build());
+            releaseBatches(getBatches(batch, subBatches), 0);
+            throw e;
+        } finally {
+            sizeInBytes.addAndGet(-batchSizeInBytes);
+            lastDrainedCount = drained;
+        }
 
-            // release other threads
-            latchHolder.getAndSet(new CountDownLatch(1)).countDown();
+        if (drained == 0) {
+            // pending items were claimed, but not published yet (see RingBufferBulkEmitter);
+            // empty batch would be rejected by the cluster, so they will be delivered with next one
+            batch.release();
+            releasePermit();
+            scheduleDeliveryDeadline(intervalInNanos);
+            return false;
+        }
 
-            // switch back the gate condition
-            notifying.set(false);
-        } else {
+        // first sub-batch (if any) is the main batch; each batch takes one acquired permit with it
+        Collection<BatchBuilder<BATCH_TYPE>> batches = getBatches(batch, subBatches);
+        int handedOver = 0;
+        try {
+            for (BatchBuilder<BATCH_TYPE> next : batches) {
+                BATCH_TYPE built = next.build();
+                handedOver++;
+                listener.apply(built);
+            }
+        } catch (RuntimeException e) {
+            // batch passed to the listener is owned by the listener, even if it failed
+            releaseBatches(batches, handedOver);
+            throw e;
+        }
+
+        return truncated;
+
+    }
+
+    /**
+     * @param batch main batch
+     * @param subBatches sub-batches created so far; null if items are not grouped by index
+     * @return all batches of current delivery, main batch first
+     */
+    private Collection<BatchBuilder<BATCH_TYPE>> getBatches(BatchBuilder<BATCH_TYPE> batch, Map<String, BatchBuilder<BATCH_TYPE>> subBatches) {
+
+        if (subBatches == null || subBatches.isEmpty()) {
+            return Collections.singletonList(batch);
+        }
+
+        List<BatchBuilder<BATCH_TYPE>> batches = new ArrayList<>(subBatches.size());
+        batches.add(batch);
+        for (BatchBuilder<BATCH_TYPE> subBatch : subBatches.values()) {
+            // indices that couldn't get their own sub-batch share the main batch
+            if (subBatch != batch) {
+                batches.add(subBatch);
+            }
+        }
+        return batches;
+
+    }
+
+    /**
+     * Releases given batches with their delivery permits.
+     *
+     * @param batches batches of failed delivery
+     * @param skip number of leading batches already handed over to the listener
+     */
+    private void releaseBatches(Collection<BatchBuilder<BATCH_TYPE>> batches, int skip) {
+
+        int ii = 0;
+        for (BatchBuilder<BATCH_TYPE> next : batches) {
+            if (ii++ < skip) {
+                continue;
+            }
+            next.release();
+            releasePermit();
+        }
+
+    }
+
+    /**
+     * @param subBatches sub-batches created so far
+     * @param indexName index name of next item
+     * @param batch main batch; used by first index and by indices that couldn't get their own sub-batch
+     * @return sub-batch of given index
+     */
+    private BatchBuilder<BATCH_TYPE> getSubBatch(Map<String, BatchBuilder<BATCH_TYPE>> subBatches, String indexName, BatchBuilder<BATCH_TYPE> batch) {
+
+        BatchBuilder<BATCH_TYPE> subBatch = subBatches.get(indexName);
+        if (subBatch == null) {
+            subBatch = subBatches.isEmpty() ? batch : createSubBatchBuilder();
+            if (subBatch == null) {
+                // batch items carry their index, so they can still be delivered with main batch
+                subBatch = batch;
+            }
+            subBatches.put(indexName, subBatch);
+        }
+        return subBatch;
+
+    }
+
+    /**
+     * @return new {@link BatchBuilder} holding its own delivery permit; null if permit or batch builder couldn't be obtained
+     */
+    private BatchBuilder<BATCH_TYPE> createSubBatchBuilder() {
+
+        if (!tryAcquirePermit()) {
+            return null;
+        }
+
+        BatchBuilder<BATCH_TYPE> subBatch = createBatchBuilder();
+        if (subBatch == null) {
+            releasePermit();
+        }
+        return subBatch;
+
+    }
+
+    private boolean tryAcquirePermit() {
+        return deliveryPermits == null || deliveryPermits.tryAcquire();
+    }
+
+    private void releasePermit() {
+        if (deliveryPermits != null) {
+            deliveryPermits.release();
+        }
+    }
+
+    /**
+     * @return new {@link BatchBuilder}; null if it couldn't be created, e.g. batch buffer pool is exhausted
+     */
+    private BatchBuilder<BATCH_TYPE> createBatchBuilder() {
+        try {
+            return batchOperations.createBatchBuilder();
+        } catch (IllegalStateException e) {
+            LOG.warn("Unable to create batch: {}. Pending items will be delivered with next batch", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Hands off delivery to {@link DeliveryScheduler} thread. No-op if delivery was already requested and not started yet.
+     * Calling thread never waits.
+     */
+    protected final void requestDelivery() {
+        if (deliveryRequested.compareAndSet(false, true)) {
             try {
-                // wait until notification is completed;
-                // unless there's a huge chunk of work to do on apply(batch), it should exit after a couple of millis
-                latchHolder.get().await(1000, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                LOG.error("Interrupted while waiting for notification completion");
-                Thread.currentThread().interrupt();
+                scheduler.execute(deliveryTask);
+            } catch (RejectedExecutionException e) {
+                // scheduler released on stop(); nothing else will deliver
+                deliveryRequested.set(false);
+                tryNotifyListener();
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #requestDelivery()}, but never delivers in calling thread, so notifying thread cannot recurse
+     * if scheduler was already released. In such case, remaining items are delivered by {@link #stop()}.
+     */
+    private void requestRemainingDelivery() {
+        if (deliveryRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(deliveryTask);
+            } catch (RejectedExecutionException e) {
+                deliveryRequested.set(false);
+            }
+        }
+    }
+
+    private void onDeliveryRequest() {
+
+        // clear before delivery, so items added in the meantime may request next one
+        deliveryRequested.set(false);
+
+        // if another delivery is in progress, it will take all pending items anyway
+        tryNotifyListener();
+
+    }
+
+    /**
+     * Delivers pending items if {@code deliveryInterval} elapsed since last delivery. Otherwise, deadline is moved to {@code deliveryInterval}
+     * after last delivery. Invoked by {@link DeliveryScheduler}.
+     */
+    void onDeliveryDeadline() {
+
+        // clear before checking for pending items, so concurrently added items will schedule the deadline if not seen here
+        deadlineScheduled.set(false);
+
+        long sinceLastDelivery = nanoTime() - lastDeliveryNanos;
+        if (sinceLastDelivery < intervalInNanos) {
+            // deadline was moved by delivery that happened in the meantime
+            if (!isEmpty()) {
+                scheduleDeliveryDeadline(intervalInNanos - sinceLastDelivery);
             }
+            return;
+        }
+
+        // shared scheduler thread must not wait; ongoing delivery will move the deadline anyway
+        tryNotifyListener();
+
+        if (!isEmpty()) {
+            scheduleDeliveryDeadline(intervalInNanos);
         }
 
     }
 
+    /* extension point */
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private void scheduleDeliveryDeadline(long delayInNanos) {
+        if (deadlineScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(deliveryDeadline, delayInNanos);
+            } catch (RejectedExecutionException e) {
+                // scheduler released on stop(); pending items may only be delivered by size-based triggers now
+                deadlineScheduled.set(false);
+            }
+        }
+    }
+
     @Override
     public void add(Object batchItem) {
 
-        items.add(batchItem);
+        if (isFull() && !handleOverflow(batchItem)) {
+            return;
+        }
 
-        if (size.incrementAndGet() >= maxSize) {
-            notifyListener();
+        int itemSizeInBytes = trackSizeInBytes ? batchOperations.getSizeInBytes(batchItem) : 0;
+        long pendingSizeInBytes = trackSizeInBytes ? sizeInBytes.addAndGet(itemSizeInBytes) : 0;
+        boolean bytesLimitReached = maxSizeInBytes > 0 && pendingSizeInBytes >= maxSizeInBytes;
+
+        int pendingSize;
+        while ((pendingSize = enqueue(batchItem)) < 0) {
+            // bounded storage was filled by other producers in the meantime
+            if (!handleOverflow(batchItem)) {
+                sizeInBytes.addAndGet(-itemSizeInBytes);
+                return;
+            }
+        }
+
+        if (pendingSize >= getBatchSize() || bytesLimitReached) {
+            requestDelivery();
+        } else if (!deadlineScheduled.get()) {
+            scheduleDeliveryDeadline(intervalInNanos);
         }
 
+    }
+
+    /**
+     * Requests early delivery if end-of-batch flush is enabled and at least one of configured thresholds is met.
+     * Otherwise, pending items will be delivered by regular triggers.
+     */
+    @Override
+    public void onEndOfBatch() {
+
+        if (!flushOnEndOfBatch) {
+            return;
+        }
+
+        int pendingSize = getPendingSize();
+        if (pendingSize == 0) {
+            return;
+        }
+
+        if (pendingSize >= endOfBatchMinItems
+                || (endOfBatchMinBytes > 0 && sizeInBytes.get() >= endOfBatchMinBytes)) {
+            requestDelivery();
+        }
 
     }
 
-    private TimerTask createNotificationTask() {
-        return new TimerTask() {
-            @Override
-            public void run() {
-                notifyListener();
+    /**
+     * @param batchItem item added when capacity is exhausted
+     * @return true, if given item should be stored anyway, false otherwise
+     */
+    private boolean handleOverflow(Object batchItem) {
+
+        switch (overflowPolicy) {
+            case DROP_NEWEST:
+                drop(batchItem);
+                return false;
+            case DROP_OLDEST:
+                if (dropOldest()) {
+                    return true;
+                }
+                drop(batchItem);
+                return false;
+            case FAILOVER:
+                divert(batchItem);
+                return false;
+            default:
+                if (awaitCapacity()) {
+                    return true;
+                }
+                drop(batchItem);
+                return false;
+        }
+
+    }
+
+    private boolean awaitCapacity() {
+
+        // size-triggered delivery was requested already, but it may not free enough capacity
+        requestDelivery();
+
+        long start = System.nanoTime();
+        while (isFull()) {
+            if (System.nanoTime() - start >= overflowTimeoutInNanos || Thread.currentThread().isInterrupted()) {
+                return false;
             }
-        };
+            LockSupport.parkNanos(OVERFLOW_BACKOFF_NANOS);
+        }
+        return true;
+
+    }
+
+    private boolean dropOldest() {
+
+        Object oldest = pollOldest();
+        if (oldest == null) {
+            return false;
+        }
+
+        if (trackSizeInBytes) {
+            sizeInBytes.addAndGet(-batchOperations.getSizeInBytes(oldest));
+        }
+        drop(oldest);
+        return true;
+
+    }
+
+    private void drop(Object batchItem) {
+        droppedCount.incrementAndGet();
+        batchOperations.releaseBatchItem(batchItem);
+    }
+
+    private void divert(Object batchItem) {
+        divertedCount.incrementAndGet();
+        failoverPolicy.deliver(batchOperations.getFailoverPayload(batchItem));
+    }
+
+    /**
+     * Items logged below configured overflow level are rejected with {@link OverflowPolicy#DROP_BELOW_LEVEL} if capacity is exhausted.
+     *
+     * @param level level of the item
+     * @return true, if item was rejected and accounted as dropped, false otherwise
+     */
+    @Override
+    public boolean rejects(Level level) {
+
+        if (overflowPolicy != OverflowPolicy.DROP_BELOW_LEVEL
+                || level.isMoreSpecificThan(overflowLevel)
+                || !isFull()) {
+            return false;
+        }
+
+        droppedCount.incrementAndGet();
+        return true;
+
+    }
+
+    /**
+     * @return number of items that triggers a delivery at the moment
+     */
+    public final int getBatchSize() {
+        return adaptiveBatchSize == null ? maxSize : adaptiveBatchSize.get();
+    }
+
+    /**
+     * @return batch size controller that should be notified about delivery outcomes; null if batch size is not adjusted
+     */
+    public final AdaptiveBatchSize getAdaptiveBatchSize() {
+        return adaptiveBatchSize;
+    }
+
+    /**
+     * @return number of items dropped by {@link OverflowPolicy}
+     */
+    public final long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return number of items redirected to {@link FailoverPolicy} by {@link OverflowPolicy#FAILOVER}
+     */
+    public final long getDivertedCount() {
+        return divertedCount.get();
+    }
+
+    /**
+     * @return true, if configured capacity (or capacity of underlying storage, if bounded) is exhausted, false otherwise
+     */
+    protected boolean isFull() {
+        return capacity > 0 && getUndeliveredSize() >= capacity;
+    }
+
+    /**
+     * Stores given item until next delivery.
+     *
+     * @param batchItem item to store
+     * @return number of items added since last delivery; negative if item was not stored because bounded storage is full
+     */
+    protected int enqueue(Object batchItem) {
+        items.add(batchItem);
+        if (capacity > 0) {
+            undeliveredSize.incrementAndGet();
+        }
+        return size.incrementAndGet();
+    }
+
+    /**
+     * Retrieves and removes oldest stored item. MAY be invoked concurrently with {@link #poll()}.
+     *
+     * @return oldest item or null if there are no items available
+     */
+    protected Object pollOldest() {
+        return poll();
+    }
+
+    /**
+     * Retrieves and removes oldest stored item if no delivery is in progress.
+     *
+     * @return oldest item or null if there are no items available or delivery is in progress
+     */
+    protected final Object pollExclusively() {
+
+        if (!notifying.compareAndSet(false, true)) {
+            return null;
+        }
+
+        try {
+            return poll();
+        } finally {
+            notifying.set(false);
+        }
+
+    }
+
+    /**
+     * Used only if capacity is configured.
+     *
+     * @return number of stored items
+     */
+    protected int getUndeliveredSize() {
+        return undeliveredSize.get();
+    }
+
+    /**
+     * @return approximate number of items waiting for delivery
+     */
+    protected int getPendingSize() {
+        return size.get();
+    }
+
+    /**
+     * Resets size-based delivery trigger. Invoked by notifying thread only.
+     *
+     * @return number of items available for next batch
+     */
+    protected int resetAndGetPendingSize() {
+
+        // reset
+        size.set(0);
+
+        // get the size ONCE - size() gets costly when dealing with large linked queues
+        return items.size();
+
+    }
+
+    /**
+     * Retrieves and removes next stored item. Invoked by notifying thread only.
+     *
+     * @return next item or null if there are no items available
+     */
+    protected Object poll() {
+        Object item = items.poll();
+        if (capacity > 0 && item != null) {
+            undeliveredSize.decrementAndGet();
+        }
+        return item;
+    }
+
+    /**
+     * @return true, if there are no items waiting for delivery
+     */
+    protected boolean isEmpty() {
+        return items.isEmpty();
     }
 
     /**
@@ -139,6 +788,25 @@ public class BulkEmitter<BATCH_TYPE> implements BatchEmitter {
         this.listener = onReadyListener;
     }
 
+    /**
+     * Sets failover target of {@link OverflowPolicy#FAILOVER}.
+     *
+     * @param failoverPolicy handler of diverted items
+     */
+    public void setFailoverPolicy(FailoverPolicy failoverPolicy) {
+        this.failoverPolicy = failoverPolicy;
+    }
+
+    /**
+     * Limits number of batches handed over to the listener and not completed yet. One permit is acquired before each batch is drained.
+     * Listener becomes the owner of the permit and MUST release it once given batch is completed.
+     *
+     * @param deliveryPermits permits shared with the listener; null if not limited
+     */
+    public void setDeliveryPermits(Semaphore deliveryPermits) {
+        this.deliveryPermits = deliveryPermits;
+    }
+
     // ==========
     // LIFECYCLE
     // ==========
@@ -151,13 +819,55 @@ public class BulkEmitter<BATCH_TYPE> implements BatchEmitter {
     @Override
     public void stop() {
 
-        notifyListener();
-        scheduler.cancel();
+        // batch size in bytes may limit a single delivery, so keep delivering until all items are gone
+        // or there's no progress (e.g. remaining ring buffer slots were claimed, but never published)
+        do {
+            notifyListener();
+        } while (lastDrainedCount > 0 && !isEmpty());
+        if (schedulerReleased.compareAndSet(false, true)) {
+            scheduler.release();
+        }
+
+        int undelivered = discardUndelivered();
+        if (undelivered > 0) {
+            LOG.warn("{}: {} items could not be delivered on stop and were {}",
+                    getClass().getSimpleName(),
+                    undelivered,
+                    overflowPolicy == OverflowPolicy.FAILOVER ? "redirected to failover policy" : "dropped");
+        }
 
         state = State.STOPPED;
 
     }
 
+    /**
+     * Removes items left after final delivery attempt (e.g. if no delivery permits were available). Items are redirected to {@link FailoverPolicy}
+     * if {@link OverflowPolicy#FAILOVER} is configured, released otherwise.
+     *
+     * @return number of removed items
+     */
+    private int discardUndelivered() {
+
+        int count = 0;
+        Object item;
+        while ((item = pollExclusively()) != null) {
+
+            if (trackSizeInBytes) {
+                sizeInBytes.addAndGet(-batchOperations.getSizeInBytes(item));
+            }
+
+            if (overflowPolicy == OverflowPolicy.FAILOVER) {
+                divert(item);
+            } else {
+                drop(item);
+            }
+            count++;
+
+        }
+        return count;
+
+    }
+
     @Override
     public boolean isStarted() {
         return state == State.STARTED;
@@ -58,6 +58,18 @@ public interface ClientObjectFactory<CLIENT_TYPE, BATCH_TYPE> {
      */
     Function<BATCH_TYPE, Boolean> createBatchListener(FailoverPolicy failoverPolicy);
 
+    /**
+     * Listener that MUST accept and send prepared batch and handle the exceptions. MAY report delivery outcomes to given batch size controller.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @param failoverPolicy sink for failed batch items
+     * @param adaptiveBatchSize batch size controller; null if batch size is not adjusted
+     * @return prepared batch handler
+     */
+    default Function<BATCH_TYPE, Boolean> createBatchListener(FailoverPolicy failoverPolicy, AdaptiveBatchSize adaptiveBatchSize) {
+        return createBatchListener(failoverPolicy);
+    }
+
     /**
      * Failed batch handler. SHOULD deliver the batch to alternate target or provided failover policy
      * @param failover optional failover strategy
@@ -0,0 +1,160 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.core.util.Log4jThreadFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reference-counted scheduler shared by all {@link BulkEmitter} instances acquired with the same name
+ * (by default, one per LoggerContext). Underlying threads are created on first {@link #acquire(String)} and
+ * terminated when the last user calls {@link #release()}.
+ * <p>
+ * By default, number of threads follows the number of users (each {@link BulkEmitter}, including each {@link StripedBulkEmitter} lane),
+ * so a slow delivery of one appender doesn't delay deliveries of other appenders. Fixed number of threads can be configured with
+ * {@code appenders.deliveryScheduler.poolSize} system property. In both cases, pool size is increased if any user requires more threads.
+ */
+public class DeliveryScheduler {
+
+    /**
+     * Name used if no LoggerContext name was available
+     */
+    public static final String DEFAULT_NAME = "default";
+
+    public static final String POOL_SIZE_PROPERTY_NAME = "appenders.deliveryScheduler.poolSize";
+
+    private static final Map<String, DeliveryScheduler> SCHEDULERS = new HashMap<>();
+
+    private final String name;
+    // 0 if pool size follows the number of users
+    private final int configuredPoolSize;
+    private final ScheduledThreadPoolExecutor executor;
+    private int refCount;
+    // highest min pool size required by users so far
+    private int minPoolSize;
+
+    DeliveryScheduler(String name, int configuredPoolSize) {
+        this.name = name;
+        this.configuredPoolSize = configuredPoolSize;
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(1, configuredPoolSize), Log4jThreadFactory.createDaemonThreadFactory("DeliveryScheduler-" + name));
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * @param name scheduler name, e.g. LoggerContext name; {@link #DEFAULT_NAME} is used if null
+     * @return existing scheduler with given name or new one if it doesn't exist yet
+     */
+    public static DeliveryScheduler acquire(String name) {
+        return acquire(name, 1);
+    }
+
+    /**
+     * @param name scheduler name, e.g. LoggerContext name; {@link #DEFAULT_NAME} is used if null
+     * @param minPoolSize min number of threads required by the caller, e.g. to deliver batches of multiple emitters in parallel
+     * @return existing scheduler with given name (with pool size increased if needed) or new one if it doesn't exist yet
+     */
+    public static DeliveryScheduler acquire(String name, int minPoolSize) {
+
+        String actualName = name == null ? DEFAULT_NAME : name;
+
+        synchronized (SCHEDULERS) {
+            DeliveryScheduler scheduler = SCHEDULERS.computeIfAbsent(actualName,
+                    key -> new DeliveryScheduler(key, Integer.getInteger(POOL_SIZE_PROPERTY_NAME, 0)));
+            scheduler.refCount++;
+            scheduler.minPoolSize = Math.max(scheduler.minPoolSize, minPoolSize);
+            scheduler.resize();
+            return scheduler;
+        }
+
+    }
+
+    /**
+     * Decrements the number of users of this scheduler. Underlying threads are stopped if it was the last one. Otherwise, if pool size
+     * is not configured, it's decreased to follow the number of remaining users.
+     */
+    public void release() {
+
+        synchronized (SCHEDULERS) {
+            if (refCount == 0) {
+                return;
+            }
+            if (--refCount == 0) {
+                SCHEDULERS.remove(name);
+                executor.shutdown();
+                return;
+            }
+            resize();
+        }
+
+    }
+
+    /**
+     * MUST be called while holding the lock on {@link #SCHEDULERS}.
+     */
+    private void resize() {
+
+        int poolSize = Math.max(configuredPoolSize > 0 ? configuredPoolSize : refCount, minPoolSize);
+        if (poolSize != executor.getCorePoolSize()) {
+            executor.setCorePoolSize(poolSize);
+        }
+
+    }
+
+    /**
+     * @param task task to run once
+     * @param delayInNanos nanos to wait before execution
+     * @return task handle
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delayInNanos) {
+        return executor.schedule(task, delayInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param task task to run as soon as possible
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * @return number of threads
+     */
+    public int getPoolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true, if underlying threads were stopped
+     */
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+}
@@ -53,12 +53,14 @@ public class ElasticsearchAppender extends AbstractAppender {
     public static final String PLUGIN_NAME = "Elasticsearch";
 
     private final IndexNameFormatter indexNameFormatter;
+    private final BatchDelivery batchDelivery;
     private final ItemAppender itemAppender;
 
     protected ElasticsearchAppender(String name, Filter filter, AbstractLayout layout,
             boolean ignoreExceptions, BatchDelivery batchDelivery, boolean messageOnly, IndexNameFormatter indexNameFormatter) {
         super(name, filter, layout, ignoreExceptions);
         this.indexNameFormatter = indexNameFormatter;
+        this.batchDelivery = batchDelivery;
         this.itemAppender = createItemAppenderFactory().createInstance(messageOnly, layout, batchDelivery);
     }
 
@@ -68,8 +70,18 @@ public class ElasticsearchAppender extends AbstractAppender {
     }
 
     public void append(LogEvent event) {
+
+        if (batchDelivery.rejects(event.getLevel())) {
+            // overflow; no need to serialize
+            return;
+        }
+
         String formattedIndexName = indexNameFormatter.format(event);
         itemAppender.append(formattedIndexName, event);
+
+        if (event.isEndOfBatch()) {
+            batchDelivery.onEndOfBatch();
+        }
     }
 
     @Override
@@ -40,14 +40,18 @@ public class ItemSourceAppender implements ItemAppender<LogEvent> {
     }
 
     /**
-     * Serializes given {@link LogEvent} to {@link ItemSource} and invokes {@link BatchDelivery#add(String, ItemSource)}
+     * Serializes given {@link LogEvent} to {@link ItemSource} and invokes {@link BatchDelivery#add(String, ItemSource)}.
+     * Event is skipped if serializer didn't produce any {@link ItemSource}, e.g. it was dropped by {@link PoolExhaustedPolicy}
      *
      * @param formattedIndexName delivery target
      * @param event event to process
      */
     @Override
     public final void append(String formattedIndexName, LogEvent event) {
-        batchDelivery.add(formattedIndexName, serializer.apply(event));
+        ItemSource itemSource = serializer.apply(event);
+        if (itemSource != null) {
+            batchDelivery.add(formattedIndexName, itemSource);
+        }
     }
 
     @Override
@@ -72,6 +72,44 @@ public interface ItemSourcePool<T> {
      */
     int getAvailableSize();
 
+    /**
+     * Allows {@link ResizePolicy} to decide how many elements can be removed with {@link #remove()}.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @return Number of pooled elements that can be removed without affecting elements cached or used by other threads
+     */
+    default int getRecyclableSize() {
+        return getAvailableSize();
+    }
+
+    /**
+     * Allows {@link ResizePolicy} to estimate memory used by the pool.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @return estimated size of single pooled element in bytes; 0 if unknown
+     */
+    default int getItemSizeInBytes() {
+        return 0;
+    }
+
+    /**
+     * Allows {@link ResizePolicy} to limit memory used by the pool.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @return total capacity of elements managed by this pool in bytes; 0 if unknown
+     */
+    default long getTotalSizeInBytes() {
+        return 0;
+    }
+
+    /**
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @return live metrics of this pool; null if not supported
+     */
+    default ItemSourcePoolMetrics getMetrics() {
+        return null;
+    }
+
     /**
      * MUST clean up/close underlying resources
      */
@@ -0,0 +1,81 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Point-in-time view of {@link ItemSourcePool} state. Sizes are gauges, counts are monotonic counters since pool creation,
+ * so rates (e.g. borrow rate) can be derived by sampling them periodically.
+ * <p>
+ * Public, so it can be used as JMX MBean interface.
+ */
+public interface ItemSourcePoolMetrics {
+
+    /**
+     * @return pool identifier
+     */
+    String getPoolName();
+
+    /**
+     * @return Number of elements initially created by the pool
+     */
+    int getInitialSize();
+
+    /**
+     * @return Total number of elements managed by the pool
+     */
+    int getTotalSize();
+
+    /**
+     * @return Number of pooled elements available to offer
+     */
+    int getAvailableSize();
+
+    /**
+     * @return Number of elements successfully taken from the pool
+     */
+    long getBorrowedCount();
+
+    /**
+     * @return Number of successful pool expansions
+     */
+    long getResizeCount();
+
+    /**
+     * @return Total time in milliseconds spent by threads waiting for pool expansion triggered by other threads
+     */
+    long getResizeWaitTimeMillis();
+
+    /**
+     * @return Number of failed attempts to take an element from the pool, e.g. when {@link ResizePolicy} didn't create any new elements
+     */
+    long getExhaustedCount();
+
+    /**
+     * @return Heap memory used by underlying allocator in bytes; -1 if unknown
+     */
+    long getAllocatorUsedHeapMemory();
+
+    /**
+     * @return Direct memory used by underlying allocator in bytes; -1 if unknown
+     */
+    long getAllocatorUsedDirectMemory();
+
+}
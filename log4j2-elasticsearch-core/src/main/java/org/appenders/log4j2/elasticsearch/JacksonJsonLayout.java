@@ -25,6 +25,7 @@ import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
 import org.apache.logging.log4j.core.Layout;
 import org.apache.logging.log4j.core.LogEvent;
@@ -43,12 +44,29 @@ import java.util.List;
 
 /**
  * Allows to customize serialization of incoming events
+ * <p>
+ * By default, {@link LogEvent}s are serialized by {@link ObjectMapper} according to configured mixins. If {@link Mode#GENERATOR} is configured,
+ * they're written by {@link LogEventJacksonJsonSerializer} instead, which is faster, but ignores {@link LogEvent} mixins.
  */
 @Plugin(name = JacksonJsonLayout.PLUGIN_NAME, category = Node.CATEGORY, elementType = Layout.ELEMENT_TYPE, printObject = true)
 public class JacksonJsonLayout extends AbstractLayout<ItemSource> implements ItemSourceLayout {
 
     public static final String PLUGIN_NAME = "JacksonJsonLayout";
 
+    /**
+     * {@link LogEvent} serialization modes
+     */
+    public enum Mode {
+        /**
+         * {@link LogEvent} serialized with bean introspection, according to configured mixins
+         */
+        DATABIND,
+        /**
+         * {@link LogEvent} written field by field by {@link LogEventJacksonJsonSerializer}
+         */
+        GENERATOR
+    }
+
     private final ObjectWriter objectWriter;
     private final ItemSourceFactory itemSourceFactory;
 
@@ -104,6 +122,9 @@ public class JacksonJsonLayout extends AbstractLayout<ItemSource> implements Ite
         @PluginBuilderAttribute("afterburner")
         private boolean useAfterburner;
 
+        @PluginBuilderAttribute
+        private Mode mode = Mode.DATABIND;
+
         @Override
         public JacksonJsonLayout build() {
             return new JacksonJsonLayout(
@@ -127,6 +148,11 @@ public class JacksonJsonLayout extends AbstractLayout<ItemSource> implements Ite
                 objectMapper.addMixIn(mixin.getTargetClass(), mixin.getMixInClass());
             }
 
+            if (mode == Mode.GENERATOR) {
+                objectMapper.registerModule(new SimpleModule(LogEventJacksonJsonSerializer.class.getSimpleName())
+                        .addSerializer(LogEvent.class, new LogEventJacksonJsonSerializer()));
+            }
+
             return objectMapper.writer(new MinimalPrettyPrinter());
         }
 
@@ -167,5 +193,16 @@ public class JacksonJsonLayout extends AbstractLayout<ItemSource> implements Ite
             this.useAfterburner = useAfterburner;
             return this;
         }
+
+        /**
+         * Default: {@link Mode#DATABIND}
+         *
+         * @param mode {@link LogEvent} serialization mode
+         * @return this
+         */
+        public Builder withMode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
     }
 }
@@ -0,0 +1,206 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.core.config.ConfigurationException;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+
+/**
+ * {@link ResizePolicy} resizing given {@link ItemSourcePool} up to configured number of elements and/or size in bytes.
+ * <p>
+ * Size in bytes is based on {@link ItemSourcePool#getTotalSizeInBytes()} (actual capacity of pooled buffers, including the ones
+ * that grew above {@link ItemSourcePool#getItemSizeInBytes()}). If it's unknown, it's estimated as number of elements * item size.
+ * <p>
+ * Once the limit is reached, {@link #increase(ItemSourcePool)} fails fast and pool exhaustion is handled by
+ * {@link PooledItemSourceFactory} as configured with {@link PoolExhaustedPolicy}.
+ */
+@Plugin(name = LimitedResizePolicy.PLUGIN_NAME, category = Node.CATEGORY, elementType = ResizePolicy.ELEMENT_TYPE, printObject = true)
+public final class LimitedResizePolicy implements ResizePolicy {
+
+    public static final String PLUGIN_NAME = "LimitedResizePolicy";
+
+    private final double resizeFactor;
+    private final int maxSize;
+    private final long maxBytes;
+
+    private LimitedResizePolicy(double resizeFactor, int maxSize, long maxBytes) {
+        this.resizeFactor = resizeFactor;
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Attempts to resize given pool.
+     * <p>
+     * Additional pool size is calculated based on it's {@link ItemSourcePool#getInitialSize()} and capped,
+     * so {@link ItemSourcePool#getTotalSize()} never exceeds the limit.
+     *
+     * @param itemSourcePool pool to be resized
+     * @throws ConfigurationException when {@code resizeFactor * initialPoolSize == 0}
+     * @return true, if resize operation was successful, false if the limit was reached already
+     */
+    @Override
+    public boolean increase(ItemSourcePool itemSourcePool) {
+
+        int initialPoolSize = itemSourcePool.getInitialSize();
+        int additionalPoolSize = (int) (initialPoolSize * resizeFactor);
+
+        if (additionalPoolSize == 0) {
+            throw new ConfigurationException(String.format("Applying %s with resizeFactor %s will not resize given pool [%s] with initialPoolSize %s",
+                    ResizePolicy.class.getSimpleName(),
+                    resizeFactor,
+                    itemSourcePool.getName(),
+                    itemSourcePool.getInitialSize()));
+        }
+
+        int remaining = getRemainingSize(itemSourcePool);
+        if (remaining <= 0) {
+            return false;
+        }
+
+        itemSourcePool.incrementPoolSize(Math.min(additionalPoolSize, remaining));
+
+        return true;
+    }
+
+    /**
+     * Works like {@link UnlimitedResizePolicy#decrease(ItemSourcePool)}
+     *
+     * @param itemSourcePool pool to be resized
+     * @return true, if resize operation was successful, false otherwise
+     */
+    @Override
+    public boolean decrease(ItemSourcePool itemSourcePool) {
+        return UnlimitedResizePolicy.decrease(itemSourcePool, resizeFactor);
+    }
+
+    /**
+     * @param itemSourcePool pool to be resized
+     * @return number of elements that can be added to given pool; {@code maxBytes} is ignored if pool's item size is unknown
+     */
+    int getRemainingSize(ItemSourcePool itemSourcePool) {
+
+        long remaining = maxSize > 0 ? maxSize - itemSourcePool.getTotalSize() : Integer.MAX_VALUE;
+
+        int itemSizeInBytes = itemSourcePool.getItemSizeInBytes();
+        if (maxBytes > 0 && itemSizeInBytes > 0) {
+            long totalSizeInBytes = itemSourcePool.getTotalSizeInBytes();
+            if (totalSizeInBytes == 0) {
+                totalSizeInBytes = (long) itemSourcePool.getTotalSize() * itemSizeInBytes;
+            }
+            // new elements are created with item size
+            remaining = Math.min(remaining, (maxBytes - totalSizeInBytes) / itemSizeInBytes);
+        }
+
+        return (int) Math.max(0, remaining);
+
+    }
+
+    /**
+     * @param initialPoolSize initial number of elements
+     * @param itemSizeInBytes initial size of each element
+     * @return true, if initial pool doesn't fit within configured limits
+     */
+    boolean isExceededBy(int initialPoolSize, int itemSizeInBytes) {
+        return (maxSize > 0 && initialPoolSize > maxSize)
+                || (maxBytes > 0 && (long) initialPoolSize * itemSizeInBytes > maxBytes);
+    }
+
+    @PluginBuilderFactory
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder implements org.apache.logging.log4j.core.util.Builder<LimitedResizePolicy> {
+
+        /**
+         * Default resize factor
+         */
+        public static final double DEFAULT_RESIZE_FACTOR = 0.50;
+
+        @PluginBuilderAttribute
+        private double resizeFactor = DEFAULT_RESIZE_FACTOR;
+
+        @PluginBuilderAttribute
+        private int maxSize;
+
+        @PluginBuilderAttribute
+        private long maxBytes;
+
+        @Override
+        public LimitedResizePolicy build() {
+
+            if (resizeFactor <= 0) {
+                throw new ConfigurationException("resizeFactor must be higher than 0");
+            }
+
+            if (resizeFactor > 1) {
+                throw new ConfigurationException("resizeFactor must be lower or equal 1");
+            }
+
+            if (maxSize < 0) {
+                throw new ConfigurationException("maxSize cannot be negative for " + PLUGIN_NAME);
+            }
+
+            if (maxBytes < 0) {
+                throw new ConfigurationException("maxBytes cannot be negative for " + PLUGIN_NAME);
+            }
+
+            if (maxSize == 0 && maxBytes == 0) {
+                throw new ConfigurationException("maxSize or maxBytes must be higher than 0 for " + PLUGIN_NAME + ". Use " + UnlimitedResizePolicy.PLUGIN_NAME + " instead");
+            }
+
+            return new LimitedResizePolicy(resizeFactor, maxSize, maxBytes);
+        }
+
+        /**
+         * @param resizeFactor fraction of {@link ItemSourcePool#getInitialSize()} by which given pool will be increased
+         * @return this
+         */
+        public Builder withResizeFactor(double resizeFactor) {
+            this.resizeFactor = resizeFactor;
+            return this;
+        }
+
+        /**
+         * @param maxSize max total number of pooled elements; 0 if number of elements is not limited
+         * @return this
+         */
+        public Builder withMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param maxBytes max total capacity of all pooled elements ({@link ItemSourcePool#getTotalSizeInBytes()}); 0 if size in bytes is not limited
+         * @return this
+         */
+        public Builder withMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+    }
+
+}
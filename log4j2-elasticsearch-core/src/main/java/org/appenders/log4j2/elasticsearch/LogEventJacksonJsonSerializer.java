@@ -0,0 +1,162 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.ThrowableProxy;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
+import java.io.IOException;
+
+/**
+ * Writes {@link LogEvent} fields straight to {@link JsonGenerator}, without bean introspection and property filtering.
+ * <p>
+ * Output is the same as with {@link org.apache.logging.log4j.core.jackson.LogEventJacksonJsonMixIn}: {@code timeMillis}, {@code loggerName},
+ * {@code level}, {@code marker}, {@code message}, {@code thrown} and {@code thread}; null values and empty strings (except message) are omitted.
+ * {@link Marker} and {@link ThrowableProxy} are rare, so they're still delegated to configured {@link com.fasterxml.jackson.databind.ObjectMapper}.
+ * <p>
+ * {@link StringBuilderFormattable} messages are formatted into thread-local buffers, so writing most events doesn't allocate.
+ */
+class LogEventJacksonJsonSerializer extends StdSerializer<LogEvent> {
+
+    private static final long serialVersionUID = 1L;
+
+    static final SerializableString TIME_MILLIS = new SerializedString("timeMillis");
+    static final SerializableString LOGGER_NAME = new SerializedString("loggerName");
+    static final SerializableString LEVEL = new SerializedString("level");
+    static final SerializableString MARKER = new SerializedString("marker");
+    static final SerializableString MESSAGE = new SerializedString("message");
+    static final SerializableString THROWN = new SerializedString("thrown");
+    static final SerializableString THREAD = new SerializedString("thread");
+
+    private static final int MAX_REUSABLE_BUFFER_SIZE = 4096;
+
+    private final transient ThreadLocal<MessageBuffer> messageBuffers = ThreadLocal.withInitial(MessageBuffer::new);
+
+    LogEventJacksonJsonSerializer() {
+        super(LogEvent.class);
+    }
+
+    @Override
+    public void serialize(LogEvent event, JsonGenerator gen, SerializerProvider provider) throws IOException {
+
+        gen.writeStartObject();
+
+        gen.writeFieldName(TIME_MILLIS);
+        gen.writeNumber(event.getTimeMillis());
+
+        writeNonEmpty(gen, LOGGER_NAME, event.getLoggerName());
+
+        Level level = event.getLevel();
+        if (level != null) {
+            gen.writeFieldName(LEVEL);
+            gen.writeString(level.name());
+        }
+
+        Marker marker = event.getMarker();
+        if (marker != null) {
+            gen.writeFieldName(MARKER);
+            provider.defaultSerializeValue(marker, gen);
+        }
+
+        writeMessage(gen, event.getMessage());
+
+        ThrowableProxy thrownProxy = event.getThrownProxy();
+        if (thrownProxy != null) {
+            gen.writeFieldName(THROWN);
+            provider.defaultSerializeValue(thrownProxy, gen);
+        }
+
+        writeNonEmpty(gen, THREAD, event.getThreadName());
+
+        gen.writeEndObject();
+
+    }
+
+    private void writeMessage(JsonGenerator gen, Message message) throws IOException {
+
+        if (message == null) {
+            return;
+        }
+
+        gen.writeFieldName(MESSAGE);
+
+        if (!(message instanceof StringBuilderFormattable)) {
+            gen.writeString(message.getFormattedMessage());
+            return;
+        }
+
+        MessageBuffer buffer = messageBuffers.get();
+        StringBuilder formatted = buffer.builder;
+        formatted.setLength(0);
+        ((StringBuilderFormattable) message).formatTo(formatted);
+
+        gen.writeString(buffer.toChars(), 0, formatted.length());
+
+        buffer.trim();
+
+    }
+
+    private void writeNonEmpty(JsonGenerator gen, SerializableString fieldName, String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            gen.writeFieldName(fieldName);
+            gen.writeString(value);
+        }
+    }
+
+    /**
+     * Per-thread message formatting buffers. Buffers that grew above {@link #MAX_REUSABLE_BUFFER_SIZE} are discarded after use,
+     * so a single large message doesn't pin memory for the lifetime of the thread.
+     */
+    private static final class MessageBuffer {
+
+        private StringBuilder builder = new StringBuilder(256);
+        private char[] chars = new char[256];
+
+        char[] toChars() {
+            int length = builder.length();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            builder.getChars(0, length, chars, 0);
+            return chars;
+        }
+
+        void trim() {
+            if (builder.capacity() > MAX_REUSABLE_BUFFER_SIZE) {
+                builder = new StringBuilder(256);
+            }
+            if (chars.length > MAX_REUSABLE_BUFFER_SIZE) {
+                chars = new char[256];
+            }
+        }
+
+    }
+
+}
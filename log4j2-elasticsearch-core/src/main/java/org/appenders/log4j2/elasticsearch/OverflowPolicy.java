@@ -0,0 +1,54 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Defines {@link BulkEmitter} behaviour when number of undelivered items reached configured capacity.
+ * Number of dropped and diverted items is available via {@link BulkEmitter#getDroppedCount()} and {@link BulkEmitter#getDivertedCount()}
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Waits until enough items are delivered, but not longer than configured overflow timeout. Item is dropped if timeout expired
+     */
+    BLOCK,
+
+    /**
+     * Drops incoming item
+     */
+    DROP_NEWEST,
+
+    /**
+     * Drops oldest undelivered item to make room for incoming one. Incoming item is dropped if oldest one is not available at the moment
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drops incoming items logged below configured overflow level before they're serialized. Remaining items are handled as with {@link #BLOCK}
+     */
+    DROP_BELOW_LEVEL,
+
+    /**
+     * Redirects incoming item to configured {@link FailoverPolicy}
+     */
+    FAILOVER
+
+}
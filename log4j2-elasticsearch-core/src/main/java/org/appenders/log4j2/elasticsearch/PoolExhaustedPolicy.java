@@ -0,0 +1,44 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Defines {@link PooledItemSourceFactory} behaviour when underlying pool cannot provide more elements, e.g. {@link LimitedResizePolicy} limit was reached.
+ * Number of dropped and diverted items is available via {@link PooledItemSourceFactory#getDroppedCount()} and {@link PooledItemSourceFactory#getDivertedCount()}
+ */
+public enum PoolExhaustedPolicy {
+
+    /**
+     * Waits until pooled element is released, but not longer than configured resize timeout. Item is dropped if timeout expired
+     */
+    WAIT,
+
+    /**
+     * Drops incoming item
+     */
+    DROP,
+
+    /**
+     * Serializes incoming item to {@code String} and redirects it to configured {@link FailoverPolicy}
+     */
+    FAILOVER
+
+}
@@ -20,35 +20,69 @@ package org.appenders.log4j2.elasticsearch;
  * #L%
  */
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import org.apache.logging.log4j.core.AbstractLifeCycle;
+import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.ConfigurationException;
 import org.apache.logging.log4j.core.config.Node;
 import org.apache.logging.log4j.core.config.plugins.Plugin;
 import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
 import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
 
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Uses underlying {@link BufferedItemSourcePool} to get {@link BufferedItemSource} instances.
+ * <p>
+ * If underlying pool cannot provide more elements, {@link PoolExhaustedPolicy} is applied.
+ * <p>
+ * If shared, underlying pool is shared with all other shared instances with the same pool name within the same LoggerContext.
+ * Pool is created with configuration of the first instance and each instance can hold up to configured quota of it's elements.
  */
 @Plugin(name = PooledItemSourceFactory.PLUGIN_NAME, category = Node.CATEGORY, elementType = ItemSourceFactory.ELEMENT_TYPE, printObject = true)
 public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSourceFactory {
 
     public static final String PLUGIN_NAME = "PooledItemSourceFactory";
 
+    private static final long EXHAUSTED_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
     final ItemSourcePool bufferedItemSourcePool;
 
+    private final PoolExhaustedPolicy poolExhaustedPolicy;
+    private final long exhaustedTimeoutInNanos;
+    private final FailoverPolicy failoverPolicy;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong divertedCount = new AtomicLong();
+
     protected PooledItemSourceFactory(ItemSourcePool bufferedItemSourcePool) {
+        this(bufferedItemSourcePool, PoolExhaustedPolicy.WAIT, Builder.DEFAULT_RESIZE_TIMEOUT, new NoopFailoverPolicy());
+    }
+
+    /**
+     * @param bufferedItemSourcePool source of pooled elements
+     * @param poolExhaustedPolicy behaviour applied when given pool cannot provide more elements
+     * @param exhaustedTimeout max number of millis to wait for released element with {@link PoolExhaustedPolicy#WAIT}
+     * @param failoverPolicy handler of items diverted with {@link PoolExhaustedPolicy#FAILOVER}
+     */
+    protected PooledItemSourceFactory(ItemSourcePool bufferedItemSourcePool, PoolExhaustedPolicy poolExhaustedPolicy, long exhaustedTimeout, FailoverPolicy failoverPolicy) {
         this.bufferedItemSourcePool = bufferedItemSourcePool;
+        this.poolExhaustedPolicy = poolExhaustedPolicy;
+        this.exhaustedTimeoutInNanos = TimeUnit.MILLISECONDS.toNanos(exhaustedTimeout);
+        this.failoverPolicy = failoverPolicy;
     }
 
     /**
@@ -64,18 +98,16 @@ public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSo
      *
      * @param source item to serialize
      * @param objectWriter writer to be used to serialize given item
-     * @throws IllegalStateException if underlying pool cannot provide {@link BufferedItemSource}
      * @throws IllegalArgumentException if serialization failed
-     * @return {@link BufferedItemSource} with serialized event
+     * @return {@link BufferedItemSource} with serialized event; null if underlying pool cannot provide {@link BufferedItemSource}
+     * and given item was dropped or diverted by {@link PoolExhaustedPolicy}
      */
     @Override
     public ItemSource create(Object source, ObjectWriter objectWriter) {
-        ItemSource<ByteBuf> pooled;
-        try {
-            pooled = bufferedItemSourcePool.getPooled();
-        } catch (PoolResourceException e) {
-            // FIXME: stop throwing and redirect to failover policy here
-            throw new IllegalStateException(e);
+        ItemSource<ByteBuf> pooled = getPooledOrNull();
+        if (pooled == null) {
+            handleExhausted(source, objectWriter);
+            return null;
         }
 
         try {
@@ -87,8 +119,75 @@ public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSo
         }
     }
 
+    private ItemSource<ByteBuf> getPooledOrNull() {
+        try {
+            return bufferedItemSourcePool.getPooled();
+        } catch (PoolResourceException e) {
+            return poolExhaustedPolicy == PoolExhaustedPolicy.WAIT ? awaitPooled() : null;
+        }
+    }
+
+    private ItemSource<ByteBuf> awaitPooled() {
+
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < exhaustedTimeoutInNanos && !Thread.currentThread().isInterrupted()) {
+
+            LockSupport.parkNanos(EXHAUSTED_BACKOFF_NANOS);
+
+            // don't let the pool attempt to resize until something was released
+            if (bufferedItemSourcePool.getAvailableSize() == 0) {
+                continue;
+            }
+
+            try {
+                return bufferedItemSourcePool.getPooled();
+            } catch (PoolResourceException e) {
+                // released element was taken by another thread
+            }
+
+        }
+        return null;
+
+    }
+
+    private void handleExhausted(Object source, ObjectWriter objectWriter) {
+
+        if (poolExhaustedPolicy != PoolExhaustedPolicy.FAILOVER) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        String failedPayload;
+        try {
+            failedPayload = objectWriter.writeValueAsString(source);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        divertedCount.incrementAndGet();
+        failoverPolicy.deliver(failedPayload);
+
+    }
+
+    /**
+     * @return number of items dropped by {@link PoolExhaustedPolicy}
+     */
+    public final long getDroppedCount() {
+        return droppedCount.get();
+    }
+
     /**
+     * @return number of items redirected to {@link FailoverPolicy} by {@link PoolExhaustedPolicy#FAILOVER}
+     */
+    public final long getDivertedCount() {
+        return divertedCount.get();
+    }
+
+    /**
+     * Never waits for pooled elements, regardless of configured {@link PoolExhaustedPolicy}, as it's called by batch delivery threads.
+     *
      * @return {@link BufferedItemSource} with no content
+     * @throws IllegalStateException if pooled element couldn't be obtained; batch items are left queued by {@link BulkEmitter} in such case
      */
     @Override
     public ItemSource createEmptySource() {
@@ -114,10 +213,20 @@ public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSo
 
         public static final long DEFAULT_RESIZE_TIMEOUT = 1000L;
         public static final long DEFAULT_MONITOR_TASK_INTERVAL = 30000L;
+        public static final long DEFAULT_LEAK_THRESHOLD = 60000L;
+
+        @PluginConfiguration
+        protected Configuration configuration;
 
         @PluginBuilderAttribute
         protected String poolName;
 
+        @PluginBuilderAttribute
+        protected boolean shared;
+
+        @PluginBuilderAttribute
+        protected int quota;
+
         @PluginElement(ResizePolicy.ELEMENT_TYPE)
         protected ResizePolicy resizePolicy;
 
@@ -127,15 +236,51 @@ public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSo
         @PluginBuilderAttribute
         protected int initialPoolSize;
 
+        @PluginBuilderAttribute
+        protected int eagerPoolSize;
+
         @PluginBuilderAttribute
         protected boolean monitored;
 
         @PluginBuilderAttribute
         protected long monitorTaskInterval = DEFAULT_MONITOR_TASK_INTERVAL;
 
+        @PluginBuilderAttribute
+        protected boolean jmxEnabled;
+
         @PluginBuilderAttribute
         protected long resizeTimeout = DEFAULT_RESIZE_TIMEOUT;
 
+        @PluginBuilderAttribute
+        protected int threadLocalCacheSize;
+
+        @PluginBuilderAttribute
+        protected int maxItemSizeInBytes;
+
+        @PluginBuilderAttribute
+        protected double leakDetectionSampleRate;
+
+        @PluginBuilderAttribute
+        protected long leakThreshold = DEFAULT_LEAK_THRESHOLD;
+
+        @PluginBuilderAttribute
+        protected boolean lifo;
+
+        @PluginBuilderAttribute
+        protected PoolExhaustedPolicy poolExhaustedPolicy = PoolExhaustedPolicy.WAIT;
+
+        @PluginElement(FailoverPolicy.ELEMENT_TYPE)
+        protected FailoverPolicy failoverPolicy = new NoopFailoverPolicy();
+
+        @PluginBuilderAttribute
+        protected boolean directBuffers;
+
+        @PluginBuilderAttribute
+        protected boolean pooledAllocator;
+
+        @PluginBuilderAttribute
+        protected int allocatorArenas;
+
         @Override
         public PooledItemSourceFactory build() {
 
@@ -145,6 +290,45 @@ public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSo
             if (itemSizeInBytes <= 0) {
                 throw new ConfigurationException("itemSizeInBytes must be higher than 0 for " + PLUGIN_NAME);
             }
+            if (eagerPoolSize < 0) {
+                throw new ConfigurationException("eagerPoolSize cannot be negative for " + PLUGIN_NAME);
+            }
+            if (threadLocalCacheSize < 0) {
+                throw new ConfigurationException("threadLocalCacheSize cannot be negative for " + PLUGIN_NAME);
+            }
+            if (maxItemSizeInBytes < 0) {
+                throw new ConfigurationException("maxItemSizeInBytes cannot be negative for " + PLUGIN_NAME);
+            }
+            if (maxItemSizeInBytes > 0 && maxItemSizeInBytes < itemSizeInBytes) {
+                throw new ConfigurationException("maxItemSizeInBytes must be higher than or equal to itemSizeInBytes for " + PLUGIN_NAME);
+            }
+            if (leakDetectionSampleRate < 0 || leakDetectionSampleRate > 1) {
+                throw new ConfigurationException("leakDetectionSampleRate must be between 0 and 1 for " + PLUGIN_NAME);
+            }
+            if (leakThreshold <= 0) {
+                throw new ConfigurationException("leakThreshold must be higher than 0 for " + PLUGIN_NAME);
+            }
+            if (poolExhaustedPolicy == null) {
+                throw new ConfigurationException("No poolExhaustedPolicy provided for " + PLUGIN_NAME);
+            }
+            if (failoverPolicy == null) {
+                throw new ConfigurationException("No failoverPolicy provided for " + PLUGIN_NAME);
+            }
+            if (allocatorArenas < 0) {
+                throw new ConfigurationException("allocatorArenas cannot be negative for " + PLUGIN_NAME);
+            }
+            if (shared && poolName == null) {
+                throw new ConfigurationException("poolName must be provided if pool is shared for " + PLUGIN_NAME);
+            }
+            if (quota < 0) {
+                throw new ConfigurationException("quota cannot be negative for " + PLUGIN_NAME);
+            }
+            if (quota > 0 && !shared) {
+                throw new ConfigurationException("quota can be applied to shared pool only for " + PLUGIN_NAME);
+            }
+            if (resizePolicy instanceof LimitedResizePolicy && ((LimitedResizePolicy) resizePolicy).isExceededBy(initialPoolSize, itemSizeInBytes)) {
+                throw new ConfigurationException("initialPoolSize cannot exceed maxSize or maxBytes of " + LimitedResizePolicy.PLUGIN_NAME + " for " + PLUGIN_NAME);
+            }
 
             if (poolName == null) {
                 poolName = UUID.randomUUID().toString();
@@ -162,7 +346,9 @@ public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSo
                 this.resizePolicy = resizePolicy;
             }
 
-            return new PooledItemSourceFactory(configuredBufferedItemSourcePool());
+            ItemSourcePool itemSourcePool = shared ? sharedBufferedItemSourcePool() : configuredBufferedItemSourcePool();
+
+            return new PooledItemSourceFactory(itemSourcePool, poolExhaustedPolicy, resizeTimeout, failoverPolicy);
 
         }
 
@@ -174,18 +360,81 @@ public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSo
             return UnlimitedResizePolicy.newBuilder().build();
         }
 
+        /**
+         * @return {@code io.netty.buffer.PooledByteBufAllocator} if {@link #pooledAllocator} is true, {@code io.netty.buffer.UnpooledByteBufAllocator} otherwise
+         */
+        ByteBufAllocator createByteBufAllocator() {
+
+            if (!pooledAllocator) {
+                return new UnpooledByteBufAllocator(directBuffers, false, false);
+            }
+
+            // only arenas of configured buffer type are needed
+            int heapArenas = directBuffers ? 0 : (allocatorArenas > 0 ? allocatorArenas : PooledByteBufAllocator.defaultNumHeapArena());
+            int directArenas = directBuffers ? (allocatorArenas > 0 ? allocatorArenas : PooledByteBufAllocator.defaultNumDirectArena()) : 0;
+
+            return new PooledByteBufAllocator(
+                    directBuffers,
+                    heapArenas,
+                    directArenas,
+                    PooledByteBufAllocator.defaultPageSize(),
+                    PooledByteBufAllocator.defaultMaxOrder());
+
+        }
+
         /* extension point */
         ItemSourcePool configuredBufferedItemSourcePool() {
-            return new BufferedItemSourcePool(
-                    poolName,
-                    new UnpooledByteBufAllocator(false, false, false),
-                    resizePolicy,
-                    resizeTimeout,
-                    monitored,
-                    monitorTaskInterval,
+            return createBufferedItemSourcePool();
+        }
+
+        /**
+         * @return view of pool shared within current LoggerContext; pool is created with this configuration if it doesn't exist yet or if it was created with different settings
+         */
+        ItemSourcePool sharedBufferedItemSourcePool() {
+            String scope = configuration == null || configuration.getLoggerContext() == null ?
+                    null :
+                    configuration.getLoggerContext().getName();
+            return SharedItemSourcePool.acquire(scope, poolName, quota, getSharedPoolSettings(), this::createBufferedItemSourcePool);
+        }
+
+        /**
+         * @return description of settings applied by {@link #createBufferedItemSourcePool()}; allows to detect conflicting shared pool configs
+         */
+        String getSharedPoolSettings() {
+            return String.format("initialPoolSize=%s, eagerPoolSize=%s, itemSizeInBytes=%s, maxItemSizeInBytes=%s, resizePolicy=%s, resizeTimeout=%s, "
+                            + "threadLocalCacheSize=%s, lifo=%s, directBuffers=%s, pooledAllocator=%s, allocatorArenas=%s",
                     initialPoolSize,
-                    itemSizeInBytes
-            );
+                    eagerPoolSize,
+                    itemSizeInBytes,
+                    maxItemSizeInBytes,
+                    resizePolicy.getClass().getSimpleName(),
+                    resizeTimeout,
+                    threadLocalCacheSize,
+                    lifo,
+                    directBuffers,
+                    pooledAllocator,
+                    allocatorArenas);
+        }
+
+        BufferedItemSourcePool createBufferedItemSourcePool() {
+            return BufferedItemSourcePool.newBuilder()
+                    .withPoolName(poolName)
+                    .withByteBufAllocator(createByteBufAllocator())
+                    .withDirectBuffers(directBuffers)
+                    .withResizePolicy(resizePolicy)
+                    .withResizeTimeout(resizeTimeout)
+                    .withMonitored(monitored)
+                    .withMonitorTaskInterval(monitorTaskInterval)
+                    .withInitialPoolSize(initialPoolSize)
+                    .withItemSizeInBytes(itemSizeInBytes)
+                    .withThreadLocalCacheSize(threadLocalCacheSize)
+                    .withMaxItemSizeInBytes(maxItemSizeInBytes)
+                    .withLeakDetectionSampleRate(leakDetectionSampleRate)
+                    .withLeakThreshold(leakThreshold)
+                    .withLifo(lifo)
+                    .withEagerPoolSize(eagerPoolSize)
+                    .withJmxEnabled(jmxEnabled)
+                    .build();
         }
 
         /**
@@ -206,6 +455,18 @@ public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSo
             return this;
         }
 
+        /**
+         * Default: 0 (all {@link #initialPoolSize} elements are created on startup)
+         *
+         * @param eagerPoolSize number of elements created on startup if lower than {@link #initialPoolSize};
+         *                      remaining ones are created in the background
+         * @return this
+         */
+        public Builder withEagerPoolSize(int eagerPoolSize) {
+            this.eagerPoolSize = eagerPoolSize;
+            return this;
+        }
+
         /**
          * Default: random UUID
          *
@@ -217,6 +478,38 @@ public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSo
             return this;
         }
 
+        /**
+         * Default: false
+         *
+         * @param shared if true, underlying pool is shared with other shared {@link PooledItemSourceFactory} instances with the same
+         *               {@link #poolName} within the same LoggerContext; pool is created with configuration of the first one
+         * @return this
+         */
+        public Builder withShared(boolean shared) {
+            this.shared = shared;
+            return this;
+        }
+
+        /**
+         * Default: 0 (not limited)
+         *
+         * @param quota max number of shared pool elements held by this instance at the same time. Used only if {@link #shared} is true
+         * @return this
+         */
+        public Builder withQuota(int quota) {
+            this.quota = quota;
+            return this;
+        }
+
+        /**
+         * @param configuration current configuration; its LoggerContext determines which shared pools are visible
+         * @return this
+         */
+        public Builder withConfiguration(Configuration configuration) {
+            this.configuration = configuration;
+            return this;
+        }
+
         /**
          * Default: {@link #createResizePolicy()}
          *
@@ -238,6 +531,17 @@ public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSo
             return this;
         }
 
+        /**
+         * Default: false
+         *
+         * @param jmxEnabled if true, pool metrics will be registered as MBean in platform MBean server until pool is shut down
+         * @return this
+         */
+        public Builder withJmxEnabled(boolean jmxEnabled) {
+            this.jmxEnabled = jmxEnabled;
+            return this;
+        }
+
         /**
          * @param monitorTaskInterval milliseconds between two metrics snapshots
          * @return this
@@ -248,7 +552,7 @@ public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSo
         }
 
         /**
-         * @param resizeTimeout milliseconds to wait until {@link ResizePolicy} is applied
+         * @param resizeTimeout milliseconds to wait until {@link ResizePolicy} is applied; also max number of millis to wait for released element with {@link PoolExhaustedPolicy#WAIT}
          * @return this
          */
         public Builder withResizeTimeout(long resizeTimeout) {
@@ -256,6 +560,118 @@ public class PooledItemSourceFactory extends AbstractLifeCycle implements ItemSo
             return this;
         }
 
+        /**
+         * Default: 0 (disabled)
+         *
+         * @param threadLocalCacheSize max number of pooled elements cached by each thread getting them from the pool
+         * @return this
+         */
+        public Builder withThreadLocalCacheSize(int threadLocalCacheSize) {
+            this.threadLocalCacheSize = threadLocalCacheSize;
+            return this;
+        }
+
+        /**
+         * Default: 0 (disabled)
+         *
+         * @param leakDetectionSampleRate fraction of acquired pooled items tracked by leak detection, e.g. 0.01 tracks 1% of items
+         * @return this
+         */
+        public Builder withLeakDetectionSampleRate(double leakDetectionSampleRate) {
+            this.leakDetectionSampleRate = leakDetectionSampleRate;
+            return this;
+        }
+
+        /**
+         * Default: 60000
+         *
+         * @param leakThreshold number of millis after which tracked item not released yet is reported as possible leak; also interval between two reports
+         * @return this
+         */
+        public Builder withLeakThreshold(long leakThreshold) {
+            this.leakThreshold = leakThreshold;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param lifo if true, most recently released (cache-hot) pooled items are reused first and idle items are recycled first,
+         *             FIFO order otherwise
+         * @return this
+         */
+        public Builder withLifo(boolean lifo) {
+            this.lifo = lifo;
+            return this;
+        }
+
+        /**
+         * Default: {@link PoolExhaustedPolicy#WAIT}
+         *
+         * @param poolExhaustedPolicy behaviour applied when underlying pool cannot provide more elements, e.g. {@link LimitedResizePolicy} limit was reached
+         * @return this
+         */
+        public Builder withPoolExhaustedPolicy(PoolExhaustedPolicy poolExhaustedPolicy) {
+            this.poolExhaustedPolicy = poolExhaustedPolicy;
+            return this;
+        }
+
+        /**
+         * Default: {@link NoopFailoverPolicy}
+         *
+         * @param failoverPolicy handler of items diverted with {@link PoolExhaustedPolicy#FAILOVER}
+         * @return this
+         */
+        public Builder withFailoverPolicy(FailoverPolicy failoverPolicy) {
+            this.failoverPolicy = failoverPolicy;
+            return this;
+        }
+
+        /**
+         * Default: 0 (disabled)
+         *
+         * @param maxItemSizeInBytes released pooled items with capacity higher than this value will be shrunk back to {@link #itemSizeInBytes}
+         * @return this
+         */
+        public Builder withMaxItemSizeInBytes(int maxItemSizeInBytes) {
+            this.maxItemSizeInBytes = maxItemSizeInBytes;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param directBuffers if true, off-heap buffers will be used, heap buffers otherwise
+         * @return this
+         */
+        public Builder withDirectBuffers(boolean directBuffers) {
+            this.directBuffers = directBuffers;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param pooledAllocator if true, buffer memory will be allocated by {@code io.netty.buffer.PooledByteBufAllocator},
+         *                        {@code io.netty.buffer.UnpooledByteBufAllocator} otherwise
+         * @return this
+         */
+        public Builder withPooledAllocator(boolean pooledAllocator) {
+            this.pooledAllocator = pooledAllocator;
+            return this;
+        }
+
+        /**
+         * Default: 0 (Netty defaults)
+         *
+         * @param allocatorArenas number of {@code io.netty.buffer.PooledByteBufAllocator} arenas. Used only if {@link #pooledAllocator} is true
+         * @return this
+         */
+        public Builder withAllocatorArenas(int allocatorArenas) {
+            this.allocatorArenas = allocatorArenas;
+            return this;
+        }
+
     }
 
 }
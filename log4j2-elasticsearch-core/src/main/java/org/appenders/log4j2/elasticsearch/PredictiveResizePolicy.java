@@ -0,0 +1,282 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.core.config.ConfigurationException;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+
+/**
+ * {@link ResizePolicy} growing given {@link ItemSourcePool} in the background, before it runs out of elements.
+ * <p>
+ * Every {@link #getSampleInterval()} millis, number of elements in use and it's change since previous sample are smoothed with
+ * exponentially weighted moving average (EWMA). If current usage extrapolated by {@code lookahead} samples (plus spare elements)
+ * exceeds pool's total size, pool is grown on the pool's executor.
+ * <p>
+ * {@link #decrease(ItemSourcePool)} shrinks the pool gradually, by {@code resizeFactor} of elements exceeding smoothed demand at a time.
+ * <p>
+ * {@link #increase(ItemSourcePool)} works like {@link UnlimitedResizePolicy#increase(ItemSourcePool)} and is used only if prediction was not sufficient.
+ */
+@Plugin(name = PredictiveResizePolicy.PLUGIN_NAME, category = Node.CATEGORY, elementType = ResizePolicy.ELEMENT_TYPE, printObject = true)
+public final class PredictiveResizePolicy implements ResizePolicy {
+
+    public static final String PLUGIN_NAME = "PredictiveResizePolicy";
+
+    private final double resizeFactor;
+    private final long sampleInterval;
+    private final double smoothingFactor;
+    private final int lookahead;
+
+    // sampled and decreased on pool's executor only
+    private volatile boolean sampled;
+    private volatile double averageInUse;
+    private volatile double averageGrowth;
+    private volatile int lastInUse;
+
+    private PredictiveResizePolicy(double resizeFactor, long sampleInterval, double smoothingFactor, int lookahead) {
+        this.resizeFactor = resizeFactor;
+        this.sampleInterval = sampleInterval;
+        this.smoothingFactor = smoothingFactor;
+        this.lookahead = lookahead;
+    }
+
+    /**
+     * Attempts to resize given pool when it ran out of elements despite sampling.
+     * <p>
+     * Additional pool size is calculated based on it's {@link ItemSourcePool#getInitialSize()}.
+     *
+     * @param itemSourcePool pool to be resized
+     * @throws ConfigurationException when {@code resizeFactor * initialPoolSize == 0}
+     * @return true, if resize operation was successful, false otherwise
+     */
+    @Override
+    public boolean increase(ItemSourcePool itemSourcePool) {
+
+        int additionalPoolSize = getSpareSize(itemSourcePool);
+
+        if (additionalPoolSize == 0) {
+            throw new ConfigurationException(String.format("Applying %s with resizeFactor %s will not resize given pool [%s] with initialPoolSize %s",
+                    ResizePolicy.class.getSimpleName(),
+                    resizeFactor,
+                    itemSourcePool.getName(),
+                    itemSourcePool.getInitialSize()));
+        }
+
+        itemSourcePool.incrementPoolSize(additionalPoolSize);
+
+        return true;
+    }
+
+    /**
+     * Removes up to {@code resizeFactor} of elements exceeding predicted demand.
+     * <p>
+     * Single resize operation will never decrease pool's size below it's {@link ItemSourcePool#getInitialSize()}
+     *
+     * @param itemSourcePool pool to be resized
+     * @return true, if any elements were removed, false otherwise
+     */
+    @Override
+    public boolean decrease(ItemSourcePool itemSourcePool) {
+
+        if (!sampled) {
+            return false;
+        }
+
+        int totalSize = itemSourcePool.getTotalSize();
+        int demand = (int) Math.ceil(averageInUse + Math.max(0, averageGrowth) * lookahead) + getSpareSize(itemSourcePool);
+        int excess = totalSize - Math.max(itemSourcePool.getInitialSize(), demand);
+
+        int decreaseSize = Math.min((int) Math.ceil(excess * resizeFactor), itemSourcePool.getRecyclableSize());
+        if (decreaseSize <= 0) {
+            return false;
+        }
+
+        for (int ii = 0; ii < decreaseSize; ii++) {
+            itemSourcePool.remove();
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Updates smoothed usage of given pool and grows it if predicted usage exceeds it's total size.
+     *
+     * @param itemSourcePool pool to be sampled and resized
+     * @return true, if pool was grown, false otherwise
+     */
+    @Override
+    public boolean sample(ItemSourcePool itemSourcePool) {
+
+        int totalSize = itemSourcePool.getTotalSize();
+        int inUse = Math.max(0, totalSize - itemSourcePool.getAvailableSize());
+
+        if (sampled) {
+            averageGrowth = smoothingFactor * (inUse - lastInUse) + (1 - smoothingFactor) * averageGrowth;
+            averageInUse = smoothingFactor * inUse + (1 - smoothingFactor) * averageInUse;
+        } else {
+            averageInUse = inUse;
+            sampled = true;
+        }
+        lastInUse = inUse;
+
+        // current usage, not the average, so sudden spikes are not missed
+        int predictedSize = (int) Math.ceil(inUse + Math.max(0, averageGrowth) * lookahead) + getSpareSize(itemSourcePool);
+        if (predictedSize <= totalSize) {
+            return false;
+        }
+
+        itemSourcePool.incrementPoolSize(predictedSize - totalSize);
+
+        return true;
+
+    }
+
+    @Override
+    public long getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * @return smoothed number of elements in use
+     */
+    double getAverageInUse() {
+        return averageInUse;
+    }
+
+    /**
+     * @return smoothed change of number of elements in use between two samples
+     */
+    double getAverageGrowth() {
+        return averageGrowth;
+    }
+
+    private int getSpareSize(ItemSourcePool itemSourcePool) {
+        return (int) (itemSourcePool.getInitialSize() * resizeFactor);
+    }
+
+    @PluginBuilderFactory
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder implements org.apache.logging.log4j.core.util.Builder<PredictiveResizePolicy> {
+
+        /**
+         * Default resize factor
+         */
+        public static final double DEFAULT_RESIZE_FACTOR = 0.50;
+
+        /**
+         * Default sample interval
+         */
+        public static final long DEFAULT_SAMPLE_INTERVAL = 250;
+
+        /**
+         * Default EWMA smoothing factor
+         */
+        public static final double DEFAULT_SMOOTHING_FACTOR = 0.3;
+
+        /**
+         * Default number of sample intervals to predict usage for
+         */
+        public static final int DEFAULT_LOOKAHEAD = 4;
+
+        @PluginBuilderAttribute
+        private double resizeFactor = DEFAULT_RESIZE_FACTOR;
+
+        @PluginBuilderAttribute
+        private long sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+        @PluginBuilderAttribute
+        private double smoothingFactor = DEFAULT_SMOOTHING_FACTOR;
+
+        @PluginBuilderAttribute
+        private int lookahead = DEFAULT_LOOKAHEAD;
+
+        @Override
+        public PredictiveResizePolicy build() {
+
+            if (resizeFactor <= 0) {
+                throw new ConfigurationException("resizeFactor must be higher than 0");
+            }
+
+            if (resizeFactor > 1) {
+                throw new ConfigurationException("resizeFactor must be lower or equal 1");
+            }
+
+            if (sampleInterval <= 0) {
+                throw new ConfigurationException("sampleInterval must be higher than 0 for " + PLUGIN_NAME);
+            }
+
+            if (smoothingFactor <= 0 || smoothingFactor > 1) {
+                throw new ConfigurationException("smoothingFactor must be higher than 0 and lower or equal 1 for " + PLUGIN_NAME);
+            }
+
+            if (lookahead <= 0) {
+                throw new ConfigurationException("lookahead must be higher than 0 for " + PLUGIN_NAME);
+            }
+
+            return new PredictiveResizePolicy(resizeFactor, sampleInterval, smoothingFactor, lookahead);
+        }
+
+        /**
+         * @param resizeFactor fraction of {@link ItemSourcePool#getInitialSize()} kept available on top of predicted usage;
+         *                     also fraction of excess elements removed by single decrease
+         * @return this
+         */
+        public Builder withResizeFactor(double resizeFactor) {
+            this.resizeFactor = resizeFactor;
+            return this;
+        }
+
+        /**
+         * @param sampleInterval number of millis between two samples
+         * @return this
+         */
+        public Builder withSampleInterval(long sampleInterval) {
+            this.sampleInterval = sampleInterval;
+            return this;
+        }
+
+        /**
+         * @param smoothingFactor weight of the latest sample, higher values react faster to changes
+         * @return this
+         */
+        public Builder withSmoothingFactor(double smoothingFactor) {
+            this.smoothingFactor = smoothingFactor;
+            return this;
+        }
+
+        /**
+         * @param lookahead number of sample intervals to predict usage for
+         * @return this
+         */
+        public Builder withLookahead(int lookahead) {
+            this.lookahead = lookahead;
+            return this;
+        }
+
+    }
+
+}
@@ -40,4 +40,24 @@ public interface ResizePolicy {
      */
     boolean decrease(ItemSourcePool itemSourcePool);
 
+    /**
+     * Allows to resize given pool in the background, before it runs out of elements.
+     * Invoked by the pool every {@link #getSampleInterval()} millis if interval is higher than 0.
+     *
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @param itemSourcePool pool to be sampled and resized
+     * @return true, if any resizing was performed, false otherwise
+     */
+    default boolean sample(ItemSourcePool itemSourcePool) {
+        return false;
+    }
+
+    /**
+     * NOTE: {@code default} added for backwards compatibility. {@code default} will be removed future releases
+     * @return number of millis between two {@link #sample(ItemSourcePool)} calls; 0 if sampling is not needed
+     */
+    default long getSampleInterval() {
+        return 0;
+    }
+
 }
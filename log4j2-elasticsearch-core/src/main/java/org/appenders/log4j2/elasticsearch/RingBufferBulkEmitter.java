@@ -0,0 +1,164 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link BulkEmitter} backed by preallocated, multi-producer ring buffer.
+ * <p>
+ * Producers claim consecutive slots with a single atomic increment and publish items by writing claimed slots.
+ * Items are drained by notifying thread only, so no additional synchronization is required to consume them.
+ * <p>
+ * No objects are allocated per added item. Slot is claimed only if it's free, so ring buffer size is a hard capacity limit:
+ * if it's full, configured {@link OverflowPolicy} is applied, same as when configured capacity is exhausted.
+ *
+ * @param <BATCH_TYPE> type of processed batches
+ */
+public class RingBufferBulkEmitter<BATCH_TYPE> extends BulkEmitter<BATCH_TYPE> {
+
+    private final int mask;
+    private final AtomicReferenceArray<Object> slots;
+
+    // next sequence to claim; shared by all producers
+    private final AtomicLong tail = new AtomicLong();
+
+    // next sequence to drain; written by notifying thread only
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param atSize number of items that should trigger a delivery
+     * @param intervalInMillis millis between two time-triggered deliveries
+     * @param ringBufferSize number of slots; will be rounded up to the next power of two
+     * @param batchOperations batch factory
+     */
+    public RingBufferBulkEmitter(int atSize, int intervalInMillis, int ringBufferSize, BatchOperations<BATCH_TYPE> batchOperations) {
+        this(BatchEmitterConfig.newBuilder()
+                .withBatchSize(atSize)
+                .withDeliveryInterval(intervalInMillis)
+                .withRingBufferSize(ringBufferSize)
+                .build(), batchOperations);
+    }
+
+    /**
+     * @param config emitter settings; {@link BatchEmitterConfig#getRingBufferSize()} will be rounded up to the next power of two
+     * @param batchOperations batch factory
+     */
+    public RingBufferBulkEmitter(BatchEmitterConfig config, BatchOperations<BATCH_TYPE> batchOperations) {
+        super(config, batchOperations);
+        int capacity = ceilingPowerOfTwo(config.getRingBufferSize());
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * @return true, if configured capacity is exhausted or there are no free slots
+     */
+    @Override
+    protected boolean isFull() {
+        return super.isFull() || getUndeliveredSize() >= slots.length();
+    }
+
+    /**
+     * @param batchItem item to store
+     * @return number of items added since last delivery; -1 if there are no free slots
+     */
+    @Override
+    protected int enqueue(Object batchItem) {
+
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head.get() >= slots.length()) {
+                // claimed sequence couldn't be given back, so slot is claimed only if it's free
+                return -1;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        slots.lazySet((int) sequence & mask, batchItem);
+
+        return (int) (sequence + 1 - head.get());
+    }
+
+    @Override
+    protected int resetAndGetPendingSize() {
+        return (int) Math.min(tail.get() - head.get(), slots.length());
+    }
+
+    @Override
+    protected Object poll() {
+
+        long current = head.get();
+        int index = (int) current & mask;
+
+        Object item = slots.get(index);
+        if (item == null) {
+            // claimed, but not published yet; it will be delivered with next batch
+            return null;
+        }
+
+        // release the slot
+        slots.lazySet(index, null);
+        head.lazySet(current + 1);
+
+        return item;
+
+    }
+
+    /**
+     * Slots are drained by notifying thread only, so oldest item is available only if no delivery is in progress.
+     */
+    @Override
+    protected Object pollOldest() {
+        return pollExclusively();
+    }
+
+    @Override
+    protected int getUndeliveredSize() {
+        return (int) (tail.get() - head.get());
+    }
+
+    @Override
+    protected int getPendingSize() {
+        return getUndeliveredSize();
+    }
+
+    @Override
+    protected boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    /**
+     * @return number of slots available in this ring buffer
+     */
+    public final int getCapacity() {
+        return slots.length();
+    }
+
+    static int ceilingPowerOfTwo(int value) {
+        if (value <= 1) {
+            return 1;
+        }
+        return 1 << (32 - Integer.numberOfLeadingZeros(value - 1));
+    }
+
+}
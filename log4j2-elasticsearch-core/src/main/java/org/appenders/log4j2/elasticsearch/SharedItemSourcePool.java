@@ -0,0 +1,268 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.netty.buffer.ByteBuf;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * View of {@link BufferedItemSourcePool} shared by all users acquired with the same scope and name (by default, pool name within one LoggerContext).
+ * Underlying pool is created on first {@link #acquire(String, String, int, Supplier)} and shut down when the last user calls {@link #shutdown()}.
+ * If underlying pool settings change (e.g. on reconfiguration), new pool is created for the new settings and users of the previous one keep it
+ * until they release it.
+ * <p>
+ * Each user gets its own view. If quota is configured, view fails fast with {@link PoolResourceException} while given number of elements
+ * acquired with it was not released yet, so a single user cannot exhaust the shared pool. Quota usage is tracked on pooled elements, so no
+ * additional objects are created on {@link #getPooled()}.
+ * <p>
+ * NOTE: Consider this class <i>private</i>. Design may change before the code is stabilized.
+ */
+class SharedItemSourcePool implements ItemSourcePool<ByteBuf> {
+
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    /**
+     * Scope used if no LoggerContext name was available
+     */
+    static final String DEFAULT_SCOPE = "default";
+
+    private static final Map<String, Shared> POOLS = new HashMap<>();
+
+    private final Shared shared;
+    // 0 if not limited
+    private final int quota;
+    private final AtomicInteger quotaUsage = new AtomicInteger();
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private SharedItemSourcePool(Shared shared, int quota) {
+        this.shared = shared;
+        this.quota = quota;
+    }
+
+    /**
+     * @param scope pool scope, e.g. LoggerContext name; {@link #DEFAULT_SCOPE} is used if null
+     * @param name pool name
+     * @param quota max number of elements held by returned view at the same time; 0 if not limited
+     * @param poolFactory creates underlying pool if pool with given scope and name doesn't exist yet
+     * @return new view of existing or newly created pool
+     */
+    static SharedItemSourcePool acquire(String scope, String name, int quota, Supplier<BufferedItemSourcePool> poolFactory) {
+        return acquire(scope, name, quota, null, poolFactory);
+    }
+
+    /**
+     * If given settings are different than settings of existing pool, new underlying pool is created and becomes the one shared by next users.
+     * Previous pool is shut down when the last of its users calls {@link #shutdown()}. Warning is logged in such case, as users of both
+     * pools don't share elements until previous pool is released.
+     *
+     * @param scope pool scope, e.g. LoggerContext name; {@link #DEFAULT_SCOPE} is used if null
+     * @param name pool name
+     * @param quota max number of elements held by returned view at the same time; 0 if not limited
+     * @param settings description of underlying pool settings of this user; null if settings should not be compared
+     * @param poolFactory creates underlying pool if pool with given scope and name and settings doesn't exist yet
+     * @return new view of existing or newly created pool
+     */
+    static SharedItemSourcePool acquire(String scope, String name, int quota, String settings, Supplier<BufferedItemSourcePool> poolFactory) {
+
+        String key = (scope == null ? DEFAULT_SCOPE : scope) + "/" + name;
+
+        synchronized (POOLS) {
+
+            Shared shared = POOLS.get(key);
+            if (shared == null) {
+                shared = new Shared(key, poolFactory.get(), settings);
+                POOLS.put(key, shared);
+            } else if (settings != null && shared.settings != null && !settings.equals(shared.settings)) {
+                LOGGER.warn("Shared pool [{}] settings changed from [{}] to [{}]. New pool created. Previous pool will be shut down when released by its {} user(s)",
+                        key,
+                        shared.settings,
+                        settings,
+                        shared.refCount);
+                shared = new Shared(key, poolFactory.get(), settings);
+                POOLS.put(key, shared);
+            }
+
+            shared.refCount++;
+            return new SharedItemSourcePool(shared, quota);
+        }
+
+    }
+
+    /**
+     * Delegates to underlying pool
+     */
+    @Override
+    public void incrementPoolSize(int delta) {
+        shared.pool.incrementPoolSize(delta);
+    }
+
+    /**
+     * Delegates to underlying pool
+     */
+    @Override
+    public void incrementPoolSize() {
+        shared.pool.incrementPoolSize();
+    }
+
+    /**
+     * Elements returned by this method MUST be returned to the pool by calling {@link ItemSource#release()}.
+     *
+     * @throws PoolResourceException if quota was exceeded or underlying pool couldn't provide the element
+     * @return pooled {@link BufferedItemSource}
+     */
+    @Override
+    public ItemSource<ByteBuf> getPooled() throws PoolResourceException {
+
+        if (quota == 0) {
+            return shared.pool.getPooled();
+        }
+
+        if (quotaUsage.incrementAndGet() > quota) {
+            quotaUsage.decrementAndGet();
+            throw new PoolResourceException(String.format("Quota of %s elements of shared pool %s exceeded", quota, getName()));
+        }
+
+        try {
+            return shared.pool.getPooled(quotaUsage);
+        } catch (PoolResourceException e) {
+            quotaUsage.decrementAndGet();
+            throw e;
+        }
+
+    }
+
+    /**
+     * Delegates to underlying pool
+     */
+    @Override
+    public boolean remove() {
+        return shared.pool.remove();
+    }
+
+    @Override
+    public String getName() {
+        return shared.pool.getName();
+    }
+
+    @Override
+    public int getInitialSize() {
+        return shared.pool.getInitialSize();
+    }
+
+    @Override
+    public int getTotalSize() {
+        return shared.pool.getTotalSize();
+    }
+
+    /**
+     * @return Number of pooled elements available to this view
+     */
+    @Override
+    public int getAvailableSize() {
+
+        int availableSize = shared.pool.getAvailableSize();
+        if (quota == 0) {
+            return availableSize;
+        }
+        return Math.max(0, Math.min(availableSize, quota - quotaUsage.get()));
+
+    }
+
+    /**
+     * Delegates to underlying pool
+     */
+    @Override
+    public int getRecyclableSize() {
+        return shared.pool.getRecyclableSize();
+    }
+
+    @Override
+    public int getItemSizeInBytes() {
+        return shared.pool.getItemSizeInBytes();
+    }
+
+    /**
+     * Delegates to underlying pool
+     */
+    @Override
+    public long getTotalSizeInBytes() {
+        return shared.pool.getTotalSizeInBytes();
+    }
+
+    /**
+     * @return metrics of underlying pool
+     */
+    @Override
+    public ItemSourcePoolMetrics getMetrics() {
+        return shared.pool.getMetrics();
+    }
+
+    /**
+     * @return number of elements acquired with this view and not released yet; 0 if quota is not configured
+     */
+    int getQuotaUsage() {
+        return quotaUsage.get();
+    }
+
+    /**
+     * Decrements the number of users of underlying pool. Underlying pool is shut down if it was the last one.
+     */
+    @Override
+    public void shutdown() {
+
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+
+        synchronized (POOLS) {
+            if (--shared.refCount == 0) {
+                // pool may have been replaced already if settings changed
+                POOLS.remove(shared.key, shared);
+                shared.pool.shutdown();
+            }
+        }
+
+    }
+
+    private static final class Shared {
+
+        private final String key;
+        private final BufferedItemSourcePool pool;
+        // null if not known
+        private final String settings;
+        private int refCount;
+
+        private Shared(String key, BufferedItemSourcePool pool, String settings) {
+            this.key = key;
+            this.pool = pool;
+            this.settings = settings;
+        }
+
+    }
+
+}
@@ -0,0 +1,154 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.Level;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link BatchEmitter} that spreads added items over multiple independent {@link BulkEmitter} lanes.
+ * <p>
+ * Each added item goes to a randomly chosen lane, and each lane builds and delivers its own batches,
+ * so batch assembly is not serialized by a single queue and a single delivery gate. Lanes are not bound to producer threads,
+ * so items are spread evenly even if all of them are added by a single background thread (e.g. AsyncLogger or AsyncAppender).
+ * Order of items is preserved only within each lane, so items added by the same thread may be delivered in different order than they were added.
+ * All lane settings (batch size, capacity, etc.) apply per lane.
+ *
+ * @param <BATCH_TYPE> type of processed batches
+ */
+public class StripedBulkEmitter<BATCH_TYPE> implements BatchEmitter {
+
+    private volatile State state = State.STOPPED;
+
+    private final BulkEmitter<BATCH_TYPE>[] lanes;
+
+    /**
+     * @param lanes fully configured emitters; MUST NOT be empty
+     */
+    @SafeVarargs
+    public StripedBulkEmitter(BulkEmitter<BATCH_TYPE>... lanes) {
+        if (lanes.length == 0) {
+            throw new IllegalArgumentException("At least one lane required");
+        }
+        this.lanes = lanes;
+    }
+
+    @Override
+    public void add(Object batchItem) {
+        getLane().add(batchItem);
+    }
+
+    @Override
+    public boolean rejects(Level level) {
+        return getLane().rejects(level);
+    }
+
+    /**
+     * Items of producer's batch may be spread over all lanes, so each of them is notified.
+     */
+    @Override
+    public void onEndOfBatch() {
+        for (BulkEmitter<BATCH_TYPE> lane : lanes) {
+            lane.onEndOfBatch();
+        }
+    }
+
+    /**
+     * Delivers current batches of all lanes in calling thread.
+     */
+    public final void notifyListener() {
+        for (BulkEmitter<BATCH_TYPE> lane : lanes) {
+            lane.notifyListener();
+        }
+    }
+
+    /**
+     * @return number of items dropped by {@link OverflowPolicy} in all lanes
+     */
+    public final long getDroppedCount() {
+        long droppedCount = 0;
+        for (BulkEmitter<BATCH_TYPE> lane : lanes) {
+            droppedCount += lane.getDroppedCount();
+        }
+        return droppedCount;
+    }
+
+    /**
+     * @return number of items redirected to {@link FailoverPolicy} by {@link OverflowPolicy#FAILOVER} in all lanes
+     */
+    public final long getDivertedCount() {
+        long divertedCount = 0;
+        for (BulkEmitter<BATCH_TYPE> lane : lanes) {
+            divertedCount += lane.getDivertedCount();
+        }
+        return divertedCount;
+    }
+
+    /**
+     * @return underlying emitters
+     */
+    public final List<BulkEmitter<BATCH_TYPE>> getLanes() {
+        return Collections.unmodifiableList(Arrays.asList(lanes));
+    }
+
+    /**
+     * @return randomly chosen lane
+     */
+    final BulkEmitter<BATCH_TYPE> getLane() {
+        // no shared state is written, so producers don't contend on lane selection
+        return lanes[ThreadLocalRandom.current().nextInt(lanes.length)];
+    }
+
+    // ==========
+    // LIFECYCLE
+    // ==========
+
+    @Override
+    public void start() {
+        for (BulkEmitter<BATCH_TYPE> lane : lanes) {
+            lane.start();
+        }
+        state = State.STARTED;
+    }
+
+    @Override
+    public void stop() {
+        for (BulkEmitter<BATCH_TYPE> lane : lanes) {
+            lane.stop();
+        }
+        state = State.STOPPED;
+    }
+
+    @Override
+    public boolean isStarted() {
+        return state == State.STARTED;
+    }
+
+    @Override
+    public boolean isStopped() {
+        return state == State.STOPPED;
+    }
+
+}
@@ -82,8 +82,20 @@ public final class UnlimitedResizePolicy implements ResizePolicy {
      */
     @Override
     public boolean decrease(ItemSourcePool itemSourcePool) {
+        return decrease(itemSourcePool, resizeFactor);
+    }
+
+    /**
+     * Removes {@code resizeFactor} of {@link ItemSourcePool#getTotalSize()} elements, but never decreases pool's size below it's
+     * {@link ItemSourcePool#getInitialSize()}
+     *
+     * @param itemSourcePool pool to be resized
+     * @param resizeFactor fraction of total pool size to remove
+     * @return true, if resize operation was successful, false otherwise
+     */
+    static boolean decrease(ItemSourcePool itemSourcePool, double resizeFactor) {
 
-        int availableSize = itemSourcePool.getAvailableSize();
+        int availableSize = itemSourcePool.getRecyclableSize();
         int decreaseSize = (int)(itemSourcePool.getTotalSize() * resizeFactor);
 
         if (decreaseSize > availableSize) {
@@ -25,6 +25,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.ConfigurationException;
 import org.apache.logging.log4j.status.StatusLogger;
 import org.appenders.log4j2.elasticsearch.BatchEmitter;
+import org.appenders.log4j2.elasticsearch.BatchEmitterConfig;
 import org.appenders.log4j2.elasticsearch.BatchEmitterFactory;
 import org.appenders.log4j2.elasticsearch.ClientObjectFactory;
 import org.appenders.log4j2.elasticsearch.FailoverPolicy;
@@ -60,6 +61,28 @@ public class BatchEmitterServiceProvider {
                                        ClientObjectFactory clientObjectFactory,
                                        FailoverPolicy failoverPolicy) {
 
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(batchSize)
+                .withDeliveryInterval(deliveryInterval)
+                .build();
+
+        return createInstance(config, clientObjectFactory, failoverPolicy);
+
+    }
+
+    /**
+     * Creates an instance of {@link BatchEmitter} using one of available {@link BatchEmitterFactory} services. A check
+     * for compatibility of given {@link ClientObjectFactory} with available services is performed.
+     *
+     * @param config              emitter settings
+     * @param clientObjectFactory client-specific objects provider
+     * @param failoverPolicy      sink for failed batch items
+     * @return T configured {@link BatchEmitter}
+     */
+    public BatchEmitter createInstance(BatchEmitterConfig config,
+                                       ClientObjectFactory clientObjectFactory,
+                                       FailoverPolicy failoverPolicy) {
+
         ServiceLoader<BatchEmitterFactory> loader = ServiceLoader.load(BatchEmitterFactory.class);
         Iterator<BatchEmitterFactory> it = loader.iterator();
         while (it.hasNext()) {
@@ -67,7 +90,7 @@ public class BatchEmitterServiceProvider {
             LOG.info("BatchEmitterFactory class found {}", factory.getClass().getName());
             if (factory.accepts(clientObjectFactory.getClass())) {
                 LOG.info("Using {} as BatchEmitterFactoryProvider", factory);
-                return factory.createInstance(batchSize, deliveryInterval, clientObjectFactory, failoverPolicy);
+                return factory.createInstance(config, clientObjectFactory, failoverPolicy);
             }
         }
 
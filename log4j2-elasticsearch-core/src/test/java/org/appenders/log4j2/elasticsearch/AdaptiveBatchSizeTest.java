@@ -0,0 +1,127 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveBatchSizeTest {
+
+    @Test
+    public void initialBatchSizeIsAdjustedToBounds() {
+
+        // when
+        AdaptiveBatchSize tooLow = new AdaptiveBatchSize(10, 100, 1, 0);
+        AdaptiveBatchSize tooHigh = new AdaptiveBatchSize(10, 100, 1000, 0);
+
+        // then
+        assertEquals(10, tooLow.get());
+        assertEquals(100, tooHigh.get());
+
+    }
+
+    @Test
+    public void successIncreasesBatchSizeAdditively() {
+
+        // given
+        AdaptiveBatchSize adaptiveBatchSize = new AdaptiveBatchSize(0, 160, 50, 0);
+
+        // when
+        adaptiveBatchSize.onSuccess(10, 5);
+        adaptiveBatchSize.onSuccess(10, 5);
+
+        // then
+        assertEquals(70, adaptiveBatchSize.get());
+
+    }
+
+    @Test
+    public void successDoesNotIncreaseBatchSizeAboveMax() {
+
+        // given
+        AdaptiveBatchSize adaptiveBatchSize = new AdaptiveBatchSize(1, 10, 10, 0);
+
+        // when
+        adaptiveBatchSize.onSuccess(10, 5);
+
+        // then
+        assertEquals(10, adaptiveBatchSize.get());
+
+    }
+
+    @Test
+    public void failureDecreasesBatchSizeMultiplicatively() {
+
+        // given
+        AdaptiveBatchSize adaptiveBatchSize = new AdaptiveBatchSize(1, 1000, 100, 0);
+
+        // when
+        adaptiveBatchSize.onFailure();
+
+        // then
+        assertEquals(50, adaptiveBatchSize.get());
+
+    }
+
+    @Test
+    public void failureDoesNotDecreaseBatchSizeBelowMin() {
+
+        // given
+        AdaptiveBatchSize adaptiveBatchSize = new AdaptiveBatchSize(40, 1000, 50, 0);
+
+        // when
+        adaptiveBatchSize.onFailure();
+
+        // then
+        assertEquals(40, adaptiveBatchSize.get());
+
+    }
+
+    @Test
+    public void slowSuccessDecreasesBatchSize() {
+
+        // given
+        AdaptiveBatchSize adaptiveBatchSize = new AdaptiveBatchSize(1, 1000, 100, 50);
+
+        // when
+        adaptiveBatchSize.onSuccess(10, 51);
+
+        // then
+        assertEquals(50, adaptiveBatchSize.get());
+
+    }
+
+    @Test
+    public void roundTripTimeIsUsedIfTookIsNotAvailable() {
+
+        // given
+        AdaptiveBatchSize adaptiveBatchSize = new AdaptiveBatchSize(1, 1000, 100, 50);
+
+        // when
+        adaptiveBatchSize.onSuccess(51, -1);
+
+        // then
+        assertEquals(50, adaptiveBatchSize.get());
+
+    }
+
+}
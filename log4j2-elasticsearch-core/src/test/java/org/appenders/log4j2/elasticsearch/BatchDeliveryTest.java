@@ -21,6 +21,7 @@ package org.appenders.log4j2.elasticsearch;
  */
 
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.config.ConfigurationException;
 import org.appenders.log4j2.elasticsearch.AsyncBatchDelivery.Builder;
 import org.appenders.log4j2.elasticsearch.spi.BatchEmitterServiceProvider;
@@ -96,6 +97,218 @@ public class BatchDeliveryTest {
 
     }
 
+    @Test
+    public void builderFailsWhenBatchSizeInBytesIsNegative() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withBatchSizeInBytes(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("batchSizeInBytes cannot be negative");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenRingBufferSizeIsNegative() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withRingBufferSize(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("ringBufferSize cannot be negative");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenRingBufferSizeIsLowerThanBatchSize() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withRingBufferSize(TEST_BATCH_SIZE - 1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("ringBufferSize must be higher than or equal to batchSize");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenCapacityIsNegative() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withCapacity(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("capacity cannot be negative");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenCapacityIsLowerThanBatchSize() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withCapacity(TEST_BATCH_SIZE - 1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("capacity must be higher than or equal to batchSize");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenLanesIsLowerThanOne() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withLanes(0);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("lanes must be higher than 0");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenEndOfBatchMinItemsIsLowerThanOne() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withEndOfBatchMinItems(0);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("endOfBatchMinItems must be higher than 0");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenEndOfBatchMinBytesIsNegative() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withEndOfBatchMinBytes(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("endOfBatchMinBytes cannot be negative");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenMaxBatchSizeIsNegative() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withMaxBatchSize(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("maxBatchSize cannot be negative");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenMinBatchSizeIsHigherThanMaxBatchSize() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withMinBatchSize(TEST_BATCH_SIZE + 1);
+        batchDeliveryBuilder.withMaxBatchSize(TEST_BATCH_SIZE);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("minBatchSize must be lower than or equal to maxBatchSize");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenCapacityIsLowerThanMaxBatchSize() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withCapacity(TEST_BATCH_SIZE);
+        batchDeliveryBuilder.withMaxBatchSize(TEST_BATCH_SIZE + 1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("capacity must be higher than or equal to maxBatchSize");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenOverflowPolicyIsNull() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withOverflowPolicy(null);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("No overflowPolicy provided");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenOverflowTimeoutIsNegative() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withOverflowTimeout(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("overflowTimeout cannot be negative");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
+    @Test
+    public void builderFailsWhenOverflowLevelIsNull() {
+
+        // given
+        Builder batchDeliveryBuilder = createTestBatchDeliveryBuilder();
+        batchDeliveryBuilder.withOverflowLevel(null);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("No overflowLevel provided");
+
+        // when
+        batchDeliveryBuilder.build();
+
+    }
+
     @Test
     public void batchDeliveryAddObjectDelegatesToProvidedBatchOperationsObjectApi() {
 
@@ -180,6 +393,69 @@ public class BatchDeliveryTest {
         assertEquals(testMessage, captor.getValue().getData(null));
     }
 
+    @Test
+    public void deliveryRejectsDelegatesToBatchEmitter() {
+
+        // given
+        TestHttpObjectFactory objectFactory = createTestObjectFactoryBuilder().build();
+
+        TestBatchEmitterFactory batchEmitterFactory = spy(new TestBatchEmitterFactory());
+
+        BatchEmitter emitter = batchEmitterFactory.createInstance(TEST_BATCH_SIZE, TEST_DELIVERY_INTERVAL, objectFactory, new NoopFailoverPolicy());
+        when(emitter.rejects(Level.INFO)).thenReturn(true);
+
+        TestAsyncBatchDelivery delivery = spy(new TestAsyncBatchDelivery(
+                TEST_BATCH_SIZE,
+                TEST_DELIVERY_INTERVAL,
+                objectFactory,
+                new NoopFailoverPolicy(),
+                null) {
+            @Override
+            protected BatchEmitterServiceProvider createBatchEmitterServiceProvider() {
+                return batchEmitterFactory;
+            }
+        });
+
+        // when
+        boolean infoRejected = delivery.rejects(Level.INFO);
+        boolean errorRejected = delivery.rejects(Level.ERROR);
+
+        // then
+        assertTrue(infoRejected);
+        assertFalse(errorRejected);
+
+    }
+
+    @Test
+    public void deliveryEndOfBatchDelegatesToBatchEmitter() {
+
+        // given
+        TestHttpObjectFactory objectFactory = createTestObjectFactoryBuilder().build();
+
+        TestBatchEmitterFactory batchEmitterFactory = spy(new TestBatchEmitterFactory());
+
+        BatchEmitter emitter = batchEmitterFactory.createInstance(TEST_BATCH_SIZE, TEST_DELIVERY_INTERVAL, objectFactory, new NoopFailoverPolicy());
+
+        TestAsyncBatchDelivery delivery = spy(new TestAsyncBatchDelivery(
+                TEST_BATCH_SIZE,
+                TEST_DELIVERY_INTERVAL,
+                objectFactory,
+                new NoopFailoverPolicy(),
+                null) {
+            @Override
+            protected BatchEmitterServiceProvider createBatchEmitterServiceProvider() {
+                return batchEmitterFactory;
+            }
+        });
+
+        // when
+        delivery.onEndOfBatch();
+
+        // then
+        verify(emitter).onEndOfBatch();
+
+    }
+
     @Test
     public void lifecycleStartSetsUpIndexTemplateExecutionIfIndexTemplateIsConfigured() {
 
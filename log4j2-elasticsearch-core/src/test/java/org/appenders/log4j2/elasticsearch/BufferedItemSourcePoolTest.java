@@ -21,6 +21,7 @@ package org.appenders.log4j2.elasticsearch;
  */
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.TestPooledByteBufAllocatorMetric;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import org.junit.Assert;
@@ -31,22 +32,31 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -118,6 +128,72 @@ public class BufferedItemSourcePoolTest {
 
     }
 
+    @Test
+    public void poolExecutorSchedulesSamplerThreadIfResizePolicySamples() {
+
+        // given
+        final ScheduledExecutorService mockedExecutor = mock(ScheduledExecutorService.class);
+        ResizePolicy resizePolicy = PredictiveResizePolicy.newBuilder()
+                .withSampleInterval(123)
+                .build();
+
+        // when
+        new BufferedItemSourcePool(
+                DEFAULT_TEST_ITEM_POOL_NAME,
+                byteBufAllocator,
+                resizePolicy,
+                DEFAULT_TEST_RESIZE_TIMEOUT,
+                false,
+                DEFAULT_TEST_MONITOR_TASK_INTERVAL,
+                DEFAULT_TEST_INITIAL_POOL_SIZE,
+                DEFAULT_TEST_ITEM_SIZE_IN_BYTES
+        ) {
+            @Override
+            ScheduledExecutorService createExecutor() {
+                return mockedExecutor;
+            }
+        };
+
+        // then
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockedExecutor).scheduleAtFixedRate(captor.capture(), eq(123L), eq(123L), any(TimeUnit.class));
+        assertEquals(BufferedItemSourcePool.Sampler.class, captor.getValue().getClass());
+
+    }
+
+    @Test
+    public void poolExecutorDoesNotScheduleSamplerThreadIfResizePolicyDoesNotSample() {
+
+        // given
+        final ScheduledExecutorService mockedExecutor = mock(ScheduledExecutorService.class);
+
+        // when
+        createDefaultTestBufferedItemSourcePool(false, mockedExecutor);
+
+        // then
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockedExecutor).scheduleAtFixedRate(captor.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+        assertEquals(BufferedItemSourcePool.Recycler.class, captor.getValue().getClass());
+
+    }
+
+    @Test
+    public void samplerDoesNotThrowOnResizePolicyFailure() {
+
+        // given
+        BufferedItemSourcePool pool = createDefaultTestBufferedItemSourcePool(false);
+        ResizePolicy resizePolicy = mock(ResizePolicy.class);
+        when(resizePolicy.sample(any())).thenThrow(new IllegalStateException("test"));
+
+        // when
+        new BufferedItemSourcePool.Sampler(pool, resizePolicy).run();
+
+        // then
+        verify(resizePolicy).sample(eq(pool));
+        pool.shutdown();
+
+    }
+
     @Test
     public void monitoredPoolExecutorSchedulesMetricPrinterThread() {
 
@@ -222,6 +298,133 @@ public class BufferedItemSourcePoolTest {
         assertTrue(formattedMetrics.contains("allocatorMetric"));
     }
 
+    @Test
+    public void metricsContainPoolStats() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createDefaultTestBufferedItemSourcePool(2, false);
+
+        // when
+        pool.getPooled();
+        pool.getPooled();
+        pool.getPooled();
+        ItemSourcePoolMetrics metrics = pool.getMetrics();
+
+        // then
+        assertEquals(DEFAULT_TEST_ITEM_POOL_NAME, metrics.getPoolName());
+        assertEquals(2, metrics.getInitialSize());
+        assertEquals(3, metrics.getTotalSize());
+        assertEquals(0, metrics.getAvailableSize());
+        assertEquals(3, metrics.getBorrowedCount());
+        assertEquals(1, metrics.getResizeCount());
+        assertEquals(0, metrics.getExhaustedCount());
+
+    }
+
+    @Test
+    public void metricsCountExhaustedGetPooledCalls() throws PoolResourceException {
+
+        // given
+        ResizePolicy resizePolicy = mock(ResizePolicy.class);
+        when(resizePolicy.increase(any())).thenReturn(false);
+
+        BufferedItemSourcePool pool = new BufferedItemSourcePool(
+                DEFAULT_TEST_ITEM_POOL_NAME,
+                byteBufAllocator,
+                resizePolicy,
+                0,
+                false,
+                DEFAULT_TEST_MONITOR_TASK_INTERVAL,
+                0,
+                DEFAULT_TEST_ITEM_SIZE_IN_BYTES);
+
+        // when
+        try {
+            pool.getPooled();
+        } catch (PoolResourceException e) {
+            // expected
+        }
+
+        // then
+        assertEquals(1, pool.getMetrics().getExhaustedCount());
+        assertEquals(0, pool.getMetrics().getBorrowedCount());
+        assertEquals(0, pool.getMetrics().getResizeCount());
+
+    }
+
+    @Test
+    public void metricsContainAllocatorUsedMemory() {
+
+        // given
+        BufferedItemSourcePool pool = createDefaultTestBufferedItemSourcePool(1, false);
+
+        // when
+        ItemSourcePoolMetrics metrics = pool.getMetrics();
+
+        // then
+        assertTrue(metrics.getAllocatorUsedHeapMemory() >= 0);
+        assertTrue(metrics.getAllocatorUsedDirectMemory() >= 0);
+
+    }
+
+    @Test
+    public void metricsMBeanIsRegisteredUntilShutdown() throws Exception {
+
+        // given
+        String poolName = UUID.randomUUID().toString();
+        BufferedItemSourcePool pool = createTestPoolBuilder(1)
+                .withPoolName(poolName)
+                .withJmxEnabled(true)
+                .build();
+
+        ObjectName mbeanName = pool.getMBeanName();
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        // then
+        assertNotNull(mbeanName);
+        assertTrue(mbeanName.toString().startsWith(BufferedItemSourcePool.JMX_DOMAIN));
+        assertEquals(poolName, mbeanServer.getAttribute(mbeanName, "PoolName"));
+        assertEquals(1, mbeanServer.getAttribute(mbeanName, "TotalSize"));
+
+        // when
+        pool.shutdown();
+
+        // then
+        assertFalse(mbeanServer.isRegistered(mbeanName));
+
+    }
+
+    @Test
+    public void metricsMBeanOfPoolWithTheSameNameIsReplaced() throws Exception {
+
+        // given
+        String poolName = UUID.randomUUID().toString();
+        BufferedItemSourcePool previous = createJmxTestPool(poolName, 1);
+
+        // when
+        BufferedItemSourcePool next = createJmxTestPool(poolName, 2);
+
+        // then
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName mbeanName = next.getMBeanName();
+        assertNotNull(mbeanName);
+        assertEquals(2, mbeanServer.getAttribute(mbeanName, "TotalSize"));
+
+        // when
+        previous.shutdown();
+
+        // then
+        assertTrue(mbeanServer.isRegistered(mbeanName));
+        assertEquals(2, mbeanServer.getAttribute(mbeanName, "TotalSize"));
+
+        // when
+        next.shutdown();
+
+        // then
+        assertFalse(mbeanServer.isRegistered(mbeanName));
+
+    }
+
     @Test
     public void incrementSizeAddsOnePooledElement() throws PoolResourceException {
 
@@ -441,7 +644,9 @@ public class BufferedItemSourcePoolTest {
                 0,
                 DEFAULT_TEST_ITEM_SIZE_IN_BYTES));
 
+        final Thread[] resizing = new Thread[1];
         when(resizePolicy.increase(eq(pool))).thenAnswer((Answer<Boolean>) invocation -> {
+            resizing[0] = Thread.currentThread();
             Thread.currentThread().sleep(1000);
             return true;
         });
@@ -475,16 +680,730 @@ public class BufferedItemSourcePoolTest {
 
         Thread.sleep(500);
         start.countDown();
-        Thread.sleep(100);
-        threads.forEach(thread -> thread.interrupt());
+
+        // one thread resizing, another one waiting for resize to complete
+        long deadline = System.currentTimeMillis() + resizeTimeout;
+        while (!threads.stream().allMatch(thread -> thread.getState() == Thread.State.TIMED_WAITING)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // waiting thread first, otherwise it may be released by completed resize before it's interrupted
+        for (Thread thread : threads) {
+            if (thread != resizing[0]) {
+                thread.interrupt();
+                thread.join(resizeTimeout);
+            }
+        }
+        resizing[0].interrupt();
         end.await();
 
         // then
+        assertNotNull(caught[0]);
         assertEquals(IllegalStateException.class, caught[0].getClass());
         assertEquals("Thread interrupted while waiting for resizing to complete", caught[0].getMessage());
 
     }
 
+    @Test
+    public void elementReleasedByGettingThreadIsReusedFromThreadLocalCache() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createThreadLocalCacheTestPool(DEFAULT_TEST_INITIAL_POOL_SIZE, UnlimitedResizePolicy.newBuilder().build());
+
+        ItemSource<ByteBuf> released = pool.getPooled();
+        released.release();
+
+        // when
+        ItemSource<ByteBuf> itemSource = pool.getPooled();
+
+        // then
+        Assert.assertSame(released, itemSource);
+        assertEquals(DEFAULT_TEST_INITIAL_POOL_SIZE - 1, pool.getAvailableSize());
+
+    }
+
+    @Test
+    public void elementReleasedByOtherThreadIsReturnedToThreadLocalCacheOfGettingThread() throws PoolResourceException, InterruptedException {
+
+        // given
+        BufferedItemSourcePool pool = createThreadLocalCacheTestPool(DEFAULT_TEST_INITIAL_POOL_SIZE, UnlimitedResizePolicy.newBuilder().build());
+
+        ItemSource<ByteBuf> released = pool.getPooled();
+        int recyclableSize = pool.getRecyclableSize();
+
+        Thread thread = new Thread(released::release);
+        thread.start();
+        thread.join(1000);
+
+        assertEquals(DEFAULT_TEST_INITIAL_POOL_SIZE, pool.getAvailableSize());
+        assertEquals(recyclableSize, pool.getRecyclableSize());
+
+        // when
+        ItemSource<ByteBuf> itemSource = pool.getPooled();
+
+        // then
+        assertSame(released, itemSource);
+
+    }
+
+    @Test
+    public void spilledBatchIsHandedOverToOtherThreadAtOnce() throws PoolResourceException, InterruptedException {
+
+        // given
+        BufferedItemSourcePool pool = createThreadLocalCacheTestPool(DEFAULT_TEST_INITIAL_POOL_SIZE, UnlimitedResizePolicy.newBuilder().build(), 4);
+
+        List<ItemSource<ByteBuf>> acquired = new ArrayList<>();
+        for (int ii = 0; ii < 5; ii++) {
+            acquired.add(pool.getPooled());
+        }
+        // 4 cached and batch of 2 spilled on the way
+        acquired.forEach(ItemSource::release);
+
+        assertEquals(6, pool.getRecyclableSize());
+
+        // when
+        Thread thread = new Thread(() -> {
+            try {
+                pool.getPooled();
+            } catch (PoolResourceException e) {
+                Assert.fail();
+            }
+        });
+        thread.start();
+        thread.join(1000);
+
+        // then
+        assertEquals(4, pool.getRecyclableSize());
+        assertEquals(DEFAULT_TEST_INITIAL_POOL_SIZE - 1, pool.getAvailableSize());
+
+    }
+
+    @Test
+    public void recyclerReclaimsElementsCachedByTerminatedThreads() throws PoolResourceException, InterruptedException {
+
+        // given
+        ResizePolicy resizePolicy = mock(ResizePolicy.class);
+        when(resizePolicy.increase(any())).thenReturn(false);
+
+        BufferedItemSourcePool pool = createThreadLocalCacheTestPool(2, resizePolicy);
+
+        Thread thread = new Thread(() -> {
+            try {
+                pool.getPooled().release();
+            } catch (PoolResourceException e) {
+                Assert.fail();
+            }
+        });
+        thread.start();
+        thread.join(1000);
+
+        // when
+        new BufferedItemSourcePool.Recycler(pool, resizePolicy).run();
+
+        // then
+        assertNotNull(pool.getPooled());
+        assertNotNull(pool.getPooled());
+
+    }
+
+    @Test
+    public void poolShutdownReleasesElementsCachedByThreads() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createThreadLocalCacheTestPool(DEFAULT_TEST_INITIAL_POOL_SIZE, UnlimitedResizePolicy.newBuilder().build());
+
+        ItemSource<ByteBuf> cached = pool.getPooled();
+        cached.release();
+
+        // when
+        pool.shutdown();
+
+        // then
+        assertEquals(0, cached.getSource().refCnt());
+        assertEquals(0, pool.getAvailableSize());
+
+    }
+
+    @Test
+    public void poolShutdownReleasesElementsCachedByLiveThreads() throws InterruptedException {
+
+        // given
+        BufferedItemSourcePool pool = createThreadLocalCacheTestPool(DEFAULT_TEST_INITIAL_POOL_SIZE, UnlimitedResizePolicy.newBuilder().build());
+
+        AtomicReference<ItemSource<ByteBuf>> cached = new AtomicReference<>();
+        CountDownLatch cachedLatch = new CountDownLatch(1);
+        CountDownLatch shutdownLatch = new CountDownLatch(1);
+
+        Thread thread = new Thread(() -> {
+            try {
+                ItemSource<ByteBuf> itemSource = pool.getPooled();
+                itemSource.release();
+                cached.set(itemSource);
+                cachedLatch.countDown();
+
+                shutdownLatch.await(1000, TimeUnit.MILLISECONDS);
+            } catch (PoolResourceException | InterruptedException e) {
+                Assert.fail();
+            }
+        });
+        thread.start();
+        cachedLatch.await(1000, TimeUnit.MILLISECONDS);
+
+        // when
+        pool.shutdown();
+
+        // then
+        assertEquals(0, cached.get().getSource().refCnt());
+        assertEquals(0, pool.getAvailableSize());
+
+        shutdownLatch.countDown();
+        thread.join(1000);
+
+    }
+
+    @Test
+    public void elementReleasedAfterPoolShutdownIsReleased() throws PoolResourceException, InterruptedException {
+
+        // given
+        BufferedItemSourcePool pool = createThreadLocalCacheTestPool(DEFAULT_TEST_INITIAL_POOL_SIZE, UnlimitedResizePolicy.newBuilder().build());
+
+        ItemSource<ByteBuf> acquired = pool.getPooled();
+        pool.shutdown();
+
+        // when
+        Thread thread = new Thread(acquired::release);
+        thread.start();
+        thread.join(1000);
+
+        // then
+        assertEquals(0, acquired.getSource().refCnt());
+        assertEquals(0, pool.getAvailableSize());
+
+    }
+
+    @Test
+    public void throwsOnGetPooledAfterPoolShutdown() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createThreadLocalCacheTestPool(DEFAULT_TEST_INITIAL_POOL_SIZE, UnlimitedResizePolicy.newBuilder().build());
+        pool.shutdown();
+
+        expectedException.expect(PoolResourceException.class);
+        expectedException.expectMessage("was shut down");
+
+        // when
+        pool.getPooled();
+
+    }
+
+    @Test
+    public void removeDoesNotRemoveElementsCachedByThreads() throws PoolResourceException {
+
+        // given
+        ResizePolicy resizePolicy = mock(ResizePolicy.class);
+        BufferedItemSourcePool pool = createThreadLocalCacheTestPool(1, resizePolicy);
+
+        ItemSource<ByteBuf> cached = pool.getPooled();
+        cached.release();
+
+        assertEquals(1, pool.getAvailableSize());
+        assertEquals(0, pool.getRecyclableSize());
+
+        // when
+        boolean removed = pool.remove();
+
+        // then
+        assertFalse(removed);
+        assertEquals(1, pool.getTotalSize());
+        assertEquals(1, cached.getSource().refCnt());
+        verify(resizePolicy, never()).increase(any());
+
+    }
+
+    @Test
+    public void removeNeverResizesPool() {
+
+        // given
+        ResizePolicy resizePolicy = mock(ResizePolicy.class);
+        when(resizePolicy.increase(any())).thenReturn(true);
+
+        BufferedItemSourcePool pool = createThreadLocalCacheTestPool(0, resizePolicy);
+
+        // when
+        boolean removed = pool.remove();
+
+        // then
+        assertFalse(removed);
+        verify(resizePolicy, never()).increase(any());
+
+    }
+
+    @Test
+    public void totalSizeInBytesFollowsCapacityOfReleasedElements() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createDefaultTestBufferedItemSourcePool(2, false);
+        assertEquals(2 * DEFAULT_TEST_ITEM_SIZE_IN_BYTES, pool.getTotalSizeInBytes());
+
+        ItemSource<ByteBuf> itemSource = pool.getPooled();
+        itemSource.getSource().writeBytes(new byte[DEFAULT_TEST_ITEM_SIZE_IN_BYTES * 2]);
+        int grownCapacity = itemSource.getSource().capacity();
+
+        // when
+        itemSource.release();
+
+        // then
+        assertEquals(DEFAULT_TEST_ITEM_SIZE_IN_BYTES + grownCapacity, pool.getTotalSizeInBytes());
+
+        // when
+        pool.remove();
+        pool.remove();
+
+        // then
+        assertEquals(0, pool.getTotalSizeInBytes());
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void directPoolCreatesDirectBuffers() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createTestPoolBuilder(1)
+                .withByteBufAllocator(new UnpooledByteBufAllocator(true, false, false))
+                .withDirectBuffers(true)
+                .build();
+
+        // when
+        ItemSource<ByteBuf> itemSource = pool.getPooled();
+        itemSource.getSource().writeBytes(new byte[DEFAULT_TEST_ITEM_SIZE_IN_BYTES]);
+
+        // then
+        assertTrue(itemSource.getSource().isDirect());
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void releaseShrinksElementLargerThanMaxItemSize() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createShrinkingTestPool(DEFAULT_TEST_ITEM_SIZE_IN_BYTES * 2);
+
+        ItemSource<ByteBuf> itemSource = pool.getPooled();
+        itemSource.getSource().writeBytes(new byte[DEFAULT_TEST_ITEM_SIZE_IN_BYTES * 4]);
+
+        CompositeByteBuf buffer = (CompositeByteBuf) itemSource.getSource();
+        ByteBuf grownComponent = buffer.component(0);
+
+        // when
+        itemSource.release();
+
+        // then
+        assertEquals(DEFAULT_TEST_ITEM_SIZE_IN_BYTES, buffer.capacity());
+        assertEquals(0, grownComponent.refCnt());
+        assertEquals(1, pool.getShrunkCount());
+        assertEquals(1, pool.getAvailableSize());
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void releaseDoesNotShrinkElementNotLargerThanMaxItemSize() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createShrinkingTestPool(DEFAULT_TEST_ITEM_SIZE_IN_BYTES * 2);
+
+        ItemSource<ByteBuf> itemSource = pool.getPooled();
+        itemSource.getSource().writeBytes(new byte[DEFAULT_TEST_ITEM_SIZE_IN_BYTES * 2]);
+        int expectedCapacity = itemSource.getSource().capacity();
+
+        // when
+        itemSource.release();
+
+        // then
+        assertEquals(expectedCapacity, itemSource.getSource().capacity());
+        assertEquals(0, pool.getShrunkCount());
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void releaseDoesNotShrinkIfMaxItemSizeIsNotConfigured() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createShrinkingTestPool(0);
+
+        ItemSource<ByteBuf> itemSource = pool.getPooled();
+        itemSource.getSource().writeBytes(new byte[DEFAULT_TEST_ITEM_SIZE_IN_BYTES * 4]);
+
+        // when
+        itemSource.release();
+
+        // then
+        assertTrue(itemSource.getSource().capacity() >= DEFAULT_TEST_ITEM_SIZE_IN_BYTES * 4);
+        assertEquals(0, pool.getShrunkCount());
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void shrunkElementIsReusable() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createShrinkingTestPool(DEFAULT_TEST_ITEM_SIZE_IN_BYTES * 2);
+
+        ItemSource<ByteBuf> itemSource = pool.getPooled();
+        itemSource.getSource().writeBytes(new byte[DEFAULT_TEST_ITEM_SIZE_IN_BYTES * 4]);
+        itemSource.release();
+
+        byte[] expectedBytes = UUID.randomUUID().toString().getBytes();
+
+        // when
+        ItemSource<ByteBuf> reused = pool.getPooled();
+        reused.getSource().writeBytes(expectedBytes);
+
+        // then
+        assertEquals(itemSource, reused);
+        byte[] actualBytes = new byte[expectedBytes.length];
+        reused.getSource().readBytes(actualBytes);
+        assertArrayEquals(expectedBytes, actualBytes);
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void leakDetectionIsDisabledByDefault() {
+
+        // given
+        BufferedItemSourcePool pool = createDefaultTestBufferedItemSourcePool(false);
+
+        // then
+        assertNull(pool.getLeakDetector());
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void leakDetectorTracksSampledElementsUntilReleased() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createLeakDetectionTestPool(1.0, 1000);
+
+        // when
+        ItemSource<ByteBuf> itemSource = pool.getPooled();
+
+        // then
+        assertEquals(1, pool.getLeakDetector().getTrackedSize());
+
+        // when
+        itemSource.release();
+
+        // then
+        assertEquals(0, pool.getLeakDetector().getTrackedSize());
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void leakDetectorReportsElementsHeldLongerThanLeakThresholdOnce() throws PoolResourceException {
+
+        // given
+        long leakThreshold = 1000;
+        BufferedItemSourcePool pool = createLeakDetectionTestPool(1.0, leakThreshold);
+        BufferedItemSourcePool.LeakDetector leakDetector = pool.getLeakDetector();
+
+        pool.getPooled();
+        ItemSource<ByteBuf> released = pool.getPooled();
+        released.release();
+
+        long now = System.currentTimeMillis() + leakThreshold;
+
+        // when
+        int held = leakDetector.report(now);
+        leakDetector.report(now);
+
+        // then
+        assertEquals(1, held);
+        assertEquals(1, leakDetector.getReportedCount());
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void leakDetectorDoesNotReportElementsHeldShorterThanLeakThreshold() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createLeakDetectionTestPool(1.0, 60000);
+        pool.getPooled();
+
+        // when
+        int held = pool.getLeakDetector().report(System.currentTimeMillis());
+
+        // then
+        assertEquals(0, held);
+        assertEquals(0, pool.getLeakDetector().getReportedCount());
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void poolExecutorSchedulesLeakDetectorIfLeakDetectionIsEnabled() {
+
+        // given
+        final ScheduledExecutorService mockedExecutor = mock(ScheduledExecutorService.class);
+        long leakThreshold = 12345;
+
+        // when
+        BufferedItemSourcePool pool = new BufferedItemSourcePool(createTestPoolBuilder(1)
+                .withLeakDetectionSampleRate(0.01)
+                .withLeakThreshold(leakThreshold)) {
+            @Override
+            ScheduledExecutorService createExecutor() {
+                return mockedExecutor;
+            }
+        };
+
+        // then
+        verify(mockedExecutor).scheduleAtFixedRate(eq(pool.getLeakDetector()), eq(leakThreshold), eq(leakThreshold), eq(TimeUnit.MILLISECONDS));
+
+    }
+
+    @Test
+    public void fifoPoolReusesLeastRecentlyReleasedElementFirst() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createOrderingTestPool(2, false);
+
+        ItemSource<ByteBuf> first = pool.getPooled();
+        ItemSource<ByteBuf> second = pool.getPooled();
+        first.release();
+        second.release();
+
+        // when
+        ItemSource<ByteBuf> result = pool.getPooled();
+
+        // then
+        assertSame(first, result);
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void fifoPoolRemovesLeastRecentlyReleasedElement() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createOrderingTestPool(2, false);
+
+        ItemSource<ByteBuf> first = pool.getPooled();
+        ItemSource<ByteBuf> second = pool.getPooled();
+        first.release();
+        second.release();
+
+        // when
+        boolean removed = pool.remove();
+
+        // then
+        assertTrue(removed);
+        assertEquals(1, pool.getTotalSize());
+        assertSame(second, pool.getPooled());
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void lifoPoolReusesMostRecentlyReleasedElementFirst() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createOrderingTestPool(2, true);
+
+        ItemSource<ByteBuf> first = pool.getPooled();
+        ItemSource<ByteBuf> second = pool.getPooled();
+        first.release();
+        second.release();
+
+        // when
+        ItemSource<ByteBuf> result = pool.getPooled();
+
+        // then
+        assertSame(second, result);
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void lifoPoolRemovesLeastRecentlyReleasedElement() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createOrderingTestPool(2, true);
+
+        ItemSource<ByteBuf> first = pool.getPooled();
+        ItemSource<ByteBuf> second = pool.getPooled();
+        first.release();
+        second.release();
+
+        // when
+        boolean removed = pool.remove();
+
+        // then
+        assertTrue(removed);
+        assertEquals(1, pool.getTotalSize());
+        assertEquals(1, pool.getAvailableSize());
+        assertSame(second, pool.getPooled());
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void lifoPoolRemoveReturnsFalseIfNoElementsAvailable() throws PoolResourceException {
+
+        // given
+        BufferedItemSourcePool pool = createOrderingTestPool(1, true);
+        pool.getPooled();
+
+        // when
+        boolean removed = pool.remove();
+
+        // then
+        assertFalse(removed);
+        assertEquals(1, pool.getTotalSize());
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void eagerPoolSizeCreatesRemainingElementsOnPoolExecutor() {
+
+        // given
+        final ScheduledExecutorService mockedExecutor = mock(ScheduledExecutorService.class);
+
+        // when
+        BufferedItemSourcePool pool = createWarmupTestPool(10, 2, mockedExecutor);
+
+        // then
+        assertEquals(2, pool.getTotalSize());
+        assertEquals(2, pool.getAvailableSize());
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockedExecutor).execute(captor.capture());
+        assertEquals(BufferedItemSourcePool.Warmup.class, captor.getValue().getClass());
+
+        // when
+        captor.getValue().run();
+
+        // then
+        assertEquals(10, pool.getTotalSize());
+        assertEquals(10, pool.getAvailableSize());
+
+    }
+
+    @Test
+    public void eagerPoolSizeNotLowerThanInitialPoolSizeCreatesAllElementsOnConstruction() {
+
+        // given
+        final ScheduledExecutorService mockedExecutor = mock(ScheduledExecutorService.class);
+
+        // when
+        BufferedItemSourcePool pool = createWarmupTestPool(10, 10, mockedExecutor);
+
+        // then
+        assertEquals(10, pool.getTotalSize());
+        verify(mockedExecutor, never()).execute(any());
+
+    }
+
+    @Test
+    public void poolCanBeUsedBeforeWarmupIsCompleted() throws PoolResourceException {
+
+        // given
+        final ScheduledExecutorService mockedExecutor = mock(ScheduledExecutorService.class);
+        BufferedItemSourcePool pool = createWarmupTestPool(10, 1, mockedExecutor);
+
+        // when
+        ItemSource<ByteBuf> pooled = pool.getPooled();
+
+        // then
+        assertNotNull(pooled);
+        assertEquals(0, pool.getAvailableSize());
+
+    }
+
+    @Test
+    public void warmupStopsIfPoolIsShutdown() {
+
+        // given
+        final ScheduledExecutorService mockedExecutor = mock(ScheduledExecutorService.class);
+        BufferedItemSourcePool pool = createWarmupTestPool(10, 2, mockedExecutor);
+
+        when(mockedExecutor.isShutdown()).thenReturn(true);
+
+        // when
+        pool.warmup(8);
+
+        // then
+        assertEquals(2, pool.getTotalSize());
+
+    }
+
+    private BufferedItemSourcePool createWarmupTestPool(int initialSize, int eagerSize, ScheduledExecutorService mockedExecutor) {
+        return new BufferedItemSourcePool(createTestPoolBuilder(initialSize)
+                .withEagerPoolSize(eagerSize)) {
+            @Override
+            ScheduledExecutorService createExecutor() {
+                return mockedExecutor;
+            }
+        };
+    }
+
+    private BufferedItemSourcePool createOrderingTestPool(int initialSize, boolean lifo) {
+        return createTestPoolBuilder(initialSize)
+                .withLifo(lifo)
+                .build();
+    }
+
+    private BufferedItemSourcePool createLeakDetectionTestPool(double sampleRate, long leakThreshold) {
+        return createTestPoolBuilder(2)
+                .withLeakDetectionSampleRate(sampleRate)
+                .withLeakThreshold(leakThreshold)
+                .build();
+    }
+
+    private BufferedItemSourcePool createShrinkingTestPool(int maxItemSizeInBytes) {
+        return createTestPoolBuilder(1)
+                .withMaxItemSizeInBytes(maxItemSizeInBytes)
+                .build();
+    }
+
+    private BufferedItemSourcePool createJmxTestPool(String poolName, int initialSize) {
+        return createTestPoolBuilder(initialSize)
+                .withPoolName(poolName)
+                .withJmxEnabled(true)
+                .build();
+    }
+
+    private BufferedItemSourcePool createThreadLocalCacheTestPool(int initialSize, ResizePolicy resizePolicy) {
+        return createThreadLocalCacheTestPool(initialSize, resizePolicy, 2);
+    }
+
+    private BufferedItemSourcePool createThreadLocalCacheTestPool(int initialSize, ResizePolicy resizePolicy, int threadLocalCacheSize) {
+        return createTestPoolBuilder(initialSize)
+                .withResizePolicy(resizePolicy)
+                .withThreadLocalCacheSize(threadLocalCacheSize)
+                .build();
+    }
+
+    private static BufferedItemSourcePool.Builder createTestPoolBuilder(int initialSize) {
+        return BufferedItemSourcePool.newBuilder()
+                .withPoolName(DEFAULT_TEST_ITEM_POOL_NAME)
+                .withByteBufAllocator(byteBufAllocator)
+                .withResizePolicy(UnlimitedResizePolicy.newBuilder().build())
+                .withResizeTimeout(DEFAULT_TEST_RESIZE_TIMEOUT)
+                .withMonitorTaskInterval(DEFAULT_TEST_MONITOR_TASK_INTERVAL)
+                .withInitialPoolSize(initialSize)
+                .withItemSizeInBytes(DEFAULT_TEST_ITEM_SIZE_IN_BYTES);
+    }
+
     public BufferedItemSourcePool createDefaultTestBufferedItemSourcePool(boolean isMonitored) {
         return createDefaultTestBufferedItemSourcePool(DEFAULT_TEST_INITIAL_POOL_SIZE, isMonitored);
     }
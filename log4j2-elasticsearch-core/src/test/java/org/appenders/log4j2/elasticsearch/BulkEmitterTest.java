@@ -21,6 +21,7 @@ package org.appenders.log4j2.elasticsearch;
  */
 
 
+import org.apache.logging.log4j.Level;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Rule;
@@ -34,12 +35,15 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 import static org.junit.Assert.assertEquals;
@@ -49,10 +53,12 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -82,7 +88,7 @@ public class BulkEmitterTest {
             }
         });
 
-        BulkEmitter<Collection> emitter = new BulkEmitter<>(1, 10000, new BatchOperations<Collection>() {
+        BulkEmitter<Collection> emitter = new BulkEmitter<>(Integer.MAX_VALUE, 10000, new BatchOperations<Collection>() {
             @Override
             public Object createBatchItem(String indexName, Object source) {
                 return source;
@@ -102,8 +108,14 @@ public class BulkEmitterTest {
 
         emitter.addListener(listener);
 
-        Thread t1 = new Thread(() -> emitter.add(0));
-        Thread t2 = new Thread(() -> emitter.add(1));
+        Thread t1 = new Thread(() -> {
+            emitter.add(0);
+            emitter.notifyListener();
+        });
+        Thread t2 = new Thread(() -> {
+            emitter.add(1);
+            emitter.notifyListener();
+        });
 
         // when
         t1.start();
@@ -118,7 +130,7 @@ public class BulkEmitterTest {
     }
 
     @Test
-    public void threadsAwaitingAtLatchAreEventuallyReleased() {
+    public void threadsAwaitingAtLatchAreEventuallyReleased() throws InterruptedException {
 
         // given
         int slackTime = 100;
@@ -134,7 +146,7 @@ public class BulkEmitterTest {
             }
         });
 
-        BulkEmitter<Collection> emitter = new BulkEmitter<>(1, 10000, new BatchOperations<Collection>() {
+        BulkEmitter<Collection> emitter = new BulkEmitter<>(Integer.MAX_VALUE, 10000, new BatchOperations<Collection>() {
             @Override
             public Object createBatchItem(String indexName, Object source) {
                 return source;
@@ -154,17 +166,27 @@ public class BulkEmitterTest {
 
         emitter.addListener(listener);
 
-        Thread t1 = new Thread(() -> emitter.add(0));
-        Thread t2 = new Thread(() -> emitter.add(1));
+        Thread t1 = new Thread(() -> {
+            emitter.add(0);
+            emitter.notifyListener();
+        });
+        Thread t2 = new Thread(() -> {
+            emitter.add(1);
+            emitter.notifyListener();
+        });
 
         // when
         t1.start();
         long start = System.currentTimeMillis();
         t2.run();
         long end = System.currentTimeMillis();
+        t1.join(1000);
 
         // then
-        verify(listener, times(1)).apply(any());
+        // second delivery happens only if t1 delivered before t2 added it's item
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(listener, atLeastOnce()).apply(captor.capture());
+        assertEquals(2, captor.getAllValues().stream().mapToInt(Collection::size).sum());
         System.out.println(end - start);
         assertTrue(end - start >= slackTime);
 
@@ -190,6 +212,49 @@ public class BulkEmitterTest {
         };
     }
 
+    @Test
+    public void addDoesNotWaitForOngoingDelivery() {
+
+        // given
+        int slackTime = 500;
+        Function<TestBatch, Boolean> listener = spy(new Function<TestBatch, Boolean>() {
+            @Override
+            public Boolean apply(TestBatch batch) {
+                try {
+                    Thread.sleep(slackTime);
+                } catch (InterruptedException e) {
+                    Assert.fail();
+                }
+                return true;
+            }
+        });
+
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(1)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withSchedulerName(UUID.randomUUID().toString())
+                .build();
+
+        BulkEmitter emitter = new BulkEmitter(config, new TestBatchOperations());
+        emitter.addListener(listener);
+
+        emitter.add(new TestBatchItem(TEST_DATA));
+        verify(listener, timeout(slackTime)).apply(any());
+
+        // when
+        long start = System.currentTimeMillis();
+        emitter.add(new TestBatchItem(TEST_DATA));
+        emitter.add(new TestBatchItem(TEST_DATA));
+        long end = System.currentTimeMillis();
+
+        // then
+        assertTrue(end - start < slackTime);
+        verify(listener, timeout(slackTime * 4).times(2)).apply(any());
+
+        emitter.stop();
+
+    }
+
     @Test
     public void notifiesOnBatchWithGivenSize() {
 
@@ -206,10 +271,393 @@ public class BulkEmitterTest {
 
         // then
         ArgumentCaptor<TestBatch> captor = ArgumentCaptor.forClass(TestBatch.class);
-        Mockito.verify(dummyObserver, Mockito.times(1)).apply(captor.capture());
+        Mockito.verify(dummyObserver, timeout(1000).times(1)).apply(captor.capture());
         Assert.assertEquals(batchSize, captor.getValue().items.size());
     }
 
+    @Test
+    public void notifiesOnBatchWithGivenSizeInBytes() {
+
+        // given
+        int itemSizeInBytes = 10;
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withBatchSizeInBytes(itemSizeInBytes * 3)
+                .build();
+
+        BulkEmitter emitter = new BulkEmitter(config, new FixedSizeTestBatchOperations(itemSizeInBytes));
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        // when
+        for (int ii = 0; ii < 3; ii++) {
+            emitter.add(new TestBatchItem(TEST_DATA));
+        }
+
+        // then
+        ArgumentCaptor<TestBatch> captor = ArgumentCaptor.forClass(TestBatch.class);
+        Mockito.verify(dummyObserver, timeout(1000).times(1)).apply(captor.capture());
+        Assert.assertEquals(3, captor.getValue().items.size());
+
+    }
+
+    @Test
+    public void batchSizeInBytesLimitsNumberOfDeliveredItems() {
+
+        // given
+        int itemSizeInBytes = 10;
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withBatchSizeInBytes(itemSizeInBytes * 2)
+                .build();
+
+        FixedSizeTestBatchOperations batchOperations = new FixedSizeTestBatchOperations(0);
+        BulkEmitter emitter = new BulkEmitter(config, batchOperations);
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        // zero-sized items will not trigger the delivery
+        for (int ii = 0; ii < 3; ii++) {
+            emitter.add(new TestBatchItem(TEST_DATA));
+        }
+        batchOperations.itemSizeInBytes = itemSizeInBytes;
+
+        // when
+        emitter.notifyListener();
+
+        // then
+        ArgumentCaptor<TestBatch> captor = ArgumentCaptor.forClass(TestBatch.class);
+        Mockito.verify(dummyObserver, Mockito.times(1)).apply(captor.capture());
+        Assert.assertEquals(2, captor.getValue().items.size());
+
+    }
+
+    @Test
+    public void remainingItemsAreDeliveredIfBatchSizeInBytesLimitsDelivery() {
+
+        // given
+        int itemSizeInBytes = 10;
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withBatchSizeInBytes(itemSizeInBytes * 2)
+                .build();
+
+        FixedSizeTestBatchOperations batchOperations = new FixedSizeTestBatchOperations(0);
+        BulkEmitter emitter = new BulkEmitter(config, batchOperations);
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        // zero-sized items will not trigger the delivery
+        for (int ii = 0; ii < 5; ii++) {
+            emitter.add(new TestBatchItem(TEST_DATA));
+        }
+        batchOperations.itemSizeInBytes = itemSizeInBytes;
+
+        // when
+        emitter.notifyListener();
+
+        // then
+        ArgumentCaptor<TestBatch> captor = ArgumentCaptor.forClass(TestBatch.class);
+        Mockito.verify(dummyObserver, timeout(1000).times(3)).apply(captor.capture());
+        assertEquals(5, captor.getAllValues().stream().mapToInt(batch -> batch.items.size()).sum());
+
+    }
+
+    @Test
+    public void stopDeliversAllItemsIfBatchSizeInBytesLimitsDelivery() {
+
+        // given
+        int itemSizeInBytes = 10;
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withBatchSizeInBytes(itemSizeInBytes * 2)
+                .build();
+
+        FixedSizeTestBatchOperations batchOperations = new FixedSizeTestBatchOperations(0);
+        BulkEmitter emitter = new BulkEmitter(config, batchOperations);
+        TestBatchCollector listener = new TestBatchCollector();
+        emitter.addListener(listener);
+
+        for (int ii = 0; ii < 5; ii++) {
+            emitter.add(new TestBatchItem(TEST_DATA));
+        }
+        batchOperations.itemSizeInBytes = itemSizeInBytes;
+
+        // when
+        emitter.stop();
+
+        // then
+        assertEquals(5, listener.deliveredCount.get());
+
+    }
+
+    @Test
+    public void stopReleasesItemsLeftAfterFinalDeliveryAttempt() {
+
+        // given
+        TestBatchOperations batchOperations = spy(new TestBatchOperations());
+        BulkEmitter emitter = createTestBulkEmitter(TEST_BATCH_SIZE, LARGE_TEST_INTERVAL, batchOperations);
+        TestBatchCollector collector = new TestBatchCollector();
+        emitter.addListener(collector);
+        emitter.setDeliveryPermits(new Semaphore(0));
+
+        TestBatchItem item1 = new TestBatchItem(TEST_DATA);
+        TestBatchItem item2 = new TestBatchItem(TEST_DATA);
+        emitter.add(item1);
+        emitter.add(item2);
+
+        // when
+        emitter.stop();
+
+        // then
+        assertEquals(0, collector.deliveredCount.get());
+        assertEquals(2, emitter.getDroppedCount());
+        verify(batchOperations).releaseBatchItem(eq(item1));
+        verify(batchOperations).releaseBatchItem(eq(item2));
+
+    }
+
+    @Test
+    public void stopDivertsItemsLeftAfterFinalDeliveryAttemptIfOverflowPolicyIsFailover() {
+
+        // given
+        TestBatchOperations batchOperations = spy(new TestBatchOperations());
+        BulkEmitter emitter = new BulkEmitter(createOverflowTestConfig(OverflowPolicy.FAILOVER).build(), batchOperations);
+        emitter.addListener(new TestBatchCollector());
+        emitter.setDeliveryPermits(new Semaphore(0));
+        FailoverPolicy failoverPolicy = mock(FailoverPolicy.class);
+        emitter.setFailoverPolicy(failoverPolicy);
+
+        TestBatchItem item = new TestBatchItem(TEST_DATA);
+        emitter.add(item);
+
+        // when
+        emitter.stop();
+
+        // then
+        assertEquals(1, emitter.getDivertedCount());
+        verify(failoverPolicy).deliver(eq(item));
+        verify(batchOperations, never()).releaseBatchItem(any());
+
+    }
+
+    @Test
+    public void overflowPolicyDropNewestDropsIncomingItem() {
+
+        // given
+        TestBatchOperations batchOperations = spy(new TestBatchOperations());
+        BulkEmitter emitter = new BulkEmitter(createOverflowTestConfig(OverflowPolicy.DROP_NEWEST).build(), batchOperations);
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        TestBatchItem item1 = new TestBatchItem(TEST_DATA);
+        TestBatchItem item2 = new TestBatchItem(TEST_DATA);
+        TestBatchItem item3 = new TestBatchItem(TEST_DATA);
+
+        // when
+        emitter.add(item1);
+        emitter.add(item2);
+        emitter.add(item3);
+        emitter.notifyListener();
+
+        // then
+        assertEquals(1, emitter.getDroppedCount());
+        verify(batchOperations).releaseBatchItem(eq(item3));
+
+        ArgumentCaptor<TestBatch> captor = ArgumentCaptor.forClass(TestBatch.class);
+        verify(dummyObserver).apply(captor.capture());
+        assertEquals(2, captor.getValue().items.size());
+        assertTrue(captor.getValue().items.contains(item1));
+        assertTrue(captor.getValue().items.contains(item2));
+
+    }
+
+    @Test
+    public void overflowPolicyDropOldestDropsOldestUndeliveredItem() {
+
+        // given
+        TestBatchOperations batchOperations = spy(new TestBatchOperations());
+        BulkEmitter emitter = new BulkEmitter(createOverflowTestConfig(OverflowPolicy.DROP_OLDEST).build(), batchOperations);
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        TestBatchItem item1 = new TestBatchItem(TEST_DATA);
+        TestBatchItem item2 = new TestBatchItem(TEST_DATA);
+        TestBatchItem item3 = new TestBatchItem(TEST_DATA);
+
+        // when
+        emitter.add(item1);
+        emitter.add(item2);
+        emitter.add(item3);
+        emitter.notifyListener();
+
+        // then
+        assertEquals(1, emitter.getDroppedCount());
+        verify(batchOperations).releaseBatchItem(eq(item1));
+
+        ArgumentCaptor<TestBatch> captor = ArgumentCaptor.forClass(TestBatch.class);
+        verify(dummyObserver).apply(captor.capture());
+        assertEquals(2, captor.getValue().items.size());
+        assertTrue(captor.getValue().items.contains(item2));
+        assertTrue(captor.getValue().items.contains(item3));
+
+    }
+
+    @Test
+    public void overflowPolicyFailoverDivertsIncomingItemToFailoverPolicy() {
+
+        // given
+        BulkEmitter emitter = new BulkEmitter(createOverflowTestConfig(OverflowPolicy.FAILOVER).build(), new TestBatchOperations());
+        FailoverPolicy failoverPolicy = mock(FailoverPolicy.class);
+        emitter.setFailoverPolicy(failoverPolicy);
+
+        TestBatchItem item3 = new TestBatchItem(TEST_DATA);
+
+        // when
+        emitter.add(new TestBatchItem(TEST_DATA));
+        emitter.add(new TestBatchItem(TEST_DATA));
+        emitter.add(item3);
+
+        // then
+        assertEquals(1, emitter.getDivertedCount());
+        assertEquals(0, emitter.getDroppedCount());
+        verify(failoverPolicy).deliver(eq(item3));
+
+    }
+
+    @Test
+    public void overflowPolicyBlockWaitsUntilCapacityIsAvailable() {
+
+        // given
+        BatchEmitterConfig config = createOverflowTestConfig(OverflowPolicy.BLOCK)
+                .withOverflowTimeout(LARGE_TEST_INTERVAL)
+                .build();
+        BulkEmitter emitter = new BulkEmitter(config, new TestBatchOperations());
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        // when
+        for (int ii = 0; ii < 3; ii++) {
+            emitter.add(new TestBatchItem(TEST_DATA));
+        }
+        emitter.notifyListener();
+
+        // then
+        assertEquals(0, emitter.getDroppedCount());
+
+        ArgumentCaptor<TestBatch> captor = ArgumentCaptor.forClass(TestBatch.class);
+        verify(dummyObserver, times(2)).apply(captor.capture());
+        assertEquals(3, captor.getAllValues().stream().mapToInt(batch -> batch.items.size()).sum());
+
+    }
+
+    @Test
+    public void overflowPolicyBlockDropsIncomingItemAfterTimeout() throws InterruptedException {
+
+        // given
+        int overflowTimeout = 100;
+        BatchEmitterConfig config = createOverflowTestConfig(OverflowPolicy.BLOCK)
+                .withBatchSize(2)
+                .withOverflowTimeout(overflowTimeout)
+                .withSchedulerName(UUID.randomUUID().toString())
+                .build();
+
+        TestBatchOperations batchOperations = spy(new TestBatchOperations());
+        BulkEmitter emitter = new BulkEmitter(config, batchOperations);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        Function<TestBatch, Boolean> listener = spy(new Function<TestBatch, Boolean>() {
+            @Override
+            public Boolean apply(TestBatch batch) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }
+        });
+        emitter.addListener(listener);
+
+        // first batch blocks the delivery, second one fills the capacity
+        emitter.add(new TestBatchItem(TEST_DATA));
+        emitter.add(new TestBatchItem(TEST_DATA));
+        verify(listener, timeout(1000)).apply(any());
+        emitter.add(new TestBatchItem(TEST_DATA));
+        emitter.add(new TestBatchItem(TEST_DATA));
+
+        TestBatchItem item5 = new TestBatchItem(TEST_DATA);
+
+        // when
+        long start = System.currentTimeMillis();
+        emitter.add(item5);
+        long end = System.currentTimeMillis();
+
+        // then
+        assertTrue(end - start >= overflowTimeout);
+        assertEquals(1, emitter.getDroppedCount());
+        verify(batchOperations).releaseBatchItem(eq(item5));
+
+        latch.countDown();
+        emitter.stop();
+
+    }
+
+    @Test
+    public void overflowPolicyDropBelowLevelRejectsLowerLevelsIfCapacityIsExhausted() {
+
+        // given
+        BatchEmitterConfig config = createOverflowTestConfig(OverflowPolicy.DROP_BELOW_LEVEL)
+                .withOverflowLevel(Level.WARN)
+                .build();
+        BulkEmitter emitter = new BulkEmitter(config, new TestBatchOperations());
+
+        emitter.add(new TestBatchItem(TEST_DATA));
+        assertFalse(emitter.rejects(Level.INFO));
+        emitter.add(new TestBatchItem(TEST_DATA));
+
+        // when
+        boolean infoRejected = emitter.rejects(Level.INFO);
+        boolean warnRejected = emitter.rejects(Level.WARN);
+        boolean errorRejected = emitter.rejects(Level.ERROR);
+
+        // then
+        assertTrue(infoRejected);
+        assertFalse(warnRejected);
+        assertFalse(errorRejected);
+        assertEquals(1, emitter.getDroppedCount());
+
+    }
+
+    @Test
+    public void rejectsNothingIfOverflowPolicyIsNotDropBelowLevel() {
+
+        // given
+        BulkEmitter emitter = new BulkEmitter(createOverflowTestConfig(OverflowPolicy.DROP_NEWEST).build(), new TestBatchOperations());
+
+        emitter.add(new TestBatchItem(TEST_DATA));
+        emitter.add(new TestBatchItem(TEST_DATA));
+
+        // when
+        boolean rejected = emitter.rejects(Level.TRACE);
+
+        // then
+        assertFalse(rejected);
+
+    }
+
+    private BatchEmitterConfig.Builder createOverflowTestConfig(OverflowPolicy overflowPolicy) {
+        return BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withCapacity(2)
+                .withOverflowPolicy(overflowPolicy);
+    }
+
     @Test
     public void notifiesOnEveryCompletedBatch() throws InterruptedException {
 
@@ -228,7 +676,7 @@ public class BulkEmitterTest {
 
         // then
         ArgumentCaptor<TestBatch> captor = ArgumentCaptor.forClass(TestBatch.class);
-        Mockito.verify(dummyObserver, Mockito.times(expectedNumberOfBatches)).apply(captor.capture());
+        Mockito.verify(dummyObserver, timeout(1000).times(expectedNumberOfBatches)).apply(captor.capture());
         for (TestBatch batch : captor.getAllValues()) {
             Assert.assertEquals(TEST_BATCH_SIZE, batch.items.size());
         }
@@ -251,6 +699,214 @@ public class BulkEmitterTest {
 
     }
 
+    @Test
+    public void listenerIsNotNotifiedAndBatchIsReleasedWhenNoItemsWereDrained() {
+
+        // given
+        TestBatchBuilder batchBuilder = spy(new TestBatchBuilder());
+        TestBatchOperations batchOperations = spy(new TestBatchOperations());
+        when(batchOperations.createBatchBuilder()).thenReturn(batchBuilder);
+
+        // item claimed, but not published yet
+        BulkEmitter emitter = new BulkEmitter(TEST_BATCH_SIZE, LARGE_TEST_INTERVAL, batchOperations) {
+            @Override
+            protected int resetAndGetPendingSize() {
+                return 1;
+            }
+        };
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        // when
+        emitter.notifyListener();
+
+        // then
+        verify(dummyObserver, never()).apply(any());
+        verify(batchBuilder).release();
+
+    }
+
+    @Test
+    public void itemsStayQueuedWhileNoDeliveryPermitIsAvailable() {
+
+        // given
+        BulkEmitter emitter = createTestBulkEmitter(TEST_BATCH_SIZE, LARGE_TEST_INTERVAL, new TestBatchOperations());
+        TestBatchCollector collector = new TestBatchCollector();
+        emitter.addListener(collector);
+
+        Semaphore deliveryPermits = new Semaphore(0);
+        emitter.setDeliveryPermits(deliveryPermits);
+
+        emitter.add(new Object());
+        emitter.notifyListener();
+
+        assertEquals(0, collector.deliveredCount.get());
+
+        // when
+        deliveryPermits.release();
+        emitter.notifyListener();
+
+        // then
+        assertEquals(1, collector.deliveredCount.get());
+        // held by the listener until batch is completed
+        assertEquals(0, deliveryPermits.availablePermits());
+
+    }
+
+    @Test
+    public void deliveryPermitIsReleasedIfThereWasNothingToDeliver() {
+
+        // given
+        BulkEmitter emitter = createTestBulkEmitter(TEST_BATCH_SIZE, LARGE_TEST_INTERVAL, new TestBatchOperations());
+        emitter.addListener(dummyObserver());
+
+        Semaphore deliveryPermits = new Semaphore(1);
+        emitter.setDeliveryPermits(deliveryPermits);
+
+        // when
+        emitter.notifyListener();
+
+        // then
+        assertEquals(1, deliveryPermits.availablePermits());
+
+    }
+
+    @Test
+    public void itemsStayQueuedAndEmitterRecoversIfBatchBuilderCannotBeCreated() {
+
+        // given
+        TestBatchOperations batchOperations = spy(new TestBatchOperations());
+        when(batchOperations.createBatchBuilder())
+                .thenThrow(new IllegalStateException("Pool exhausted"))
+                .thenReturn(new TestBatchBuilder());
+
+        BulkEmitter emitter = new BulkEmitter(TEST_BATCH_SIZE, LARGE_TEST_INTERVAL, batchOperations);
+        TestBatchCollector collector = new TestBatchCollector();
+        emitter.addListener(collector);
+
+        emitter.add(new Object());
+        emitter.notifyListener();
+
+        assertEquals(0, collector.deliveredCount.get());
+
+        // when
+        emitter.notifyListener();
+
+        // then
+        assertEquals(1, collector.deliveredCount.get());
+
+    }
+
+    @Test
+    public void itemsAreDeliveredWithFirstSubBatchIfNextSubBatchCannotBeCreated() {
+
+        // given
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(10000)
+                .withGroupByIndex(true)
+                .build();
+
+        IndexNameTestBatchOperations batchOperations = spy(new IndexNameTestBatchOperations());
+        when(batchOperations.createBatchBuilder())
+                .thenReturn(new TestBatchBuilder())
+                .thenThrow(new IllegalStateException("Pool exhausted"));
+
+        BulkEmitter emitter = new BulkEmitter(config, batchOperations);
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        emitter.add("index1");
+        emitter.add("index2");
+        emitter.add("index1");
+
+        // when
+        emitter.notifyListener();
+
+        // then
+        ArgumentCaptor<TestBatch> captor = ArgumentCaptor.forClass(TestBatch.class);
+        verify(dummyObserver, times(1)).apply(captor.capture());
+        assertEquals(3, captor.getValue().items.size());
+
+    }
+
+    @Test
+    public void drainedItemBatchAndPermitAreReleasedIfItemCannotBeAddedToBatch() {
+
+        // given
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withGroupByIndex(true)
+                .build();
+
+        BatchBuilder batchBuilder = spy(new TestBatchBuilder());
+        IndexNameTestBatchOperations batchOperations = spy(new IndexNameTestBatchOperations());
+        when(batchOperations.createBatchBuilder()).thenReturn(batchBuilder);
+        doThrow(new IllegalStateException("test")).when(batchOperations).getIndexName(eq("index2"));
+
+        BulkEmitter emitter = new BulkEmitter(config, batchOperations);
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        Semaphore deliveryPermits = new Semaphore(1);
+        emitter.setDeliveryPermits(deliveryPermits);
+
+        emitter.add("index1");
+        emitter.add("index2");
+
+        // when
+        IllegalStateException caught = null;
+        try {
+            emitter.notifyListener();
+        } catch (IllegalStateException e) {
+            caught = e;
+        }
+
+        // then
+        Assert.assertNotNull(caught);
+        verify(batchOperations).releaseBatchItem(eq("index2"));
+        verify(batchBuilder).release();
+        verify(dummyObserver, never()).apply(any());
+        assertEquals(1, deliveryPermits.availablePermits());
+
+    }
+
+    @Test
+    public void batchAndPermitAreReleasedIfBatchCannotBeBuilt() {
+
+        // given
+        BatchBuilder batchBuilder = spy(new TestBatchBuilder());
+        doThrow(new IllegalStateException("test")).when(batchBuilder).build();
+
+        TestBatchOperations batchOperations = spy(new TestBatchOperations());
+        when(batchOperations.createBatchBuilder()).thenReturn(batchBuilder);
+
+        BulkEmitter emitter = createTestBulkEmitter(TEST_BATCH_SIZE, LARGE_TEST_INTERVAL, batchOperations);
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        Semaphore deliveryPermits = new Semaphore(1);
+        emitter.setDeliveryPermits(deliveryPermits);
+
+        emitter.add(new Object());
+
+        // when
+        IllegalStateException caught = null;
+        try {
+            emitter.notifyListener();
+        } catch (IllegalStateException e) {
+            caught = e;
+        }
+
+        // then
+        Assert.assertNotNull(caught);
+        verify(batchBuilder).release();
+        verify(dummyObserver, never()).apply(any());
+        assertEquals(1, deliveryPermits.availablePermits());
+
+    }
+
     @Test
     public void listenerIsNotifiedByScheduledTask() throws InterruptedException {
 
@@ -270,6 +926,216 @@ public class BulkEmitterTest {
 
     }
 
+    @Test
+    public void sizeTriggeredDeliveryMovesDeliveryDeadline() {
+
+        // given
+        long intervalInNanos = TimeUnit.MILLISECONDS.toNanos(LARGE_TEST_INTERVAL);
+        AtomicLong clock = new AtomicLong(System.nanoTime());
+
+        // scheduled deadline doesn't fire during the test, so the deadline is triggered manually
+        BulkEmitter emitter = new BulkEmitter(TEST_BATCH_SIZE, LARGE_TEST_INTERVAL, new TestBatchOperations()) {
+            @Override
+            long nanoTime() {
+                return clock.get();
+            }
+        };
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        emitter.add(new Object());
+        clock.addAndGet(intervalInNanos * 6 / 10);
+
+        // when
+        emitter.add(new Object());
+        verify(dummyObserver, timeout(1000).times(1)).apply(any());
+        emitter.add(new Object());
+
+        clock.addAndGet(intervalInNanos * 6 / 10);
+        emitter.onDeliveryDeadline();
+
+        // then
+        verify(dummyObserver, times(1)).apply(any());
+
+        // when
+        clock.addAndGet(intervalInNanos * 4 / 10);
+        emitter.onDeliveryDeadline();
+
+        // then
+        verify(dummyObserver, times(2)).apply(any());
+
+    }
+
+    @Test
+    public void adaptiveBatchSizeIsDisabledByDefault() {
+
+        // given
+        BulkEmitter emitter = createTestBulkEmitter(TEST_BATCH_SIZE, 1000, new TestBatchOperations());
+
+        // when
+        AdaptiveBatchSize adaptiveBatchSize = emitter.getAdaptiveBatchSize();
+
+        // then
+        Assert.assertNull(adaptiveBatchSize);
+        assertEquals(TEST_BATCH_SIZE, emitter.getBatchSize());
+
+    }
+
+    @Test
+    public void sizeTriggeredDeliveryUsesAdaptiveBatchSize() {
+
+        // given
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(4)
+                .withDeliveryInterval(10000)
+                .withMinBatchSize(2)
+                .withMaxBatchSize(8)
+                .build();
+        BulkEmitter emitter = new BulkEmitter(config, new TestBatchOperations());
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        // when
+        emitter.getAdaptiveBatchSize().onFailure();
+        emitter.add(new Object());
+        emitter.add(new Object());
+
+        // then
+        assertEquals(2, emitter.getBatchSize());
+        verify(dummyObserver, timeout(500)).apply(any());
+
+    }
+
+    @Test
+    public void deliversOneBatchPerIndexIfGroupByIndexIsEnabled() {
+
+        // given
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(10000)
+                .withGroupByIndex(true)
+                .build();
+        BulkEmitter emitter = new BulkEmitter(config, new IndexNameTestBatchOperations());
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        emitter.add("index1");
+        emitter.add("index2");
+        emitter.add("index1");
+
+        // when
+        emitter.notifyListener();
+
+        // then
+        ArgumentCaptor<TestBatch> captor = ArgumentCaptor.forClass(TestBatch.class);
+        verify(dummyObserver, times(2)).apply(captor.capture());
+
+        assertEquals(2, captor.getAllValues().get(0).items.size());
+        assertTrue(captor.getAllValues().get(0).items.stream().allMatch("index1"::equals));
+        assertEquals(1, captor.getAllValues().get(1).items.size());
+        assertTrue(captor.getAllValues().get(1).items.contains("index2"));
+
+    }
+
+    @Test
+    public void deliversOneBatchIfGroupByIndexIsDisabled() {
+
+        // given
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(10000)
+                .build();
+        BulkEmitter emitter = new BulkEmitter(config, new IndexNameTestBatchOperations());
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        emitter.add("index1");
+        emitter.add("index2");
+
+        // when
+        emitter.notifyListener();
+
+        // then
+        ArgumentCaptor<TestBatch> captor = ArgumentCaptor.forClass(TestBatch.class);
+        verify(dummyObserver, times(1)).apply(captor.capture());
+        assertEquals(2, captor.getValue().items.size());
+
+    }
+
+    @Test
+    public void endOfBatchDeliversPendingItemsIfMinItemsThresholdIsMet() {
+
+        // given
+        BulkEmitter emitter = new BulkEmitter(createEndOfBatchTestConfig()
+                .withEndOfBatchMinItems(2)
+                .build(), new TestBatchOperations());
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        emitter.add(new Object());
+        emitter.onEndOfBatch();
+        verify(dummyObserver, timeout(100).times(0)).apply(any());
+
+        // when
+        emitter.add(new Object());
+        emitter.onEndOfBatch();
+
+        // then
+        verify(dummyObserver, timeout(500)).apply(any());
+
+    }
+
+    @Test
+    public void endOfBatchDeliversPendingItemsIfMinBytesThresholdIsMet() {
+
+        // given
+        BulkEmitter emitter = new BulkEmitter(createEndOfBatchTestConfig()
+                .withEndOfBatchMinItems(Integer.MAX_VALUE)
+                .withEndOfBatchMinBytes(10)
+                .build(), new FixedSizeTestBatchOperations(5));
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        emitter.add(new Object());
+        emitter.onEndOfBatch();
+        verify(dummyObserver, timeout(100).times(0)).apply(any());
+
+        // when
+        emitter.add(new Object());
+        emitter.onEndOfBatch();
+
+        // then
+        verify(dummyObserver, timeout(500)).apply(any());
+
+    }
+
+    @Test
+    public void endOfBatchIsIgnoredIfFlushOnEndOfBatchIsDisabled() {
+
+        // given
+        BulkEmitter emitter = new BulkEmitter(createEndOfBatchTestConfig()
+                .withFlushOnEndOfBatch(false)
+                .build(), new TestBatchOperations());
+        Function<TestBatch, Boolean> dummyObserver = dummyObserver();
+        emitter.addListener(dummyObserver);
+
+        emitter.add(new Object());
+
+        // when
+        emitter.onEndOfBatch();
+
+        // then
+        verify(dummyObserver, timeout(100).times(0)).apply(any());
+
+    }
+
+    private BatchEmitterConfig.Builder createEndOfBatchTestConfig() {
+        return BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withFlushOnEndOfBatch(true);
+    }
+
     @Test
     public void listenerIsNotifiedonLifecycleStop() {
 
@@ -346,6 +1212,17 @@ public class BulkEmitterTest {
         }
     }
 
+    class TestBatchCollector implements Function<TestBatch, Boolean> {
+
+        private final AtomicInteger deliveredCount = new AtomicInteger();
+
+        @Override
+        public Boolean apply(TestBatch batch) {
+            deliveredCount.addAndGet(batch.items.size());
+            return true;
+        }
+    }
+
     public static class TestBatchOperations implements BatchOperations {
 
         @Override
@@ -365,6 +1242,30 @@ public class BulkEmitterTest {
 
     }
 
+    public static class FixedSizeTestBatchOperations extends TestBatchOperations {
+
+        private int itemSizeInBytes;
+
+        public FixedSizeTestBatchOperations(int itemSizeInBytes) {
+            this.itemSizeInBytes = itemSizeInBytes;
+        }
+
+        @Override
+        public int getSizeInBytes(Object batchItem) {
+            return itemSizeInBytes;
+        }
+
+    }
+
+    public static class IndexNameTestBatchOperations extends TestBatchOperations {
+
+        @Override
+        public String getIndexName(Object batchItem) {
+            return (String) batchItem;
+        }
+
+    }
+
     public static class TestBatchBuilder implements BatchBuilder {
 
         private Collection<Object> items = new ConcurrentLinkedQueue<>();
@@ -0,0 +1,203 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DeliverySchedulerTest {
+
+    @Test
+    public void acquireReturnsSameInstanceForSameName() {
+
+        // given
+        String name = UUID.randomUUID().toString();
+
+        // when
+        DeliveryScheduler scheduler1 = DeliveryScheduler.acquire(name);
+        DeliveryScheduler scheduler2 = DeliveryScheduler.acquire(name);
+
+        // then
+        assertSame(scheduler1, scheduler2);
+
+    }
+
+    @Test
+    public void acquireReturnsDifferentInstancesForDifferentNames() {
+
+        // when
+        DeliveryScheduler scheduler1 = DeliveryScheduler.acquire(UUID.randomUUID().toString());
+        DeliveryScheduler scheduler2 = DeliveryScheduler.acquire(UUID.randomUUID().toString());
+
+        // then
+        assertNotSame(scheduler1, scheduler2);
+
+    }
+
+    @Test
+    public void acquireIncreasesPoolSizeToMinPoolSize() {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        DeliveryScheduler scheduler = DeliveryScheduler.acquire(name);
+        assertEquals(1, scheduler.getPoolSize());
+
+        // when
+        DeliveryScheduler.acquire(name, 4);
+
+        // then
+        assertEquals(4, scheduler.getPoolSize());
+
+    }
+
+    @Test
+    public void acquireDoesNotDecreasePoolSize() {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        DeliveryScheduler scheduler = DeliveryScheduler.acquire(name, 4);
+
+        // when
+        DeliveryScheduler.acquire(name, 2);
+
+        // then
+        assertEquals(4, scheduler.getPoolSize());
+
+    }
+
+    @Test
+    public void poolSizeFollowsNumberOfUsersByDefault() {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        DeliveryScheduler scheduler = DeliveryScheduler.acquire(name);
+
+        // when
+        DeliveryScheduler.acquire(name);
+        DeliveryScheduler.acquire(name);
+
+        // then
+        assertEquals(3, scheduler.getPoolSize());
+
+        // when
+        scheduler.release();
+
+        // then
+        assertEquals(2, scheduler.getPoolSize());
+
+    }
+
+    @Test
+    public void configuredPoolSizeDoesNotFollowNumberOfUsers() {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        System.setProperty(DeliveryScheduler.POOL_SIZE_PROPERTY_NAME, "3");
+
+        try {
+
+            // when
+            DeliveryScheduler scheduler = DeliveryScheduler.acquire(name);
+            DeliveryScheduler.acquire(name);
+
+            // then
+            assertEquals(3, scheduler.getPoolSize());
+
+        } finally {
+            System.clearProperty(DeliveryScheduler.POOL_SIZE_PROPERTY_NAME);
+        }
+
+    }
+
+    @Test
+    public void acquireUsesDefaultNameIfNameIsNull() {
+
+        // when
+        DeliveryScheduler scheduler = DeliveryScheduler.acquire(null);
+
+        // then
+        assertEquals(DeliveryScheduler.DEFAULT_NAME, scheduler.getName());
+
+    }
+
+    @Test
+    public void schedulerIsShutdownWhenReleasedByLastUser() {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        DeliveryScheduler scheduler = DeliveryScheduler.acquire(name);
+        DeliveryScheduler.acquire(name);
+
+        // when
+        scheduler.release();
+
+        // then
+        assertFalse(scheduler.isShutdown());
+
+        // when
+        scheduler.release();
+
+        // then
+        assertTrue(scheduler.isShutdown());
+        assertNotSame(scheduler, DeliveryScheduler.acquire(name));
+
+    }
+
+    @Test
+    public void releaseIsNoopIfSchedulerWasAlreadyShutdown() {
+
+        // given
+        DeliveryScheduler scheduler = DeliveryScheduler.acquire(UUID.randomUUID().toString());
+        scheduler.release();
+
+        // when
+        scheduler.release();
+
+        // then
+        assertTrue(scheduler.isShutdown());
+
+    }
+
+    @Test
+    public void scheduledTaskIsExecuted() throws InterruptedException {
+
+        // given
+        DeliveryScheduler scheduler = DeliveryScheduler.acquire(UUID.randomUUID().toString());
+        CountDownLatch latch = new CountDownLatch(1);
+
+        // when
+        scheduler.schedule(latch::countDown, TimeUnit.MILLISECONDS.toNanos(10));
+
+        // then
+        assertTrue(latch.await(1000, TimeUnit.MILLISECONDS));
+
+    }
+
+}
@@ -196,6 +196,72 @@ public class ElasticsearchAppenderTest {
         verify(batchDelivery, times(1)).add(eq("formattedIndexName"), any(ItemSource.class));
     }
 
+    @Test
+    public void appenderSkipsEventsRejectedByBatchDelivery() {
+
+        // given
+        BatchDelivery<String> batchDelivery = mock(BatchDelivery.class);
+        when(batchDelivery.rejects(any(Level.class))).thenReturn(true);
+
+        ElasticsearchAppender.Builder builder = ElasticsearchAppenderTest.createTestElasticsearchAppenderBuilder();
+        builder.withBatchDelivery(batchDelivery);
+        builder.withMessageOnly(false);
+
+        LogEvent logEvent = createTestLogEvent();
+
+        ElasticsearchAppender appender = builder.build();
+
+        // when
+        appender.append(logEvent);
+
+        // then
+        verify(batchDelivery).rejects(eq(logEvent.getLevel()));
+        verify(batchDelivery, times(0)).add(anyString(), any(ItemSource.class));
+    }
+
+    @Test
+    public void appenderNotifiesBatchDeliveryOnEndOfBatch() {
+
+        // given
+        BatchDelivery<String> batchDelivery = mock(BatchDelivery.class);
+
+        ElasticsearchAppender.Builder builder = ElasticsearchAppenderTest.createTestElasticsearchAppenderBuilder();
+        builder.withBatchDelivery(batchDelivery);
+        builder.withMessageOnly(false);
+
+        LogEvent logEvent = createTestLogEvent();
+        logEvent.setEndOfBatch(true);
+
+        ElasticsearchAppender appender = builder.build();
+
+        // when
+        appender.append(logEvent);
+
+        // then
+        verify(batchDelivery).onEndOfBatch();
+    }
+
+    @Test
+    public void appenderDoesNotNotifyBatchDeliveryIfNotEndOfBatch() {
+
+        // given
+        BatchDelivery<String> batchDelivery = mock(BatchDelivery.class);
+
+        ElasticsearchAppender.Builder builder = ElasticsearchAppenderTest.createTestElasticsearchAppenderBuilder();
+        builder.withBatchDelivery(batchDelivery);
+        builder.withMessageOnly(false);
+
+        LogEvent logEvent = createTestLogEvent();
+
+        ElasticsearchAppender appender = builder.build();
+
+        // when
+        appender.append(logEvent);
+
+        // then
+        verify(batchDelivery, times(0)).onEndOfBatch();
+    }
+
     @Test
     public void lifecycleStart() {
 
@@ -1,9 +1,13 @@
 package org.appenders.log4j2.elasticsearch;
 
+import org.apache.logging.log4j.core.LogEvent;
 import org.junit.Test;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -97,6 +101,38 @@ public class ItemSourceAppenderTest {
 
     }
 
+    @Test
+    public void appendAddsSerializedItemToBatchDelivery() {
+
+        // given
+        BatchDelivery batchDelivery = mock(BatchDelivery.class);
+        ItemSource itemSource = mock(ItemSource.class);
+
+        ItemAppender<LogEvent> itemAppender = new ItemSourceAppender(batchDelivery, logEvent -> itemSource);
+
+        // when
+        itemAppender.append("testIndex", mock(LogEvent.class));
+
+        // then
+        verify(batchDelivery).add(eq("testIndex"), eq(itemSource));
+
+    }
+
+    @Test
+    public void appendSkipsEventIfSerializerDidNotProduceItemSource() {
+
+        // given
+        BatchDelivery batchDelivery = mock(BatchDelivery.class);
+        ItemAppender<LogEvent> itemAppender = new ItemSourceAppender(batchDelivery, logEvent -> null);
+
+        // when
+        itemAppender.append("testIndex", mock(LogEvent.class));
+
+        // then
+        verify(batchDelivery, never()).add(anyString(), any(ItemSource.class));
+
+    }
+
     private LifeCycle createLifeCycleTestObject() {
         BatchDelivery batchDelivery = mock(BatchDelivery.class);
         when(batchDelivery.isStarted()).thenReturn(false);
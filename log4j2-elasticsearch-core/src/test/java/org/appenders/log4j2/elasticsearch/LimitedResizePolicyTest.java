@@ -0,0 +1,338 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.core.config.ConfigurationException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LimitedResizePolicyTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void builderBuildsSuccessfully() {
+
+        // given
+        LimitedResizePolicy.Builder builder = LimitedResizePolicy.newBuilder()
+                .withMaxSize(100);
+
+        // when
+        ResizePolicy policy = builder.build();
+
+        // then
+        assertNotNull(policy);
+    }
+
+    @Test
+    public void builderThrowsWhenResizeFactorIsZero() {
+
+        // given
+        LimitedResizePolicy.Builder builder = LimitedResizePolicy.newBuilder()
+                .withMaxSize(100)
+                .withResizeFactor(0);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("must be higher than 0");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsWhenResizeFactorIsHigherThanOne() {
+
+        // given
+        LimitedResizePolicy.Builder builder = LimitedResizePolicy.newBuilder()
+                .withMaxSize(100)
+                .withResizeFactor(1.1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("must be lower or equal 1");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsWhenMaxSizeIsLowerThanZero() {
+
+        // given
+        LimitedResizePolicy.Builder builder = LimitedResizePolicy.newBuilder()
+                .withMaxSize(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("maxSize cannot be negative");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsWhenMaxBytesIsLowerThanZero() {
+
+        // given
+        LimitedResizePolicy.Builder builder = LimitedResizePolicy.newBuilder()
+                .withMaxSize(100)
+                .withMaxBytes(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("maxBytes cannot be negative");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsWhenNoLimitIsConfigured() {
+
+        // given
+        LimitedResizePolicy.Builder builder = LimitedResizePolicy.newBuilder();
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("maxSize or maxBytes must be higher than 0");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void increaseThrowsWhenResizeWouldNotTakeAnyEffect() {
+
+        // given
+        ResizePolicy policy = LimitedResizePolicy.newBuilder()
+                .withMaxSize(100)
+                .withResizeFactor(0.1)
+                .build();
+
+        ItemSourcePool pool = mock(ItemSourcePool.class);
+        when(pool.getInitialSize()).thenReturn(5);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("will not resize given pool");
+
+        // when
+        policy.increase(pool);
+
+    }
+
+    @Test
+    public void increaseIncrementsPoolSizeByResizeFactorMultipliedByInitialPoolSizeIfBelowMaxSize() {
+
+        // given
+        ResizePolicy policy = LimitedResizePolicy.newBuilder()
+                .withMaxSize(100)
+                .withResizeFactor(0.5)
+                .build();
+
+        ItemSourcePool pool = mock(ItemSourcePool.class);
+        when(pool.getInitialSize()).thenReturn(10);
+        when(pool.getTotalSize()).thenReturn(10);
+
+        // when
+        boolean resized = policy.increase(pool);
+
+        // then
+        assertTrue(resized);
+        verify(pool).incrementPoolSize(5);
+
+    }
+
+    @Test
+    public void increaseIncrementsPoolSizeUpToMaxSize() {
+
+        // given
+        ResizePolicy policy = LimitedResizePolicy.newBuilder()
+                .withMaxSize(12)
+                .withResizeFactor(0.5)
+                .build();
+
+        ItemSourcePool pool = mock(ItemSourcePool.class);
+        when(pool.getInitialSize()).thenReturn(10);
+        when(pool.getTotalSize()).thenReturn(10);
+
+        // when
+        boolean resized = policy.increase(pool);
+
+        // then
+        assertTrue(resized);
+        verify(pool).incrementPoolSize(2);
+
+    }
+
+    @Test
+    public void increaseDoesNotResizeWhenMaxSizeIsReached() {
+
+        // given
+        ResizePolicy policy = LimitedResizePolicy.newBuilder()
+                .withMaxSize(10)
+                .build();
+
+        ItemSourcePool pool = mock(ItemSourcePool.class);
+        when(pool.getInitialSize()).thenReturn(10);
+        when(pool.getTotalSize()).thenReturn(10);
+
+        // when
+        boolean resized = policy.increase(pool);
+
+        // then
+        assertFalse(resized);
+        verify(pool, never()).incrementPoolSize(anyInt());
+
+    }
+
+    @Test
+    public void increaseIncrementsPoolSizeUpToMaxBytes() {
+
+        // given
+        ResizePolicy policy = LimitedResizePolicy.newBuilder()
+                .withMaxBytes(12 * 1024)
+                .withResizeFactor(0.5)
+                .build();
+
+        ItemSourcePool pool = mock(ItemSourcePool.class);
+        when(pool.getInitialSize()).thenReturn(10);
+        when(pool.getTotalSize()).thenReturn(10);
+        when(pool.getItemSizeInBytes()).thenReturn(1024);
+
+        // when
+        boolean resized = policy.increase(pool);
+
+        // then
+        assertTrue(resized);
+        verify(pool).incrementPoolSize(2);
+
+    }
+
+    @Test
+    public void increaseDoesNotResizeWhenActualSizeInBytesReachedMaxBytes() {
+
+        // given
+        ResizePolicy policy = LimitedResizePolicy.newBuilder()
+                .withMaxBytes(12 * 1024)
+                .withResizeFactor(0.5)
+                .build();
+
+        ItemSourcePool pool = mock(ItemSourcePool.class);
+        when(pool.getInitialSize()).thenReturn(10);
+        when(pool.getTotalSize()).thenReturn(10);
+        when(pool.getItemSizeInBytes()).thenReturn(1024);
+        // some elements grew above item size
+        when(pool.getTotalSizeInBytes()).thenReturn(12L * 1024);
+
+        // when
+        boolean resized = policy.increase(pool);
+
+        // then
+        assertFalse(resized);
+        verify(pool, never()).incrementPoolSize(anyInt());
+
+    }
+
+    @Test
+    public void remainingSizeIsLowerOfBothLimits() {
+
+        // given
+        LimitedResizePolicy policy = LimitedResizePolicy.newBuilder()
+                .withMaxSize(20)
+                .withMaxBytes(10 * 1024)
+                .build();
+
+        ItemSourcePool pool = mock(ItemSourcePool.class);
+        when(pool.getItemSizeInBytes()).thenReturn(1024);
+
+        // when
+        int remainingSize = policy.getRemainingSize(pool);
+
+        // then
+        assertEquals(10, remainingSize);
+
+    }
+
+    @Test
+    public void maxBytesIsIgnoredIfItemSizeIsUnknown() {
+
+        // given
+        LimitedResizePolicy policy = LimitedResizePolicy.newBuilder()
+                .withMaxSize(20)
+                .withMaxBytes(10 * 1024)
+                .build();
+
+        ItemSourcePool pool = mock(ItemSourcePool.class);
+        when(pool.getItemSizeInBytes()).thenReturn(0);
+
+        // when
+        int remainingSize = policy.getRemainingSize(pool);
+
+        // then
+        assertEquals(20, remainingSize);
+
+    }
+
+    @Test
+    public void decreaseNeverShrinksBelowInitialSize() throws PoolResourceException {
+
+        // given
+        int initialSize = 40;
+        int additionalSize = 60;
+
+        ResizePolicy resizePolicy = LimitedResizePolicy.newBuilder()
+                .withMaxSize(initialSize + additionalSize)
+                .withResizeFactor(0.75)
+                .build();
+
+        ItemSourcePool pool = spy(BufferedItemSourcePoolTest.createDefaultTestBufferedItemSourcePool(initialSize, false));
+        pool.incrementPoolSize(additionalSize);
+
+        for (int ii = 0; ii < 5; ii++) {
+            pool.getPooled();
+        }
+
+        // when
+        boolean resized = resizePolicy.decrease(pool);
+
+        // then
+        assertTrue(resized);
+        assertEquals(initialSize + 5, pool.getTotalSize());
+        verify(pool, times(55)).remove();
+
+    }
+
+}
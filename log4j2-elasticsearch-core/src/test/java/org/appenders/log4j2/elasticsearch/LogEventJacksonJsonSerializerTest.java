@@ -0,0 +1,148 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogEventJacksonJsonSerializerTest {
+
+    @Test
+    public void outputIsEqualToDatabindOutput() throws IOException {
+
+        // given
+        LogEvent logEvent = createTestLogEventBuilder()
+                .setMarker(MarkerManager.getMarker(UUID.randomUUID().toString()))
+                .build();
+
+        // when
+        String generated = createWriter(JacksonJsonLayout.Mode.GENERATOR).writeValueAsString(logEvent);
+        String databind = createWriter(JacksonJsonLayout.Mode.DATABIND).writeValueAsString(logEvent);
+
+        // then
+        ObjectMapper objectMapper = new ObjectMapper();
+        assertEquals(objectMapper.readTree(databind), objectMapper.readTree(generated));
+
+    }
+
+    @Test
+    public void outputWithThrownIsEqualToDatabindOutput() throws IOException {
+
+        // given
+        LogEvent logEvent = createTestLogEventBuilder()
+                .setThrown(new IllegalStateException(UUID.randomUUID().toString()))
+                .build();
+
+        // when
+        String generated = createWriter(JacksonJsonLayout.Mode.GENERATOR).writeValueAsString(logEvent);
+        String databind = createWriter(JacksonJsonLayout.Mode.DATABIND).writeValueAsString(logEvent);
+
+        // then
+        ObjectMapper objectMapper = new ObjectMapper();
+        assertEquals(objectMapper.readTree(databind), objectMapper.readTree(generated));
+
+    }
+
+    @Test
+    public void fieldsAreWrittenInDatabindOrder() throws IOException {
+
+        // given
+        LogEvent logEvent = createTestLogEventBuilder().build();
+
+        // when
+        String generated = createWriter(JacksonJsonLayout.Mode.GENERATOR).writeValueAsString(logEvent);
+
+        // then
+        assertEquals(createWriter(JacksonJsonLayout.Mode.DATABIND).writeValueAsString(logEvent), generated);
+
+    }
+
+    @Test
+    public void emptyLoggerNameIsOmitted() throws IOException {
+
+        // given
+        LogEvent logEvent = createTestLogEventBuilder()
+                .setLoggerName("")
+                .build();
+
+        // when
+        String generated = createWriter(JacksonJsonLayout.Mode.GENERATOR).writeValueAsString(logEvent);
+
+        // then
+        assertFalse(generated.contains("loggerName"));
+
+    }
+
+    @Test
+    public void formattableMessageIsWrittenWithReusedBuffers() throws IOException {
+
+        // given
+        ObjectWriter writer = createWriter(JacksonJsonLayout.Mode.GENERATOR);
+        String largeParam = String.join("", Collections.nCopies(1000, UUID.randomUUID().toString()));
+        String smallParam = UUID.randomUUID().toString();
+
+        // when
+        String large = writer.writeValueAsString(createTestLogEventBuilder()
+                .setMessage(new ParameterizedMessage("large: {}", largeParam))
+                .build());
+        String small = writer.writeValueAsString(createTestLogEventBuilder()
+                .setMessage(new ParameterizedMessage("small: {}", smallParam))
+                .build());
+
+        // then
+        assertTrue(large.contains("\"message\":\"large: " + largeParam + "\""));
+        assertTrue(small.contains("\"message\":\"small: " + smallParam + "\""));
+
+    }
+
+    private ObjectWriter createWriter(JacksonJsonLayout.Mode mode) {
+        return JacksonJsonLayout.newBuilder()
+                .withMode(mode)
+                .createConfiguredWriter(Collections.emptyList());
+    }
+
+    private Log4jLogEvent.Builder createTestLogEventBuilder() {
+        Message message = new SimpleMessage(UUID.randomUUID().toString());
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName(UUID.randomUUID().toString())
+                .setLevel(Level.INFO)
+                .setMessage(message)
+                .setThreadName(UUID.randomUUID().toString())
+                .setTimeMillis(System.currentTimeMillis());
+    }
+
+}
@@ -23,6 +23,8 @@ package org.appenders.log4j2.elasticsearch;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.config.ConfigurationException;
@@ -43,11 +45,15 @@ import java.util.concurrent.TimeUnit;
 
 import static org.appenders.log4j2.elasticsearch.BufferedItemSourceTest.createDefaultTestByteBuf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -118,6 +124,170 @@ public class PooledItemSourceFactoryTest {
 
     }
 
+    @Test
+    public void builderThrowsOnThreadLocalCacheSizeLessThanZero() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withThreadLocalCacheSize(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("threadLocalCacheSize cannot be negative");
+        expectedException.expectMessage(PooledItemSourceFactory.PLUGIN_NAME);
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsOnMaxItemSizeInBytesLessThanZero() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withMaxItemSizeInBytes(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("maxItemSizeInBytes cannot be negative");
+        expectedException.expectMessage(PooledItemSourceFactory.PLUGIN_NAME);
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsOnMaxItemSizeInBytesLowerThanItemSizeInBytes() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withItemSizeInBytes(1024)
+                .withMaxItemSizeInBytes(1023);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("maxItemSizeInBytes must be higher than or equal to itemSizeInBytes");
+        expectedException.expectMessage(PooledItemSourceFactory.PLUGIN_NAME);
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsOnEagerPoolSizeLessThanZero() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withEagerPoolSize(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("eagerPoolSize cannot be negative");
+        expectedException.expectMessage(PooledItemSourceFactory.PLUGIN_NAME);
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsOnLeakDetectionSampleRateHigherThanOne() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withLeakDetectionSampleRate(1.1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("leakDetectionSampleRate must be between 0 and 1");
+        expectedException.expectMessage(PooledItemSourceFactory.PLUGIN_NAME);
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsOnLeakThresholdZero() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withLeakThreshold(0);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("leakThreshold must be higher than 0");
+        expectedException.expectMessage(PooledItemSourceFactory.PLUGIN_NAME);
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsOnAllocatorArenasLessThanZero() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withAllocatorArenas(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("allocatorArenas cannot be negative");
+        expectedException.expectMessage(PooledItemSourceFactory.PLUGIN_NAME);
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderCreatesUnpooledHeapAllocatorByDefault() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig();
+
+        // when
+        ByteBufAllocator allocator = builder.createByteBufAllocator();
+
+        // then
+        assertEquals(UnpooledByteBufAllocator.class, allocator.getClass());
+        assertFalse(allocator.buffer().isDirect());
+
+    }
+
+    @Test
+    public void builderCreatesUnpooledDirectAllocatorIfDirectBuffersAreConfigured() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withDirectBuffers(true);
+
+        // when
+        ByteBufAllocator allocator = builder.createByteBufAllocator();
+
+        // then
+        assertEquals(UnpooledByteBufAllocator.class, allocator.getClass());
+        assertTrue(allocator.buffer().isDirect());
+
+    }
+
+    @Test
+    public void builderCreatesPooledAllocatorWithConfiguredNumberOfArenas() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withPooledAllocator(true)
+                .withDirectBuffers(true)
+                .withAllocatorArenas(3);
+
+        // when
+        ByteBufAllocator allocator = builder.createByteBufAllocator();
+
+        // then
+        assertEquals(PooledByteBufAllocator.class, allocator.getClass());
+        assertTrue(allocator.buffer().isDirect());
+        assertEquals(3, ((PooledByteBufAllocator) allocator).metric().numDirectArenas());
+        assertEquals(0, ((PooledByteBufAllocator) allocator).metric().numHeapArenas());
+
+    }
+
     @Test
     public void builderThrowsOnItemSizeInBytesZero() {
 
@@ -151,20 +321,121 @@ public class PooledItemSourceFactoryTest {
     }
 
     @Test
-    public void throwsWhenCreateCantGetPooledElement() throws PoolResourceException {
+    public void createDropsItemWhenPoolIsExhaustedAndPolicyIsDrop() throws PoolResourceException {
+
         // given
         ItemSourcePool mockedPool = mock(ItemSourcePool.class);
+        when(mockedPool.getPooled()).thenThrow(new PoolResourceException(UUID.randomUUID().toString()));
 
-        String expectedMessage = UUID.randomUUID().toString();
-        when(mockedPool.getPooled()).thenThrow(new PoolResourceException(expectedMessage));
+        FailoverPolicy failoverPolicy = mock(FailoverPolicy.class);
+        PooledItemSourceFactory pooledItemSourceFactory = new PooledItemSourceFactory(mockedPool, PoolExhaustedPolicy.DROP, 0, failoverPolicy);
 
-        PooledItemSourceFactory pooledItemSourceFactory = new PooledItemSourceFactory(mockedPool);
+        // when
+        ItemSource itemSource = pooledItemSourceFactory.create(UUID.randomUUID().toString(), new ObjectMapper().writer());
 
-        expectedException.expect(IllegalStateException.class);
-        expectedException.expectMessage(expectedMessage);
+        // then
+        assertNull(itemSource);
+        assertEquals(1, pooledItemSourceFactory.getDroppedCount());
+        verify(failoverPolicy, never()).deliver(any());
+
+    }
+
+    @Test
+    public void createDivertsItemWhenPoolIsExhaustedAndPolicyIsFailover() throws PoolResourceException {
+
+        // given
+        ItemSourcePool mockedPool = mock(ItemSourcePool.class);
+        when(mockedPool.getPooled()).thenThrow(new PoolResourceException(UUID.randomUUID().toString()));
+
+        FailoverPolicy failoverPolicy = mock(FailoverPolicy.class);
+        PooledItemSourceFactory pooledItemSourceFactory = new PooledItemSourceFactory(mockedPool, PoolExhaustedPolicy.FAILOVER, 0, failoverPolicy);
+
+        String source = UUID.randomUUID().toString();
 
         // when
-        pooledItemSourceFactory.create(mock(LogEvent.class), new ObjectMapper().writerFor(LogEvent.class));
+        ItemSource itemSource = pooledItemSourceFactory.create(source, new ObjectMapper().writer());
+
+        // then
+        assertNull(itemSource);
+        assertEquals(1, pooledItemSourceFactory.getDivertedCount());
+        verify(failoverPolicy).deliver(eq("\"" + source + "\""));
+
+    }
+
+    @Test
+    public void createWaitsForReleasedElementWhenPoolIsExhaustedAndPolicyIsWait() throws PoolResourceException {
+
+        // given
+        ItemSourcePool mockedPool = mock(ItemSourcePool.class);
+        ItemSource<ByteBuf> expectedItemSource = new BufferedItemSource(createDefaultTestByteBuf(), source -> {});
+        when(mockedPool.getPooled())
+                .thenThrow(new PoolResourceException(UUID.randomUUID().toString()))
+                .thenReturn(expectedItemSource);
+        when(mockedPool.getAvailableSize()).thenReturn(0).thenReturn(1);
+
+        PooledItemSourceFactory pooledItemSourceFactory = new PooledItemSourceFactory(mockedPool, PoolExhaustedPolicy.WAIT, 1000, mock(FailoverPolicy.class));
+
+        // when
+        ItemSource itemSource = pooledItemSourceFactory.create(UUID.randomUUID().toString(), new ObjectMapper().writer());
+
+        // then
+        assertEquals(expectedItemSource, itemSource);
+        assertEquals(0, pooledItemSourceFactory.getDroppedCount());
+
+    }
+
+    @Test
+    public void createDropsItemWhenWaitForReleasedElementTimedOut() throws PoolResourceException {
+
+        // given
+        ItemSourcePool mockedPool = mock(ItemSourcePool.class);
+        when(mockedPool.getPooled()).thenThrow(new PoolResourceException(UUID.randomUUID().toString()));
+        when(mockedPool.getAvailableSize()).thenReturn(0);
+
+        PooledItemSourceFactory pooledItemSourceFactory = new PooledItemSourceFactory(mockedPool, PoolExhaustedPolicy.WAIT, 10, mock(FailoverPolicy.class));
+
+        // when
+        ItemSource itemSource = pooledItemSourceFactory.create(UUID.randomUUID().toString(), new ObjectMapper().writer());
+
+        // then
+        assertNull(itemSource);
+        assertEquals(1, pooledItemSourceFactory.getDroppedCount());
+
+    }
+
+    @Test
+    public void createDoesNotExceedLimitedResizePolicyMaxSize() {
+
+        // given
+        int maxSize = DEFAULT_TEST_POOL_SIZE * 2;
+        PooledItemSourceFactory pooledItemSourceFactory = createDefaultTestSourceFactoryConfig()
+                .withResizePolicy(LimitedResizePolicy.newBuilder().withMaxSize(maxSize).build())
+                .withPoolExhaustedPolicy(PoolExhaustedPolicy.DROP)
+                .build();
+
+        // when
+        for (int ii = 0; ii < maxSize + 5; ii++) {
+            pooledItemSourceFactory.create(UUID.randomUUID().toString(), new ObjectMapper().writer());
+        }
+
+        // then
+        assertEquals(maxSize, pooledItemSourceFactory.bufferedItemSourcePool.getTotalSize());
+        assertEquals(5, pooledItemSourceFactory.getDroppedCount());
+
+    }
+
+    @Test
+    public void builderThrowsOnNullPoolExhaustedPolicy() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withPoolExhaustedPolicy(null);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("No poolExhaustedPolicy provided");
+
+        // when
+        builder.build();
 
     }
 
@@ -302,6 +573,11 @@ public class PooledItemSourceFactoryTest {
         int itemSizeInBytes = new Random().nextInt(1024) + 1024;
         String poolName = UUID.randomUUID().toString();
         ResizePolicy resizePolicy = mock(ResizePolicy.class);
+        int threadLocalCacheSize = new Random().nextInt(100) + 1;
+        int maxItemSizeInBytes = itemSizeInBytes * 4;
+        double leakDetectionSampleRate = 0.01;
+        int eagerPoolSize = new Random().nextInt(100) + 1;
+        long leakThreshold = new Random().nextInt(1000) + 1;
 
         PooledItemSourceFactory.Builder builder = PowerMockito.spy(createDefaultTestSourceFactoryConfig())
                 .withMonitored(monitored)
@@ -310,7 +586,13 @@ public class PooledItemSourceFactoryTest {
                 .withResizeTimeout(resizeTimeout)
                 .withInitialPoolSize(initialPoolSize)
                 .withItemSizeInBytes(itemSizeInBytes)
-                .withPoolName(poolName);
+                .withPoolName(poolName)
+                .withThreadLocalCacheSize(threadLocalCacheSize)
+                .withMaxItemSizeInBytes(maxItemSizeInBytes)
+                .withLeakDetectionSampleRate(leakDetectionSampleRate)
+                .withLeakThreshold(leakThreshold)
+                .withLifo(true)
+                .withEagerPoolSize(eagerPoolSize);
 
         BufferedItemSourcePool pool = BufferedItemSourcePoolTest.createDefaultTestBufferedItemSourcePool(DEFAULT_TEST_POOL_SIZE, monitored);
         PowerMockito.whenNew(BufferedItemSourcePool.class).withAnyArguments().thenReturn(pool);
@@ -322,16 +604,194 @@ public class PooledItemSourceFactoryTest {
         PowerMockito.verifyNew(BufferedItemSourcePool.class).withArguments(
                 eq(poolName),
                 any(UnpooledByteBufAllocator.class),
+                eq(false),
                 eq(resizePolicy),
                 eq(resizeTimeout),
                 eq(monitored),
                 eq(monitorTaskInterval),
                 eq(initialPoolSize),
-                eq(itemSizeInBytes)
+                eq(itemSizeInBytes),
+                eq(threadLocalCacheSize),
+                eq(maxItemSizeInBytes),
+                eq(leakDetectionSampleRate),
+                eq(leakThreshold),
+                eq(true),
+                eq(eagerPoolSize)
         );
 
     }
 
+    @Test
+    public void builderThrowsWhenSharedAndPoolNameIsNull() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withShared(true)
+                .withPoolName(null);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("poolName must be provided if pool is shared");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsWhenQuotaIsNegative() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withShared(true)
+                .withPoolName(UUID.randomUUID().toString())
+                .withQuota(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("quota cannot be negative");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsWhenQuotaIsConfiguredAndPoolIsNotShared() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withQuota(1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("quota can be applied to shared pool only");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsWhenInitialPoolSizeExceedsMaxSizeOfLimitedResizePolicy() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withInitialPoolSize(10)
+                .withResizePolicy(LimitedResizePolicy.newBuilder().withMaxSize(9).build());
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("initialPoolSize cannot exceed maxSize or maxBytes");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsWhenInitialPoolSizeExceedsMaxBytesOfLimitedResizePolicy() {
+
+        // given
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withInitialPoolSize(10)
+                .withItemSizeInBytes(1024)
+                .withResizePolicy(LimitedResizePolicy.newBuilder().withMaxBytes(9 * 1024).build());
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("initialPoolSize cannot exceed maxSize or maxBytes");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void sharedFactoriesWithSamePoolNameUseSamePool() {
+
+        // given
+        String poolName = UUID.randomUUID().toString();
+        PooledItemSourceFactory.Builder builder = createDefaultTestSourceFactoryConfig()
+                .withShared(true)
+                .withPoolName(poolName);
+
+        PooledItemSourceFactory factory1 = builder.build();
+        PooledItemSourceFactory factory2 = builder.build();
+
+        // when
+        factory1.createEmptySource();
+
+        // then
+        assertEquals(DEFAULT_TEST_POOL_SIZE, factory2.bufferedItemSourcePool.getTotalSize());
+        assertEquals(DEFAULT_TEST_POOL_SIZE - 1, factory2.bufferedItemSourcePool.getAvailableSize());
+
+        factory1.stop(1000, TimeUnit.MILLISECONDS);
+        factory2.stop(1000, TimeUnit.MILLISECONDS);
+
+    }
+
+    @Test
+    public void sharedPoolSettingsOfNextFactoryAreDetectedAndIgnored() {
+
+        // given
+        String poolName = UUID.randomUUID().toString();
+        PooledItemSourceFactory.Builder builder1 = createDefaultTestSourceFactoryConfig()
+                .withShared(true)
+                .withPoolName(poolName);
+        PooledItemSourceFactory.Builder builder2 = createDefaultTestSourceFactoryConfig()
+                .withShared(true)
+                .withPoolName(poolName)
+                .withInitialPoolSize(DEFAULT_TEST_POOL_SIZE * 2);
+
+        // when
+        PooledItemSourceFactory factory1 = builder1.build();
+        PooledItemSourceFactory factory2 = builder2.build();
+
+        // then
+        assertNotEquals(builder1.getSharedPoolSettings(), builder2.getSharedPoolSettings());
+        assertEquals(DEFAULT_TEST_POOL_SIZE, factory2.bufferedItemSourcePool.getTotalSize());
+
+        factory1.stop(1000, TimeUnit.MILLISECONDS);
+        factory2.stop(1000, TimeUnit.MILLISECONDS);
+
+    }
+
+    @Test
+    public void sharedPoolSettingsAreEqualForEqualConfigs() {
+
+        // given
+        PooledItemSourceFactory.Builder builder1 = createDefaultTestSourceFactoryConfig()
+                .withResizePolicy(UnlimitedResizePolicy.newBuilder().build());
+        PooledItemSourceFactory.Builder builder2 = createDefaultTestSourceFactoryConfig()
+                .withResizePolicy(UnlimitedResizePolicy.newBuilder().build());
+
+        // then
+        assertEquals(builder1.getSharedPoolSettings(), builder2.getSharedPoolSettings());
+
+    }
+
+    @Test
+    public void createDropsItemWhenSharedPoolQuotaExceeded() {
+
+        // given
+        int quota = 2;
+        PooledItemSourceFactory pooledItemSourceFactory = createDefaultTestSourceFactoryConfig()
+                .withShared(true)
+                .withPoolName(UUID.randomUUID().toString())
+                .withQuota(quota)
+                .withPoolExhaustedPolicy(PoolExhaustedPolicy.DROP)
+                .build();
+
+        // when
+        for (int ii = 0; ii < quota + 3; ii++) {
+            pooledItemSourceFactory.create(UUID.randomUUID().toString(), new ObjectMapper().writer());
+        }
+
+        // then
+        assertEquals(3, pooledItemSourceFactory.getDroppedCount());
+        assertEquals(0, pooledItemSourceFactory.bufferedItemSourcePool.getAvailableSize());
+        assertEquals(DEFAULT_TEST_POOL_SIZE, pooledItemSourceFactory.bufferedItemSourcePool.getTotalSize());
+
+        pooledItemSourceFactory.stop(1000, TimeUnit.MILLISECONDS);
+
+    }
+
     @Test
     public void lifecycleStopShutsDownPool() {
 
@@ -0,0 +1,346 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.core.config.ConfigurationException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PredictiveResizePolicyTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void builderBuildsSuccessfully() {
+
+        // given
+        PredictiveResizePolicy.Builder builder = PredictiveResizePolicy.newBuilder();
+
+        // when
+        ResizePolicy policy = builder.build();
+
+        // then
+        assertNotNull(policy);
+        assertEquals(PredictiveResizePolicy.Builder.DEFAULT_SAMPLE_INTERVAL, policy.getSampleInterval());
+
+    }
+
+    @Test
+    public void builderThrowsWhenResizeFactorIsZero() {
+
+        // given
+        PredictiveResizePolicy.Builder builder = PredictiveResizePolicy.newBuilder()
+                .withResizeFactor(0);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("resizeFactor must be higher than 0");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsWhenResizeFactorIsHigherThanOne() {
+
+        // given
+        PredictiveResizePolicy.Builder builder = PredictiveResizePolicy.newBuilder()
+                .withResizeFactor(1.1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("resizeFactor must be lower or equal 1");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsWhenSampleIntervalIsZero() {
+
+        // given
+        PredictiveResizePolicy.Builder builder = PredictiveResizePolicy.newBuilder()
+                .withSampleInterval(0);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("sampleInterval must be higher than 0");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsWhenSmoothingFactorIsOutOfRange() {
+
+        // given
+        PredictiveResizePolicy.Builder builder = PredictiveResizePolicy.newBuilder()
+                .withSmoothingFactor(1.5);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("smoothingFactor must be higher than 0 and lower or equal 1");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsWhenLookaheadIsZero() {
+
+        // given
+        PredictiveResizePolicy.Builder builder = PredictiveResizePolicy.newBuilder()
+                .withLookahead(0);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("lookahead must be higher than 0");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void increaseIncrementsPoolSizeByResizeFactorMultipliedByInitialPoolSize() {
+
+        // given
+        ResizePolicy policy = PredictiveResizePolicy.newBuilder().withResizeFactor(0.2).build();
+
+        ItemSourcePool pool = mock(ItemSourcePool.class);
+        when(pool.getInitialSize()).thenReturn(10);
+
+        // when
+        boolean resized = policy.increase(pool);
+
+        // then
+        assertTrue(resized);
+        verify(pool).incrementPoolSize(2);
+
+    }
+
+    @Test
+    public void increaseThrowsWhenResizeWouldNotTakeAnyEffect() {
+
+        // given
+        ResizePolicy policy = PredictiveResizePolicy.newBuilder().withResizeFactor(0.1).build();
+
+        ItemSourcePool pool = mock(ItemSourcePool.class);
+        when(pool.getInitialSize()).thenReturn(5);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("will not resize given pool");
+
+        // when
+        policy.increase(pool);
+
+    }
+
+    @Test
+    public void sampleDoesNotResizeWhenUsageIsStableAndSpareElementsAreAvailable() {
+
+        // given
+        ResizePolicy policy = createTestPolicy();
+
+        ItemSourcePool pool = createTestPool(100, 100, 50);
+
+        // when
+        policy.sample(pool);
+        boolean resized = policy.sample(pool);
+
+        // then
+        assertFalse(resized);
+        verify(pool, never()).incrementPoolSize(anyInt());
+
+    }
+
+    @Test
+    public void sampleGrowsPoolBeforeItRunsOutOfElements() {
+
+        // given
+        PredictiveResizePolicy policy = createTestPolicy();
+
+        ItemSourcePool pool = createTestPool(100, 100, 80);
+        policy.sample(pool); // 20 in use
+
+        when(pool.getAvailableSize()).thenReturn(60);
+        policy.sample(pool); // 40 in use, growing by 20 per sample
+
+        when(pool.getAvailableSize()).thenReturn(40);
+
+        // when
+        boolean resized = policy.sample(pool); // 60 in use
+
+        // then
+        assertTrue(resized);
+        assertTrue(policy.getAverageGrowth() > 0);
+
+        // 60 in use + predicted growth + spare elements
+        int expectedIncrement = (int) Math.ceil(60 + policy.getAverageGrowth() * 2) + 50 - 100;
+        verify(pool).incrementPoolSize(expectedIncrement);
+
+    }
+
+    @Test
+    public void sampleSmoothsNumberOfElementsInUse() {
+
+        // given
+        PredictiveResizePolicy policy = PredictiveResizePolicy.newBuilder()
+                .withSmoothingFactor(0.5)
+                .build();
+
+        ItemSourcePool pool = createTestPool(100, 100, 100);
+        policy.sample(pool); // 0 in use
+
+        when(pool.getAvailableSize()).thenReturn(80);
+
+        // when
+        policy.sample(pool); // 20 in use
+
+        // then
+        assertEquals(10, policy.getAverageInUse(), 0.0001);
+        assertEquals(10, policy.getAverageGrowth(), 0.0001);
+
+    }
+
+    @Test
+    public void decreaseDoesNotResizeBeforeFirstSample() {
+
+        // given
+        ResizePolicy policy = createTestPolicy();
+        ItemSourcePool pool = createTestPool(100, 1000, 1000);
+
+        // when
+        boolean resized = policy.decrease(pool);
+
+        // then
+        assertFalse(resized);
+        verify(pool, never()).remove();
+
+    }
+
+    @Test
+    public void decreaseRemovesResizeFactorOfExcessElements() {
+
+        // given
+        ResizePolicy policy = createTestPolicy();
+        ItemSourcePool pool = createTestPool(100, 300, 300);
+        policy.sample(pool); // 0 in use
+
+        // when
+        boolean resized = policy.decrease(pool);
+
+        // then
+        assertTrue(resized);
+
+        // (300 - max(100, 0 + 50)) * 0.5
+        verify(pool, times(100)).remove();
+
+    }
+
+    @Test
+    public void decreaseNeverRemovesMoreThanRecyclable() {
+
+        // given
+        ResizePolicy policy = createTestPolicy();
+        ItemSourcePool pool = createTestPool(100, 300, 300);
+        policy.sample(pool);
+
+        when(pool.getRecyclableSize()).thenReturn(10);
+
+        // when
+        policy.decrease(pool);
+
+        // then
+        verify(pool, times(10)).remove();
+
+    }
+
+    @Test
+    public void decreaseNeverShrinksBelowInitialSize() {
+
+        // given
+        ResizePolicy policy = createTestPolicy();
+        ItemSourcePool pool = createTestPool(100, 100, 100);
+        policy.sample(pool);
+
+        // when
+        boolean resized = policy.decrease(pool);
+
+        // then
+        assertFalse(resized);
+        verify(pool, never()).remove();
+
+    }
+
+    @Test
+    public void pooledElementsAreCreatedBySamplerWhenLoadIncreases() throws PoolResourceException {
+
+        // given
+        PredictiveResizePolicy policy = createTestPolicy();
+        BufferedItemSourcePool pool = BufferedItemSourcePoolTest.createDefaultTestBufferedItemSourcePool(10, false);
+        BufferedItemSourcePool.Sampler sampler = new BufferedItemSourcePool.Sampler(pool, policy);
+
+        sampler.run();
+
+        // when
+        for (int ii = 0; ii < 8; ii++) {
+            pool.getPooled();
+        }
+        sampler.run();
+
+        // then
+        assertTrue(pool.getTotalSize() > 10);
+        assertTrue(pool.getAvailableSize() > 2);
+        pool.shutdown();
+
+    }
+
+    private PredictiveResizePolicy createTestPolicy() {
+        return PredictiveResizePolicy.newBuilder()
+                .withResizeFactor(0.5)
+                .withSmoothingFactor(0.5)
+                .withLookahead(2)
+                .build();
+    }
+
+    private ItemSourcePool createTestPool(int initialSize, int totalSize, int availableSize) {
+        ItemSourcePool pool = mock(ItemSourcePool.class);
+        when(pool.getInitialSize()).thenReturn(initialSize);
+        when(pool.getTotalSize()).thenReturn(totalSize);
+        when(pool.getAvailableSize()).thenReturn(availableSize);
+        when(pool.getRecyclableSize()).thenReturn(availableSize);
+        return pool;
+    }
+
+}
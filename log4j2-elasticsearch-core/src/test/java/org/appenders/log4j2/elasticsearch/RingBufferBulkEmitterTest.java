@@ -0,0 +1,280 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.appenders.log4j2.elasticsearch.BulkEmitterTest.LARGE_TEST_INTERVAL;
+import static org.appenders.log4j2.elasticsearch.BulkEmitterTest.TEST_DATA;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class RingBufferBulkEmitterTest {
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+
+        // when
+        RingBufferBulkEmitter emitter = createTestRingBufferBulkEmitter(1, 1000);
+
+        // then
+        assertEquals(1024, emitter.getCapacity());
+
+    }
+
+    @Test
+    public void notifiesOnBatchWithGivenSize() {
+
+        // given
+        int batchSize = 3;
+        RingBufferBulkEmitter emitter = createTestRingBufferBulkEmitter(batchSize, 16);
+        Function<BulkEmitterTest.TestBatch, Boolean> listener = spy(new TestListener());
+        emitter.addListener(listener);
+
+        // when
+        for (int ii = 0; ii < batchSize; ii++) {
+            emitter.add(new BulkEmitterTest.TestBatchItem(TEST_DATA));
+        }
+
+        // then
+        ArgumentCaptor<BulkEmitterTest.TestBatch> captor = ArgumentCaptor.forClass(BulkEmitterTest.TestBatch.class);
+        verify(listener, timeout(1000).times(1)).apply(captor.capture());
+        assertEquals(batchSize, captor.getValue().items.size());
+
+    }
+
+    @Test
+    public void listenerIsNotNotifiedWhenThereNoItemsToBatch() {
+
+        // given
+        RingBufferBulkEmitter emitter = createTestRingBufferBulkEmitter(2, 16);
+        Function<BulkEmitterTest.TestBatch, Boolean> listener = spy(new TestListener());
+        emitter.addListener(listener);
+
+        // when
+        emitter.notifyListener();
+
+        // then
+        verify(listener, never()).apply(any());
+
+    }
+
+    @Test
+    public void listenerIsNotifiedOnLifecycleStop() {
+
+        // given
+        RingBufferBulkEmitter emitter = createTestRingBufferBulkEmitter(2, 16);
+        Function<BulkEmitterTest.TestBatch, Boolean> listener = spy(new TestListener());
+        emitter.addListener(listener);
+
+        // when
+        emitter.add(new BulkEmitterTest.TestBatchItem(TEST_DATA));
+        emitter.stop();
+
+        // then
+        verify(listener).apply(any());
+
+    }
+
+    @Test
+    public void overflowPolicyDropOldestDropsOldestUndeliveredItem() {
+
+        // given
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withRingBufferSize(16)
+                .withCapacity(2)
+                .withOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+                .build();
+
+        BulkEmitterTest.TestBatchOperations batchOperations = spy(new BulkEmitterTest.TestBatchOperations());
+        RingBufferBulkEmitter emitter = new RingBufferBulkEmitter(config, batchOperations);
+        Function<BulkEmitterTest.TestBatch, Boolean> listener = spy(new TestListener());
+        emitter.addListener(listener);
+
+        BulkEmitterTest.TestBatchItem item1 = new BulkEmitterTest.TestBatchItem(TEST_DATA);
+
+        // when
+        emitter.add(item1);
+        emitter.add(new BulkEmitterTest.TestBatchItem(TEST_DATA));
+        emitter.add(new BulkEmitterTest.TestBatchItem(TEST_DATA));
+        emitter.notifyListener();
+
+        // then
+        assertEquals(1, emitter.getDroppedCount());
+        verify(batchOperations).releaseBatchItem(eq(item1));
+
+        ArgumentCaptor<BulkEmitterTest.TestBatch> captor = ArgumentCaptor.forClass(BulkEmitterTest.TestBatch.class);
+        verify(listener).apply(captor.capture());
+        assertEquals(2, captor.getValue().items.size());
+        assertFalse(captor.getValue().items.contains(item1));
+
+    }
+
+    @Test
+    public void overflowPolicyIsAppliedWhenRingBufferIsFull() {
+
+        // given
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withRingBufferSize(2)
+                .withOverflowPolicy(OverflowPolicy.DROP_NEWEST)
+                .build();
+
+        BulkEmitterTest.TestBatchOperations batchOperations = spy(new BulkEmitterTest.TestBatchOperations());
+        RingBufferBulkEmitter emitter = new RingBufferBulkEmitter(config, batchOperations);
+        Function<BulkEmitterTest.TestBatch, Boolean> listener = spy(new TestListener());
+        emitter.addListener(listener);
+
+        BulkEmitterTest.TestBatchItem item3 = new BulkEmitterTest.TestBatchItem(TEST_DATA);
+
+        // when
+        emitter.add(new BulkEmitterTest.TestBatchItem(TEST_DATA));
+        emitter.add(new BulkEmitterTest.TestBatchItem(TEST_DATA));
+        emitter.add(item3);
+        emitter.notifyListener();
+
+        // then
+        assertEquals(1, emitter.getDroppedCount());
+        verify(batchOperations).releaseBatchItem(eq(item3));
+
+        ArgumentCaptor<BulkEmitterTest.TestBatch> captor = ArgumentCaptor.forClass(BulkEmitterTest.TestBatch.class);
+        verify(listener).apply(captor.capture());
+        assertEquals(2, captor.getValue().items.size());
+        assertFalse(captor.getValue().items.contains(item3));
+
+    }
+
+    @Test
+    public void blockingProducerGivesUpAfterOverflowTimeoutWhenRingBufferIsFull() {
+
+        // given
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withRingBufferSize(2)
+                .withOverflowPolicy(OverflowPolicy.BLOCK)
+                .withOverflowTimeout(10)
+                .build();
+
+        RingBufferBulkEmitter emitter = new RingBufferBulkEmitter(config, new BulkEmitterTest.TestBatchOperations());
+        emitter.addListener(new TestListener());
+
+        // no delivery permits, so requested delivery will not release any slots
+        emitter.setDeliveryPermits(new Semaphore(0));
+        emitter.add(new BulkEmitterTest.TestBatchItem(TEST_DATA));
+        emitter.add(new BulkEmitterTest.TestBatchItem(TEST_DATA));
+
+        // when
+        emitter.add(new BulkEmitterTest.TestBatchItem(TEST_DATA));
+
+        // then
+        assertEquals(1, emitter.getDroppedCount());
+        assertEquals(2, emitter.getUndeliveredSize());
+
+    }
+
+    @Test
+    public void deliversAllItemsWhenRingBufferWrapsAround() throws InterruptedException {
+
+        // given
+        int numberOfThreads = 8;
+        int itemsPerThread = 10000;
+
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(8)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withRingBufferSize(16)
+                .withOverflowPolicy(OverflowPolicy.BLOCK)
+                .withOverflowTimeout(LARGE_TEST_INTERVAL)
+                .build();
+
+        RingBufferBulkEmitter emitter = new RingBufferBulkEmitter(config, new BulkEmitterTest.TestBatchOperations());
+        TestListener listener = new TestListener();
+        emitter.addListener(listener);
+
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch end = new CountDownLatch(numberOfThreads);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int ii = 0; ii < numberOfThreads; ii++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int jj = 0; jj < itemsPerThread; jj++) {
+                        emitter.add(new BulkEmitterTest.TestBatchItem(TEST_DATA));
+                    }
+                } catch (InterruptedException e) {
+                    // noop
+                } finally {
+                    end.countDown();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        // when
+        start.countDown();
+        end.await();
+        emitter.stop();
+
+        // stop() may have been racing with scheduled notification
+        emitter.notifyListener();
+
+        // then
+        assertEquals(numberOfThreads * itemsPerThread, listener.delivered.get());
+
+    }
+
+    private RingBufferBulkEmitter createTestRingBufferBulkEmitter(int batchSize, int ringBufferSize) {
+        return new RingBufferBulkEmitter(batchSize, LARGE_TEST_INTERVAL, ringBufferSize, new BulkEmitterTest.TestBatchOperations());
+    }
+
+    static class TestListener implements Function<BulkEmitterTest.TestBatch, Boolean> {
+
+        final AtomicInteger delivered = new AtomicInteger();
+
+        @Override
+        public Boolean apply(BulkEmitterTest.TestBatch batch) {
+            delivered.addAndGet(batch.items.size());
+            return true;
+        }
+
+    }
+
+}
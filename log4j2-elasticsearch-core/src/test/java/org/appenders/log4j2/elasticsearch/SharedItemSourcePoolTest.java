@@ -0,0 +1,276 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.netty.buffer.ByteBuf;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.appenders.log4j2.elasticsearch.BufferedItemSourcePoolTest.DEFAULT_TEST_INITIAL_POOL_SIZE;
+import static org.appenders.log4j2.elasticsearch.BufferedItemSourcePoolTest.createDefaultTestBufferedItemSourcePool;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SharedItemSourcePoolTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void acquireCreatesPoolOncePerScopeAndName() {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        Supplier<BufferedItemSourcePool> poolFactory = spy(new TestPoolFactory());
+
+        // when
+        SharedItemSourcePool view1 = SharedItemSourcePool.acquire(null, name, 0, poolFactory);
+        SharedItemSourcePool view2 = SharedItemSourcePool.acquire(null, name, 0, poolFactory);
+
+        // then
+        verify(poolFactory, times(1)).get();
+        assertNotSame(view1, view2);
+
+        view1.shutdown();
+        view2.shutdown();
+
+    }
+
+    @Test
+    public void acquireCreatesSeparatePoolsForDifferentScopes() {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        Supplier<BufferedItemSourcePool> poolFactory = spy(new TestPoolFactory());
+
+        // when
+        SharedItemSourcePool view1 = SharedItemSourcePool.acquire(UUID.randomUUID().toString(), name, 0, poolFactory);
+        SharedItemSourcePool view2 = SharedItemSourcePool.acquire(UUID.randomUUID().toString(), name, 0, poolFactory);
+
+        // then
+        verify(poolFactory, times(2)).get();
+
+        view1.shutdown();
+        view2.shutdown();
+
+    }
+
+    @Test
+    public void elementsAcquiredWithOneViewAreNotAvailableToOtherViews() throws PoolResourceException {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        SharedItemSourcePool view1 = SharedItemSourcePool.acquire(null, name, 0, new TestPoolFactory());
+        SharedItemSourcePool view2 = SharedItemSourcePool.acquire(null, name, 0, new TestPoolFactory());
+
+        // when
+        view1.getPooled();
+
+        // then
+        assertEquals(DEFAULT_TEST_INITIAL_POOL_SIZE, view2.getTotalSize());
+        assertEquals(DEFAULT_TEST_INITIAL_POOL_SIZE - 1, view2.getAvailableSize());
+
+        view1.shutdown();
+        view2.shutdown();
+
+    }
+
+    @Test
+    public void getPooledThrowsWhenQuotaExceeded() throws PoolResourceException {
+
+        // given
+        int quota = 2;
+        SharedItemSourcePool view = SharedItemSourcePool.acquire(null, UUID.randomUUID().toString(), quota, new TestPoolFactory());
+
+        for (int ii = 0; ii < quota; ii++) {
+            view.getPooled();
+        }
+
+        expectedException.expect(PoolResourceException.class);
+        expectedException.expectMessage("Quota of " + quota);
+
+        // when
+        view.getPooled();
+
+    }
+
+    @Test
+    public void releaseDecrementsQuotaUsage() throws PoolResourceException {
+
+        // given
+        int quota = 1;
+        SharedItemSourcePool view = SharedItemSourcePool.acquire(null, UUID.randomUUID().toString(), quota, new TestPoolFactory());
+
+        ItemSource<ByteBuf> itemSource = view.getPooled();
+        assertEquals(1, view.getQuotaUsage());
+        assertEquals(0, view.getAvailableSize());
+
+        // when
+        itemSource.release();
+
+        // then
+        assertEquals(0, view.getQuotaUsage());
+        assertEquals(quota, view.getAvailableSize());
+        view.getPooled();
+
+        view.shutdown();
+
+    }
+
+    @Test
+    public void quotaOfOneViewDoesNotLimitOtherViews() throws PoolResourceException {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        SharedItemSourcePool view1 = SharedItemSourcePool.acquire(null, name, 1, new TestPoolFactory());
+        SharedItemSourcePool view2 = SharedItemSourcePool.acquire(null, name, 0, new TestPoolFactory());
+
+        view1.getPooled();
+
+        // when
+        for (int ii = 0; ii < DEFAULT_TEST_INITIAL_POOL_SIZE - 1; ii++) {
+            view2.getPooled();
+        }
+
+        // then
+        assertEquals(1, view1.getQuotaUsage());
+        assertEquals(0, view2.getQuotaUsage());
+        assertEquals(0, view2.getAvailableSize());
+
+        view1.shutdown();
+        view2.shutdown();
+
+    }
+
+    @Test
+    public void underlyingPoolIsShutDownByLastView() {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        BufferedItemSourcePool pool = spy(createDefaultTestBufferedItemSourcePool(DEFAULT_TEST_INITIAL_POOL_SIZE, false));
+
+        SharedItemSourcePool view1 = SharedItemSourcePool.acquire(null, name, 0, () -> pool);
+        SharedItemSourcePool view2 = SharedItemSourcePool.acquire(null, name, 0, () -> pool);
+
+        // when
+        view1.shutdown();
+        view1.shutdown();
+
+        // then
+        verify(pool, never()).shutdown();
+
+        // when
+        view2.shutdown();
+
+        // then
+        verify(pool).shutdown();
+
+    }
+
+    @Test
+    public void acquireCreatesNewPoolAfterPreviousOneWasShutDown() {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        Supplier<BufferedItemSourcePool> poolFactory = spy(new TestPoolFactory());
+
+        SharedItemSourcePool.acquire(null, name, 0, poolFactory).shutdown();
+
+        // when
+        SharedItemSourcePool view = SharedItemSourcePool.acquire(null, name, 0, poolFactory);
+
+        // then
+        verify(poolFactory, times(2)).get();
+
+        view.shutdown();
+
+    }
+
+    @Test
+    public void acquireWithDifferentSettingsCreatesNewPoolAndKeepsPreviousOneUntilReleased() {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        BufferedItemSourcePool pool1 = spy(createDefaultTestBufferedItemSourcePool(DEFAULT_TEST_INITIAL_POOL_SIZE, false));
+        BufferedItemSourcePool pool2 = spy(createDefaultTestBufferedItemSourcePool(DEFAULT_TEST_INITIAL_POOL_SIZE, false));
+
+        SharedItemSourcePool view1 = SharedItemSourcePool.acquire(null, name, 0, "initialPoolSize=1", () -> pool1);
+
+        // when
+        SharedItemSourcePool view2 = SharedItemSourcePool.acquire(null, name, 0, "initialPoolSize=2", () -> pool2);
+        view1.getTotalSize();
+        view2.getTotalSize();
+
+        // then
+        verify(pool1, times(1)).getTotalSize();
+        verify(pool2, times(1)).getTotalSize();
+
+        // when
+        view1.shutdown();
+
+        // then
+        verify(pool1).shutdown();
+        verify(pool2, never()).shutdown();
+
+        view2.shutdown();
+
+    }
+
+    @Test
+    public void acquireWithSettingsOfReconfiguredPoolSharesNewPool() {
+
+        // given
+        String name = UUID.randomUUID().toString();
+        Supplier<BufferedItemSourcePool> poolFactory = spy(new TestPoolFactory());
+
+        SharedItemSourcePool previousView = SharedItemSourcePool.acquire(null, name, 0, "initialPoolSize=1", poolFactory);
+        SharedItemSourcePool view1 = SharedItemSourcePool.acquire(null, name, 0, "initialPoolSize=2", poolFactory);
+        previousView.shutdown();
+
+        // when
+        SharedItemSourcePool view2 = SharedItemSourcePool.acquire(null, name, 0, "initialPoolSize=2", poolFactory);
+
+        // then
+        verify(poolFactory, times(2)).get();
+
+        view1.shutdown();
+        view2.shutdown();
+
+    }
+
+    static class TestPoolFactory implements Supplier<BufferedItemSourcePool> {
+
+        @Override
+        public BufferedItemSourcePool get() {
+            return createDefaultTestBufferedItemSourcePool(DEFAULT_TEST_INITIAL_POOL_SIZE, false);
+        }
+
+    }
+
+}
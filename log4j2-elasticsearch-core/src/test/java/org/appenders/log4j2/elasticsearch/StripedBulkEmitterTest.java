@@ -0,0 +1,231 @@
+package org.appenders.log4j2.elasticsearch;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.Level;
+import org.appenders.log4j2.elasticsearch.BulkEmitterTest.TestBatch;
+import org.appenders.log4j2.elasticsearch.BulkEmitterTest.TestBatchOperations;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StripedBulkEmitterTest {
+
+    private static final int LARGE_TEST_INTERVAL = 10000;
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void throwsWhenNoLanesProvided() {
+
+        // given
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("At least one lane required");
+
+        // when
+        new StripedBulkEmitter<TestBatch>();
+
+    }
+
+    @Test
+    public void spreadsItemsOfOneThreadOverAllLanes() {
+
+        // given
+        BulkEmitter<TestBatch> lane1 = createTestLane(createTestListener());
+        BulkEmitter<TestBatch> lane2 = createTestLane(createTestListener());
+        StripedBulkEmitter<TestBatch> emitter = new StripedBulkEmitter<>(lane1, lane2);
+
+        // when
+        for (int ii = 0; ii < 1000; ii++) {
+            emitter.add(new Object());
+        }
+
+        // then
+        assertFalse(lane1.isEmpty());
+        assertFalse(lane2.isEmpty());
+
+    }
+
+    @Test
+    public void onEndOfBatchNotifiesAllLanes() {
+
+        // given
+        BulkEmitter<TestBatch> lane1 = spy(createTestLane(createTestListener()));
+        BulkEmitter<TestBatch> lane2 = spy(createTestLane(createTestListener()));
+        StripedBulkEmitter<TestBatch> emitter = new StripedBulkEmitter<>(lane1, lane2);
+
+        // when
+        emitter.onEndOfBatch();
+
+        // then
+        verify(lane1).onEndOfBatch();
+        verify(lane2).onEndOfBatch();
+
+    }
+
+    @Test
+    public void notifyListenerDeliversAllLanes() {
+
+        // given
+        Function<TestBatch, Boolean> listener1 = createTestListener();
+        Function<TestBatch, Boolean> listener2 = createTestListener();
+        BulkEmitter<TestBatch> lane1 = createTestLane(listener1);
+        BulkEmitter<TestBatch> lane2 = createTestLane(listener2);
+        StripedBulkEmitter<TestBatch> emitter = new StripedBulkEmitter<>(lane1, lane2);
+
+        lane1.add(new Object());
+        lane2.add(new Object());
+
+        // when
+        emitter.notifyListener();
+
+        // then
+        verify(listener1, times(1)).apply(any());
+        verify(listener2, times(1)).apply(any());
+
+    }
+
+    @Test
+    public void lifecycleStartStartsAllLanes() {
+
+        // given
+        BulkEmitter<TestBatch> lane1 = createTestLane(createTestListener());
+        BulkEmitter<TestBatch> lane2 = createTestLane(createTestListener());
+        StripedBulkEmitter<TestBatch> emitter = new StripedBulkEmitter<>(lane1, lane2);
+
+        // when
+        emitter.start();
+
+        // then
+        assertTrue(emitter.isStarted());
+        assertTrue(lane1.isStarted());
+        assertTrue(lane2.isStarted());
+
+    }
+
+    @Test
+    public void lifecycleStopStopsAndDeliversAllLanes() {
+
+        // given
+        Function<TestBatch, Boolean> listener1 = createTestListener();
+        Function<TestBatch, Boolean> listener2 = createTestListener();
+        BulkEmitter<TestBatch> lane1 = createTestLane(listener1);
+        BulkEmitter<TestBatch> lane2 = createTestLane(listener2);
+        StripedBulkEmitter<TestBatch> emitter = new StripedBulkEmitter<>(lane1, lane2);
+        emitter.start();
+
+        lane1.add(new Object());
+        lane2.add(new Object());
+
+        // when
+        emitter.stop();
+
+        // then
+        assertTrue(emitter.isStopped());
+        assertTrue(lane1.isStopped());
+        assertTrue(lane2.isStopped());
+        verify(listener1, times(1)).apply(any());
+        verify(listener2, times(1)).apply(any());
+
+    }
+
+    @Test
+    public void droppedCountIsSumOfAllLanes() {
+
+        // given
+        BulkEmitter<TestBatch> lane1 = createOverflowTestLane();
+        BulkEmitter<TestBatch> lane2 = createOverflowTestLane();
+        StripedBulkEmitter<TestBatch> emitter = new StripedBulkEmitter<>(lane1, lane2);
+
+        // when
+        for (int ii = 0; ii < 2; ii++) {
+            lane1.add(new Object());
+            lane2.add(new Object());
+        }
+
+        // then
+        assertEquals(2, emitter.getDroppedCount());
+        assertEquals(0, emitter.getDivertedCount());
+
+    }
+
+    @Test
+    public void rejectsDelegatesToLane() {
+
+        // given
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withCapacity(1)
+                .withOverflowPolicy(OverflowPolicy.DROP_BELOW_LEVEL)
+                .build();
+        BulkEmitter<TestBatch> lane = new BulkEmitter<>(config, new TestBatchOperations());
+        lane.addListener(createTestListener());
+        StripedBulkEmitter<TestBatch> emitter = new StripedBulkEmitter<>(lane);
+
+        // when
+        emitter.add(new Object());
+
+        // then
+        assertTrue(emitter.rejects(Level.INFO));
+        assertFalse(emitter.rejects(Level.ERROR));
+
+    }
+
+    private BulkEmitter<TestBatch> createTestLane(Function<TestBatch, Boolean> listener) {
+        BulkEmitter<TestBatch> lane = new BulkEmitter<>(Integer.MAX_VALUE, LARGE_TEST_INTERVAL, new TestBatchOperations());
+        lane.addListener(listener);
+        return lane;
+    }
+
+    private BulkEmitter<TestBatch> createOverflowTestLane() {
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(LARGE_TEST_INTERVAL)
+                .withCapacity(1)
+                .withOverflowPolicy(OverflowPolicy.DROP_NEWEST)
+                .build();
+        BulkEmitter<TestBatch> lane = new BulkEmitter<>(config, new TestBatchOperations());
+        lane.addListener(createTestListener());
+        return lane;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Function<TestBatch, Boolean> createTestListener() {
+        Function<TestBatch, Boolean> listener = mock(Function.class);
+        when(listener.apply(any())).thenReturn(true);
+        return listener;
+    }
+
+}
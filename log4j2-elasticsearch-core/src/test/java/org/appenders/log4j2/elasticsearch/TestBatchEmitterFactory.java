@@ -43,4 +43,9 @@ public class TestBatchEmitterFactory extends BatchEmitterServiceProvider impleme
         }
         return spiedEmitter;
     }
+
+    @Override
+    public BatchEmitter createInstance(BatchEmitterConfig config, ClientObjectFactory clientObjectFactory, FailoverPolicy failoverPolicy) {
+        return createInstance(config.getBatchSize(), config.getDeliveryInterval(), clientObjectFactory, failoverPolicy);
+    }
 }
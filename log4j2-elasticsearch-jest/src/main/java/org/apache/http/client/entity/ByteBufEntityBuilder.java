@@ -24,7 +24,9 @@ public class ByteBufEntityBuilder extends EntityBuilder {
 
     @Override
     public HttpEntity build() {
-        return new ByteBufHttpEntity(byteByf, contentLength, getContentType());
+        ByteBufHttpEntity entity = new ByteBufHttpEntity(byteByf, contentLength, getContentType());
+        entity.setContentEncoding(getContentEncoding());
+        return entity;
     }
 
 }
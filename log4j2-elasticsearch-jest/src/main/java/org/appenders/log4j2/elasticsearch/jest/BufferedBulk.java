@@ -24,6 +24,7 @@ import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.CompositeByteBuf;
 import io.searchbox.action.BulkableAction;
 import io.searchbox.core.Bulk;
 import org.appenders.log4j2.elasticsearch.ItemSource;
@@ -31,11 +32,23 @@ import org.appenders.log4j2.elasticsearch.ItemSource;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
 
 /**
  * Extended Jest {@code io.searchbox.core.Bulk} using {@link org.appenders.log4j2.elasticsearch.BufferedItemSource}
+ * <p>
+ * By default, actions are stored until {@link #serializeRequest()} is called. If eager serialization is enabled, action line of each action
+ * is written and it's (already serialized) document is copied to bulk buffer by {@link Builder#addAction(BulkableAction)}, and action's
+ * {@link ItemSource} is released right away. Documents are still copied once, but they're not held by the pool until request is completed
+ * and {@link #serializeRequest()} doesn't have to traverse actions again.
+ * <p>
+ * If composite assembly is enabled, only action lines are written to bulk buffer. Documents are not copied, but added to
+ * returned {@code io.netty.buffer.CompositeByteBuf} as components, so bulk buffer can be much smaller than the whole request.
+ * <p>
+ * If {@link BulkActionLineCache} is provided, action lines are serialized once per index.
  */
 public class BufferedBulk extends Bulk {
 
@@ -44,15 +57,34 @@ public class BufferedBulk extends Bulk {
     private final ObjectWriter objectWriter;
     private final ObjectReader objectReader;
     private final ItemSource<ByteBuf> bulkSource;
+    // null if action lines should not be cached
+    private final BulkActionLineCache actionLineCache;
 
     protected final Collection<BulkableAction> actions;
 
+    private final boolean eagerSerialization;
+    // start and end index of each document written to bulkSource; used with eager serialization only
+    private final int[] documentBounds;
+    private final int documentCount;
+
+    private final boolean compositeAssembly;
+    // null until serialized with composite assembly
+    private CompositeByteBuf compositeRequest;
+
+    // null until compressed with compressRequest()
+    private ByteBuf compressedRequest;
+
     public BufferedBulk(BufferedBulk.Builder builder) {
         super(builder);
         this.actions = builder.actions;
         this.objectWriter = builder.objectWriter;
         this.objectReader = builder.objectReader;
         this.bulkSource = builder.bufferedSource;
+        this.actionLineCache = builder.actionLineCache;
+        this.eagerSerialization = builder.eagerSerialization;
+        this.documentBounds = builder.documentBounds;
+        this.documentCount = builder.documentCount;
+        this.compositeAssembly = builder.compositeAssembly;
     }
 
     public BufferedBulkResult deserializeResponse(InputStream responseBody) throws IOException {
@@ -67,11 +99,20 @@ public class BufferedBulk extends Bulk {
      */
     public ByteBuf serializeRequest() throws IOException {
 
+        if (eagerSerialization) {
+            // already written by Builder
+            return bulkSource.getSource();
+        }
+
+        if (compositeAssembly) {
+            return assembleComposite();
+        }
+
         ByteBufOutputStream byteBufOutputStream = new ByteBufOutputStream(bulkSource.getSource());
 
         for (BulkableAction action : actions) {
 
-            objectWriter.writeValue((DataOutput) byteBufOutputStream, action);
+            writeAction(objectWriter, actionLineCache, byteBufOutputStream, (BufferedIndex) action);
             byteBufOutputStream.writeByte(LINE_SEPARATOR);
 
             ByteBuf source = ((BufferedIndex)action).getSource().getSource();
@@ -82,11 +123,76 @@ public class BufferedBulk extends Bulk {
         return bulkSource.getSource();
     }
 
+    /**
+     * Writes action lines into {@link #bulkSource} and assembles them with (retained, not copied) documents of {@link #actions}.
+     * Composite buffer releases all it's components on {@link #completed()}.
+     *
+     * @return composite buffer of action lines and documents
+     * @throws IOException if serialization failed
+     */
+    private ByteBuf assembleComposite() throws IOException {
+
+        if (compositeRequest != null) {
+            // e.g. retried request
+            return compositeRequest.readerIndex(0);
+        }
+
+        ByteBuf bulkBuffer = bulkSource.getSource();
+        ByteBufOutputStream byteBufOutputStream = new ByteBufOutputStream(bulkBuffer);
+
+        // exact number of components, so composite is never consolidated
+        CompositeByteBuf composite = bulkBuffer.alloc().compositeBuffer(actions.size() * 2 + 1);
+
+        int start = bulkBuffer.writerIndex();
+        for (BulkableAction action : actions) {
+
+            // line separator of previous document goes together with action line
+            writeAction(objectWriter, actionLineCache, byteBufOutputStream, (BufferedIndex) action);
+            byteBufOutputStream.writeByte(LINE_SEPARATOR);
+            composite.addComponent(true, bulkBuffer.retainedSlice(start, bulkBuffer.writerIndex() - start));
+
+            ByteBuf source = ((BufferedIndex)action).getSource().getSource();
+            composite.addComponent(true, source.retainedDuplicate());
+
+            start = bulkBuffer.writerIndex();
+            byteBufOutputStream.writeByte(LINE_SEPARATOR);
+
+        }
+
+        if (!actions.isEmpty()) {
+            composite.addComponent(true, bulkBuffer.retainedSlice(start, bulkBuffer.writerIndex() - start));
+        }
+
+        this.compositeRequest = composite;
+        return composite;
+
+    }
+
+    /**
+     * Writes action line of given action, using given cache if provided
+     */
+    static void writeAction(ObjectWriter objectWriter, BulkActionLineCache actionLineCache, ByteBufOutputStream output, BufferedIndex action) throws IOException {
+        if (actionLineCache != null) {
+            actionLineCache.write(action, output);
+        } else {
+            objectWriter.writeValue((DataOutput) output, action);
+        }
+    }
+
     /**
      * Clears underlying collection of actions and releases all {@link ItemSource} instances.
      * <p>MUST be called when request is completed. Otherwise it may lead to excessive resource usage and memory leaks
      */
     public void completed() {
+        if (compressedRequest != null) {
+            compressedRequest.release();
+            compressedRequest = null;
+        }
+        if (compositeRequest != null) {
+            // components have to be released before their buffers are reused
+            compositeRequest.release();
+            compositeRequest = null;
+        }
         for (BulkableAction bulkableAction : actions) {
             ((BufferedIndex)bulkableAction).release();
         }
@@ -94,10 +200,57 @@ public class BufferedBulk extends Bulk {
         bulkSource.release();
     }
 
+    /**
+     * Compresses given serialized request. Compressed buffer is owned by this bulk and released on {@link #completed()}.
+     * If called again (e.g. on retry), previously compressed buffer is released and replaced.
+     *
+     * @param serializedRequest result of {@link #serializeRequest()}
+     * @param compressor compressor to use
+     * @return compressed request
+     */
+    public ByteBuf compressRequest(ByteBuf serializedRequest, GzipBulkCompressor compressor) {
+        ByteBuf compressed = compressor.compress(serializedRequest);
+        if (compressedRequest != null) {
+            compressedRequest.release();
+        }
+        compressedRequest = compressed;
+        return compressed;
+    }
+
     public Collection<BulkableAction> getActions() {
         return actions;
     }
 
+    /**
+     * @return number of documents in this bulk
+     */
+    public int getSize() {
+        return eagerSerialization ? documentCount : actions.size();
+    }
+
+    /**
+     * Passes serialized document of each action to given consumer, e.g. to redirect failed bulk to {@code FailoverPolicy}.
+     * MUST NOT be called after {@link #completed()}
+     *
+     * @param consumer document consumer; given buffers are valid only until consumer returns
+     */
+    public void forEachDocument(Consumer<ByteBuf> consumer) {
+
+        if (!eagerSerialization) {
+            for (BulkableAction action : actions) {
+                consumer.accept(((BufferedIndex) action).getSource().getSource());
+            }
+            return;
+        }
+
+        ByteBuf buffer = bulkSource.getSource();
+        for (int ii = 0; ii < documentCount; ii++) {
+            int start = documentBounds[ii * 2];
+            consumer.accept(buffer.slice(start, documentBounds[ii * 2 + 1] - start));
+        }
+
+    }
+
     public static class Builder extends Bulk.Builder {
 
         protected final Collection<BulkableAction> actions = new ConcurrentLinkedQueue<>();
@@ -105,18 +258,93 @@ public class BufferedBulk extends Bulk {
         private ObjectWriter objectWriter;
         private ObjectReader objectReader;
 
+        private boolean eagerSerialization;
+        private boolean compositeAssembly;
+        private BulkActionLineCache actionLineCache;
+        private ByteBufOutputStream bulkOutputStream;
+        private int[] documentBounds = new int[32];
+        private int documentCount;
+
         @Override
         public Bulk.Builder addAction(BulkableAction action) {
+            if (eagerSerialization) {
+                append((BufferedIndex) action);
+                return this;
+            }
             this.actions.add(action);
             return this;
         }
 
         @Override
         public Bulk.Builder addAction(Collection<? extends BulkableAction> actions) {
+            if (eagerSerialization) {
+                for (BulkableAction action : actions) {
+                    append((BufferedIndex) action);
+                }
+                return this;
+            }
             this.actions.addAll(actions);
             return this;
         }
 
+        /**
+         * Writes action line and copies document of given action to bulk buffer and releases action's {@link ItemSource}.
+         * Given action is released even if it couldn't be written.
+         * Not thread-safe; batches are built by one (notifying) thread at a time.
+         *
+         * @param action action to write
+         */
+        private void append(BufferedIndex action) {
+
+            if (bufferedSource == null || objectWriter == null) {
+                action.release();
+                throw new IllegalStateException("bufferedSource and objectWriter must be provided before actions are added");
+            }
+
+            if (bulkOutputStream == null) {
+                bulkOutputStream = new ByteBufOutputStream(bufferedSource.getSource());
+            }
+
+            try {
+
+                writeAction(objectWriter, actionLineCache, bulkOutputStream, action);
+                bulkOutputStream.writeByte(LINE_SEPARATOR);
+
+                ByteBuf bulkBuffer = bufferedSource.getSource();
+                int start = bulkBuffer.writerIndex();
+                bulkBuffer.writeBytes(action.getSource().getSource());
+                addDocumentBounds(start, bulkBuffer.writerIndex());
+
+                bulkOutputStream.writeByte(LINE_SEPARATOR);
+
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                action.release();
+            }
+
+        }
+
+        /**
+         * Releases {@link ItemSource} of each action added so far, e.g. if bulk will not be built.
+         * Actions written with eager serialization were released already.
+         */
+        public void releaseActions() {
+            for (BulkableAction action : actions) {
+                ((BufferedIndex) action).release();
+            }
+            actions.clear();
+        }
+
+        private void addDocumentBounds(int start, int end) {
+            if (documentBounds.length < (documentCount + 1) * 2) {
+                documentBounds = Arrays.copyOf(documentBounds, documentBounds.length * 2);
+            }
+            documentBounds[documentCount * 2] = start;
+            documentBounds[documentCount * 2 + 1] = end;
+            documentCount++;
+        }
+
         @Override
         public BufferedBulk build() {
             if (bufferedSource == null) {
@@ -131,6 +359,10 @@ public class BufferedBulk extends Bulk {
                 throw new IllegalArgumentException("objectWriter cannot be null");
             }
 
+            if (eagerSerialization && compositeAssembly) {
+                throw new IllegalArgumentException("eagerSerialization and compositeAssembly cannot be used together");
+            }
+
             return new BufferedBulk(this);
         }
 
@@ -149,5 +381,40 @@ public class BufferedBulk extends Bulk {
             return this;
         }
 
+        /**
+         * Default: false
+         *
+         * @param eagerSerialization if true, actions are written (documents are copied) to {@link #withBuffer(ItemSource)} buffer and released when added;
+         *                           buffer and {@link #withObjectWriter(ObjectWriter)} MUST be provided before actions are added
+         * @return this
+         */
+        public Builder withEagerSerialization(boolean eagerSerialization) {
+            this.eagerSerialization = eagerSerialization;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param compositeAssembly if true, {@link BufferedBulk#serializeRequest()} writes only action lines to {@link #withBuffer(ItemSource)} buffer
+         *                          and returns composite buffer referencing documents without copying them
+         * @return this
+         */
+        public Builder withCompositeAssembly(boolean compositeAssembly) {
+            this.compositeAssembly = compositeAssembly;
+            return this;
+        }
+
+        /**
+         * Default: null
+         *
+         * @param actionLineCache if not null, action lines are written by given cache instead of {@link #withObjectWriter(ObjectWriter)} writer
+         * @return this
+         */
+        public Builder withActionLineCache(BulkActionLineCache actionLineCache) {
+            this.actionLineCache = actionLineCache;
+            return this;
+        }
+
     }
 }
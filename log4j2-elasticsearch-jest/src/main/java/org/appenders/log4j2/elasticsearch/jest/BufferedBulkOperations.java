@@ -36,6 +36,8 @@ import org.appenders.log4j2.elasticsearch.BatchOperations;
 import org.appenders.log4j2.elasticsearch.ItemSource;
 import org.appenders.log4j2.elasticsearch.PooledItemSourceFactory;
 
+import java.nio.charset.Charset;
+
 /**
  * Allows to create buffered versions of Jest action classes
  */
@@ -44,12 +46,37 @@ public class BufferedBulkOperations implements BatchOperations<Bulk> {
     private final PooledItemSourceFactory pooledItemSourceFactory;
     private final ObjectWriter objectWriter;
     private final ObjectReader objectReader;
+    private final boolean eagerBulkSerialization;
+    private final boolean compositeBulk;
+    // null if action lines should not be cached
+    private final BulkActionLineCache actionLineCache;
 
-    // FIXME: design - writer and reader should be configurable here(?)
     public BufferedBulkOperations(PooledItemSourceFactory pooledItemSourceFactory) {
+        this(pooledItemSourceFactory, false);
+    }
+
+    public BufferedBulkOperations(PooledItemSourceFactory pooledItemSourceFactory, boolean eagerBulkSerialization) {
+        this(pooledItemSourceFactory, eagerBulkSerialization, false);
+    }
+
+    public BufferedBulkOperations(PooledItemSourceFactory pooledItemSourceFactory, boolean eagerBulkSerialization, boolean compositeBulk) {
+        this(pooledItemSourceFactory, eagerBulkSerialization, compositeBulk, BulkActionLineCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param pooledItemSourceFactory bulk buffer provider
+     * @param eagerBulkSerialization if true, items are written to bulk buffer and released when they're added to {@link BatchBuilder}
+     * @param compositeBulk if true, items are not copied to bulk buffer, but referenced by composite request buffer
+     * @param actionLineCacheSize max number of cached action lines; 0 if action lines should be serialized for every item
+     */
+    // FIXME: design - writer and reader should be configurable here(?)
+    public BufferedBulkOperations(PooledItemSourceFactory pooledItemSourceFactory, boolean eagerBulkSerialization, boolean compositeBulk, int actionLineCacheSize) {
         this.pooledItemSourceFactory = pooledItemSourceFactory;
         this.objectWriter = configuredWriter();
         this.objectReader = configuredReader();
+        this.eagerBulkSerialization = eagerBulkSerialization;
+        this.compositeBulk = compositeBulk;
+        this.actionLineCache = actionLineCacheSize > 0 ? new BulkActionLineCache(objectWriter, actionLineCacheSize) : null;
     }
 
     @Override
@@ -68,10 +95,15 @@ public class BufferedBulkOperations implements BatchOperations<Bulk> {
     public BatchBuilder<Bulk> createBatchBuilder() {
         return new BatchBuilder<Bulk>() {
 
+            private final ItemSource<ByteBuf> buffer = pooledItemSourceFactory.createEmptySource();
+
             private final BufferedBulk.Builder builder = new BufferedBulk.Builder()
-                    .withBuffer(pooledItemSourceFactory.createEmptySource())
+                    .withBuffer(buffer)
                     .withObjectWriter(objectWriter)
-                    .withObjectReader(objectReader);
+                    .withObjectReader(objectReader)
+                    .withEagerSerialization(eagerBulkSerialization)
+                    .withCompositeAssembly(compositeBulk)
+                    .withActionLineCache(actionLineCache);
 
             @Override
             public void add(Object item) {
@@ -83,9 +115,56 @@ public class BufferedBulkOperations implements BatchOperations<Bulk> {
                 return builder.build();
             }
 
+            @Override
+            public void release() {
+                builder.releaseActions();
+                buffer.release();
+            }
+
         };
     }
 
+    /**
+     * @param batchItem {@link BufferedIndex} created by this object
+     * @return number of readable bytes of underlying buffer
+     */
+    @Override
+    public int getSizeInBytes(Object batchItem) {
+        return ((BufferedIndex) batchItem).getSource().getSource().readableBytes();
+    }
+
+    /**
+     * @param batchItem {@link BufferedIndex} created by this object
+     */
+    @Override
+    public void releaseBatchItem(Object batchItem) {
+        ((BufferedIndex) batchItem).release();
+    }
+
+    /**
+     * @param batchItem {@link BufferedIndex} created by this object
+     * @return target index name of given {@link BufferedIndex}
+     */
+    @Override
+    public String getIndexName(Object batchItem) {
+        return ((BufferedIndex) batchItem).getIndex();
+    }
+
+    /**
+     * Releases given {@link BufferedIndex}.
+     *
+     * @param batchItem {@link BufferedIndex} created by this object
+     * @return content of underlying buffer
+     */
+    @Override
+    public Object getFailoverPayload(Object batchItem) {
+        BufferedIndex bufferedIndex = (BufferedIndex) batchItem;
+        ByteBuf byteBuf = bufferedIndex.getSource().getSource();
+        String payload = byteBuf.toString(0, byteBuf.writerIndex(), Charset.defaultCharset());
+        bufferedIndex.release();
+        return payload;
+    }
+
     /**
      * @return {@code com.fasterxml.jackson.databind.ObjectWriter} to serialize {@link BufferedIndex} instances
      */
@@ -54,8 +54,20 @@ public class BufferedJestClientFactory extends ExtendedJestClientFactory {
         super(new WrappedHttpClientConfig.Builder(httpClientConfig).build());
     }
 
+    // null if compression is disabled
+    private final GzipBulkCompressor compressor;
+
     public BufferedJestClientFactory(WrappedHttpClientConfig wrappedHttpClientConfig) {
+        this(wrappedHttpClientConfig, null);
+    }
+
+    /**
+     * @param wrappedHttpClientConfig client config
+     * @param compressor request body compressor, may be null
+     */
+    public BufferedJestClientFactory(WrappedHttpClientConfig wrappedHttpClientConfig, GzipBulkCompressor compressor) {
         super(wrappedHttpClientConfig);
+        this.compressor = compressor;
     }
 
     @Override
@@ -93,7 +105,7 @@ public class BufferedJestClientFactory extends ExtendedJestClientFactory {
     }
 
     protected BufferedJestHttpClient createDefaultClient() {
-        return new BufferedJestHttpClient();
+        return new BufferedJestHttpClient(compressor);
     }
 
     /* visible for testing */
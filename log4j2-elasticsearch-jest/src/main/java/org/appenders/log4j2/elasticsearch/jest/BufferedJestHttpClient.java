@@ -40,6 +40,20 @@ import java.io.IOException;
  */
 public class BufferedJestHttpClient extends JestHttpClient {
 
+    // null if compression is disabled
+    private final GzipBulkCompressor compressor;
+
+    public BufferedJestHttpClient() {
+        this(null);
+    }
+
+    /**
+     * @param compressor if not null, request bodies of {@link GzipBulkCompressor#shouldCompress(ByteBuf)} size will be sent with {@code Content-Encoding: gzip}
+     */
+    public BufferedJestHttpClient(GzipBulkCompressor compressor) {
+        this.compressor = compressor;
+    }
+
     @Override
     public <T extends JestResult> void executeAsync(Action<T> clientRequest, JestResultHandler<? super T> resultHandler) {
         HttpUriRequest request;
@@ -63,8 +77,14 @@ public class BufferedJestHttpClient extends JestHttpClient {
         String requestURL = getRequestURL(getNextServer(), clientRequest.getURI());
         HttpUriRequest httpUriRequest = new HttpPost(requestURL);
         ByteBuf byteBuf = clientRequest.serializeRequest();
-        ByteBufEntityBuilder entityBuilder = (ByteBufEntityBuilder) new ByteBufEntityBuilder()
-                .setByteBuf(byteBuf)
+        ByteBufEntityBuilder entityBuilder = new ByteBufEntityBuilder();
+
+        if (compressor != null && compressor.shouldCompress(byteBuf)) {
+            byteBuf = clientRequest.compressRequest(byteBuf, compressor);
+            entityBuilder.setContentEncoding(GzipBulkCompressor.CONTENT_ENCODING);
+        }
+
+        entityBuilder.setByteBuf(byteBuf)
                 .setContentLength(byteBuf.writerIndex())
                 .setContentType(requestContentType);
         ((HttpEntityEnclosingRequest) httpUriRequest).setEntity(entityBuilder.build());
@@ -72,6 +92,19 @@ public class BufferedJestHttpClient extends JestHttpClient {
         return httpUriRequest;
     }
 
+    @Override
+    public void close() throws IOException {
+        super.close();
+        if (compressor != null) {
+            compressor.shutdown();
+        }
+    }
+
+    /* visible for testing */
+    GzipBulkCompressor getCompressor() {
+        return compressor;
+    }
+
     public class BufferedResultCallback<T extends JestResult> implements FutureCallback<HttpResponse> {
 
         static final String AT_LEAST_ONE_FAILED_MESSAGE = "At least one index operation failed. Check logs for more information.";
@@ -97,6 +130,7 @@ public class BufferedJestHttpClient extends JestHttpClient {
                 jestResult.setResponseCode(statusLine.getStatusCode());
                 jestResult.setErrorMessage(bulkResult.getErrorMessage(statusLine.getReasonPhrase()));
                 jestResult.setItems(bulkResult.getItems());
+                jestResult.setTook(bulkResult.getTook());
 
             } catch (IOException e) {
                 failed(e);
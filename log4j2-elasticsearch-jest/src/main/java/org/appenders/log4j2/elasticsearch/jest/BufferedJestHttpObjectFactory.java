@@ -30,6 +30,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.ConfigurationException;
 import org.apache.logging.log4j.core.config.Node;
 import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
 import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.status.StatusLogger;
@@ -54,6 +55,12 @@ public class BufferedJestHttpObjectFactory extends JestHttpObjectFactory {
     private static Logger LOG = StatusLogger.getLogger();
 
     private final PooledItemSourceFactory itemSourceFactoryConfig;
+    private final boolean eagerBulkSerialization;
+    private final boolean compositeBulk;
+    private final int actionLineCacheSize;
+    private final boolean compression;
+    private final int compressionLevel;
+    private final int compressionThreshold;
 
     /**
      * This constructor is deprecated and will be removed in 1.5.
@@ -89,7 +96,14 @@ public class BufferedJestHttpObjectFactory extends JestHttpObjectFactory {
                 Runtime.getRuntime().availableProcessors(),
                 discoveryEnabled,
                 bufferedSourceFactory,
-                auth
+                auth,
+                0,
+                false,
+                false,
+                BulkActionLineCache.DEFAULT_MAX_SIZE,
+                false,
+                GzipBulkCompressor.DEFAULT_COMPRESSION_LEVEL,
+                GzipBulkCompressor.DEFAULT_THRESHOLD
         );
     }
 
@@ -102,7 +116,14 @@ public class BufferedJestHttpObjectFactory extends JestHttpObjectFactory {
             int ioThreadCount,
             boolean discoveryEnabled,
             PooledItemSourceFactory bufferedSourceFactory,
-            Auth<io.searchbox.client.config.HttpClientConfig.Builder> auth
+            Auth<io.searchbox.client.config.HttpClientConfig.Builder> auth,
+            int maxInFlightBulks,
+            boolean eagerBulkSerialization,
+            boolean compositeBulk,
+            int actionLineCacheSize,
+            boolean compression,
+            int compressionLevel,
+            int compressionThreshold
     ) {
         super(
                 serverUris,
@@ -112,27 +133,32 @@ public class BufferedJestHttpObjectFactory extends JestHttpObjectFactory {
                 defaultMaxTotalConnectionPerRoute,
                 ioThreadCount,
                 discoveryEnabled,
-                auth
+                auth,
+                maxInFlightBulks
         );
         this.itemSourceFactoryConfig = bufferedSourceFactory;
+        this.eagerBulkSerialization = eagerBulkSerialization;
+        this.compositeBulk = compositeBulk;
+        this.actionLineCacheSize = actionLineCacheSize;
+        this.compression = compression;
+        this.compressionLevel = compressionLevel;
+        this.compressionThreshold = compressionThreshold;
     }
 
     @Override
     public Function<Bulk, Boolean> createFailureHandler(FailoverPolicy failover) {
         return bulk -> {
             BufferedBulk bufferedBulk = (BufferedBulk)bulk;
-            LOG.warn(String.format("Batch of %s items failed. Redirecting to %s", bufferedBulk.getActions().size(), failover.getClass().getName()));
-            bufferedBulk.getActions().forEach(failedItem -> {
-                ByteBuf byteBuf = ((BufferedIndex) failedItem).source.getSource();
-                failover.deliver(byteBuf.toString(0, byteBuf.writerIndex(), Charset.defaultCharset()));
-            });
+            LOG.warn(String.format("Batch of %s items failed. Redirecting to %s", bufferedBulk.getSize(), failover.getClass().getName()));
+            bufferedBulk.forEachDocument(byteBuf ->
+                    failover.deliver(byteBuf.toString(0, byteBuf.writerIndex(), Charset.defaultCharset())));
             return true;
         };
     }
 
     @Override
     public BatchOperations<Bulk> createBatchOperations() {
-        return new BufferedBulkOperations(itemSourceFactoryConfig);
+        return new BufferedBulkOperations(itemSourceFactoryConfig, eagerBulkSerialization, compositeBulk, actionLineCacheSize);
     }
 
     protected JestResultHandler<JestResult> createResultHandler(Bulk bulk, Function<Bulk, Boolean> failureHandler) {
@@ -170,17 +196,40 @@ public class BufferedJestHttpObjectFactory extends JestHttpObjectFactory {
             @Override
             public JestClient createClient() {
                 WrappedHttpClientConfig wrappedHttpClientConfig = clientConfigBuilder.build();
-                JestClientFactory jestClientFactory = new BufferedJestClientFactory(wrappedHttpClientConfig);
+                JestClientFactory jestClientFactory = new BufferedJestClientFactory(wrappedHttpClientConfig, createCompressor());
                 return jestClientFactory.getObject();
             }
         };
     }
 
+    /* visible for testing */
+    GzipBulkCompressor createCompressor() {
+        return compression ? new GzipBulkCompressor(compressionLevel, compressionThreshold) : null;
+    }
+
     public static class Builder extends JestHttpObjectFactory.Builder {
 
         @PluginElement(ItemSourceFactory.ELEMENT_TYPE)
         protected PooledItemSourceFactory pooledItemSourceFactory;
 
+        @PluginBuilderAttribute
+        protected boolean eagerBulkSerialization;
+
+        @PluginBuilderAttribute
+        protected boolean compositeBulk;
+
+        @PluginBuilderAttribute
+        protected int actionLineCacheSize = BulkActionLineCache.DEFAULT_MAX_SIZE;
+
+        @PluginBuilderAttribute
+        protected boolean compression;
+
+        @PluginBuilderAttribute
+        protected int compressionLevel = GzipBulkCompressor.DEFAULT_COMPRESSION_LEVEL;
+
+        @PluginBuilderAttribute
+        protected int compressionThreshold = GzipBulkCompressor.DEFAULT_THRESHOLD;
+
         @Override
         public BufferedJestHttpObjectFactory build() {
 
@@ -195,7 +244,14 @@ public class BufferedJestHttpObjectFactory extends JestHttpObjectFactory {
                     ioThreadCount,
                     discoveryEnabled,
                     pooledItemSourceFactory,
-                    auth);
+                    auth,
+                    maxInFlightBulks,
+                    eagerBulkSerialization,
+                    compositeBulk,
+                    actionLineCacheSize,
+                    compression,
+                    compressionLevel,
+                    compressionThreshold);
         }
 
         protected void validate() {
@@ -205,12 +261,96 @@ public class BufferedJestHttpObjectFactory extends JestHttpObjectFactory {
             if (pooledItemSourceFactory == null) {
                 throw new ConfigurationException("No PooledItemSourceFactory configured for BufferedJestHttpObjectFactory");
             }
+
+            if (actionLineCacheSize < 0) {
+                throw new ConfigurationException("actionLineCacheSize cannot be negative");
+            }
+
+            if (eagerBulkSerialization && compositeBulk) {
+                throw new ConfigurationException("eagerBulkSerialization and compositeBulk cannot be used together");
+            }
+
+            if (compressionLevel < -1 || compressionLevel > 9) {
+                throw new ConfigurationException("compressionLevel must be between -1 and 9");
+            }
+
+            if (compressionThreshold < 0) {
+                throw new ConfigurationException("compressionThreshold cannot be negative");
+            }
         }
 
         public Builder withItemSourceFactory(PooledItemSourceFactory pooledItemSourceFactory) {
             this.pooledItemSourceFactory = pooledItemSourceFactory;
             return this;
         }
+
+        /**
+         * Default: false
+         *
+         * @param eagerBulkSerialization if true, batch items are copied to bulk buffer and released when they're added to the batch,
+         *                               so item buffers are not held until bulk request is completed
+         * @return this
+         */
+        public Builder withEagerBulkSerialization(boolean eagerBulkSerialization) {
+            this.eagerBulkSerialization = eagerBulkSerialization;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param compositeBulk if true, batch items are not copied to bulk buffer, but referenced by composite request buffer,
+         *                      so bulk buffer holds action lines only
+         * @return this
+         */
+        public Builder withCompositeBulk(boolean compositeBulk) {
+            this.compositeBulk = compositeBulk;
+            return this;
+        }
+
+        /**
+         * Default: {@link BulkActionLineCache#DEFAULT_MAX_SIZE}
+         *
+         * @param actionLineCacheSize max number of cached bulk action lines (one per index name); 0 if action line should be serialized for every item
+         * @return this
+         */
+        public Builder withActionLineCacheSize(int actionLineCacheSize) {
+            this.actionLineCacheSize = actionLineCacheSize;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param compression if true, bulk requests bigger than {@link #withCompressionThreshold(int)} are sent with {@code Content-Encoding: gzip}
+         * @return this
+         */
+        public Builder withCompression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Default: {@link GzipBulkCompressor#DEFAULT_COMPRESSION_LEVEL}
+         *
+         * @param compressionLevel {@code java.util.zip.Deflater} compression level, -1 or 0-9
+         * @return this
+         */
+        public Builder withCompressionLevel(int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        /**
+         * Default: {@link GzipBulkCompressor#DEFAULT_THRESHOLD}
+         *
+         * @param compressionThreshold minimum size of bulk request (in bytes) that will be compressed
+         * @return this
+         */
+        public Builder withCompressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
     }
 
 }
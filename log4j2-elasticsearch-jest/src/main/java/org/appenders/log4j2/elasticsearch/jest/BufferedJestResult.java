@@ -28,6 +28,7 @@ import java.util.Collection;
 public class BufferedJestResult extends JestResult {
 
     private Collection<BulkResultItem> items;
+    private long took = -1;
 
     public BufferedJestResult() {
         super((Gson)null);
@@ -41,4 +42,15 @@ public class BufferedJestResult extends JestResult {
         this.items = items;
     }
 
+    /**
+     * @return number of millis spent by the server on bulk processing; -1 if not available
+     */
+    public long getTook() {
+        return took;
+    }
+
+    public void setTook(long took) {
+        this.took = took;
+    }
+
 }
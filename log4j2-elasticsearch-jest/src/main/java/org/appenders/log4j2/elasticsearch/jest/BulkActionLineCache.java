@@ -0,0 +1,102 @@
+package org.appenders.log4j2.elasticsearch.jest;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of serialized {@link BufferedIndex} action lines. Action lines depend only on target index and type
+ * (unless document id is set), so each of them is serialized once per index instead of once per action.
+ * <p>
+ * When cache is full, all entries are evicted. With rolling index names, entries of previous indices are never used again, so
+ * cache is effectively invalidated on rollover.
+ */
+public class BulkActionLineCache {
+
+    public static final int DEFAULT_MAX_SIZE = 16;
+
+    private final ObjectWriter objectWriter;
+    private final int maxSize;
+    private final ConcurrentHashMap<String, ActionLine> actionLines = new ConcurrentHashMap<>();
+
+    /**
+     * @param objectWriter {@link BufferedIndex} writer
+     * @param maxSize max number of cached action lines
+     */
+    public BulkActionLineCache(ObjectWriter objectWriter, int maxSize) {
+        this.objectWriter = objectWriter;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Writes serialized action line of given action to given output. Action line is serialized only if it's not cached yet.
+     *
+     * @param action action to write
+     * @param output target output
+     * @throws IOException if serialization failed
+     */
+    public void write(BufferedIndex action, ByteBufOutputStream output) throws IOException {
+
+        String indexName = action.getIndex();
+        if (indexName == null || action.getId() != null) {
+            objectWriter.writeValue((DataOutput) output, action);
+            return;
+        }
+
+        ActionLine actionLine = actionLines.get(indexName);
+        if (actionLine == null || !Objects.equals(actionLine.type, action.getType())) {
+            actionLine = new ActionLine(action.getType(), objectWriter.writeValueAsBytes(action));
+            if (actionLines.size() >= maxSize) {
+                actionLines.clear();
+            }
+            actionLines.put(indexName, actionLine);
+        }
+
+        output.write(actionLine.bytes);
+
+    }
+
+    /**
+     * @return number of cached action lines
+     */
+    int size() {
+        return actionLines.size();
+    }
+
+    private static final class ActionLine {
+
+        private final String type;
+        private final byte[] bytes;
+
+        private ActionLine(String type, byte[] bytes) {
+            this.type = type;
+            this.bytes = bytes;
+        }
+
+    }
+
+}
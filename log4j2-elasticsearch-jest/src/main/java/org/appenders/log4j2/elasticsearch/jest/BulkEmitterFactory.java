@@ -22,12 +22,17 @@ package org.appenders.log4j2.elasticsearch.jest;
 
 
 
+import org.appenders.log4j2.elasticsearch.BatchEmitter;
+import org.appenders.log4j2.elasticsearch.BatchEmitterConfig;
 import org.appenders.log4j2.elasticsearch.BatchEmitterFactory;
+import org.appenders.log4j2.elasticsearch.BatchOperations;
 import org.appenders.log4j2.elasticsearch.BulkEmitter;
 import org.appenders.log4j2.elasticsearch.ClientObjectFactory;
 import org.appenders.log4j2.elasticsearch.FailoverPolicy;
+import org.appenders.log4j2.elasticsearch.RingBufferBulkEmitter;
+import org.appenders.log4j2.elasticsearch.StripedBulkEmitter;
 
-public class BulkEmitterFactory implements BatchEmitterFactory<BulkEmitter> {
+public class BulkEmitterFactory implements BatchEmitterFactory<BatchEmitter> {
 
     @Override
     public boolean accepts(Class clientObjectFactoryClass) {
@@ -36,9 +41,55 @@ public class BulkEmitterFactory implements BatchEmitterFactory<BulkEmitter> {
 
     @Override
     public BulkEmitter createInstance(int batchSize, int deliveryInterval, ClientObjectFactory clientObjectFactory, FailoverPolicy failoverPolicy) {
-        BulkEmitter bulkEmitter = new BulkEmitter(batchSize, deliveryInterval, clientObjectFactory.createBatchOperations());
-        bulkEmitter.addListener(clientObjectFactory.createBatchListener(failoverPolicy));
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(batchSize)
+                .withDeliveryInterval(deliveryInterval)
+                .build();
+        return createLane(config, clientObjectFactory, failoverPolicy);
+    }
+
+    /**
+     * @param config              emitter settings
+     * @param clientObjectFactory client-specific objects provider
+     * @param failoverPolicy      sink for failed batch items
+     * @return {@link StripedBulkEmitter} if {@link BatchEmitterConfig#getLanes()} is higher than 1, {@link BulkEmitter} otherwise
+     */
+    @Override
+    public BatchEmitter createInstance(BatchEmitterConfig config, ClientObjectFactory clientObjectFactory, FailoverPolicy failoverPolicy) {
+
+        if (config.getLanes() <= 1) {
+            return createLane(config, clientObjectFactory, failoverPolicy);
+        }
+
+        BulkEmitter[] lanes = new BulkEmitter[config.getLanes()];
+        for (int ii = 0; ii < lanes.length; ii++) {
+            lanes[ii] = createLane(config, clientObjectFactory, failoverPolicy);
+        }
+        return new StripedBulkEmitter(lanes);
+
+    }
+
+    private BulkEmitter createLane(BatchEmitterConfig config, ClientObjectFactory clientObjectFactory, FailoverPolicy failoverPolicy) {
+        BulkEmitter bulkEmitter = createBulkEmitter(config, clientObjectFactory.createBatchOperations());
+        bulkEmitter.addListener(clientObjectFactory.createBatchListener(failoverPolicy, bulkEmitter.getAdaptiveBatchSize()));
+        bulkEmitter.setFailoverPolicy(failoverPolicy);
+        if (clientObjectFactory instanceof JestHttpObjectFactory) {
+            // listener expects in-flight bulk permit to be acquired before the batch is drained
+            bulkEmitter.setDeliveryPermits(((JestHttpObjectFactory) clientObjectFactory).getDeliveryPermits());
+        }
         return bulkEmitter;
     }
 
+    /**
+     * @param config emitter settings
+     * @param batchOperations batch factory
+     * @return {@link RingBufferBulkEmitter} if {@link BatchEmitterConfig#getRingBufferSize()} is higher than 0, {@link BulkEmitter} otherwise
+     */
+    protected BulkEmitter createBulkEmitter(BatchEmitterConfig config, BatchOperations batchOperations) {
+        if (config.getRingBufferSize() > 0) {
+            return new RingBufferBulkEmitter(config, batchOperations);
+        }
+        return new BulkEmitter(config, batchOperations);
+    }
+
 }
@@ -0,0 +1,198 @@
+package org.appenders.log4j2.elasticsearch.jest;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses serialized bulk requests to GZIP format. {@link Deflater} instances (and their native memory)
+ * are pooled and reused across requests, so compression doesn't allocate new native zlib streams for every bulk.
+ * <br>
+ * Requests smaller than {@link #getThreshold()} are not worth compressing and should be sent as is.
+ */
+public class GzipBulkCompressor {
+
+    public static final String CONTENT_ENCODING = "gzip";
+
+    public static final int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    static final int CHUNK_SIZE = 8192;
+
+    // RFC 1952: ID1, ID2, CM (deflate), FLG, MTIME (4 bytes), XFL, OS (unknown)
+    private static final byte[] GZIP_HEADER = new byte[] {
+            (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final int level;
+    private final int threshold;
+    private final Queue<PooledDeflater> pool = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean stopped;
+
+    /**
+     * @param level {@link Deflater} compression level, -1 (default) or 0-9
+     * @param threshold minimum size of request (in bytes) that should be compressed
+     */
+    public GzipBulkCompressor(int level, int threshold) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between -1 and 9. Was: " + level);
+        }
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Compression threshold cannot be negative. Was: " + threshold);
+        }
+        this.level = level;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param source serialized request
+     * @return true, if given request is big enough to be compressed, false otherwise
+     */
+    public boolean shouldCompress(ByteBuf source) {
+        return source.readableBytes() >= threshold;
+    }
+
+    /**
+     * Compresses readable bytes of given buffer. Reader index of given buffer is not modified.
+     *
+     * @param source serialized request
+     * @return new buffer allocated with {@code source.alloc()} containing GZIP stream. Caller is responsible for releasing it
+     */
+    public ByteBuf compress(ByteBuf source) {
+
+        PooledDeflater pooledDeflater = borrow();
+        ByteBuf target = source.alloc().heapBuffer(Math.max(source.readableBytes() / 4, CHUNK_SIZE));
+
+        try {
+            pooledDeflater.compress(source, target);
+            return target;
+        } catch (RuntimeException e) {
+            target.release();
+            throw e;
+        } finally {
+            giveBack(pooledDeflater);
+        }
+
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Releases native resources of all pooled {@link Deflater}s. Deflaters returned afterwards are released immediately.
+     */
+    public void shutdown() {
+        stopped = true;
+        PooledDeflater pooledDeflater;
+        while ((pooledDeflater = pool.poll()) != null) {
+            pooledDeflater.end();
+        }
+    }
+
+    /* visible for testing */
+    int getPooledCount() {
+        return pool.size();
+    }
+
+    private PooledDeflater borrow() {
+        PooledDeflater pooledDeflater = pool.poll();
+        return pooledDeflater != null ? pooledDeflater : new PooledDeflater(level);
+    }
+
+    private void giveBack(PooledDeflater pooledDeflater) {
+        if (stopped) {
+            pooledDeflater.end();
+            return;
+        }
+        pool.offer(pooledDeflater);
+    }
+
+    private static class PooledDeflater {
+
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] input = new byte[CHUNK_SIZE];
+        private final byte[] output = new byte[CHUNK_SIZE];
+
+        PooledDeflater(int level) {
+            // nowrap - GZIP header and trailer are written by compress()
+            this.deflater = new Deflater(level, true);
+        }
+
+        void compress(ByteBuf source, ByteBuf target) {
+
+            deflater.reset();
+            crc.reset();
+
+            target.writeBytes(GZIP_HEADER);
+
+            int readerIndex = source.readerIndex();
+            int remaining = source.readableBytes();
+            int totalSize = remaining;
+
+            while (remaining > 0) {
+                int length = Math.min(remaining, input.length);
+                source.getBytes(readerIndex, input, 0, length);
+                crc.update(input, 0, length);
+
+                deflater.setInput(input, 0, length);
+                while (!deflater.needsInput()) {
+                    drain(target);
+                }
+
+                readerIndex += length;
+                remaining -= length;
+            }
+
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain(target);
+            }
+
+            // RFC 1952: CRC32 and ISIZE, both little endian
+            target.writeIntLE((int) crc.getValue());
+            target.writeIntLE(totalSize);
+
+        }
+
+        private void drain(ByteBuf target) {
+            int deflated = deflater.deflate(output, 0, output.length);
+            target.writeBytes(output, 0, deflated);
+        }
+
+        void end() {
+            deflater.end();
+        }
+
+    }
+
+}
@@ -23,6 +23,7 @@ package org.appenders.log4j2.elasticsearch.jest;
 
 
 import io.searchbox.action.BulkableAction;
+import io.searchbox.action.JestActionIntrospector;
 import io.searchbox.core.Bulk;
 import io.searchbox.core.Index;
 import org.appenders.log4j2.elasticsearch.BatchBuilder;
@@ -33,6 +34,8 @@ public class JestBulkOperations implements BatchOperations<Bulk> {
 
     private static String ACTION_TYPE = "index";
 
+    private final JestActionIntrospector introspector = new JestActionIntrospector();
+
     @Override
     public Object createBatchItem(String indexName, Object source) {
         return new Index.Builder(source)
@@ -67,4 +70,22 @@ public class JestBulkOperations implements BatchOperations<Bulk> {
         };
     }
 
+    /**
+     * @param batchItem {@link Index} created by this object
+     * @return target index name of given {@link Index}
+     */
+    @Override
+    public String getIndexName(Object batchItem) {
+        return ((Index) batchItem).getIndex();
+    }
+
+    /**
+     * @param batchItem {@link Index} created by this object
+     * @return source of given {@link Index}
+     */
+    @Override
+    public Object getFailoverPayload(Object batchItem) {
+        return introspector.getPayload((Index) batchItem);
+    }
+
 }
@@ -21,6 +21,7 @@ package org.appenders.log4j2.elasticsearch.jest;
  */
 
 
+import com.google.gson.JsonObject;
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestResult;
 import io.searchbox.client.JestResultHandler;
@@ -39,6 +40,7 @@ import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.validation.constraints.Required;
 import org.apache.logging.log4j.status.StatusLogger;
 import org.appenders.log4j2.elasticsearch.Operation;
+import org.appenders.log4j2.elasticsearch.AdaptiveBatchSize;
 import org.appenders.log4j2.elasticsearch.Auth;
 import org.appenders.log4j2.elasticsearch.BatchOperations;
 import org.appenders.log4j2.elasticsearch.ClientObjectFactory;
@@ -52,6 +54,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Plugin(name = "JestHttp", category = Node.CATEGORY, elementType = ClientObjectFactory.ELEMENT_TYPE, printObject = true)
@@ -67,6 +71,7 @@ public class JestHttpObjectFactory implements ClientObjectFactory<JestClient, Bu
     private final int ioThreadCount;
     private final boolean discoveryEnabled;
     private final Auth<io.searchbox.client.config.HttpClientConfig.Builder> auth;
+    private final Semaphore inFlightBulks;
 
     private final ConcurrentLinkedQueue<Operation> operations = new ConcurrentLinkedQueue<>();
 
@@ -122,6 +127,37 @@ public class JestHttpObjectFactory implements ClientObjectFactory<JestClient, Bu
                                     int ioThreadCount,
                                     boolean discoveryEnabled,
                                     Auth<io.searchbox.client.config.HttpClientConfig.Builder> auth) {
+        this(serverUris,
+                connTimeout,
+                readTimeout,
+                maxTotalConnections,
+                defaultMaxTotalConnectionPerRoute,
+                ioThreadCount,
+                discoveryEnabled,
+                auth,
+                0);
+    }
+
+    /**
+     * @param serverUris List of semicolon-separated `http[s]://host:[port]` addresses of Elasticsearch nodes to connect with. Unless `discoveryEnabled=true`, this will be the final list of available nodes
+     * @param connTimeout Number of milliseconds before ConnectException is thrown while attempting to connect
+     * @param readTimeout Number of milliseconds before SocketTimeoutException is thrown while waiting for response bytes
+     * @param maxTotalConnections Number of connections available
+     * @param defaultMaxTotalConnectionPerRoute Number of connections available per Apache CPool
+     * @param discoveryEnabled If `true`, `io.searchbox.client.config.discovery.NodeChecker` will use `serverUris` to auto-discover Elasticsearch nodes. Otherwise, `serverUris` will be the final list of available nodes
+     * @param ioThreadCount number of 'I/O Dispatcher' threads started by Apache HC `IOReactor`
+     * @param auth Security configuration
+     * @param maxInFlightBulks Max number of bulk requests executed concurrently; 0 if unlimited
+     */
+    protected JestHttpObjectFactory(Collection<String> serverUris,
+                                    int connTimeout,
+                                    int readTimeout,
+                                    int maxTotalConnections,
+                                    int defaultMaxTotalConnectionPerRoute,
+                                    int ioThreadCount,
+                                    boolean discoveryEnabled,
+                                    Auth<io.searchbox.client.config.HttpClientConfig.Builder> auth,
+                                    int maxInFlightBulks) {
         this.serverUris = serverUris;
         this.connTimeout = connTimeout;
         this.readTimeout = readTimeout;
@@ -130,6 +166,7 @@ public class JestHttpObjectFactory implements ClientObjectFactory<JestClient, Bu
         this.ioThreadCount = ioThreadCount;
         this.discoveryEnabled = discoveryEnabled;
         this.auth = auth;
+        this.inFlightBulks = maxInFlightBulks > 0 ? new Semaphore(maxInFlightBulks) : null;
     }
 
     @Override
@@ -164,6 +201,11 @@ public class JestHttpObjectFactory implements ClientObjectFactory<JestClient, Bu
 
     @Override
     public Function<Bulk, Boolean> createBatchListener(FailoverPolicy failoverPolicy) {
+        return createBatchListener(failoverPolicy, null);
+    }
+
+    @Override
+    public Function<Bulk, Boolean> createBatchListener(FailoverPolicy failoverPolicy, AdaptiveBatchSize adaptiveBatchSize) {
         return new Function<Bulk, Boolean>() {
 
             private Function<Bulk, Boolean> failureHandler = createFailureHandler(failoverPolicy);
@@ -181,10 +223,31 @@ public class JestHttpObjectFactory implements ClientObjectFactory<JestClient, Bu
                 }
 
                 JestResultHandler<JestResult> jestResultHandler = createResultHandler(bulk, failureHandler);
-                createClient().executeAsync(bulk, jestResultHandler);
+
+                if (inFlightBulks == null) {
+                    executeAsync(bulk, jestResultHandler);
+                    return true;
+                }
+
+                // permit was acquired by the emitter before the batch was drained (see getDeliveryPermits()),
+                // so listener running on shared DeliveryScheduler thread never waits and batches are never rejected here
+                try {
+                    executeAsync(bulk, new InFlightBulkResultHandler(jestResultHandler));
+                } catch (RuntimeException e) {
+                    inFlightBulks.release();
+                    throw e;
+                }
                 return true;
             }
 
+            private void executeAsync(Bulk bulk, JestResultHandler<JestResult> jestResultHandler) {
+                if (adaptiveBatchSize != null) {
+                    // created right before the request is sent, so measured latency is the round trip of the request only
+                    jestResultHandler = new AdaptiveBatchSizeResultHandler(jestResultHandler, adaptiveBatchSize);
+                }
+                createClient().executeAsync(bulk, jestResultHandler);
+            }
+
         };
     }
 
@@ -245,6 +308,101 @@ public class JestHttpObjectFactory implements ClientObjectFactory<JestClient, Bu
         };
     }
 
+    /**
+     * @return number of bulk requests that can be executed before emitters stop draining their queues; -1 if unlimited
+     */
+    public int getAvailableInFlightBulks() {
+        return inFlightBulks == null ? -1 : inFlightBulks.availablePermits();
+    }
+
+    /**
+     * If returned, one permit MUST be acquired before each call of listener created by {@link #createBatchListener(FailoverPolicy, AdaptiveBatchSize)}.
+     * Listener releases it when bulk request is completed. See {@link org.appenders.log4j2.elasticsearch.BulkEmitter#setDeliveryPermits(Semaphore)}
+     *
+     * @return in-flight bulk permits; null if {@code maxInFlightBulks} is not configured
+     */
+    public Semaphore getDeliveryPermits() {
+        return inFlightBulks;
+    }
+
+    /**
+     * @param result bulk response
+     * @return number of millis spent by the server on bulk processing; -1 if not available
+     */
+    protected long getTook(JestResult result) {
+
+        if (result instanceof BufferedJestResult) {
+            return ((BufferedJestResult) result).getTook();
+        }
+
+        JsonObject jsonObject = result.getJsonObject();
+        if (jsonObject == null || !jsonObject.has("took")) {
+            return -1;
+        }
+        return jsonObject.get("took").getAsLong();
+
+    }
+
+    private class AdaptiveBatchSizeResultHandler implements JestResultHandler<JestResult> {
+
+        private final JestResultHandler<JestResult> delegate;
+        private final AdaptiveBatchSize adaptiveBatchSize;
+        private final long startNanos = System.nanoTime();
+
+        AdaptiveBatchSizeResultHandler(JestResultHandler<JestResult> delegate, AdaptiveBatchSize adaptiveBatchSize) {
+            this.delegate = delegate;
+            this.adaptiveBatchSize = adaptiveBatchSize;
+        }
+
+        @Override
+        public void completed(JestResult result) {
+            if (result.isSucceeded()) {
+                adaptiveBatchSize.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), getTook(result));
+            } else {
+                adaptiveBatchSize.onFailure();
+            }
+            delegate.completed(result);
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            adaptiveBatchSize.onFailure();
+            delegate.failed(ex);
+        }
+
+    }
+
+    /**
+     * Releases in-flight permit after {@link #createResultHandler(Bulk, Function)} callbacks are completed.
+     */
+    private class InFlightBulkResultHandler implements JestResultHandler<JestResult> {
+
+        private final JestResultHandler<JestResult> delegate;
+
+        InFlightBulkResultHandler(JestResultHandler<JestResult> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void completed(JestResult result) {
+            try {
+                delegate.completed(result);
+            } finally {
+                inFlightBulks.release();
+            }
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            try {
+                delegate.failed(ex);
+            } finally {
+                inFlightBulks.release();
+            }
+        }
+
+    }
+
     @PluginBuilderFactory
     public static Builder newBuilder() {
         return new Builder();
@@ -282,6 +440,9 @@ public class JestHttpObjectFactory implements ClientObjectFactory<JestClient, Bu
         @PluginElement("auth")
         protected Auth auth;
 
+        @PluginBuilderAttribute
+        protected int maxInFlightBulks;
+
         @Override
         public JestHttpObjectFactory build() {
 
@@ -295,7 +456,8 @@ public class JestHttpObjectFactory implements ClientObjectFactory<JestClient, Bu
                     defaultMaxTotalConnectionPerRoute,
                     ioThreadCount,
                     discoveryEnabled,
-                    auth
+                    auth,
+                    maxInFlightBulks
             );
         }
 
@@ -303,6 +465,9 @@ public class JestHttpObjectFactory implements ClientObjectFactory<JestClient, Bu
             if (serverUris == null) {
                 throw new ConfigurationException("No serverUris provided for JestClientConfig");
             }
+            if (maxInFlightBulks < 0) {
+                throw new ConfigurationException("maxInFlightBulks cannot be negative");
+            }
         }
 
         public Builder withServerUris(String serverUris) {
@@ -344,6 +509,18 @@ public class JestHttpObjectFactory implements ClientObjectFactory<JestClient, Bu
             this.auth = auth;
             return this;
         }
+
+        /**
+         * Default: 0 (unlimited)
+         *
+         * @param maxInFlightBulks max number of bulk requests executed concurrently. If reached, emitters keep items queued
+         *                         until one of the requests is completed
+         * @return Builder this
+         */
+        public Builder withMaxInFlightBulks(int maxInFlightBulks) {
+            this.maxInFlightBulks = maxInFlightBulks;
+            return this;
+        }
     }
 
     /**
@@ -39,12 +39,16 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.Scanner;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class BufferedBulkOperationsTest {
 
@@ -69,6 +73,85 @@ public class BufferedBulkOperationsTest {
 
     }
 
+    @Test
+    public void returnsReadableBytesAsSizeInBytes() {
+
+        // given
+        PooledItemSourceFactory bufferedSourceFactory = PooledItemSourceFactoryTest.createDefaultTestSourceFactoryConfig().build();
+        BufferedBulkOperations bufferedBulkOperations = new BufferedBulkOperations(bufferedSourceFactory);
+
+        ItemSource<ByteBuf> source = bufferedSourceFactory.createEmptySource();
+        byte[] bytes = UUID.randomUUID().toString().getBytes();
+        source.getSource().writeBytes(bytes);
+
+        Object batchItem = bufferedBulkOperations.createBatchItem(UUID.randomUUID().toString(), source);
+
+        // when
+        int sizeInBytes = bufferedBulkOperations.getSizeInBytes(batchItem);
+
+        // then
+        assertEquals(bytes.length, sizeInBytes);
+
+    }
+
+    @Test
+    public void releaseBatchItemReleasesUnderlyingItemSource() {
+
+        // given
+        PooledItemSourceFactory bufferedSourceFactory = PooledItemSourceFactoryTest.createDefaultTestSourceFactoryConfig().build();
+        BufferedBulkOperations bufferedBulkOperations = new BufferedBulkOperations(bufferedSourceFactory);
+
+        ItemSource<ByteBuf> source = spy(bufferedSourceFactory.createEmptySource());
+        Object batchItem = bufferedBulkOperations.createBatchItem(UUID.randomUUID().toString(), source);
+
+        // when
+        bufferedBulkOperations.releaseBatchItem(batchItem);
+
+        // then
+        verify(source).release();
+
+    }
+
+    @Test
+    public void indexNameIsBufferedIndexTarget() {
+
+        // given
+        PooledItemSourceFactory bufferedSourceFactory = PooledItemSourceFactoryTest.createDefaultTestSourceFactoryConfig().build();
+        BufferedBulkOperations bufferedBulkOperations = new BufferedBulkOperations(bufferedSourceFactory);
+
+        String expectedIndexName = UUID.randomUUID().toString();
+        Object batchItem = bufferedBulkOperations.createBatchItem(expectedIndexName, bufferedSourceFactory.createEmptySource());
+
+        // when
+        String indexName = bufferedBulkOperations.getIndexName(batchItem);
+
+        // then
+        assertEquals(expectedIndexName, indexName);
+
+    }
+
+    @Test
+    public void failoverPayloadIsBufferContentAndItemSourceIsReleased() {
+
+        // given
+        PooledItemSourceFactory bufferedSourceFactory = PooledItemSourceFactoryTest.createDefaultTestSourceFactoryConfig().build();
+        BufferedBulkOperations bufferedBulkOperations = new BufferedBulkOperations(bufferedSourceFactory);
+
+        ItemSource<ByteBuf> source = spy(bufferedSourceFactory.createEmptySource());
+        String expectedPayload = UUID.randomUUID().toString();
+        source.getSource().writeBytes(expectedPayload.getBytes());
+
+        Object batchItem = bufferedBulkOperations.createBatchItem(UUID.randomUUID().toString(), source);
+
+        // when
+        Object payload = bufferedBulkOperations.getFailoverPayload(batchItem);
+
+        // then
+        assertEquals(expectedPayload, payload);
+        verify(source).release();
+
+    }
+
     @Test
     public void createsBufferedBulkBuilder() {
 
@@ -83,6 +166,47 @@ public class BufferedBulkOperationsTest {
         assertEquals(BufferedBulk.class, bulk.getClass());
     }
 
+    @Test
+    public void batchBuilderReleaseReleasesBulkBuffer() {
+
+        // given
+        PooledItemSourceFactory bufferedSourceFactory = mock(PooledItemSourceFactory.class);
+        ItemSource<ByteBuf> buffer = mock(ItemSource.class);
+        when(bufferedSourceFactory.createEmptySource()).thenReturn(buffer);
+
+        BatchBuilder<Bulk> builder = new BufferedBulkOperations(bufferedSourceFactory).createBatchBuilder();
+
+        // when
+        builder.release();
+
+        // then
+        verify(buffer).release();
+
+    }
+
+    @Test
+    public void batchBuilderReleaseReleasesItemsAddedSoFar() {
+
+        // given
+        PooledItemSourceFactory bufferedSourceFactory = mock(PooledItemSourceFactory.class);
+        ItemSource<ByteBuf> buffer = mock(ItemSource.class);
+        when(bufferedSourceFactory.createEmptySource()).thenReturn(buffer);
+
+        BufferedBulkOperations bufferedBulkOperations = new BufferedBulkOperations(bufferedSourceFactory);
+        BatchBuilder<Bulk> builder = bufferedBulkOperations.createBatchBuilder();
+
+        ItemSource<ByteBuf> itemSource = mock(ItemSource.class);
+        builder.add(bufferedBulkOperations.createBatchItem(UUID.randomUUID().toString(), itemSource));
+
+        // when
+        builder.release();
+
+        // then
+        verify(itemSource).release();
+        verify(buffer).release();
+
+    }
+
     @Test
     public void createsConfiguredWriter() {
 
@@ -157,6 +281,86 @@ public class BufferedBulkOperationsTest {
 
     }
 
+    @Test
+    public void eagerBulkSerializationWritesSamePayloadAsDefaultSerialization() throws IOException {
+
+        // given
+        PooledItemSourceFactory bufferedSourceFactory = PooledItemSourceFactoryTest.createDefaultTestSourceFactoryConfig().build();
+        JacksonJsonLayout layout = createDefaultTestJacksonJsonLayout(bufferedSourceFactory);
+
+        Log4jLogEvent logEvent = Log4jLogEvent.newBuilder()
+                .setTimeMillis(System.currentTimeMillis())
+                .setMessage(new ObjectMessage(UUID.randomUUID().toString())).build();
+        String indexName = UUID.randomUUID().toString();
+
+        BufferedBulkOperations defaultOperations = new BufferedBulkOperations(bufferedSourceFactory);
+        BatchBuilder<Bulk> defaultBatchBuilder = defaultOperations.createBatchBuilder();
+        defaultBatchBuilder.add(defaultOperations.createBatchItem(indexName, layout.toSerializable(logEvent)));
+        defaultBatchBuilder.add(defaultOperations.createBatchItem(indexName, layout.toSerializable(logEvent)));
+
+        BufferedBulkOperations eagerOperations = new BufferedBulkOperations(bufferedSourceFactory, true);
+        BatchBuilder<Bulk> eagerBatchBuilder = eagerOperations.createBatchBuilder();
+        eagerBatchBuilder.add(eagerOperations.createBatchItem(indexName, layout.toSerializable(logEvent)));
+        eagerBatchBuilder.add(eagerOperations.createBatchItem(indexName, layout.toSerializable(logEvent)));
+
+        // when
+        ByteBuf expected = ((BufferedBulk) defaultBatchBuilder.build()).serializeRequest();
+        ByteBuf actual = ((BufferedBulk) eagerBatchBuilder.build()).serializeRequest();
+
+        // then
+        assertEquals(expected.toString(Charset.defaultCharset()), actual.toString(Charset.defaultCharset()));
+
+    }
+
+    @Test
+    public void compositeBulkWritesSamePayloadAsDefaultSerialization() throws IOException {
+
+        // given
+        PooledItemSourceFactory bufferedSourceFactory = PooledItemSourceFactoryTest.createDefaultTestSourceFactoryConfig().build();
+        JacksonJsonLayout layout = createDefaultTestJacksonJsonLayout(bufferedSourceFactory);
+
+        Log4jLogEvent logEvent = Log4jLogEvent.newBuilder()
+                .setTimeMillis(System.currentTimeMillis())
+                .setMessage(new ObjectMessage(UUID.randomUUID().toString())).build();
+        String indexName = UUID.randomUUID().toString();
+
+        BufferedBulkOperations defaultOperations = new BufferedBulkOperations(bufferedSourceFactory);
+        BatchBuilder<Bulk> defaultBatchBuilder = defaultOperations.createBatchBuilder();
+        defaultBatchBuilder.add(defaultOperations.createBatchItem(indexName, layout.toSerializable(logEvent)));
+        defaultBatchBuilder.add(defaultOperations.createBatchItem(indexName, layout.toSerializable(logEvent)));
+
+        BufferedBulkOperations compositeOperations = new BufferedBulkOperations(bufferedSourceFactory, false, true);
+        BatchBuilder<Bulk> compositeBatchBuilder = compositeOperations.createBatchBuilder();
+        compositeBatchBuilder.add(compositeOperations.createBatchItem(indexName, layout.toSerializable(logEvent)));
+        compositeBatchBuilder.add(compositeOperations.createBatchItem(indexName, layout.toSerializable(logEvent)));
+
+        // when
+        ByteBuf expected = ((BufferedBulk) defaultBatchBuilder.build()).serializeRequest();
+        ByteBuf actual = ((BufferedBulk) compositeBatchBuilder.build()).serializeRequest();
+
+        // then
+        assertEquals(expected.toString(Charset.defaultCharset()), actual.toString(Charset.defaultCharset()));
+
+    }
+
+    @Test
+    public void eagerBulkSerializationReleasesItemsWhenAddedToBatch() {
+
+        // given
+        PooledItemSourceFactory bufferedSourceFactory = PooledItemSourceFactoryTest.createDefaultTestSourceFactoryConfig().build();
+        BufferedBulkOperations bufferedBulkOperations = new BufferedBulkOperations(bufferedSourceFactory, true);
+
+        BatchBuilder<Bulk> batchBuilder = bufferedBulkOperations.createBatchBuilder();
+        ItemSource itemSource = spy(createDefaultTestJacksonJsonLayout(bufferedSourceFactory).toSerializable(Log4jLogEvent.newBuilder().build()));
+
+        // when
+        batchBuilder.add(bufferedBulkOperations.createBatchItem(UUID.randomUUID().toString(), itemSource));
+
+        // then
+        verify(itemSource).release();
+
+    }
+
     private JacksonJsonLayout createDefaultTestJacksonJsonLayout(PooledItemSourceFactory bufferedSourceFactory) {
         JacksonJsonLayout.Builder builder = spy(JacksonJsonLayout.newBuilder());
         builder.withItemSourceFactory(bufferedSourceFactory);
@@ -24,9 +24,13 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.searchbox.action.BulkableAction;
 import org.appenders.log4j2.elasticsearch.BufferedItemSource;
+import org.appenders.log4j2.elasticsearch.ItemSource;
 import org.appenders.log4j2.elasticsearch.PooledItemSourceFactory;
+import org.appenders.log4j2.elasticsearch.PooledItemSourceFactoryTest;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -35,7 +39,10 @@ import org.junit.rules.ExpectedException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
@@ -43,9 +50,12 @@ import java.util.UUID;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class BufferedBulkTest {
 
@@ -296,6 +306,55 @@ public class BufferedBulkTest {
 
     }
 
+    @Test
+    public void callingCompletedReleasesCompressedRequest() {
+
+        // given
+        BufferedBulk.Builder builder = createDefaultTestMockedBuilder();
+        builder.withBuffer(mock(BufferedItemSource.class));
+
+        BufferedBulk bulk = builder.build();
+
+        ByteBuf compressed = mock(ByteBuf.class);
+        GzipBulkCompressor compressor = mock(GzipBulkCompressor.class);
+        when(compressor.compress(any())).thenReturn(compressed);
+
+        bulk.compressRequest(mock(ByteBuf.class), compressor);
+
+        // when
+        bulk.completed();
+
+        // then
+        verify(compressed).release();
+
+    }
+
+    @Test
+    public void compressRequestReleasesPreviouslyCompressedRequest() {
+
+        // given
+        BufferedBulk.Builder builder = createDefaultTestMockedBuilder();
+        builder.withBuffer(mock(BufferedItemSource.class));
+
+        BufferedBulk bulk = builder.build();
+
+        ByteBuf compressed1 = mock(ByteBuf.class);
+        ByteBuf compressed2 = mock(ByteBuf.class);
+        GzipBulkCompressor compressor = mock(GzipBulkCompressor.class);
+        when(compressor.compress(any())).thenReturn(compressed1, compressed2);
+
+        bulk.compressRequest(mock(ByteBuf.class), compressor);
+
+        // when
+        ByteBuf result = bulk.compressRequest(mock(ByteBuf.class), compressor);
+
+        // then
+        assertEquals(compressed2, result);
+        verify(compressed1).release();
+        verify(compressed2, never()).release();
+
+    }
+
     @Test
     public void callingCompletedReleasesActions() {
 
@@ -320,6 +379,154 @@ public class BufferedBulkTest {
 
     }
 
+    @Test
+    public void eagerSerializationPassesWrittenDocumentsToConsumer() {
+
+        // given
+        BufferedBulk.Builder builder = createDefaultTestEagerBuilder();
+
+        String payload1 = UUID.randomUUID().toString();
+        String payload2 = UUID.randomUUID().toString();
+        builder.addAction(createTestBufferedIndex(payload1));
+        builder.addAction(createTestBufferedIndex(payload2));
+
+        BufferedBulk bulk = builder.build();
+
+        List<String> documents = new ArrayList<>();
+
+        // when
+        bulk.forEachDocument(byteBuf -> documents.add(byteBuf.toString(Charset.defaultCharset())));
+
+        // then
+        assertEquals(2, bulk.getSize());
+        assertEquals(Arrays.asList(payload1, payload2), documents);
+
+    }
+
+    @Test
+    public void eagerSerializationDoesNotStoreActions() {
+
+        // given
+        BufferedBulk.Builder builder = createDefaultTestEagerBuilder();
+
+        BufferedIndex bufferedIndex = spy(createTestBufferedIndex(UUID.randomUUID().toString()));
+
+        // when
+        builder.addAction(Collections.singletonList(bufferedIndex));
+
+        // then
+        assertEquals(0, builder.actions.size());
+        verify(bufferedIndex).release();
+
+    }
+
+    @Test
+    public void eagerSerializationThrowsWhenBufferIsNotProvided() {
+
+        // given
+        BufferedBulk.Builder builder = new BufferedBulk.Builder()
+                .withObjectWriter(mock(ObjectWriter.class))
+                .withEagerSerialization(true);
+
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage("bufferedSource and objectWriter must be provided");
+
+        // when
+        builder.addAction(createTestBufferedIndex(UUID.randomUUID().toString()));
+
+    }
+
+    @Test
+    public void builderFailsWhenEagerSerializationAndCompositeAssemblyAreBothEnabled() {
+
+        // given
+        BufferedBulk.Builder builder = createDefaultTestMockedBuilder()
+                .withEagerSerialization(true)
+                .withCompositeAssembly(true);
+
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("eagerSerialization and compositeAssembly cannot be used together");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void compositeAssemblyDoesNotCopyDocuments() throws IOException {
+
+        // given
+        PooledItemSourceFactory bufferedSourceFactory = PooledItemSourceFactoryTest.createDefaultTestSourceFactoryConfig().build();
+        ItemSource<ByteBuf> bulkSource = bufferedSourceFactory.createEmptySource();
+        BufferedBulk.Builder builder = new BufferedBulk.Builder()
+                .withObjectReader(mock(ObjectReader.class))
+                .withObjectWriter(new BufferedBulkOperations(bufferedSourceFactory).configuredWriter())
+                .withBuffer(bulkSource)
+                .withCompositeAssembly(true);
+
+        String payload = UUID.randomUUID().toString();
+        builder.addAction(createTestBufferedIndex(payload));
+
+        BufferedBulk bulk = builder.build();
+
+        // when
+        ByteBuf request = bulk.serializeRequest();
+
+        // then
+        String content = request.toString(Charset.defaultCharset());
+        assertTrue(content.endsWith(BufferedBulk.LINE_SEPARATOR + payload + BufferedBulk.LINE_SEPARATOR));
+        assertFalse(bulkSource.getSource().toString(Charset.defaultCharset()).contains(payload));
+
+    }
+
+    @Test
+    public void callingCompletedReleasesCompositeComponentsBeforeActions() throws IOException {
+
+        // given
+        PooledItemSourceFactory bufferedSourceFactory = PooledItemSourceFactoryTest.createDefaultTestSourceFactoryConfig().build();
+        BufferedBulk.Builder builder = new BufferedBulk.Builder()
+                .withObjectReader(mock(ObjectReader.class))
+                .withObjectWriter(new BufferedBulkOperations(bufferedSourceFactory).configuredWriter())
+                .withBuffer(bufferedSourceFactory.createEmptySource())
+                .withCompositeAssembly(true);
+
+        ByteBuf document = Unpooled.buffer();
+        document.writeBytes(UUID.randomUUID().toString().getBytes());
+        List<Integer> refCntOnRelease = new ArrayList<>();
+        builder.addAction(new BufferedIndex.Builder(new BufferedItemSource(document, source -> refCntOnRelease.add(source.getSource().refCnt())))
+                .index(UUID.randomUUID().toString())
+                .build());
+
+        BufferedBulk bulk = builder.build();
+        ByteBuf request = bulk.serializeRequest();
+        assertEquals(2, document.refCnt());
+
+        // when
+        bulk.completed();
+
+        // then
+        assertEquals(0, request.refCnt());
+        assertEquals(Collections.singletonList(1), refCntOnRelease);
+
+    }
+
+    private BufferedBulk.Builder createDefaultTestEagerBuilder() {
+        PooledItemSourceFactory bufferedSourceFactory = PooledItemSourceFactoryTest.createDefaultTestSourceFactoryConfig().build();
+        return new BufferedBulk.Builder()
+                .withObjectReader(mock(ObjectReader.class))
+                .withObjectWriter(new BufferedBulkOperations(bufferedSourceFactory).configuredWriter())
+                .withBuffer(bufferedSourceFactory.createEmptySource())
+                .withEagerSerialization(true);
+    }
+
+    private BufferedIndex createTestBufferedIndex(String payload) {
+        ByteBuf byteBuf = Unpooled.buffer();
+        byteBuf.writeBytes(payload.getBytes());
+        return new BufferedIndex.Builder(new BufferedItemSource(byteBuf, source -> {}))
+                .index(UUID.randomUUID().toString())
+                .build();
+    }
+
     private BulkError createTestBulkError() {
         BulkError bulkError = new BulkError();
         String errorReason = UUID.randomUUID().toString();
@@ -33,6 +33,7 @@ import org.apache.http.HttpResponse;
 import org.apache.http.HttpVersion;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.message.BasicStatusLine;
 import org.appenders.log4j2.elasticsearch.BufferedItemSource;
@@ -50,6 +51,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Random;
 import java.util.UUID;
 
@@ -166,6 +168,64 @@ public class BufferedJestHttpClientTest {
 
     }
 
+    @Test
+    public void prepareRequestCompressesRequestIfThresholdIsReached() throws IOException {
+
+        // given
+        HttpEntity expectedEntity = ((HttpEntityEnclosingRequest) createDefaultTestHttpClient()
+                .prepareRequest(createDefaultTestBufferedBulk())).getEntity();
+        byte[] expectedBody = new byte[(int) expectedEntity.getContentLength()];
+        expectedEntity.getContent().read(expectedBody);
+
+        BufferedJestHttpClient client = createTestHttpClient(new GzipBulkCompressor(GzipBulkCompressor.DEFAULT_COMPRESSION_LEVEL, 0));
+
+        // when
+        HttpUriRequest request = client.prepareRequest(createDefaultTestBufferedBulk());
+
+        // then
+        HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+        assertEquals(GzipBulkCompressor.CONTENT_ENCODING, entity.getContentEncoding().getValue());
+
+        byte[] actualBody = new byte[(int) entity.getContentLength()];
+        entity.getContent().read(actualBody);
+        assertEquals(new String(expectedBody), new String(GzipBulkCompressorTest.decompress(actualBody)));
+
+    }
+
+    @Test
+    public void prepareRequestDoesNotCompressRequestBelowThreshold() throws IOException {
+
+        // given
+        BufferedBulk bulk = createDefaultTestBufferedBulk();
+        BufferedJestHttpClient client = createTestHttpClient(new GzipBulkCompressor(GzipBulkCompressor.DEFAULT_COMPRESSION_LEVEL, Integer.MAX_VALUE));
+
+        // when
+        HttpUriRequest request = client.prepareRequest(bulk);
+
+        // then
+        HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+        assertNull(entity.getContentEncoding());
+        verify(bulk, never()).compressRequest(any(), any());
+
+    }
+
+    @Test
+    public void closeShutsDownCompressor() throws IOException {
+
+        // given
+        GzipBulkCompressor compressor = spy(new GzipBulkCompressor(GzipBulkCompressor.DEFAULT_COMPRESSION_LEVEL, 0));
+        BufferedJestHttpClient client = createTestHttpClient(compressor);
+        client.setHttpClient(mock(CloseableHttpClient.class));
+        client.setAsyncClient(mock(CloseableHttpAsyncClient.class));
+
+        // when
+        client.close();
+
+        // then
+        verify(compressor).shutdown();
+
+    }
+
     @Test
     public void executeAsyncDelegatesToConfiguredAsyncClient() {
 
@@ -425,6 +485,12 @@ public class BufferedJestHttpClientTest {
         return (BufferedJestHttpClient) testObjectFactoryBuilder.build().createClient();
     }
 
+    private BufferedJestHttpClient createTestHttpClient(GzipBulkCompressor compressor) {
+        BufferedJestHttpClient client = new BufferedJestHttpClient(compressor);
+        client.setServers(Collections.singleton("http://localhost:9200"));
+        return client;
+    }
+
     private ItemSource<ByteBuf> createDefaultTestBufferedItemSource(String payload) {
         ByteBuf buffer = byteBufAllocator.buffer(16);
         buffer.writeBytes(payload.getBytes());
@@ -52,6 +52,8 @@ import java.util.function.Function;
 import static org.appenders.log4j2.elasticsearch.BufferedItemSourcePoolTest.byteBufAllocator;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
@@ -91,6 +93,104 @@ public class BufferedJestHttpObjectFactoryTest {
         return builder;
     }
 
+    @Test
+    public void builderThrowsIfEagerBulkSerializationAndCompositeBulkAreBothEnabled() {
+
+        // given
+        BufferedJestHttpObjectFactory.Builder builder = createTestObjectFactoryBuilder()
+                .withEagerBulkSerialization(true)
+                .withCompositeBulk(true);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("eagerBulkSerialization and compositeBulk cannot be used together");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsIfCompressionLevelIsOutOfRange() {
+
+        // given
+        BufferedJestHttpObjectFactory.Builder builder = createTestObjectFactoryBuilder()
+                .withCompressionLevel(10);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("compressionLevel must be between -1 and 9");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void builderThrowsIfCompressionThresholdIsNegative() {
+
+        // given
+        BufferedJestHttpObjectFactory.Builder builder = createTestObjectFactoryBuilder()
+                .withCompressionThreshold(-1);
+
+        expectedException.expect(ConfigurationException.class);
+        expectedException.expectMessage("compressionThreshold cannot be negative");
+
+        // when
+        builder.build();
+
+    }
+
+    @Test
+    public void compressorIsNotCreatedByDefault() {
+
+        // given
+        BufferedJestHttpObjectFactory factory = createTestObjectFactoryBuilder().build();
+
+        // when
+        GzipBulkCompressor compressor = factory.createCompressor();
+
+        // then
+        assertNull(compressor);
+
+    }
+
+    @Test
+    public void compressorIsCreatedWithConfiguredLevelAndThreshold() {
+
+        // given
+        int expectedLevel = 6;
+        int expectedThreshold = 2048;
+
+        BufferedJestHttpObjectFactory factory = createTestObjectFactoryBuilder()
+                .withCompression(true)
+                .withCompressionLevel(expectedLevel)
+                .withCompressionThreshold(expectedThreshold)
+                .build();
+
+        // when
+        GzipBulkCompressor compressor = factory.createCompressor();
+
+        // then
+        assertEquals(expectedLevel, compressor.getLevel());
+        assertEquals(expectedThreshold, compressor.getThreshold());
+
+    }
+
+    @Test
+    public void clientIsCreatedWithConfiguredCompressor() {
+
+        // given
+        BufferedJestHttpObjectFactory factory = createTestObjectFactoryBuilder()
+                .withCompression(true)
+                .build();
+
+        // when
+        BufferedJestHttpClient client = (BufferedJestHttpClient) factory.createClient();
+
+        // then
+        assertNotNull(client.getCompressor());
+
+    }
+
     @Test
     public void builderThrowsIfSourceFactoryIsNotProvided() {
 
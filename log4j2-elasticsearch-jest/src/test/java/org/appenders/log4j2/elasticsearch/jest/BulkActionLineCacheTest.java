@@ -0,0 +1,143 @@
+package org.appenders.log4j2.elasticsearch.jest;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import org.appenders.log4j2.elasticsearch.BufferedItemSource;
+import org.appenders.log4j2.elasticsearch.PooledItemSourceFactory;
+import org.appenders.log4j2.elasticsearch.PooledItemSourceFactoryTest;
+import org.junit.Test;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class BulkActionLineCacheTest {
+
+    @Test
+    public void writesSameActionLineAsObjectWriter() throws IOException {
+
+        // given
+        ObjectWriter objectWriter = createTestObjectWriter();
+        BulkActionLineCache cache = new BulkActionLineCache(objectWriter, BulkActionLineCache.DEFAULT_MAX_SIZE);
+
+        BufferedIndex action = createTestBufferedIndex(UUID.randomUUID().toString());
+
+        ByteBuf expected = Unpooled.buffer();
+        objectWriter.writeValue((DataOutput) new ByteBufOutputStream(expected), action);
+
+        ByteBuf actual = Unpooled.buffer();
+        ByteBufOutputStream output = new ByteBufOutputStream(actual);
+
+        // when
+        cache.write(action, output);
+        cache.write(action, output);
+
+        // then
+        String expectedLine = expected.toString(Charset.defaultCharset());
+        assertEquals(expectedLine + expectedLine, actual.toString(Charset.defaultCharset()));
+
+    }
+
+    @Test
+    public void cachesOneActionLinePerIndex() throws IOException {
+
+        // given
+        BulkActionLineCache cache = new BulkActionLineCache(createTestObjectWriter(), BulkActionLineCache.DEFAULT_MAX_SIZE);
+        ByteBufOutputStream output = new ByteBufOutputStream(Unpooled.buffer());
+
+        String indexName = UUID.randomUUID().toString();
+
+        // when
+        cache.write(createTestBufferedIndex(indexName), output);
+        cache.write(createTestBufferedIndex(indexName), output);
+        cache.write(createTestBufferedIndex(UUID.randomUUID().toString()), output);
+
+        // then
+        assertEquals(2, cache.size());
+
+    }
+
+    @Test
+    public void evictsAllActionLinesWhenFull() throws IOException {
+
+        // given
+        int maxSize = 2;
+        BulkActionLineCache cache = new BulkActionLineCache(createTestObjectWriter(), maxSize);
+        ByteBufOutputStream output = new ByteBufOutputStream(Unpooled.buffer());
+
+        cache.write(createTestBufferedIndex(UUID.randomUUID().toString()), output);
+        cache.write(createTestBufferedIndex(UUID.randomUUID().toString()), output);
+
+        // when
+        cache.write(createTestBufferedIndex(UUID.randomUUID().toString()), output);
+
+        // then
+        assertEquals(1, cache.size());
+
+    }
+
+    @Test
+    public void doesNotCacheActionLinesWithDocumentId() throws IOException {
+
+        // given
+        ObjectWriter objectWriter = createTestObjectWriter();
+        BulkActionLineCache cache = new BulkActionLineCache(objectWriter, BulkActionLineCache.DEFAULT_MAX_SIZE);
+
+        String indexName = UUID.randomUUID().toString();
+        BufferedIndex action1 = createTestBufferedIndexBuilder(indexName).id(UUID.randomUUID().toString()).build();
+        BufferedIndex action2 = createTestBufferedIndexBuilder(indexName).id(UUID.randomUUID().toString()).build();
+
+        ByteBuf actual = Unpooled.buffer();
+        ByteBufOutputStream output = new ByteBufOutputStream(actual);
+
+        // when
+        cache.write(action1, output);
+        cache.write(action2, output);
+
+        // then
+        assertEquals(0, cache.size());
+        String content = actual.toString(Charset.defaultCharset());
+        assertEquals(objectWriter.writeValueAsString(action1) + objectWriter.writeValueAsString(action2), content);
+
+    }
+
+    private ObjectWriter createTestObjectWriter() {
+        PooledItemSourceFactory bufferedSourceFactory = PooledItemSourceFactoryTest.createDefaultTestSourceFactoryConfig().build();
+        return new BufferedBulkOperations(bufferedSourceFactory).configuredWriter();
+    }
+
+    private BufferedIndex createTestBufferedIndex(String indexName) {
+        return createTestBufferedIndexBuilder(indexName).build();
+    }
+
+    private BufferedIndex.Builder createTestBufferedIndexBuilder(String indexName) {
+        return new BufferedIndex.Builder(new BufferedItemSource(Unpooled.buffer(), source -> {}))
+                .index(indexName);
+    }
+
+}
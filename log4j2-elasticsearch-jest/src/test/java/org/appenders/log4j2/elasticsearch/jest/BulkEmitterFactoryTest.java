@@ -21,13 +21,23 @@ package org.appenders.log4j2.elasticsearch.jest;
  */
 
 
+import org.appenders.log4j2.elasticsearch.AdaptiveBatchSize;
+import org.appenders.log4j2.elasticsearch.BatchEmitter;
+import org.appenders.log4j2.elasticsearch.BatchEmitterConfig;
 import org.appenders.log4j2.elasticsearch.BatchEmitterFactory;
+import org.appenders.log4j2.elasticsearch.BatchOperations;
+import org.appenders.log4j2.elasticsearch.BulkEmitter;
 import org.appenders.log4j2.elasticsearch.NoopFailoverPolicy;
+import org.appenders.log4j2.elasticsearch.RingBufferBulkEmitter;
+import org.appenders.log4j2.elasticsearch.StripedBulkEmitter;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import static org.appenders.log4j2.elasticsearch.jest.JestHttpObjectFactoryTest.createTestObjectFactoryBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.spy;
 
@@ -72,7 +82,30 @@ public class BulkEmitterFactoryTest {
         factory.createInstance(1, 1, clientObjectFactory, failoverPolicy);
 
         // then
-        Mockito.verify(clientObjectFactory).createBatchListener(eq(failoverPolicy));
+        Mockito.verify(clientObjectFactory).createBatchListener(eq(failoverPolicy), Mockito.<AdaptiveBatchSize>any());
+
+    }
+
+    @Test
+    public void passesAdaptiveBatchSizeToBatchListener() {
+
+        // given
+        BatchEmitterFactory factory = new BulkEmitterFactory();
+        JestHttpObjectFactory clientObjectFactory = spy(createTestObjectFactoryBuilder().build());
+        NoopFailoverPolicy failoverPolicy = new NoopFailoverPolicy();
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(10)
+                .withDeliveryInterval(1000)
+                .withMinBatchSize(1)
+                .withMaxBatchSize(100)
+                .build();
+
+        // when
+        BulkEmitter emitter = (BulkEmitter) factory.createInstance(config, clientObjectFactory, failoverPolicy);
+
+        // then
+        assertNotNull(emitter.getAdaptiveBatchSize());
+        Mockito.verify(clientObjectFactory).createBatchListener(eq(failoverPolicy), eq(emitter.getAdaptiveBatchSize()));
 
     }
 
@@ -91,6 +124,86 @@ public class BulkEmitterFactoryTest {
 
     }
 
+    @Test
+    public void setsFailoverPolicyOnCreatedEmitter() {
+
+        // given
+        BulkEmitter emitter = Mockito.mock(BulkEmitter.class);
+        BatchEmitterFactory factory = new BulkEmitterFactory() {
+            @Override
+            protected BulkEmitter createBulkEmitter(BatchEmitterConfig config, BatchOperations batchOperations) {
+                return emitter;
+            }
+        };
+        NoopFailoverPolicy failoverPolicy = new NoopFailoverPolicy();
+
+        // when
+        factory.createInstance(1, 1, createTestObjectFactoryBuilder().build(), failoverPolicy);
+
+        // then
+        Mockito.verify(emitter).setFailoverPolicy(eq(failoverPolicy));
+
+    }
+
+    @Test
+    public void createsBulkEmitterByDefault() {
+
+        // given
+        BatchEmitterFactory factory = new BulkEmitterFactory();
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(1)
+                .withDeliveryInterval(1)
+                .build();
+
+        // when
+        BatchEmitter emitter = factory.createInstance(config, createTestObjectFactoryBuilder().build(), new NoopFailoverPolicy());
+
+        // then
+        assertEquals(BulkEmitter.class, emitter.getClass());
+
+    }
+
+    @Test
+    public void createsRingBufferBulkEmitterIfRingBufferSizeIsConfigured() {
+
+        // given
+        BatchEmitterFactory factory = new BulkEmitterFactory();
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(1)
+                .withDeliveryInterval(1)
+                .withRingBufferSize(16)
+                .build();
+
+        // when
+        BatchEmitter emitter = factory.createInstance(config, createTestObjectFactoryBuilder().build(), new NoopFailoverPolicy());
+
+        // then
+        assertEquals(RingBufferBulkEmitter.class, emitter.getClass());
+
+    }
+
+    @Test
+    public void createsStripedBulkEmitterIfLanesAreConfigured() {
+
+        // given
+        BatchEmitterFactory factory = new BulkEmitterFactory();
+        JestHttpObjectFactory clientObjectFactory = spy(createTestObjectFactoryBuilder().build());
+        BatchEmitterConfig config = BatchEmitterConfig.newBuilder()
+                .withBatchSize(1)
+                .withDeliveryInterval(1)
+                .withLanes(3)
+                .build();
+
+        // when
+        BatchEmitter emitter = factory.createInstance(config, clientObjectFactory, new NoopFailoverPolicy());
+
+        // then
+        assertEquals(StripedBulkEmitter.class, emitter.getClass());
+        assertEquals(3, ((StripedBulkEmitter) emitter).getLanes().size());
+        Mockito.verify(clientObjectFactory, Mockito.times(3)).createBatchListener(any(), any());
+
+    }
+
     public static class TestBulkProcessorObjectFactory extends JestHttpObjectFactory {
         protected TestBulkProcessorObjectFactory() {
             super(null, 0, 0, 0, 0, false, null);
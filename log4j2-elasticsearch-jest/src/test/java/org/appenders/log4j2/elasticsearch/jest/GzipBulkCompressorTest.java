@@ -0,0 +1,194 @@
+package org.appenders.log4j2.elasticsearch.jest;
+
+/*-
+ * #%L
+ * log4j2-elasticsearch
+ * %%
+ * Copyright (C) 2018 Rafal Foltynski
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GzipBulkCompressorTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void throwsOnInvalidCompressionLevel() {
+
+        // given
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Compression level must be between -1 and 9");
+
+        // when
+        new GzipBulkCompressor(10, GzipBulkCompressor.DEFAULT_THRESHOLD);
+
+    }
+
+    @Test
+    public void throwsOnNegativeThreshold() {
+
+        // given
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Compression threshold cannot be negative");
+
+        // when
+        new GzipBulkCompressor(GzipBulkCompressor.DEFAULT_COMPRESSION_LEVEL, -1);
+
+    }
+
+    @Test
+    public void shouldCompressOnlyIfThresholdIsReached() {
+
+        // given
+        GzipBulkCompressor compressor = new GzipBulkCompressor(GzipBulkCompressor.DEFAULT_COMPRESSION_LEVEL, 10);
+
+        // then
+        assertFalse(compressor.shouldCompress(Unpooled.buffer().writeBytes(new byte[9])));
+        assertTrue(compressor.shouldCompress(Unpooled.buffer().writeBytes(new byte[10])));
+
+    }
+
+    @Test
+    public void compressedOutputCanBeReadByGZIPInputStream() throws IOException {
+
+        // given
+        GzipBulkCompressor compressor = new GzipBulkCompressor(GzipBulkCompressor.DEFAULT_COMPRESSION_LEVEL, 0);
+
+        // bigger than chunk size to exercise multiple deflate passes
+        byte[] expected = createTestBytes(GzipBulkCompressor.CHUNK_SIZE * 3 + 17);
+        ByteBuf source = Unpooled.buffer().writeBytes(expected);
+
+        // when
+        ByteBuf compressed = compressor.compress(source);
+
+        // then
+        byte[] actual = decompress(toArray(compressed));
+        assertArrayEquals(expected, actual);
+
+    }
+
+    @Test
+    public void compressDoesNotModifySourceReaderIndex() {
+
+        // given
+        GzipBulkCompressor compressor = new GzipBulkCompressor(GzipBulkCompressor.DEFAULT_COMPRESSION_LEVEL, 0);
+        ByteBuf source = Unpooled.buffer().writeBytes(createTestBytes(100));
+
+        // when
+        compressor.compress(source);
+
+        // then
+        assertEquals(0, source.readerIndex());
+
+    }
+
+    @Test
+    public void pooledDeflaterIsReused() throws IOException {
+
+        // given
+        GzipBulkCompressor compressor = new GzipBulkCompressor(GzipBulkCompressor.DEFAULT_COMPRESSION_LEVEL, 0);
+
+        byte[] expected1 = createTestBytes(1000);
+        byte[] expected2 = createTestBytes(10);
+
+        // when
+        ByteBuf compressed1 = compressor.compress(Unpooled.buffer().writeBytes(expected1));
+        ByteBuf compressed2 = compressor.compress(Unpooled.buffer().writeBytes(expected2));
+
+        // then
+        assertEquals(1, compressor.getPooledCount());
+        assertArrayEquals(expected1, decompress(toArray(compressed1)));
+        assertArrayEquals(expected2, decompress(toArray(compressed2)));
+
+    }
+
+    @Test
+    public void shutdownEmptiesThePool() {
+
+        // given
+        GzipBulkCompressor compressor = new GzipBulkCompressor(GzipBulkCompressor.DEFAULT_COMPRESSION_LEVEL, 0);
+        compressor.compress(Unpooled.buffer().writeBytes(createTestBytes(10)));
+
+        // when
+        compressor.shutdown();
+
+        // then
+        assertEquals(0, compressor.getPooledCount());
+
+    }
+
+    @Test
+    public void deflaterIsNotPooledAfterShutdown() {
+
+        // given
+        GzipBulkCompressor compressor = new GzipBulkCompressor(GzipBulkCompressor.DEFAULT_COMPRESSION_LEVEL, 0);
+        compressor.shutdown();
+
+        // when
+        compressor.compress(Unpooled.buffer().writeBytes(createTestBytes(10)));
+
+        // then
+        assertEquals(0, compressor.getPooledCount());
+
+    }
+
+    static byte[] decompress(byte[] compressed) throws IOException {
+        GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private byte[] toArray(ByteBuf byteBuf) {
+        byte[] bytes = new byte[byteBuf.readableBytes()];
+        byteBuf.getBytes(byteBuf.readerIndex(), bytes);
+        return bytes;
+    }
+
+    private byte[] createTestBytes(int size) {
+        // random tokens from small alphabet, so output is compressible but not trivial
+        Random random = new Random();
+        StringBuilder sb = new StringBuilder(size);
+        String token = UUID.randomUUID().toString();
+        while (sb.length() < size) {
+            sb.append(token.charAt(random.nextInt(token.length())));
+        }
+        return sb.toString().getBytes();
+    }
+
+}
@@ -78,4 +78,37 @@ public class JestBulkOperationsTest {
 
     }
 
+    @Test
+    public void failoverPayloadIsIndexSource() {
+
+        // given
+        BatchOperations<Bulk> bulkOperations = JestHttpObjectFactoryTest.createTestObjectFactoryBuilder().build().createBatchOperations();
+
+        String testPayload = "{ \"testfield\": \"testvalue\" }";
+        Index item = (Index) bulkOperations.createBatchItem("testIndex", testPayload);
+
+        // when
+        Object payload = bulkOperations.getFailoverPayload(item);
+
+        // then
+        Assert.assertEquals(testPayload, payload);
+
+    }
+
+    @Test
+    public void indexNameIsIndexTarget() {
+
+        // given
+        BatchOperations<Bulk> bulkOperations = JestHttpObjectFactoryTest.createTestObjectFactoryBuilder().build().createBatchOperations();
+
+        Index item = (Index) bulkOperations.createBatchItem("testIndex", "{}");
+
+        // when
+        String indexName = bulkOperations.getIndexName(item);
+
+        // then
+        Assert.assertEquals("testIndex", indexName);
+
+    }
+
 }
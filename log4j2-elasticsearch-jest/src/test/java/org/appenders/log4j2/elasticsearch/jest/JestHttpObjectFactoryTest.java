@@ -27,7 +27,11 @@ import io.searchbox.client.JestResultHandler;
 import io.searchbox.core.Bulk;
 import io.searchbox.core.Index;
 import org.apache.logging.log4j.core.config.ConfigurationException;
+import org.appenders.log4j2.elasticsearch.AdaptiveBatchSize;
 import org.appenders.log4j2.elasticsearch.Auth;
+import org.appenders.log4j2.elasticsearch.BatchEmitterConfig;
+import org.appenders.log4j2.elasticsearch.BatchOperations;
+import org.appenders.log4j2.elasticsearch.BulkEmitter;
 import org.appenders.log4j2.elasticsearch.ClientObjectFactory;
 import org.appenders.log4j2.elasticsearch.FailoverPolicy;
 import org.appenders.log4j2.elasticsearch.NoopFailoverPolicy;
@@ -85,6 +89,18 @@ public class JestHttpObjectFactoryTest {
 
     }
 
+    @Test(expected = ConfigurationException.class)
+    public void builderFailsIfMaxInFlightBulksIsNegative() {
+
+        // given
+        Builder builder = createTestObjectFactoryBuilder();
+        builder.withMaxInFlightBulks(-1);
+
+        // when
+        builder.build();
+
+    }
+
     @Test
     public void configReturnsACopyOfServerUrisList() {
 
@@ -388,4 +404,213 @@ public class JestHttpObjectFactoryTest {
         }
         return builder.build();
     }
+
+    @Test
+    public void inFlightBulksAreUnlimitedByDefault() {
+
+        // given
+        JestHttpObjectFactory config = createTestObjectFactoryBuilder().build();
+
+        // when
+        int available = config.getAvailableInFlightBulks();
+
+        // then
+        assertEquals(-1, available);
+
+    }
+
+    @Test
+    public void inFlightBulkPermitIsReleasedWhenRequestIsCompleted() {
+
+        // given
+        JestHttpObjectFactory config = spy(createTestObjectFactoryBuilder()
+                .withMaxInFlightBulks(1)
+                .build());
+
+        JestClient mockedJestClient = mock(JestClient.class);
+        when(config.createClient()).thenReturn(mockedJestClient);
+
+        Function<Bulk, Boolean> listener = config.createBatchListener(new NoopFailoverPolicy());
+
+        // acquired by the emitter
+        assertTrue(config.getDeliveryPermits().tryAcquire());
+        listener.apply(createTestBatch("test1"));
+        assertEquals(0, config.getAvailableInFlightBulks());
+
+        ArgumentCaptor<JestResultHandler> captor = ArgumentCaptor.forClass(JestResultHandler.class);
+        verify(mockedJestClient).executeAsync(any(Bulk.class), captor.capture());
+
+        JestResult result = mock(JestResult.class);
+        when(result.isSucceeded()).thenReturn(true);
+
+        // when
+        captor.getValue().completed(result);
+
+        // then
+        assertEquals(1, config.getAvailableInFlightBulks());
+
+    }
+
+    @Test
+    public void inFlightBulkPermitIsReleasedWhenRequestFailed() {
+
+        // given
+        JestHttpObjectFactory config = spy(createTestObjectFactoryBuilder()
+                .withMaxInFlightBulks(1)
+                .build());
+
+        JestClient mockedJestClient = mock(JestClient.class);
+        when(config.createClient()).thenReturn(mockedJestClient);
+
+        FailoverPolicy failoverPolicy = spy(new NoopFailoverPolicy());
+        Function<Bulk, Boolean> listener = config.createBatchListener(failoverPolicy);
+
+        // acquired by the emitter
+        assertTrue(config.getDeliveryPermits().tryAcquire());
+        listener.apply(createTestBatch("test1"));
+
+        ArgumentCaptor<JestResultHandler> captor = ArgumentCaptor.forClass(JestResultHandler.class);
+        verify(mockedJestClient).executeAsync(any(Bulk.class), captor.capture());
+
+        // when
+        captor.getValue().failed(new IOException());
+
+        // then
+        assertEquals(1, config.getAvailableInFlightBulks());
+        verify(failoverPolicy).deliver(any());
+
+    }
+
+    @Test
+    public void itemsStayQueuedAndNoBatchIsRedirectedToFailoverIfMaxInFlightBulksIsReached() {
+
+        // given
+        JestHttpObjectFactory config = spy(createTestObjectFactoryBuilder()
+                .withMaxInFlightBulks(1)
+                .build());
+
+        JestClient mockedJestClient = mock(JestClient.class);
+        when(config.createClient()).thenReturn(mockedJestClient);
+
+        FailoverPolicy failoverPolicy = spy(new NoopFailoverPolicy());
+        BatchEmitterConfig emitterConfig = BatchEmitterConfig.newBuilder()
+                .withBatchSize(Integer.MAX_VALUE)
+                .withDeliveryInterval(10000)
+                .build();
+        BulkEmitter emitter = (BulkEmitter) new BulkEmitterFactory().createInstance(emitterConfig, config, failoverPolicy);
+        BatchOperations<Bulk> batchOperations = config.createBatchOperations();
+
+        emitter.add(batchOperations.createBatchItem("test", "{}"));
+        emitter.notifyListener();
+
+        emitter.add(batchOperations.createBatchItem("test", "{}"));
+
+        // when
+        emitter.notifyListener();
+
+        // then
+        ArgumentCaptor<JestResultHandler> captor = ArgumentCaptor.forClass(JestResultHandler.class);
+        verify(mockedJestClient, times(1)).executeAsync(any(Bulk.class), captor.capture());
+        verify(failoverPolicy, never()).deliver(any());
+        assertEquals(0, config.getAvailableInFlightBulks());
+
+        // when
+        JestResult result = mock(JestResult.class);
+        when(result.isSucceeded()).thenReturn(true);
+        captor.getValue().completed(result);
+        emitter.notifyListener();
+
+        // then
+        verify(mockedJestClient, times(2)).executeAsync(any(Bulk.class), any(JestResultHandler.class));
+        verify(failoverPolicy, never()).deliver(any());
+
+        emitter.stop();
+
+    }
+
+    @Test
+    public void adaptiveBatchSizeIsIncreasedWhenRequestSucceeded() {
+
+        // given
+        JestHttpObjectFactory config = spy(createTestObjectFactoryBuilder().build());
+
+        JestClient mockedJestClient = mock(JestClient.class);
+        when(config.createClient()).thenReturn(mockedJestClient);
+
+        AdaptiveBatchSize adaptiveBatchSize = new AdaptiveBatchSize(1, 100, 10, 0);
+        Function<Bulk, Boolean> listener = config.createBatchListener(new NoopFailoverPolicy(), adaptiveBatchSize);
+
+        listener.apply(createTestBatch("test1"));
+
+        ArgumentCaptor<JestResultHandler> captor = ArgumentCaptor.forClass(JestResultHandler.class);
+        verify(mockedJestClient).executeAsync(any(Bulk.class), captor.capture());
+
+        BufferedJestResult result = new BufferedJestResult();
+        result.setSucceeded(true);
+        result.setTook(5);
+
+        // when
+        captor.getValue().completed(result);
+
+        // then
+        assertTrue(adaptiveBatchSize.get() > 10);
+
+    }
+
+    @Test
+    public void adaptiveBatchSizeIsDecreasedWhenRequestFailed() {
+
+        // given
+        JestHttpObjectFactory config = spy(createTestObjectFactoryBuilder().build());
+
+        JestClient mockedJestClient = mock(JestClient.class);
+        when(config.createClient()).thenReturn(mockedJestClient);
+
+        AdaptiveBatchSize adaptiveBatchSize = new AdaptiveBatchSize(1, 100, 10, 0);
+        FailoverPolicy failoverPolicy = spy(new NoopFailoverPolicy());
+        Function<Bulk, Boolean> listener = config.createBatchListener(failoverPolicy, adaptiveBatchSize);
+
+        listener.apply(createTestBatch("test1"));
+
+        ArgumentCaptor<JestResultHandler> captor = ArgumentCaptor.forClass(JestResultHandler.class);
+        verify(mockedJestClient).executeAsync(any(Bulk.class), captor.capture());
+
+        // when
+        captor.getValue().failed(new IOException());
+
+        // then
+        assertEquals(5, adaptiveBatchSize.get());
+        verify(failoverPolicy).deliver(any());
+
+    }
+
+    @Test
+    public void adaptiveBatchSizeIsDecreasedWhenServerProcessingTimeExceedsTargetLatency() {
+
+        // given
+        JestHttpObjectFactory config = spy(createTestObjectFactoryBuilder().build());
+
+        JestClient mockedJestClient = mock(JestClient.class);
+        when(config.createClient()).thenReturn(mockedJestClient);
+
+        AdaptiveBatchSize adaptiveBatchSize = new AdaptiveBatchSize(1, 100, 10, 50);
+        Function<Bulk, Boolean> listener = config.createBatchListener(new NoopFailoverPolicy(), adaptiveBatchSize);
+
+        listener.apply(createTestBatch("test1"));
+
+        ArgumentCaptor<JestResultHandler> captor = ArgumentCaptor.forClass(JestResultHandler.class);
+        verify(mockedJestClient).executeAsync(any(Bulk.class), captor.capture());
+
+        BufferedJestResult result = new BufferedJestResult();
+        result.setSucceeded(true);
+        result.setTook(51);
+
+        // when
+        captor.getValue().completed(result);
+
+        // then
+        assertEquals(5, adaptiveBatchSize.get());
+
+    }
+
 }